@@ -3,8 +3,9 @@ class SecureChatPollingClient {
         this.chatRoomId = chatRoomId;
         this.baseUrl = baseUrl;
         this.lastTimestamp = null; // Track last received message timestamp
+        this.cursor = null; // Long-poll cursor returned by the server
         this.isPolling = false; 
-        this.pollInterval = 5000; // Poll every 5 seconds
+        this.pollInterval = 5000; // Retry delay after a failed poll
     }
 
     async startPolling() {
@@ -30,16 +31,16 @@ class SecureChatPollingClient {
     async poll() {
         if (!this.isPolling) return; // Exit if polling stopped
 
+        let failed = false;
         try {
-            // Build query parameters for polling request
+            // Long-poll: the server holds the request until a message arrives or ~25s pass
             const params = new URLSearchParams();
-            if (this.lastTimestamp) {
-                params.append('since', this.lastTimestamp); // Get messages after last timestamp
+            if (this.cursor !== null) {
+                params.append('after', this.cursor); // Cursor from the previous response
             }
-            params.append('limit', '50'); // Limit to 50 messages per poll
+            params.append('timeout', '25');
 
-            // Make polling request to server
-            const response = await fetch(`${this.baseUrl}/${this.chatRoomId}/messages/poll?${params}`, {
+            const response = await fetch(`${this.baseUrl}/${this.chatRoomId}/messages/long-poll?${params}`, {
                 headers: {
                     'Authorization': `Bearer ${this.getAuthToken()}`, // Include auth token
                     'Content-Type': 'application/json'
@@ -47,24 +48,27 @@ class SecureChatPollingClient {
             });
 
             if (response.ok) {
-                const messages = await response.json(); // Parse new messages
+                const result = await response.json(); // { cursor, events: [{ event, data }] }
+                this.cursor = result.cursor;
+                const messages = result.events
+                    .filter(e => e.event === 'new-message')
+                    .map(e => e.data);
                 if (messages.length > 0) {
                     console.log(`Received ${messages.length} new messages`);
                     this.displayMessages(messages); // Display messages in UI
-                    
-                    // Update timestamp to newest message (assuming chronological order)
-                    this.lastTimestamp = messages[0].timestamp;
                 }
             } else {
+                failed = true;
                 console.error('Polling request failed:', response.status);
             }
         } catch (error) {
+            failed = true;
             console.error('Polling error:', error);
         }
 
-        // Schedule next poll if still active
+        // Re-poll right away; only back off after an error
         if (this.isPolling) {
-            setTimeout(() => this.poll(), this.pollInterval);
+            setTimeout(() => this.poll(), failed ? this.pollInterval : 0);
         }
     }
 
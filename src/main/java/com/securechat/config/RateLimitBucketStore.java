@@ -0,0 +1,161 @@
+package com.securechat.config;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rate limit buckets of this node (bucket4j), by policy and client key, bounded in size and time.
+ *
+ * Keys come from the network (client IP, X-Forwarded-For), so a scan or botnet must not be
+ * able to grow this without limit:
+ * - at most max-entries buckets, split over SEGMENTS access-ordered maps (one lock each);
+ *   beyond that the least recently used bucket of the segment is dropped
+ * - a bucket untouched for idle-timeout is dropped on its next use, by the sweep on every
+ *   insert, and by a scheduled sweep. With idle-timeout >= the time a policy's bucket takes to
+ *   refill completely, a dropped bucket would have been full again anyway, so expiry never
+ *   loosens a limit.
+ *
+ * Gauge securechat.ratelimit.buckets and counter securechat.ratelimit.evictions{cause=size|idle}.
+ */
+@Component
+public class RateLimitBucketStore implements RateLimitStore {
+
+    private static final int SEGMENTS = 16;  // Power of two, see segment()
+
+    private final long idleTimeoutNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Counter sizeEvictions;
+    private final Counter idleEvictions;
+
+    @Autowired
+    public RateLimitBucketStore(@Value("${app.rate-limit.store.max-entries:100000}") int maxEntries,
+                                @Value("${app.rate-limit.store.idle-timeout-seconds:60}") long idleTimeoutSeconds,
+                                MeterRegistry meterRegistry) {
+        int perSegment = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.sizeEvictions = meterRegistry.counter("securechat.ratelimit.evictions", "cause", "size");
+        this.idleEvictions = meterRegistry.counter("securechat.ratelimit.evictions", "cause", "idle");
+        Gauge.builder("securechat.ratelimit.buckets", this, RateLimitBucketStore::size)
+                .register(meterRegistry);
+    }
+
+    // Defaults, without metrics
+    RateLimitBucketStore() {
+        this(100_000, 60);
+    }
+
+    // For unit tests and benchmarks
+    RateLimitBucketStore(int maxEntries, long idleTimeoutSeconds) {
+        this(maxEntries, idleTimeoutSeconds, new SimpleMeterRegistry());
+    }
+
+    @Override
+    public Decision tryConsume(RateLimitPolicy policy, String key) {
+        ConsumptionProbe probe = resolve(policy.name() + ":" + key, policy::newBucket).tryConsumeAndReturnRemaining(1);
+        return new Decision(probe.isConsumed(), probe.getRemainingTokens(), probe.getNanosToWaitForRefill());
+    }
+
+    /** Bucket for a key, created by {@code factory} when missing or idle for too long. */
+    public Bucket resolve(String key, Supplier<Bucket> factory) {
+        Segment segment = segment(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null && now - entry.lastAccess < idleTimeoutNanos) {
+                entry.lastAccess = now;
+                return entry.bucket;
+            }
+            if (entry != null) {
+                segment.remove(key);
+                idleEvictions.increment();
+            }
+            segment.sweepIdle(now);
+            Entry created = new Entry(factory.get(), now);
+            segment.put(key, created);
+            return created.bucket;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /** Drops idle buckets of keys that never came back. */
+    @Scheduled(fixedDelayString = "${app.rate-limit.store.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.sweepIdle(now);
+            }
+        }
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+        final Bucket bucket;
+        long lastAccess;  // Guarded by the segment lock
+
+        Entry(Bucket bucket, long lastAccess) {
+            this.bucket = bucket;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    // Access-ordered: eldest = least recently used, so idle entries sit at the head
+    private final class Segment extends LinkedHashMap<String, Entry> {
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        void sweepIdle(long now) {
+            Iterator<Entry> eldestFirst = values().iterator();
+            while (eldestFirst.hasNext()) {
+                if (now - eldestFirst.next().lastAccess < idleTimeoutNanos) {
+                    return;
+                }
+                eldestFirst.remove();
+                idleEvictions.increment();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                sizeEvictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
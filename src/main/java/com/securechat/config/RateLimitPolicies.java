@@ -0,0 +1,93 @@
+package com.securechat.config;
+
+import com.securechat.config.RateLimitPolicy.KeyType;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rate limit table: which requests are limited, per what, and how hard.
+ *
+ * Defaults live in DEFAULTS below; burst and refill of any row can be changed with
+ * app.rate-limit.policies.{name}.burst / .refill-tokens / .refill-period-seconds.
+ * Every matching row applies, so a message send counts against both the sender and the room.
+ */
+@Component
+public class RateLimitPolicies {
+
+    private static final String LOGIN_MESSAGE = "Too many login attempts. Please try again later.";
+    private static final String DEFAULT_MESSAGE = "Too many requests. Please try again later.";
+
+    static final List<RateLimitPolicy> DEFAULTS = List.of(
+            // FE-AUTH-007: max 5 login attempts per minute per IP
+            new RateLimitPolicy("login", null, "/api/auth/login/**", KeyType.IP,
+                    5, 5, Duration.ofMinutes(1), true, LOGIN_MESSAGE),
+            new RateLimitPolicy("message-send", HttpMethod.POST, "/api/chatrooms/{chatRoomId}/messages", KeyType.USER,
+                    20, 5, Duration.ofSeconds(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("room-send", HttpMethod.POST, "/api/chatrooms/{chatRoomId}/messages", KeyType.ROOM,
+                    200, 100, Duration.ofSeconds(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("upload", HttpMethod.POST, "/api/files/upload", KeyType.USER,
+                    5, 10, Duration.ofMinutes(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("upload-session", HttpMethod.POST, "/api/files/uploads", KeyType.USER,
+                    5, 10, Duration.ofMinutes(1), false, DEFAULT_MESSAGE),
+            // Chunks of one upload arrive in parallel; at most max-chunk-bytes each
+            new RateLimitPolicy("upload-chunk", HttpMethod.PUT, "/api/files/uploads/{sessionId}/chunks", KeyType.USER,
+                    32, 16, Duration.ofSeconds(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("message-poll", HttpMethod.GET, "/api/chatrooms/{chatRoomId}/messages/poll", KeyType.USER,
+                    10, 2, Duration.ofSeconds(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("message-long-poll", HttpMethod.GET, "/api/chatrooms/{chatRoomId}/messages/long-poll",
+                    KeyType.USER, 5, 1, Duration.ofSeconds(1), false, DEFAULT_MESSAGE),
+            new RateLimitPolicy("file-poll", HttpMethod.GET, "/api/files/poll", KeyType.USER,
+                    10, 2, Duration.ofSeconds(1), false, DEFAULT_MESSAGE));
+
+    private final List<Row> rows = new ArrayList<>();
+
+    public RateLimitPolicies(Environment environment) {
+        PathPatternParser parser = new PathPatternParser();
+        for (RateLimitPolicy policy : DEFAULTS) {
+            String prefix = "app.rate-limit.policies." + policy.name() + ".";
+            RateLimitPolicy configured = policy.withLimits(
+                    environment.getProperty(prefix + "burst", Long.class, policy.burst()),
+                    environment.getProperty(prefix + "refill-tokens", Long.class, policy.refillTokens()),
+                    Duration.ofSeconds(environment.getProperty(prefix + "refill-period-seconds", Long.class,
+                            policy.refillPeriod().toSeconds())));
+            rows.add(new Row(configured, parser.parse(policy.pathPattern())));
+        }
+    }
+
+    public List<RateLimitPolicy> policies() {
+        return rows.stream().map(Row::policy).toList();
+    }
+
+    /** Rows that apply to the request, in table order, with the path variables they matched. */
+    public List<Match> match(HttpServletRequest request) {
+        PathContainer path = PathContainer.parsePath(request.getRequestURI());
+        List<Match> matches = new ArrayList<>();
+        for (Row row : rows) {
+            HttpMethod method = row.policy().method();
+            if (method != null && !method.matches(request.getMethod())) {
+                continue;
+            }
+            PathPattern.PathMatchInfo info = row.pattern().matchAndExtract(path);
+            if (info != null) {
+                matches.add(new Match(row.policy(), info.getUriVariables()));
+            }
+        }
+        return matches;
+    }
+
+    public record Match(RateLimitPolicy policy, Map<String, String> pathVariables) {
+    }
+
+    private record Row(RateLimitPolicy policy, PathPattern pattern) {
+    }
+}
@@ -0,0 +1,46 @@
+package com.securechat.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+
+/**
+ * One row of the rate limit table (see RateLimitPolicies).
+ *
+ * @param name         property prefix (app.rate-limit.policies.{name}.*) and bucket key prefix
+ * @param method       HTTP method, null for any
+ * @param pathPattern  Spring PathPattern; {chatRoomId} is the room for KeyType.ROOM
+ * @param key          what a bucket is kept per
+ * @param burst        bucket capacity
+ * @param refillTokens tokens added per refillPeriod
+ * @param refillPeriod refill period
+ * @param intervally   add refillTokens at once per period (true) or spread them over it (false)
+ * @param message      error text of the 429 response
+ */
+public record RateLimitPolicy(String name, HttpMethod method, String pathPattern, KeyType key,
+                              long burst, long refillTokens, Duration refillPeriod, boolean intervally,
+                              String message) {
+
+    public enum KeyType {
+        USER,  // Authenticated user ID (JWT subject); falls back to IP for anonymous requests
+        IP,    // Client IP (first X-Forwarded-For entry when present)
+        ROOM   // {chatRoomId} path variable, shared by everyone posting to the room
+    }
+
+    public Bucket newBucket() {
+        Refill refill = intervally
+                ? Refill.intervally(refillTokens, refillPeriod)
+                : Refill.greedy(refillTokens, refillPeriod);
+        return Bucket.builder()
+                .addLimit(Bandwidth.classic(burst, refill))
+                .build();
+    }
+
+    public RateLimitPolicy withLimits(long burst, long refillTokens, Duration refillPeriod) {
+        return new RateLimitPolicy(name, method, pathPattern, key, burst, refillTokens, refillPeriod, intervally,
+                message);
+    }
+}
@@ -0,0 +1,19 @@
+package com.securechat.config;
+
+/**
+ * Where rate limit buckets live: RateLimitBucketStore (this node) or RedisRateLimitStore
+ * (shared by every API instance, app.rate-limit.store=redis).
+ */
+public interface RateLimitStore {
+
+    /** Takes one token from the policy's bucket for {@code key}. */
+    Decision tryConsume(RateLimitPolicy policy, String key);
+
+    /**
+     * @param allowed          a token was available
+     * @param remaining        tokens left after this request
+     * @param nanosUntilRefill when denied, how long until the next token (Retry-After)
+     */
+    record Decision(boolean allowed, long remaining, long nanosUntilRefill) {
+    }
+}
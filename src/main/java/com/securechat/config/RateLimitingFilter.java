@@ -1,96 +1,118 @@
 package com.securechat.config;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import com.securechat.config.RateLimitPolicies.Match;
+import com.securechat.config.RateLimitStore.Decision;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap; 
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 /**
- * I used here the rate limiting filter for authentication endpoints
+ * Rate limiting for the routes in RateLimitPolicies (login per IP, message sends per user and
+ * per room, uploads and polls per user).
  * Implements FE-AUTH-007: Max 5 login attempts per minute per IP
+ * Rejected requests get 429 with Retry-After (seconds until the next token).
  * Rate limiting is disabled in test profile to prevent interference with automated tests
  */
 @Component
 public class RateLimitingFilter implements Filter {
 
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>(); // IP into Bucket cache
     private final Environment environment; // Spring environment for profile detection
+    private final RateLimitPolicies policies; // Which requests are limited, per what
+    private final RateLimitStore store; // Buckets: this node, or Redis when app.rate-limit.store=redis
 
-    public RateLimitingFilter(Environment environment) {
+    // Web slice tests create filter beans without the rest of the context; they get the defaults
+    @Autowired
+    public RateLimitingFilter(Environment environment, ObjectProvider<RateLimitPolicies> policies,
+                              ObjectProvider<RateLimitStore> store) {
+        this(environment, policies.getIfAvailable(() -> new RateLimitPolicies(environment)),
+                store.getIfAvailable(RateLimitBucketStore::new));
+    }
+
+    RateLimitingFilter(Environment environment, RateLimitPolicies policies, RateLimitStore store) {
         this.environment = environment;
+        this.policies = policies;
+        this.store = store;
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
-        
+
         // Skip rate limiting in test profile to prevent interference with automated tests
         if (isTestProfile()) {
             chain.doFilter(request, response); // Bypass rate limiting during tests
             return;
         }
-        
+
         HttpServletRequest httpRequest = (HttpServletRequest) request; // Cast to HTTP request
-        HttpServletResponse httpResponse = (HttpServletResponse) response; 
-        
-        String path = httpRequest.getRequestURI(); // Get request path
-        
-        // Only apply rate limiting to login endpoints
-        if (path.contains("/api/auth/login")) { // Check if request is for login endpoint
-            String clientIp = getClientIP(httpRequest); // Extract client IP address
-            Bucket bucket = resolveBucket(clientIp); 
-            
-            if (bucket.tryConsume(1)) { 
-                chain.doFilter(request, response); 
-            } else {
-                httpResponse.setStatus(429); // Too Many Requests - HTTP 429
-                httpResponse.setContentType("application/json"); // Set JSON response type
-                httpResponse.getWriter().write(
-                    "{\"error\": \"Too many login attempts. Please try again later.\"}" // Error message
-                );
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        List<Match> matches = policies.match(httpRequest); // Usually none: most routes are unlimited
+        for (Match match : matches) {
+            String key = resolveKey(match, httpRequest);
+            Decision decision = store.tryConsume(match.policy(), key);
+            if (!decision.allowed()) {
+                reject(httpResponse, match.policy(), decision);
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletResponse response, RateLimitPolicy policy, Decision decision) throws IOException {
+        long retryAfterSeconds = Math.max(1, (decision.nanosUntilRefill() + TimeUnit.SECONDS.toNanos(1) - 1)
+                / TimeUnit.SECONDS.toNanos(1)); // Round up, never 0
+        response.setStatus(429); // Too Many Requests - HTTP 429
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType("application/json"); // Set JSON response type
+        response.getWriter().write("{\"error\": \"" + policy.message() + "\"}");
+    }
+
+    // Bucket key for the policy: user ID (JWT subject, as AuthUtil.getCurrentUserId), client IP or room
+    private String resolveKey(Match match, HttpServletRequest request) {
+        switch (match.policy().key()) {
+            case USER -> {
+                Principal principal = request.getUserPrincipal(); // Set by Spring Security, which runs first
+                if (principal != null && principal.getName() != null) {
+                    return "user:" + principal.getName();
+                }
+                return "ip:" + getClientIP(request); // Anonymous: limit by address instead
+            }
+            case ROOM -> {
+                return "room:" + match.pathVariables().get("chatRoomId");
+            }
+            default -> {
+                return getClientIP(request);
             }
-        } else {
-            chain.doFilter(request, response); // Non-login endpoints bypass rate limiting
         }
     }
-    
+
     /**
      * Check if running in test profile
      */
     private boolean isTestProfile() {
         String[] activeProfiles = environment.getActiveProfiles(); // Get active Spring profiles
         for (String profile : activeProfiles) {
-            if ("test".equals(profile)) { 
+            if ("test".equals(profile)) {
                 return true; // Rate limiting disabled in test profile
             }
         }
         return false; // Rate limiting enabled for non-test profiles
     }
 
-    private Bucket resolveBucket(String key) {
-        return cache.computeIfAbsent(key, k -> createNewBucket()); // Create bucket if missing
-    }
-
-    private Bucket createNewBucket() {
-        // 5 requests per minute - Bucket4j configuration
-        Bandwidth limit = Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(1))); // 5 tokens refilled every minute
-        return Bucket.builder()
-                .addLimit(limit) 
-                .build();
-    }
-
     private String getClientIP(HttpServletRequest request) {
         String xfHeader = request.getHeader("X-Forwarded-For"); // Check for proxy header
         if (xfHeader == null) {
             return request.getRemoteAddr(); // Use direct client IP if no proxy
         }
-        return xfHeader.split(",")[0]; 
+        return xfHeader.split(",")[0];
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package com.securechat.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit buckets shared by every API instance (enable with app.rate-limit.store=redis),
+ * so a user cannot multiply a limit by spreading requests over nodes.
+ *
+ * - One hash per bucket, securechat:ratelimit:{policy}:{key} with the token count and the last
+ *   refill time; a Lua script refills and consumes atomically using the Redis clock, so node
+ *   clocks do not matter.
+ * - Tokens are refilled continuously (greedy) for every policy; an interval-refill policy such as
+ *   login allows the same number of requests per period but may spread them differently.
+ * - Idle buckets expire once they would be full again.
+ * - If Redis is unavailable requests are let through (logged) rather than failing the API.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "redis")
+@Slf4j
+public class RedisRateLimitStore implements RateLimitStore {
+
+    static final String KEY_PREFIX = "securechat:ratelimit:";
+
+    // KEYS[1] bucket; ARGV burst, refill tokens, refill period ms. Returns {allowed, remaining, wait ms}
+    private static final RedisScript<List> TRY_CONSUME = new DefaultRedisScript<>("""
+            local burst = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2]) / tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'at')
+            local tokens = tonumber(state[1]) or burst
+            local at = tonumber(state[2]) or now
+            tokens = math.min(burst, tokens + math.max(0, now - at) * rate)
+            local allowed = 0
+            local wait = 0
+            if tokens >= 1 then
+              tokens = tokens - 1
+              allowed = 1
+            else
+              wait = math.ceil((1 - tokens) / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'at', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(burst / rate) + 1000)
+            return {allowed, math.floor(tokens), wait}
+            """, List.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisRateLimitStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Decision tryConsume(RateLimitPolicy policy, String key) {
+        try {
+            List<Long> result = redisTemplate.execute(TRY_CONSUME, List.of(KEY_PREFIX + policy.name() + ":" + key),
+                    String.valueOf(policy.burst()),
+                    String.valueOf(policy.refillTokens()),
+                    String.valueOf(policy.refillPeriod().toMillis()));
+            return new Decision(result.get(0) == 1L, result.get(1), TimeUnit.MILLISECONDS.toNanos(result.get(2)));
+        } catch (DataAccessException e) {
+            log.warn("Rate limit check in Redis failed, allowing request: {}", e.getMessage());
+            return new Decision(true, policy.burst(), 0);
+        }
+    }
+}
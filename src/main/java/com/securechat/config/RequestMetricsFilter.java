@@ -0,0 +1,166 @@
+package com.securechat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Status and latency of every /api/ request, without touching the body.
+ *
+ * The response is passed down the chain as is, so downloads and SSE streams flush straight to
+ * the client; the status is read from the response once the handler is done (for async requests
+ * such as /stream and long polls, when the async request completes).
+ *
+ * Timer securechat.http.requests{method, uri, status}: uri is the route template
+ * (/api/chatrooms/{chatRoomId}/messages), never the raw path, so room and file IDs don't
+ * multiply the series.
+ *
+ * Logging is sampled: one request in app.http.log.sample-every at INFO, plus every 5xx and every
+ * request slower than app.http.log.slow-threshold-ms at WARN.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE) // Ahead of Spring Security (-100): 401/403s and auth/rate-limit time are counted
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    static final String METRIC = "securechat.http.requests";
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestMetricsFilter.class);
+
+    private final MeterRegistry meterRegistry;
+    private final long sampleEvery;
+    private final long slowThresholdNanos;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    // Web slice tests create filter beans without the rest of the context; they get a local registry
+    @Autowired
+    public RequestMetricsFilter(ObjectProvider<MeterRegistry> meterRegistry,
+                                @Value("${app.http.log.sample-every:100}") long sampleEvery,
+                                @Value("${app.http.log.slow-threshold-ms:1000}") long slowThresholdMs) {
+        this(meterRegistry.getIfAvailable(SimpleMeterRegistry::new), sampleEvery, slowThresholdMs);
+    }
+
+    RequestMetricsFilter(MeterRegistry meterRegistry, long sampleEvery, long slowThresholdMs) {
+        this.meterRegistry = meterRegistry;
+        this.sampleEvery = sampleEvery;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/"); // Only API endpoints
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                // Status and duration are only known once the stream or poll ends
+                request.getAsyncContext().addListener(new CompletionListener(request, response, start));
+            } else {
+                record(request, response, start, failed, false);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start, boolean failed,
+                        boolean async) {
+        long duration = System.nanoTime() - start;
+        int status = response.getStatus();
+        if (failed && status < 400) {
+            status = 500; // The exception propagates to the container, which answers 500
+        }
+
+        Timer.builder(METRIC)
+                .description("API requests by route template and status")
+                .tag("method", request.getMethod())
+                .tag("uri", routeTemplate(request, status))
+                .tag("status", String.valueOf(status))
+                .register(meterRegistry)
+                .record(duration, TimeUnit.NANOSECONDS);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(duration);
+        if (status >= 500) {
+            LOG.warn("{} {} -> HTTP {} ({}ms)", request.getMethod(), request.getRequestURI(), status, durationMs);
+        } else if (!async && duration >= slowThresholdNanos) { // Streams and long polls are long by design
+            LOG.warn("Slow request {} {} -> HTTP {} ({}ms)", request.getMethod(), request.getRequestURI(), status,
+                    durationMs);
+        } else if (sampleEvery > 0 && requestCount.incrementAndGet() % sampleEvery == 0) {
+            LOG.info("{} {} -> HTTP {} ({}ms)", request.getMethod(), request.getRequestURI(), status, durationMs);
+        }
+    }
+
+    // Pattern of the handler that served the request; requests that never reached one are grouped
+    private static String routeTemplate(HttpServletRequest request, int status) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            return pattern.toString();
+        }
+        if (status == 404) {
+            return "NOT_FOUND";
+        }
+        if (status >= 300 && status < 400) {
+            return "REDIRECTION";
+        }
+        return "UNKNOWN"; // E.g. rejected by Spring Security before dispatch
+    }
+
+    // Keeps the request and response: the event's supplied ones are null for addListener(listener)
+    private final class CompletionListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start;
+
+        CompletionListener(HttpServletRequest request, HttpServletResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, start, false, true);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this); // Listeners are cleared when async is restarted
+        }
+    }
+}
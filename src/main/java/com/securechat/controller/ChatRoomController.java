@@ -296,8 +296,8 @@ public class ChatRoomController {
 
         logger.debug("Fetching messages for chat room: {}, page: {}, size: {}", id, page, size);
         MessageService.PaginationRequest paginationRequest = new MessageService.PaginationRequest(page, size);
-        List<MessageDTO> messages = messageService.getMessages(id, paginationRequest).stream()
-                .map(MessageDtoMapper::toDto)
+        List<MessageDTO> messages = messageService.getMessageDtosPaginated(id, paginationRequest).stream()
+                .map(message -> MessageDtoMapper.toDto(message, id))
                 .toList();
         return ResponseEntity.ok(messages);
     }
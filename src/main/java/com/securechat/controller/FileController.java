@@ -1,13 +1,20 @@
 package com.securechat.controller;
 
 import com.securechat.dto.FileUploadResponse;
+import com.securechat.dto.RoomFilesPage;
+import com.securechat.service.FileDownload;
 import com.securechat.service.FileService;
 import com.securechat.util.AuthUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
@@ -24,6 +31,8 @@ import java.util.UUID;
 @RequiredArgsConstructor // Lombok generates constructor with final fields
 public class FileController {
 
+    static final String THUMBNAIL_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
     private final FileService fileService;
     private final AuthUtil authUtil; // Centralized authentication utility
 
@@ -34,7 +43,7 @@ public class FileController {
      * @param principal Current user (injected by Spring Security)
      * @return File metadata and download URL
      */
-    @PostMapping("/upload")
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<FileUploadResponse> uploadFile(
             @RequestParam("file") MultipartFile file, // Multipart file from request
             org.springframework.security.core.Authentication authentication) {
@@ -51,46 +60,113 @@ public class FileController {
     }
 
     /**
-     * Poll for new files in a chat room since a given timestamp.
+     * Upload with the file as the request body (Content-Type = the file's type, name in ?filename=).
+     * Unlike multipart, the body is not spooled first: it is checked, hashed and stored as it arrives,
+     * and an upload announcing more than the limit in Content-Length is refused before it is read.
+     */
+    @PostMapping(value = "/upload", consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileUploadResponse> uploadFileStream(
+            @RequestParam("filename") String filename, // Original filename
+            HttpServletRequest request,
+            org.springframework.security.core.Authentication authentication) throws IOException {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+
+        FileUploadResponse response = fileService.uploadStream(request.getInputStream(),
+                request.getContentLengthLong(), filename, request.getContentType(), userId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response); // 201 Created with file metadata
+    }
+
+    /**
+     * Share an uploaded file to a chat room. Members streaming or long-polling the room get a
+     * "new-file" event with the file's metadata.
+     */
+    @PostMapping("/{fileId}/share")
+    public ResponseEntity<FileUploadResponse> shareFile(
+            @PathVariable UUID fileId,
+            @RequestParam("chatRoomId") UUID chatRoomId, // Room to post the file to
+            org.springframework.security.core.Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        UUID userId = authUtil.getCurrentUserId(authentication);
+        return ResponseEntity.ok(fileService.shareToRoom(fileId, chatRoomId, userId));
+    }
+
+    /**
+     * Poll for files shared to a chat room.
+     * First poll with ?since= (ISO timestamp), then with ?after= the cursor of the previous response.
+     * Clients on the room's stream or long-poll only need to poll after a "new-file" event.
      *
      * @param chatRoomId     The chat room ID
-     * @param sinceTimestamp
-     * @return List of new files since the timestamp
+     * @param sinceTimestamp Files shared after this time (when there is no cursor yet)
+     * @param cursor         Cursor of the previous poll
+     * @return New files, oldest first, and the cursor for the next poll
      */
     @GetMapping("/poll")
     public ResponseEntity<?> pollNewFiles(
             @RequestParam("chatRoomId") String chatRoomId, // Chat room identifier
-            @RequestParam("since") String sinceTimestamp) {
+            @RequestParam(value = "since", required = false) String sinceTimestamp,
+            @RequestParam(value = "after", required = false) String cursor,
+            org.springframework.security.core.Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
 
-        // Validate sinceTimestamp format
-        try {
-            LocalDateTime.parse(sinceTimestamp); // Parse to validate ISO format
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid timestamp format"); // 400 if invalid
+        if (cursor == null || cursor.isBlank()) {
+            // Validate sinceTimestamp format
+            try {
+                LocalDateTime.parse(sinceTimestamp); // Parse to validate ISO format
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid timestamp format"); // 400 if invalid
+            }
         }
 
-        var newFiles = fileService.getFilesSince(chatRoomId, sinceTimestamp); // Get files uploaded after timestamp
-        var response = newFiles.stream() // Convert entities to response DTOs
-                .map(file -> FileUploadResponse.builder()
-                        .id(file.getId())
-                        .filename(file.getFilename()) // Original filename
-                        .downloadUrl("/api/files/download/" + file.getId()) // Download endpoint URL
-                        .size(file.getFileSize())
-                        .uploadedAt(file.getUploadedAt()) // Upload timestamp
-                        .build())
-                .toList(); // Collect to list
-        return ResponseEntity.ok(response);
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+        RoomFilesPage page = fileService.getFilesSince(chatRoomId, userId, sinceTimestamp, cursor);
+        return ResponseEntity.ok(page);
     }
 
+    /**
+     * Download a file; supports Range (resume, media seeking) and conditional GETs (ETag = content hash).
+     * See FileRangeWriter.
+     */
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<org.springframework.core.io.Resource> downloadFile(
-            @PathVariable UUID fileId) { // File ID from URL path
+    public void downloadFile(
+            @PathVariable UUID fileId, // File ID from URL path
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        org.springframework.core.io.Resource resource = fileService.downloadFile(fileId); // Get file as Resource
+        FileDownload download = fileService.openDownload(fileId); // Stored file and its validators
+        FileRangeWriter.write(download, request, response);
+    }
 
-        return ResponseEntity.ok() // 200 OK response
-                .header(org.springframework.http.HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + resource.getFilename() + "\"") // Force download
-                .body(resource); // File content as response body
+    /**
+     * A thumbnail of an image upload, ?size= 128, 320 or 640 (longest side). Thumbnails never change
+     * once made, so they are cached for a year; 404 while one is still being generated, and for
+     * files the caller can't see (only the uploader and members of rooms it was shared to can).
+     */
+    @GetMapping("/{fileId}/thumbnail")
+    public void downloadThumbnail(
+            @PathVariable UUID fileId,
+            @RequestParam(value = "size", defaultValue = "320") int size,
+            org.springframework.security.core.Authentication authentication,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        if (authentication == null || authentication.getName() == null) {
+            response.sendError(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        UUID userId = authUtil.getCurrentUserId(authentication);
+        FileDownload thumbnail = fileService.openThumbnail(fileId, size, userId);
+        FileRangeWriter.write(thumbnail, THUMBNAIL_CACHE_CONTROL, true, request, response);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+package com.securechat.controller;
+
+import com.securechat.service.FileDownload;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a stored file to the response with HTTP validators and byte ranges.
+ *
+ * - ETag (content hash, weak until a legacy file is hashed) and Last-Modified; If-None-Match /
+ *   If-Modified-Since answer 304
+ * - Range: one range is a 206 with Content-Range, several a multipart/byteranges 206;
+ *   If-Range that no longer matches falls back to the whole file, unsatisfiable ranges get 416
+ * - only Tomcat's sendfile path (plain HTTP, one range or the whole file) is zero-copy: the
+ *   connector hands the file region to the kernel after the handler returns. Otherwise (TLS,
+ *   other containers, multipart) FileChannel.transferTo into the servlet output stream copies
+ *   the file through a small buffer, so memory stays bounded but every byte passes the heap
+ */
+final class FileRangeWriter {
+
+    // Tomcat's sendfile request attributes (see org.apache.catalina.Globals)
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String HEAD = "HEAD";
+
+    static final long SENDFILE_MIN_SIZE = 48 * 1024; // Smaller bodies are cheaper to write directly (Tomcat's default)
+
+    private FileRangeWriter() {
+    }
+
+    static void write(FileDownload file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        write(file, "private, no-cache", false, request, response); // Revalidate: access may be revoked
+    }
+
+    /**
+     * @param cacheControl Cache-Control of the response
+     * @param inline       Content-Disposition inline (for content the server generated itself,
+     *                     like thumbnails) instead of a forced download
+     */
+    static void write(FileDownload file, String cacheControl, boolean inline, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        long lastModified = file.lastModified().toEpochMilli();
+        if (new ServletWebRequest(request, response).checkNotModified(file.eTag(), lastModified)) {
+            return; // 304 (or 412 for a failed If-Match), validators already set
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        ContentDisposition.Builder disposition = inline ? ContentDisposition.inline() : ContentDisposition.attachment();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                disposition.filename(file.filename()).build().toString());
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, file, lastModified)) {
+            response.setContentType(file.mimeType());
+            response.setContentLengthLong(file.size());
+            sendRegion(file, 0, file.size(), request, response);
+            return;
+        }
+
+        List<long[]> ranges = satisfiableRanges(rangeHeader, file.size());
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size());
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            response.setContentType(file.mimeType());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, file.size()));
+            response.setContentLengthLong(end - start + 1);
+            sendRegion(file, start, end - start + 1, request, response);
+        } else {
+            sendMultipart(file, ranges, request, response);
+        }
+    }
+
+    // Start and end (inclusive) of each satisfiable range; empty when none is, or when the ranges
+    // add up to more than the file (overlapping ranges used to amplify a small request)
+    static List<long[]> satisfiableRanges(String rangeHeader, long size) {
+        List<HttpRange> requested;
+        try {
+            requested = HttpRange.parseRanges(rangeHeader); // At most 100 ranges
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+        List<long[]> ranges = new ArrayList<>(requested.size());
+        long total = 0;
+        for (HttpRange range : requested) {
+            try {
+                long start = range.getRangeStart(size);
+                long end = range.getRangeEnd(size); // Clamped to size - 1
+                if (start >= size || start > end) {
+                    continue; // Starts past the end of the file: skip, the others may still be satisfiable
+                }
+                ranges.add(new long[]{start, end});
+                total += end - start + 1;
+            } catch (IllegalArgumentException e) {
+                // Malformed for this size (e.g. an empty suffix): skip like the above
+            }
+        }
+        return total > size ? List.of() : ranges;
+    }
+
+    // If-Range: serve the range only if the client's copy is still the current one
+    private static boolean ifRangeMatches(HttpServletRequest request, FileDownload file, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.eTag()); // Strong comparison, weak tags never match
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void sendRegion(FileDownload file, long start, long length, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        if (HEAD.equals(request.getMethod()) || length == 0) {
+            return;
+        }
+        if (length >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length); // Exclusive
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            transfer(channel, start, length, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private static void sendMultipart(FileDownload file, List<long[]> ranges, HttpServletRequest request,
+                                      HttpServletResponse response) throws IOException {
+        String boundary = new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        long contentLength = closing.length;
+        for (long[] range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + file.mimeType() + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range[0], range[1], file.size()) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + range[1] - range[0] + 1;
+        }
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (HEAD.equals(request.getMethod())) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                long[] range = ranges.get(i);
+                transfer(channel, range[0], range[1] - range[0] + 1, target);
+            }
+        }
+        out.write(closing);
+    }
+
+    // FileChannel.transferTo may move fewer bytes than asked (e.g. 2 GB per call on Linux)
+    static void transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        while (count > 0) {
+            long sent = channel.transferTo(position, count, target);
+            if (sent <= 0 && position >= channel.size()) {
+                throw new EOFException("File shorter than its recorded size");
+            }
+            position += sent;
+            count -= sent;
+        }
+    }
+
+    private static String contentRange(long start, long end, long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+}
@@ -1,6 +1,7 @@
 package com.securechat.controller;
 
 import com.securechat.dto.MessageDTO;
+import com.securechat.dto.MessageHistoryPage;
 import com.securechat.entity.Message;
 import com.securechat.mapper.MessageDtoMapper;
 import com.securechat.service.MessageService;
@@ -27,6 +28,7 @@ import java.util.stream.Collectors;
 public class MessageController {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageController.class); // Logger instance
+    private static final long MAX_LONG_POLL_SECONDS = 55; // Upper bound for a long-poll wait
 
     private final MessageService messageService;
     private final MessageStreamService messageStreamService; // Real-time streaming service
@@ -67,38 +69,16 @@ public class MessageController {
             logger.debug("User {} sending message to chatroom {}", userUuid, roomUuid);
 
             // PASS UUIDs, NOT STRINGS
-            Message createdMessage = messageService.createMessage( // Create message in database
-                    roomUuid, userUuid, request.getContent().trim());
-
-            // i have Used DTO projection to avoid LazyInitializationException
-            com.securechat.dto.MessageListDto listDto = messageService.getMessageDtoById(createdMessage.getId()) // Fetch
-                                                                                                                 // DTO
-                                                                                                                 // projection
-                    .orElseGet(() -> new com.securechat.dto.MessageListDto(
-                            createdMessage.getId(),
-                            createdMessage.getContent(), // Message content
-                            createdMessage.getUsername(),
-                            createdMessage.getSender() != null ? createdMessage.getSender().getId() : null, // Sender ID
-                            createdMessage.getTimestamp(), // Message timestamp
-                            createdMessage.getMessageType() != null ? createdMessage.getMessageType().name() : null // Message
-                                                                                                                    // type
-                    ));
-
-            // Map MessageListDto back to MessageDTO
-            MessageDTO messageDto = new MessageDTO(); // Create response DTO
-            messageDto.setId(listDto.id());
-            messageDto.setContent(listDto.content());
-            // messageType in DTO expects string; set directly from DTO
-            messageDto.setMessageType(listDto.messageType());
-            messageDto.setTimestamp(listDto.timestamp()); // Set timestamp
-            messageDto.setUserId(listDto.senderId());
-            messageDto.setUsername(listDto.senderName()); // Set username
-            messageDto.setChatRoomId(roomUuid); // Use known roomUuid
-            messageDto.setIsDeleted(false);
-            messageDto.setIsEdited(false);
+            Message createdMessage = messageService.isGroupCommitEnabled() // Either way: returns after commit
+                    ? messageService.createMessageGroupCommitted(roomUuid, userUuid, request.getContent().trim())
+                    : messageService.createMessage(roomUuid, userUuid, request.getContent().trim());
+
+            // Build the response from the persisted values - re-reading the row would be a second JOIN query.
+            // Sender and room are uninitialized references, but their ids are available without loading them.
+            MessageDTO messageDto = MessageDtoMapper.toDto(createdMessage);
 
             // Broadcast via SSE
-            messageStreamService.publish(roomUuid, "new-message", messageDto); // Publish to SSE stream
+            messageStreamService.publish(roomUuid, MessageService.NEW_MESSAGE_EVENT, messageDto); // Publish to SSE stream
 
             logger.debug("Message sent successfully by user {} to chatroom {}", userUuid, roomUuid); // Success log
             return ResponseEntity.status(HttpStatus.CREATED).body(messageDto); // 201 Created with message DTO
@@ -139,14 +119,39 @@ public class MessageController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // 403 Forbidden
         }
 
-        var pageResult = messageService.getMessagesPaginated(UUID.fromString(chatRoomId), // Get paginated messages
+        UUID roomId = UUID.fromString(chatRoomId);
+        var pageResult = messageService.getMessageDtosPaginated(roomId, // Page 0 comes from the room tail cache
                 new MessageService.PaginationRequest(page, size)); // Pagination parameters
 
-        var dtoPage = pageResult.map(MessageDtoMapper::toDto); // Map entities to DTOs
+        var dtoPage = pageResult.map(message -> MessageDtoMapper.toDto(message, roomId)); // Map projections to DTOs
 
         return ResponseEntity.ok(dtoPage);
     }
 
+    /**
+     * Scroll back through a room's history with a continuation token (keyset pagination).
+     * Unlike /messages, deep pages are as cheap as the first one and no total count is computed.
+     */
+    @GetMapping("/{chatRoomId}/messages/history")
+    public ResponseEntity<MessageHistoryPage> getMessageHistory(
+            @PathVariable String chatRoomId,
+            @RequestParam(value = "cursor", required = false) String cursor, // nextCursor of the previous slice
+            @RequestParam(defaultValue = "20") Integer size, // Slice size (default 20, max 100)
+            org.springframework.security.core.Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            throw new com.securechat.exception.UnauthorizedException("Unauthorized");
+        }
+
+        UUID userId = authUtil.getCurrentUserId(authentication);
+
+        if (!messageService.isChatRoomMember(chatRoomId, userId.toString())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // 403 Forbidden
+        }
+
+        return ResponseEntity.ok(messageService.getMessageHistory(UUID.fromString(chatRoomId), cursor, size));
+    }
+
     /**
      * Poll for new messages since a given timestamp.
      */
@@ -180,13 +185,44 @@ public class MessageController {
         return ResponseEntity.ok(dtos);
     }
 
+    /**
+     * Long-poll for new messages: the request waits (without holding a thread) until a
+     * message is posted to the room or the timeout passes, then the client polls again
+     * with the returned cursor. Replaces fixed-interval polling of /messages/poll.
+     */
+    @GetMapping("/{chatRoomId}/messages/long-poll")
+    public Object longPollMessages(
+            @PathVariable String chatRoomId,
+            @RequestParam(value = "after", required = false) Long after, // Cursor from the previous response
+            @RequestParam(value = "timeout", defaultValue = "25") long timeoutSeconds, // Max wait
+            org.springframework.security.core.Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            throw new com.securechat.exception.UnauthorizedException("Unauthorized");
+        }
+
+        UUID userId = authUtil.getCurrentUserId(authentication);
+
+        if (!messageService.isChatRoomMember(chatRoomId, userId.toString())) { // Check membership
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // 403 Forbidden
+        }
+
+        long waitSeconds = Math.max(1, Math.min(timeoutSeconds, MAX_LONG_POLL_SECONDS)); // Stay below proxy timeouts
+        return messageService.longPollMessages(chatRoomId, after, waitSeconds * 1000);
+    }
+
     /**
      * Here I have created "Real-time message streaming". I have used here the
      * "Server-Sent Events (SSE)"
+     * On reconnect the browser sends Last-Event-ID, so only missed events are replayed.
+     * A client too far behind gets a "reset" event and only the newest missed messages; it
+     * reloads older ones from /messages/history.
      */
     @GetMapping(value = "/{chatRoomId}/stream", produces = "text/event-stream") // SSE content type
-    public Object streamMessages(@PathVariable String chatRoomId) {
-        return messageService.getStreamForChatRoom(chatRoomId);
+    public Object streamMessages(
+            @PathVariable String chatRoomId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) { // Set by EventSource on reconnect
+        return messageService.getStreamForChatRoom(chatRoomId, lastEventId);
     }
 
     // Request DTO for sending messages
@@ -0,0 +1,35 @@
+package com.securechat.controller;
+
+import com.securechat.service.MessageService;
+import com.securechat.util.AuthUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+/**
+ * Controller for the per-user event stream.
+ */
+@RestController
+@RequestMapping("/api/stream")
+@RequiredArgsConstructor // Lombok generates constructor with final fields
+public class StreamController {
+
+    private final MessageService messageService;
+    private final AuthUtil authUtil; // Centralized authentication utility
+
+    /**
+     * One SSE connection for all of the current user's rooms (instead of one per room).
+     * Events keep their name ("new-message", ...) and carry {"roomId": ..., "data": ...}.
+     */
+    @GetMapping(produces = "text/event-stream") // SSE content type
+    public Object streamAllRooms(org.springframework.security.core.Authentication authentication) {
+        if (authentication == null || authentication.getName() == null) {
+            throw new com.securechat.exception.UnauthorizedException("Unauthorized");
+        }
+        UUID userId = authUtil.getCurrentUserId(authentication);
+        return messageService.getStreamForUser(userId);
+    }
+}
@@ -0,0 +1,103 @@
+package com.securechat.controller;
+
+import com.securechat.dto.FileUploadResponse;
+import com.securechat.dto.UploadSessionRequest;
+import com.securechat.dto.UploadSessionResponse;
+import com.securechat.service.ChunkedUploadService;
+import com.securechat.util.AuthUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Resumable, chunked uploads for large files and unreliable connections.
+ *
+ * Sequence:
+ * POST /uploads (name, type, size, optional sha256) ==> PUT /uploads/{id}/chunks?offset= (any order, in parallel)
+ * ==> POST /uploads/{id}/commit ==> same response as /api/files/upload
+ * After a dropped connection, GET /uploads/{id} lists the ranges still missing.
+ */
+@RestController
+@RequestMapping("/api/files/uploads")
+@RequiredArgsConstructor
+public class UploadSessionController {
+
+    static final String CHUNK_CHECKSUM_HEADER = "X-Chunk-SHA256";
+
+    private final ChunkedUploadService chunkedUploadService;
+    private final AuthUtil authUtil;
+
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(
+            @RequestBody UploadSessionRequest request,
+            Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+        return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.create(request, userId));
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getSession(
+            @PathVariable UUID sessionId,
+            Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+        return ResponseEntity.ok(chunkedUploadService.getStatus(sessionId, userId));
+    }
+
+    /**
+     * One chunk as the raw request body (Content-Length required), written at ?offset= as it
+     * arrives. X-Chunk-SHA256 is the chunk's hex SHA-256; a mismatch is a 400 and the chunk is resent.
+     */
+    @PutMapping("/{sessionId}/chunks")
+    public ResponseEntity<UploadSessionResponse> putChunk(
+            @PathVariable UUID sessionId,
+            @RequestParam("offset") long offset,
+            @RequestHeader(value = CHUNK_CHECKSUM_HEADER, required = false) String checksum,
+            HttpServletRequest request,
+            Authentication authentication) throws IOException {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+        return ResponseEntity.ok(chunkedUploadService.writeChunk(sessionId, userId, offset,
+                request.getContentLengthLong(), checksum, request.getInputStream()));
+    }
+
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<FileUploadResponse> commit(
+            @PathVariable UUID sessionId,
+            Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String userId = authUtil.getCurrentUserId(authentication).toString();
+        return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.commit(sessionId, userId));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abort(
+            @PathVariable UUID sessionId,
+            Authentication authentication) {
+
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        chunkedUploadService.abort(sessionId, authUtil.getCurrentUserId(authentication).toString());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,22 @@
+package com.securechat.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.util.List;
+
+/**
+ * Result of a long-poll request.
+ * cursor is passed back as "after" on the next poll; events is empty when the wait timed out.
+ */
+public record LongPollResponse(
+        long cursor,
+        List<Event> events) {
+
+    /**
+     * One room event; data is the already serialized JSON payload (written as-is).
+     */
+    public record Event(
+            String event,
+            @JsonRawValue String data) {
+    }
+}
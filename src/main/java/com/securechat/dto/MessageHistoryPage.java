@@ -0,0 +1,12 @@
+package com.securechat.dto;
+
+import java.util.List;
+
+/**
+ * One slice of a room's message history (newest first).
+ * nextCursor is an opaque token for the following (older) slice, null on the last one.
+ */
+public record MessageHistoryPage(
+        List<MessageListDto> messages,
+        String nextCursor) {
+}
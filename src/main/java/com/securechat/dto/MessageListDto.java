@@ -13,5 +13,13 @@ public record MessageListDto(
         String senderName,
         UUID senderId,
         LocalDateTime timestamp,
-        String messageType) {
+        String messageType,
+        Boolean isEdited,
+        LocalDateTime editedAt) {
+
+    // A message that has not been edited (e.g. one that was just sent)
+    public MessageListDto(UUID id, String content, String senderName, UUID senderId,
+                          LocalDateTime timestamp, String messageType) {
+        this(id, content, senderName, senderId, timestamp, messageType, false, null);
+    }
 }
@@ -0,0 +1,14 @@
+package com.securechat.dto;
+
+import java.util.List;
+
+/**
+ * Files shared to a room since the previous poll (oldest first).
+ * cursor is an opaque token for the next poll and is always set; hasMore means the page was
+ * full and the client should poll again right away.
+ */
+public record RoomFilesPage(
+        List<FileUploadResponse> files,
+        String cursor,
+        boolean hasMore) {
+}
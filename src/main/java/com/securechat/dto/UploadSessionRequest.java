@@ -0,0 +1,12 @@
+package com.securechat.dto;
+
+import lombok.Data;
+
+/** Starts a chunked upload: what the file will be once every chunk has arrived. */
+@Data
+public class UploadSessionRequest {
+    private String filename;  // Original name of the file
+    private String mimeType;  // Declared type, checked against the content on commit
+    private long size;        // Exact total size in bytes
+    private String sha256;    // Optional hex SHA-256 of the whole file, checked on commit
+}
@@ -0,0 +1,27 @@
+package com.securechat.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * State of a chunked upload. A client resuming after a dropped connection re-sends
+ * only the ranges listed in missing.
+ */
+@Data
+@Builder
+public class UploadSessionResponse {
+    private UUID sessionId;
+    private String filename;
+    private long size;
+    private long receivedBytes;    // Bytes received with a matching checksum
+    private List<Chunk> missing;   // Ranges still to send, in offset order
+    private long maxChunkSize;     // Largest chunk the server accepts
+    private Instant expiresAt;     // Dropped if no chunk arrives before then
+
+    public record Chunk(long offset, long length) {
+    }
+}
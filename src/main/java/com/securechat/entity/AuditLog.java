@@ -9,7 +9,7 @@ import java.util.UUID;
 public class AuditLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedUuid  // Append-only table: time-ordered keys keep PK inserts on the last index page
     private UUID id;  // Unique identifier for each audit log entry
 
     @Column(name = "event_type", nullable = false)
@@ -16,7 +16,7 @@ import java.util.UUID;
 public class ChatRoomMember {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)  // Auto-generates UUID as primary key
+    @TimeOrderedUuid  // Auto-generates a time-ordered UUIDv7 as primary key
     private UUID id;
 
     // Foreign key column - read-only (managed by JPA relationship)
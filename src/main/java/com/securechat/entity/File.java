@@ -30,6 +30,9 @@ public class File {
   @Column(name = "mime_type", nullable = false)
   private String mimeType; // Content type (e.g., image/jpeg, application/pdf)
 
+  @Column(name = "content_hash", length = 64)
+  private String contentHash; // SHA-256 of the content (hex); strong ETag of downloads
+
   @Column(name = "uploaded_at", nullable = false)
   private LocalDateTime uploadedAt; // Timestamp when file was uploaded
 
@@ -74,6 +77,10 @@ public class File {
   public String getMimeType() { return mimeType; }
   public void setMimeType(@Nullable String mimeType) { this.mimeType = mimeType; }
 
+  @Nullable
+  public String getContentHash() { return contentHash; }
+  public void setContentHash(@Nullable String contentHash) { this.contentHash = contentHash; }
+
   @Nonnull
   public LocalDateTime getUploadedAt() { return uploadedAt; }
   public void setUploadedAt(@Nullable LocalDateTime uploadedAt) { this.uploadedAt = uploadedAt; }
@@ -22,7 +22,7 @@ import java.util.UUID;
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedUuid  // UUIDv7: inserts append to the end of the primary key index
     private UUID id; // Primary key - unique identifier for each message
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,58 @@
+package com.securechat.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A file shared to a chat room: the room's file timeline.
+ * Polled with a keyset scan of idx_room_files_room_shared, newest rows last.
+ */
+@Entity
+@Table(name = "room_files", indexes = {
+    @Index(name = "idx_room_files_room_shared", columnList = "chat_room_id, shared_at, id") // Keyset poll per room
+}, uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"chat_room_id", "file_id"})  // A file appears once per room
+})
+public class RoomFile {
+
+  @Id
+  @TimeOrderedUuid  // UUIDv7: breaks ties between rows shared in the same instant, in insert order
+  private UUID id;
+
+  @Column(name = "chat_room_id", nullable = false)
+  private UUID chatRoomId;
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "file_id", nullable = false)
+  @com.fasterxml.jackson.annotation.JsonIgnore
+  private File file;
+
+  @Column(name = "shared_by", nullable = false)
+  private UUID sharedBy; // User who posted the file to the room
+
+  @Column(name = "shared_at", nullable = false)
+  private LocalDateTime sharedAt;
+
+  @PrePersist
+  protected void onCreate() {
+    if (sharedAt == null) {
+      sharedAt = LocalDateTime.now();
+    }
+  }
+
+  public UUID getId() { return id; }
+  public void setId(UUID id) { this.id = id; }
+
+  public UUID getChatRoomId() { return chatRoomId; }
+  public void setChatRoomId(UUID chatRoomId) { this.chatRoomId = chatRoomId; }
+
+  public File getFile() { return file; }
+  public void setFile(File file) { this.file = file; }
+
+  public UUID getSharedBy() { return sharedBy; }
+  public void setSharedBy(UUID sharedBy) { this.sharedBy = sharedBy; }
+
+  public LocalDateTime getSharedAt() { return sharedAt; }
+  public void setSharedAt(LocalDateTime sharedAt) { this.sharedAt = sharedAt; }
+}
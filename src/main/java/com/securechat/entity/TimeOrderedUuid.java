@@ -0,0 +1,18 @@
+package com.securechat.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Primary key generated as a time-ordered UUIDv7 (see UuidV7).
+ * Use instead of {@code @GeneratedValue(strategy = GenerationType.UUID)} on insert-heavy tables.
+ */
+@IdGeneratorType(TimeOrderedUuidGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeOrderedUuid {
+}
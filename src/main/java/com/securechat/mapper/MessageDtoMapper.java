@@ -76,4 +76,29 @@ public final class MessageDtoMapper {
         }
         return dto;
     }
-}
\ No newline at end of file
+
+    /**
+     * Same MessageDTO shape from a list projection (e.g. the cached room tail).
+     * Projections only cover live messages.
+     * @param message
+     * @param chatRoomId room the projection was loaded for
+     * @return MessageDTO for standard API responses, or null if input is null
+     */
+    public static com.securechat.dto.MessageDTO toDto(com.securechat.dto.MessageListDto message, java.util.UUID chatRoomId) {
+        if (message == null) {
+            return null;
+        }
+        com.securechat.dto.MessageDTO dto = new com.securechat.dto.MessageDTO();
+        dto.setId(message.id());
+        dto.setContent(message.content());
+        dto.setMessageType(message.messageType());
+        dto.setTimestamp(message.timestamp());
+        dto.setIsEdited(Boolean.TRUE.equals(message.isEdited()));
+        dto.setEditedAt(message.editedAt());
+        dto.setIsDeleted(false);
+        dto.setUserId(message.senderId());
+        dto.setUsername(message.senderName());
+        dto.setChatRoomId(chatRoomId);
+        return dto;
+    }
+}
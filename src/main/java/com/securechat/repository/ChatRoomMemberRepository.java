@@ -20,6 +20,10 @@ public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember,
     // Check if a membership exists for a specific user in a specific chat room
     boolean existsByChatRoomIdAndUserId(UUID chatRoomId, UUID userId);
 
+    // Active-membership check and username in one statement (empty if not a member) - loader of MembershipCache
+    @Query("SELECT u.username FROM ChatRoomMember cm JOIN cm.user u WHERE cm.chatRoom.id = :chatRoomId AND u.id = :userId AND cm.isActive = true")
+    Optional<String> findMemberUsername(@Param("chatRoomId") UUID chatRoomId, @Param("userId") UUID userId);
+
     // Find a specific membership by chat room ID and user ID (returns Optional for null safety)
     Optional<ChatRoomMember> findByChatRoomIdAndUserId(UUID chatRoomId, UUID userId);
 
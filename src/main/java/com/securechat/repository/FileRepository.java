@@ -2,9 +2,12 @@ package com.securechat.repository;
 
 import com.securechat.entity.File;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,4 +23,14 @@ public interface FileRepository extends JpaRepository<File, UUID> {
      * @return List of File entities matching the criteria
      */
     List<File> findByUploaderIdAndUploadedAtAfter(UUID uploaderId, LocalDateTime since);
-}
\ No newline at end of file
+
+    /**
+     * Which of the given storage paths are still referenced by a file (soft-deleted rows included,
+     * they keep their content until purged). Reference count check of the blob garbage collector.
+     */
+    @Query("SELECT DISTINCT f.filePath FROM File f WHERE f.filePath IN :paths")
+    List<String> findReferencedFilePaths(@Param("paths") Collection<String> paths);
+
+    /** Next files without a content hash (uploaded before hashes were recorded), in id order. */
+    List<File> findTop50ByContentHashIsNullAndIdGreaterThanOrderByIdAsc(UUID afterId);
+}
@@ -4,6 +4,7 @@ import com.securechat.dto.MessageListDto;
 import com.securechat.entity.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -43,11 +44,19 @@ public interface MessageRepository extends JpaRepository<Message, UUID> {
         @Query("SELECT m FROM Message m JOIN FETCH m.sender WHERE m.chatRoom.id = :roomId")
         List<Message> findByChatRoomWithSender(@Param("roomId") UUID roomId);
 
-        // Get messages after timestamp in chronological order (oldest first)
-        @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId AND m.timestamp > :since AND m.isDeleted = false ORDER BY m.timestamp ASC")
+        // Get messages after timestamp in chronological order (oldest first), at most a page of them
+        @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId AND m.timestamp > :since AND m.isDeleted = false ORDER BY m.timestamp ASC, m.id ASC")
         List<Message> findByChatRoomAndTimestampAfter(
                         @Param("chatRoomId") UUID chatRoomId,
-                        @Param("since") LocalDateTime since);
+                        @Param("since") LocalDateTime since,
+                        Pageable pageable);
+
+        // Newest messages after timestamp (newest first), at most a page of them: stream catch-up
+        @Query("SELECT m FROM Message m WHERE m.chatRoom.id = :chatRoomId AND m.timestamp > :since AND m.isDeleted = false ORDER BY m.timestamp DESC, m.id DESC")
+        List<Message> findNewestByChatRoomAndTimestampAfter(
+                        @Param("chatRoomId") UUID chatRoomId,
+                        @Param("since") LocalDateTime since,
+                        Pageable pageable);
 
         // Check if user is member of chat room (for authorization before message operations)
         @Query("SELECT CASE WHEN COUNT(cm) > 0 THEN true ELSE false END FROM ChatRoomMember cm WHERE cm.chatRoom.id = :chatRoomId AND cm.user.id = :userId")
@@ -58,7 +67,7 @@ public interface MessageRepository extends JpaRepository<Message, UUID> {
         @Query("""
                         SELECT new com.securechat.dto.MessageListDto(
                             m.id, m.content, u.username, u.id, m.timestamp,
-                            CONCAT('', m.messageType)
+                            CONCAT('', m.messageType), m.isEdited, m.editedAt
                         )
                         FROM Message m
                         JOIN m.sender u
@@ -70,7 +79,7 @@ public interface MessageRepository extends JpaRepository<Message, UUID> {
         @Query("""
                         SELECT new com.securechat.dto.MessageListDto(
                             m.id, m.content, u.username, u.id, m.timestamp,
-                            CONCAT('', m.messageType)
+                            CONCAT('', m.messageType), m.isEdited, m.editedAt
                         )
                         FROM Message m
                         JOIN m.sender u
@@ -78,6 +87,39 @@ public interface MessageRepository extends JpaRepository<Message, UUID> {
                         ORDER BY m.timestamp DESC
                         """)
         Page<MessageListDto> findMessageDtosByChatRoomId(@Param("chatRoomId") UUID chatRoomId, Pageable pageable);
+
+        // Keyset pagination (newest first): first slice of a room's history, no COUNT query
+        @Query("""
+                        SELECT new com.securechat.dto.MessageListDto(
+                            m.id, m.content, u.username, u.id, m.timestamp,
+                            CONCAT('', m.messageType), m.isEdited, m.editedAt
+                        )
+                        FROM Message m
+                        JOIN m.sender u
+                        WHERE m.chatRoom.id = :chatRoomId AND m.isDeleted = false
+                        ORDER BY m.timestamp DESC, m.id DESC
+                        """)
+        Slice<MessageListDto> findLatestMessageDtos(@Param("chatRoomId") UUID chatRoomId, Pageable pageable);
+
+        // Keyset pagination: the slice strictly older than the (timestamp, id) of the previous slice's last row.
+        // "timestamp <= :before" bounds the range scan on idx_message_chatroom_timestamp; the id only breaks ties.
+        @Query("""
+                        SELECT new com.securechat.dto.MessageListDto(
+                            m.id, m.content, u.username, u.id, m.timestamp,
+                            CONCAT('', m.messageType), m.isEdited, m.editedAt
+                        )
+                        FROM Message m
+                        JOIN m.sender u
+                        WHERE m.chatRoom.id = :chatRoomId AND m.isDeleted = false
+                          AND m.timestamp <= :beforeTimestamp
+                          AND (m.timestamp < :beforeTimestamp OR m.id < :beforeId)
+                        ORDER BY m.timestamp DESC, m.id DESC
+                        """)
+        Slice<MessageListDto> findMessageDtosBefore(
+                        @Param("chatRoomId") UUID chatRoomId,
+                        @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                        @Param("beforeId") UUID beforeId,
+                        Pageable pageable);
 }
 
 
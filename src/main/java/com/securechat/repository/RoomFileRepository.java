@@ -0,0 +1,47 @@
+package com.securechat.repository;
+
+import com.securechat.entity.RoomFile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RoomFileRepository extends JpaRepository<RoomFile, UUID> {
+
+    /**
+     * Files shared to a room after a (shared_at, id) position, oldest first.
+     * One range scan of idx_room_files_room_shared however long the timeline is; an idle
+     * poll reads no rows. Deleted files are skipped.
+     */
+    @Query("""
+            SELECT rf FROM RoomFile rf
+            JOIN FETCH rf.file f
+            WHERE rf.chatRoomId = :chatRoomId AND f.deletedAt IS NULL
+              AND rf.sharedAt >= :afterTimestamp
+              AND (rf.sharedAt > :afterTimestamp OR rf.id > :afterId)
+            ORDER BY rf.sharedAt ASC, rf.id ASC
+            """)
+    Slice<RoomFile> findSharedAfter(
+            @Param("chatRoomId") UUID chatRoomId,
+            @Param("afterTimestamp") LocalDateTime afterTimestamp,
+            @Param("afterId") UUID afterId,
+            Pageable pageable);
+
+    Optional<RoomFile> findByChatRoomIdAndFileId(UUID chatRoomId, UUID fileId);
+
+    /** Whether the file was shared to a room the user is an active member of. */
+    @Query("""
+            SELECT CASE WHEN COUNT(rf) > 0 THEN true ELSE false END
+            FROM RoomFile rf, ChatRoomMember cm
+            WHERE rf.file.id = :fileId AND cm.chatRoom.id = rf.chatRoomId
+              AND cm.user.id = :userId AND cm.isActive = true
+            """)
+    boolean isSharedWithMember(@Param("fileId") UUID fileId, @Param("userId") UUID userId);
+}
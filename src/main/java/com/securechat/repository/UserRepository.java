@@ -21,4 +21,12 @@ public interface UserRepository extends JpaRepository<User, UUID> {
 
     // Search users by username with case-insensitive partial matching
     List<User> findByUsernameContainingIgnoreCase(String username);
+
+    // Usernames equal to base or matching pattern (base-%), for one-query suffix allocation; '!' escapes LIKE wildcards
+    @Query("SELECT u.username FROM User u WHERE u.username = :base OR u.username LIKE :pattern ESCAPE '!'")
+    List<String> findUsernamesLike(@Param("base") String base, @Param("pattern") String pattern);
+
+    // Emails equal to base or matching pattern, same purpose for synthetic Keycloak emails
+    @Query("SELECT u.email FROM User u WHERE u.email = :base OR u.email LIKE :pattern ESCAPE '!'")
+    List<String> findEmailsLike(@Param("base") String base, @Param("pattern") String pattern);
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+package com.securechat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securechat.entity.AuditLog;
+import com.securechat.repository.AuditLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit events off the request thread (disable with app.audit.async.enabled=false).
+ *
+ * - AuditService hands over the event and returns; it no longer waits for an INSERT or joins
+ *   the caller's transaction.
+ * - A single writer thread collects events for up to flush-interval-ms (or batch-size of them)
+ *   and saves them in one transaction, which hibernate.jdbc.batch_size turns into batched INSERTs.
+ * - When the queue is full, app.audit.async.overflow decides: block (wait up to block-timeout-ms,
+ *   then drop), drop (counted), or spill (append to spill-file). Batches the database refused
+ *   are spilled as well, and the spill file is loaded into the table on the next start.
+ * - stop() writes everything still queued before the repository goes away.
+ *
+ * Counters securechat.audit.events{result=written|dropped|spilled}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.audit.async.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AuditLogWriter {
+
+    enum Overflow { BLOCK, DROP, SPILL }
+
+    private final AuditLogRepository auditLogRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;  // Spill file: one JSON event per line
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutMs;
+    private final Overflow overflow;
+    private final Path spillFile;
+    private final BlockingQueue<AuditLog> pending;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter spilled;
+    private final DistributionSummary batchSizes;
+
+    private final List<AuditLog> unwritten = new ArrayList<>();  // Batch in hand when the writer was stopped
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public AuditLogWriter(
+            AuditLogRepository auditLogRepository,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.audit.async.batch-size:256}") int maxBatchSize,
+            @Value("${app.audit.async.flush-interval-ms:200}") long flushIntervalMs,
+            @Value("${app.audit.async.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.audit.async.overflow:spill}") String overflow,
+            @Value("${app.audit.async.block-timeout-ms:100}") long blockTimeoutMs,
+            @Value("${app.audit.async.spill-file:audit-spill.jsonl}") String spillFile) {
+        this.auditLogRepository = auditLogRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.overflow = Overflow.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        this.spillFile = Path.of(spillFile).toAbsolutePath().normalize();
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.written = meterRegistry.counter("securechat.audit.events", "result", "written");
+        this.dropped = meterRegistry.counter("securechat.audit.events", "result", "dropped");
+        this.spilled = meterRegistry.counter("securechat.audit.events", "result", "spilled");
+        this.batchSizes = DistributionSummary.builder("securechat.audit.batch_size")
+                .description("Audit events inserted per transaction")
+                .register(meterRegistry);
+        Gauge.builder("securechat.audit.queued", pending, BlockingQueue::size)
+                .description("Audit events waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        replaySpilled();  // Before accepting events, so nothing appends to the file meanwhile
+        running = true;
+        writerThread = new Thread(this::runWriter, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Async audit writer started (batch <= {}, flush every {} ms, overflow {})",
+                maxBatchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), overflow);
+    }
+
+    // Writes what is still queued; audit events are not lost on a normal shutdown
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<AuditLog> rest = new ArrayList<>(unwritten);  // Visible here: join() happens-after the writer
+        unwritten.clear();
+        pending.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += maxBatchSize) {
+            write(rest.subList(from, Math.min(rest.size(), from + maxBatchSize)));
+        }
+    }
+
+    /** Queues an event; never throws, and only waits with overflow=block and a full queue. */
+    public void submit(AuditLog event) {
+        if (!running) {
+            spill(List.of(event));  // Shutting down: loaded on the next start
+            return;
+        }
+        if (pending.offer(event)) {
+            return;
+        }
+        switch (overflow) {
+            case BLOCK -> {
+                try {
+                    if (pending.offer(event, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                dropped.increment();
+                log.warn("Audit queue full, dropped {} event", event.getEventType());
+            }
+            case DROP -> dropped.increment();
+            case SPILL -> spill(List.of(event));
+        }
+    }
+
+    // Writer loop: wait for one event, then collect more until the batch is full or the interval is over
+    private void runWriter() {
+        while (running) {
+            List<AuditLog> batch = new ArrayList<>();  // Not reused: the repository may keep a reference
+            try {
+                AuditLog first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    AuditLog next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // stop() writes the batch in hand along with the rest of the queue
+                unwritten.addAll(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // One transaction per batch; a batch the database refuses goes to the spill file instead of being lost
+    void write(List<AuditLog> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                auditLogRepository.saveAll(batch);
+                auditLogRepository.flush();  // Fail inside the transaction, not at commit
+            });
+            batchSizes.record(batch.size());
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Writing {} audit events failed, spilling them: {}", batch.size(), e.getMessage());
+            batch.forEach(event -> event.setId(null));  // Inserted afresh on replay
+            spill(batch);
+        }
+    }
+
+    private synchronized void spill(List<AuditLog> events) {
+        try {
+            Files.createDirectories(spillFile.getParent());
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditLog event : events) {
+                    out.write(objectMapper.writeValueAsString(event));
+                    out.newLine();
+                }
+            }
+            spilled.increment(events.size());
+        } catch (IOException e) {
+            dropped.increment(events.size());
+            log.error("Could not spill {} audit events to {}: {}", events.size(), spillFile, e.getMessage());
+        }
+    }
+
+    // Loads events spilled by an earlier run; what cannot be written yet stays in the file
+    void replaySpilled() {
+        if (!Files.exists(spillFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(spillFile, StandardCharsets.UTF_8);
+            int done = 0;
+            try {
+                while (done < lines.size()) {
+                    List<AuditLog> batch = new ArrayList<>(maxBatchSize);
+                    for (String line : lines.subList(done, Math.min(lines.size(), done + maxBatchSize))) {
+                        try {
+                            if (!line.isBlank()) {
+                                batch.add(objectMapper.readValue(line, AuditLog.class));
+                            }
+                        } catch (IOException e) {
+                            log.warn("Skipping unreadable spilled audit event: {}", e.getMessage()); // Torn last line
+                        }
+                    }
+                    transactionTemplate.executeWithoutResult(status -> auditLogRepository.saveAll(batch));
+                    done = Math.min(lines.size(), done + maxBatchSize);
+                }
+                Files.delete(spillFile);
+                log.info("Loaded {} spilled audit events from {}", lines.size(), spillFile);
+            } catch (RuntimeException e) {
+                Files.write(spillFile, lines.subList(done, lines.size()), StandardCharsets.UTF_8);
+                log.warn("Loaded {} of {} spilled audit events, rest kept in {}: {}",
+                        done, lines.size(), spillFile, e.getMessage());
+            }
+        } catch (IOException e) {
+            log.warn("Could not read spilled audit events from {}: {}", spillFile, e.getMessage());
+        }
+    }
+}
@@ -20,6 +20,9 @@ public class AuditService {
     @Autowired // Injects the AuditLogRepository for database operations
     private AuditLogRepository auditLogRepository;
 
+    @Autowired(required = false)
+    private AuditLogWriter auditLogWriter;  // Batched writes off the request thread; absent with app.audit.async.enabled=false
+
     /**
      * Log a security event with full context including HTTP request details
      * @param eventType Type/category of the event (e.g., "LOGIN", "FILE_UPLOAD")
@@ -36,7 +39,7 @@ public class AuditService {
         log.setIpAddress(getClientIp(request)); // Extract real client IP (handles proxies)
         log.setUserAgent(request != null ? request.getHeader("User-Agent") : null); 
         
-        auditLogRepository.save(log); // Persist to database
+        record(log);
     }
 
     /**
@@ -63,7 +66,7 @@ public class AuditService {
         log.setIpAddress(ipAddress);
         log.setUserAgent(userAgent);
         
-        auditLogRepository.save(log);
+        record(log);
     }
 
     /**
@@ -79,7 +82,16 @@ public class AuditService {
         log.setAction(action);
         log.setTimestamp(LocalDateTime.now());
         
-        auditLogRepository.save(log);
+        record(log);
+    }
+
+    // Queued for the async writer when there is one, otherwise saved in the caller's transaction
+    private void record(AuditLog log) {
+        if (auditLogWriter != null) {
+            auditLogWriter.submit(log);
+        } else {
+            auditLogRepository.save(log); // Persist to database
+        }
     }
 
     /**
@@ -0,0 +1,156 @@
+package com.securechat.service;
+
+import com.securechat.entity.User;
+import com.securechat.util.TransactionHooks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * JWT subject -> local user, so authenticated requests do not look the user up on every call.
+ *
+ * - Bounded LRU; an entry lives for ttl-seconds but never past the expiry of the token that
+ *   loaded it, so a new login always re-reads the user.
+ * - Concurrent misses for the same subject share one load: the first request provisions the
+ *   user, the others wait for its result instead of racing it into a unique constraint.
+ * - Profile, role and activation changes call evict(); a load that raced an eviction is
+ *   returned but not stored.
+ *
+ * Cached users are detached and shared between requests: treat them as read-only and load
+ * the user again before changing it.
+ */
+@Component
+public class AuthenticatedUserCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;  // Access-ordered: eldest = least recently used
+    private final Map<String, CompletableFuture<User>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong evictions = new AtomicLong();  // Evictions are rare, one stamp is enough
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    @Autowired
+    public AuthenticatedUserCache(@Value("${app.auth.user-cache.max-entries:10000}") int maxEntries,
+                                  @Value("${app.auth.user-cache.ttl-seconds:300}") long ttlSeconds,
+                                  MeterRegistry meterRegistry) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AuthenticatedUserCache.this.maxEntries;
+            }
+        };
+        this.hits = meterRegistry.counter("securechat.auth.user_cache", "result", "hit");
+        this.misses = meterRegistry.counter("securechat.auth.user_cache", "result", "miss");
+        this.coalesced = meterRegistry.counter("securechat.auth.user_cache", "result", "coalesced");
+    }
+
+    // For unit tests
+    AuthenticatedUserCache(int maxEntries, long ttlSeconds) {
+        this(maxEntries, ttlSeconds, new SimpleMeterRegistry());
+    }
+
+    /**
+     * User for a token subject. {@code loader} looks the user up (or provisions it) and is only
+     * called on a miss, once per subject at a time. {@code tokenExpiresAt} may be null.
+     */
+    public User resolve(String subject, Instant tokenExpiresAt, Supplier<User> loader) {
+        synchronized (entries) {
+            Entry entry = entries.get(subject);
+            if (entry != null && entry.expiresAt() - System.nanoTime() > 0) {
+                hits.increment();
+                return entry.user();
+            }
+        }
+
+        CompletableFuture<User> load = new CompletableFuture<>();
+        CompletableFuture<User> inProgress = loading.putIfAbsent(subject, load);
+        if (inProgress != null) {
+            coalesced.increment();
+            return await(inProgress);
+        }
+
+        misses.increment();
+        try {
+            long stamp = evictions.get();
+            User user = loader.get();
+            long ttl = ttlNanos(tokenExpiresAt);
+            synchronized (entries) {
+                if (ttl > 0 && evictions.get() == stamp) {
+                    entries.put(subject, new Entry(user, System.nanoTime() + ttl));
+                }
+            }
+            load.complete(user);
+            return user;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(subject, load);
+        }
+    }
+
+    /** The user changed (profile, roles, deactivation); call from inside the transaction that changes it. */
+    public void evict(UUID userId) {
+        evictNow(userId);
+        TransactionHooks.afterCommit(() -> evictNow(userId));
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictNow(UUID userId) {
+        synchronized (entries) {
+            evictions.incrementAndGet();
+            entries.values().removeIf(entry -> userId.equals(entry.user().getId()));
+        }
+    }
+
+    // Shorter of the configured TTL and the time left on the token
+    private long ttlNanos(Instant tokenExpiresAt) {
+        if (tokenExpiresAt == null) {
+            return ttlNanos;
+        }
+        long tokenLeft = Duration.between(Instant.now(), tokenExpiresAt).toNanos();
+        return Math.min(ttlNanos, tokenLeft);
+    }
+
+    // Waiters see the loader's exception as if they had run it themselves
+    private static User await(CompletableFuture<User> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(User user, long expiresAt) {
+    }
+}
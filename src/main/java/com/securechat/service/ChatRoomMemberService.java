@@ -6,6 +6,7 @@ import com.securechat.entity.User;
 import com.securechat.repository.ChatRoomMemberRepository;
 import com.securechat.repository.ChatRoomRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.util.TransactionHooks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
@@ -23,6 +24,12 @@ public class ChatRoomMemberService {
     @Autowired // Injects UserRepository for user-related database operations
     private UserRepository userRepository;
 
+    @Autowired // Keeps multiplexed SSE streams (/api/stream) in sync with memberships
+    private MessageStreamService messageStreamService;
+
+    @Autowired // Message authorization cache; must hear about every join and leave
+    private MembershipCache membershipCache;
+
     /**
      * Adds a user to a chat room as a member
      * @param chatRoomId ID of the chat room to join
@@ -57,7 +64,10 @@ public class ChatRoomMemberService {
         member.setIsActive(true);
         member.setRole("MEMBER"); // Set default role (not ADMIN or MODERATOR)
 
-        return chatRoomMemberRepository.save(member); // Persist to database
+        ChatRoomMember saved = chatRoomMemberRepository.save(member); // Persist to database
+        membershipCache.invalidate(chatRoomId, userId);
+        TransactionHooks.afterCommit(() -> messageStreamService.userJoinedRoom(chatRoomId, userId));
+        return saved;
     }
 
     /**
@@ -73,6 +83,8 @@ public class ChatRoomMemberService {
         member.setIsActive(false);
         member.setLastReadAt(LocalDateTime.now()); // Record last read time as leaving time
         chatRoomMemberRepository.save(member); 
+        membershipCache.invalidate(chatRoomId, userId);
+        TransactionHooks.afterCommit(() -> messageStreamService.userLeftRoom(chatRoomId, userId));
     }
 
     /**
@@ -7,6 +7,7 @@ import com.securechat.entity.User;
 import com.securechat.repository.ChatRoomMemberRepository;
 import com.securechat.repository.ChatRoomRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.util.TransactionHooks;
 import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,12 @@ public class ChatRoomService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MessageStreamService messageStreamService;  // Updates multiplexed SSE streams on join/leave
+
+    @Autowired
+    private MembershipCache membershipCache;  // Cached authorization checks, invalidated on every membership change
+
     @Transactional
     @NotNull
     public ChatRoom createChatRoom(@NotNull ChatRoomCreateRequest request, @NotNull User creator) {
@@ -65,6 +72,10 @@ public class ChatRoomService {
         member.setRole("ADMIN");
         member.setIsActive(true);
         chatRoomMemberRepository.save(member);
+        membershipCache.invalidate(chatRoom.getId(), creator.getId());
+        UUID roomId = chatRoom.getId();
+        UUID creatorId = creator.getId();
+        TransactionHooks.afterCommit(() -> messageStreamService.userJoinedRoom(roomId, creatorId));
     }
 
     @Transactional(readOnly = true)
@@ -106,6 +117,8 @@ public class ChatRoomService {
 
         // Delete all members first (maintain referential integrity)
         chatRoomMemberRepository.deleteByChatRoomId(id);
+        membershipCache.invalidateRoom(id);
+        TransactionHooks.afterCommit(() -> messageStreamService.roomDeleted(id));  // Open streams get "room-left"
         // Then delete the chat room
         chatRoomRepository.delete(chatRoom);
     }
@@ -141,11 +154,19 @@ public class ChatRoomService {
             }
             member.setIsActive(true);
             member.setJoinedAt(LocalDateTime.now());
-            return Optional.of(chatRoomMemberRepository.save(member));
+            ChatRoomMember reactivated = chatRoomMemberRepository.save(member);
+            membershipCache.invalidate(chatRoomId, userId);
+            TransactionHooks.afterCommit(() -> messageStreamService.userJoinedRoom(chatRoomId, userId));
+            return Optional.of(reactivated);
         }
 
         // Create new member if not previously a member
-        return createNewMember(chatRoom, userId);
+        Optional<ChatRoomMember> created = createNewMember(chatRoom, userId);
+        created.ifPresent(member -> {
+            membershipCache.invalidate(chatRoomId, userId);  // Drops a cached "not a member"
+            TransactionHooks.afterCommit(() -> messageStreamService.userJoinedRoom(chatRoomId, userId));
+        });
+        return created;
     }
 
     // Create a new member with MEMBER role, checking max participant limit
@@ -188,6 +209,8 @@ public class ChatRoomService {
         member.setIsActive(false);
         member.setLastReadAt(LocalDateTime.now()); // Record when they last read messages
         chatRoomMemberRepository.save(member);
+        membershipCache.invalidate(chatRoomId, userId);
+        TransactionHooks.afterCommit(() -> messageStreamService.userLeftRoom(chatRoomId, userId));
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,434 @@
+package com.securechat.service;
+
+import com.securechat.dto.FileUploadResponse;
+import com.securechat.dto.UploadSessionRequest;
+import com.securechat.dto.UploadSessionResponse;
+import com.securechat.exception.ResourceNotFoundException;
+import com.securechat.exception.ValidationException;
+import com.securechat.util.Hashing;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: create a session (optionally with the whole file's SHA-256), PUT chunks at
+ * their offsets (any order, in parallel, each with its SHA-256), then commit.
+ *
+ * - each session has one file under {upload dir}/.sessions and every chunk is written straight
+ *   to its offset in it (positional writes on a shared FileChannel), so once all chunks are in
+ *   the file is the upload: commit sniffs it, hashes it once and renames it into place
+ * - a chunk counts only once its checksum matched; a broken or corrupt chunk is sent again, and
+ *   any bytes it overwrote are no longer counted as received (overlapping chunks are never
+ *   written at the same time, so a failed write can't be hidden by a concurrent good one)
+ * - with a whole-file SHA-256, commit refuses to publish a file that doesn't match it
+ * - sessions without a chunk for app.upload.sessions.expiry-seconds are dropped with their file;
+ *   files in the session directory untouched for that long are deleted too, whichever instance
+ *   (or earlier run) created them
+ *
+ * Sessions live in memory: chunks must reach the instance that created the session (sticky
+ * routing), and after a restart unfinished uploads start over.
+ */
+@Service
+@Slf4j
+public class ChunkedUploadService {
+
+    static final String SESSION_DIR = ".sessions";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    private final FileService fileService;
+    private final Path sessionDir;
+    private final Duration expiry;
+    private final long maxChunkSize;
+    private final int maxSessionsPerUser;
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(FileService fileService, LocalFileStorageService files,
+                                @Value("${app.upload.sessions.expiry-seconds:86400}") long expirySeconds,
+                                @Value("${app.upload.sessions.max-chunk-bytes:8388608}") long maxChunkSize,
+                                @Value("${app.upload.sessions.max-per-user:5}") int maxSessionsPerUser) {
+        this.fileService = fileService;
+        this.sessionDir = files.uploadDir().resolve(SESSION_DIR); // Same file system: commit is a rename
+        this.expiry = Duration.ofSeconds(expirySeconds);
+        this.maxChunkSize = maxChunkSize;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(sessionDir);
+        // The directory may be shared with other instances: only files idle past the expiry go
+        removeOrphans(Instant.now().minus(expiry));
+    }
+
+    public UploadSessionResponse create(UploadSessionRequest request, String userId) {
+        if (request.getSize() <= 0) {
+            throw new ValidationException("File size must be positive");
+        }
+        fileService.validateFile(request.getSize(), request.getMimeType());
+        if (request.getSha256() != null && !SHA256_HEX.matcher(request.getSha256()).matches()) {
+            throw new ValidationException("File checksum must be a hex SHA-256");
+        }
+
+        Session session;
+        synchronized (sessions) {
+            long open = sessions.values().stream().filter(s -> s.ownerId.equals(userId)).count();
+            if (open >= maxSessionsPerUser) {
+                throw new ValidationException("Too many uploads in progress");
+            }
+            UUID id = UUID.randomUUID();
+            Path file = sessionDir.resolve(id + ".part");
+            try {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                session = new Session(id, userId, request.getFilename(), request.getMimeType(), request.getSize(),
+                        request.getSha256(), file, channel);
+            } catch (IOException e) {
+                log.error("Failed to start upload: {}", e.getMessage());
+                throw new RuntimeException("Failed to start upload", e);
+            }
+            sessions.put(id, session);
+        }
+        log.info("Upload session {} started: {} ({} bytes) by user {}", session.id, session.filename,
+                session.size, userId);
+        return status(session);
+    }
+
+    public UploadSessionResponse getStatus(UUID sessionId, String userId) {
+        return status(find(sessionId, userId));
+    }
+
+    /**
+     * Writes one chunk at its offset while hashing it. Chunks may overlap, arrive in any order and
+     * be sent again; only chunks whose SHA-256 matches are recorded as received, and a chunk that
+     * fails takes its whole span out of the received ranges (it may have overwritten good bytes).
+     * A chunk overlapping one that is still being written is rejected.
+     *
+     * @param length   Content-Length of the chunk request, -1 if unknown
+     * @param checksum Hex SHA-256 of the chunk
+     */
+    public UploadSessionResponse writeChunk(UUID sessionId, String userId, long offset, long length,
+                                            String checksum, InputStream body) {
+        Session session = find(sessionId, userId);
+        if (length < 0) {
+            throw new ValidationException("Content-Length required");
+        }
+        if (length == 0 || length > maxChunkSize) {
+            throw new ValidationException("Chunk size must be between 1 and " + maxChunkSize + " bytes");
+        }
+        if (offset < 0 || offset > session.size - length) {
+            throw new ValidationException("Chunk outside the file");
+        }
+        if (checksum == null || !SHA256_HEX.matcher(checksum).matches()) {
+            throw new ValidationException("Chunk checksum (hex SHA-256) required");
+        }
+
+        session.begin(offset, length);
+        boolean intact = false;
+        try {
+            intact = checksum.equalsIgnoreCase(write(session.channel, offset, length, body));
+        } catch (IOException e) {
+            log.warn("Chunk at {} of upload {} not stored: {}", offset, sessionId, e.getMessage());
+            throw new RuntimeException("Failed to store chunk", e);
+        } finally {
+            if (session.end(offset, length, intact)) {
+                discard(session); // Aborted while this chunk was being written
+            }
+        }
+        if (!intact) {
+            throw new ValidationException("Chunk checksum mismatch");
+        }
+        return status(session);
+    }
+
+    /** Publishes the assembled file once every byte has been received; the session ends either way. */
+    public FileUploadResponse commit(UUID sessionId, String userId) {
+        Session session = find(sessionId, userId);
+        session.complete();
+        sessions.remove(sessionId);
+        closeChannel(session);
+        log.info("Upload session {} complete, storing {}", sessionId, session.filename);
+        return fileService.uploadAssembled(session.file, session.filename, session.mimeType, userId, session.sha256);
+    }
+
+    public void abort(UUID sessionId, String userId) {
+        Session session = find(sessionId, userId);
+        sessions.remove(sessionId);
+        if (session.abort()) {
+            discard(session);
+        }
+        log.info("Upload session {} aborted", sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.sessions.sweep-interval-ms:60000}")
+    public void expireSessions() {
+        int expired = expire(Instant.now());
+        if (expired > 0) {
+            log.info("Dropped {} abandoned upload sessions", expired);
+        }
+    }
+
+    int expire(Instant now) {
+        Instant cutoff = now.minus(expiry);
+        int expired = 0;
+        for (Session session : sessions.values()) {
+            if (session.expire(cutoff)) {
+                sessions.remove(session.id);
+                discard(session);
+                expired++;
+            }
+        }
+        int orphans = removeOrphans(cutoff);
+        if (orphans > 0) {
+            log.info("Deleted {} upload session files with no live session", orphans);
+        }
+        return expired;
+    }
+
+    // Session files written to before the cutoff that no session here owns: left by a previous run
+    // or by an instance that stopped. Another instance's live session writes to its file, so it is
+    // never this old.
+    private int removeOrphans(Instant cutoff) {
+        Set<Path> live = new HashSet<>();
+        sessions.values().forEach(session -> live.add(session.file));
+        int removed = 0;
+        try (Stream<Path> files = Files.list(sessionDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                try {
+                    if (!live.contains(file) && Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)
+                            && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not delete upload session file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list upload session files: {}", e.getMessage());
+        }
+        return removed;
+    }
+
+    // Hex SHA-256 of the chunk, written as it is read: no buffering of the whole chunk
+    private static String write(FileChannel channel, long offset, long length, InputStream body) throws IOException {
+        MessageDigest digest = Hashing.sha256();
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, length)];
+        long position = offset;
+        long remaining = length;
+        while (remaining > 0) {
+            int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new ValidationException("Chunk shorter than Content-Length");
+            }
+            digest.update(buffer, 0, read);
+            ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+            remaining -= read;
+        }
+        return Hashing.hex(digest);
+    }
+
+    // Other users' sessions are reported as missing, like sessions that never existed
+    private Session find(UUID sessionId, String userId) {
+        Session session = sessions.get(sessionId);
+        if (session == null || !session.ownerId.equals(userId)) {
+            throw new ResourceNotFoundException("Upload session not found");
+        }
+        return session;
+    }
+
+    private UploadSessionResponse status(Session session) {
+        synchronized (session) {
+            return UploadSessionResponse.builder()
+                    .sessionId(session.id)
+                    .filename(session.filename)
+                    .size(session.size)
+                    .receivedBytes(session.receivedBytes)
+                    .missing(session.missing())
+                    .maxChunkSize(maxChunkSize)
+                    .expiresAt(session.lastActivity.plus(expiry))
+                    .build();
+        }
+    }
+
+    private void discard(Session session) {
+        closeChannel(session);
+        try {
+            Files.deleteIfExists(session.file);
+        } catch (IOException e) {
+            log.warn("Could not delete upload session file {}: {}", session.file, e.getMessage());
+        }
+    }
+
+    private static void closeChannel(Session session) {
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close upload session file {}: {}", session.file, e.getMessage());
+        }
+    }
+
+    /** One upload in progress; mutable state is guarded by the instance's monitor. */
+    private static final class Session {
+        final UUID id;
+        final String ownerId;
+        final String filename;
+        final String mimeType;
+        final long size;
+        final String sha256;                 // Expected hash of the whole file, null if not given
+        final Path file;
+        final FileChannel channel;           // Positional writes from concurrent chunk requests
+        final TreeMap<Long, Long> received = new TreeMap<>(); // Verified ranges, start -> end, merged
+        final List<long[]> writing = new ArrayList<>();       // [start, end) of chunks being written
+        long receivedBytes;
+        int writers;                         // Chunk requests currently writing
+        boolean closed;                      // Committed, aborted or expired
+        Instant lastActivity = Instant.now();
+
+        Session(UUID id, String ownerId, String filename, String mimeType, long size, String sha256, Path file,
+                FileChannel channel) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.filename = filename;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.sha256 = sha256;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        synchronized void begin(long offset, long length) {
+            if (closed) {
+                throw new ResourceNotFoundException("Upload session not found");
+            }
+            long end = offset + length;
+            for (long[] other : writing) {
+                if (offset < other[1] && other[0] < end) {
+                    throw new ValidationException("An overlapping chunk is still being written, retry later");
+                }
+            }
+            writing.add(new long[] {offset, end});
+            writers++;
+            lastActivity = Instant.now();
+        }
+
+        // True if the session was aborted meanwhile and this was its last writer
+        synchronized boolean end(long offset, long length, boolean intact) {
+            writing.removeIf(range -> range[0] == offset && range[1] == offset + length);
+            writers--;
+            lastActivity = Instant.now();
+            if (!closed) {
+                if (intact) {
+                    add(offset, offset + length);
+                } else {
+                    remove(offset, offset + length); // Whatever was there may have been overwritten
+                }
+            }
+            return closed && writers == 0;
+        }
+
+        synchronized void complete() {
+            if (closed) {
+                throw new ResourceNotFoundException("Upload session not found");
+            }
+            if (writers > 0 || receivedBytes < size) {
+                throw new ValidationException("Upload incomplete: " + receivedBytes + " of " + size
+                        + " bytes received");
+            }
+            closed = true;
+        }
+
+        // True if the file can be discarded now; otherwise the last writer does it
+        synchronized boolean abort() {
+            if (closed) {
+                throw new ResourceNotFoundException("Upload session not found");
+            }
+            closed = true;
+            return writers == 0;
+        }
+
+        synchronized boolean expire(Instant cutoff) {
+            if (closed || writers > 0 || lastActivity.isAfter(cutoff)) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        private void add(long start, long end) {
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = received.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                received.remove(next.getKey());
+            }
+            received.put(start, end);
+            updateReceivedBytes();
+        }
+
+        private void remove(long start, long end) {
+            Map.Entry<Long, Long> before = received.lowerEntry(start);
+            if (before != null && before.getValue() > start) {
+                received.put(before.getKey(), start);
+                if (before.getValue() > end) {
+                    received.put(end, before.getValue());
+                }
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = received.ceilingEntry(start)) != null && next.getKey() < end) {
+                received.remove(next.getKey());
+                if (next.getValue() > end) {
+                    received.put(end, next.getValue());
+                }
+            }
+            updateReceivedBytes();
+        }
+
+        private void updateReceivedBytes() {
+            receivedBytes = received.entrySet().stream().mapToLong(range -> range.getValue() - range.getKey()).sum();
+        }
+
+        private List<UploadSessionResponse.Chunk> missing() {
+            List<UploadSessionResponse.Chunk> missing = new ArrayList<>();
+            long position = 0;
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                if (range.getKey() > position) {
+                    missing.add(new UploadSessionResponse.Chunk(position, range.getKey() - position));
+                }
+                position = range.getValue();
+            }
+            if (position < size) {
+                missing.add(new UploadSessionResponse.Chunk(position, size - position));
+            }
+            return missing;
+        }
+    }
+}
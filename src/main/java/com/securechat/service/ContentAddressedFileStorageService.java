@@ -0,0 +1,258 @@
+package com.securechat.service;
+
+import com.securechat.repository.FileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Uploads stored once per distinct content, keyed by SHA-256.
+ *
+ * - blobs live at {upload dir}/blobs/ab/cd/abcd..., two levels of 256 directories so none
+ *   holds more than a tiny share of the blobs; the relative path is the file_path of the row
+ * - uploading content that is already stored keeps the existing blob and drops the new copy,
+ *   so a duplicate costs the receive plus a metadata insert, not another file on disk
+ * - blobs are shared, so deleteFile leaves them alone; the files table is the reference count
+ *   and collectGarbage removes blobs no row points to any more (plus uploads abandoned in
+ *   .incoming). Only blobs untouched for the grace period are considered, which covers
+ *   uploads whose row is not committed yet; a dedup hit touches the blob for the same reason.
+ *
+ * Derivatives (thumbnails) of a blob sit next to it as <hash>.<variant> and are collected with it.
+ * Files stored before this (uuid_name in the upload dir) are served and deleted as before.
+ * Counters securechat.files.blobs{result=new|dedup} and securechat.files.blob_gc.deleted.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "app.upload.storage", havingValue = "content-addressed", matchIfMissing = true)
+@Slf4j
+public class ContentAddressedFileStorageService implements FileStorageService {
+
+    static final String BLOB_ROOT = "blobs";
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private static final int LOCK_STRIPES = 64;  // Store vs collect of the same blob, see lock()
+    private static final int GC_BATCH_SIZE = 500;  // Paths per reference lookup
+
+    private final LocalFileStorageService files;
+    private final FileRepository fileRepository;
+    private final Path blobDir;
+    private final Duration gracePeriod;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Counter newBlobs;
+    private final Counter duplicateBlobs;
+    private final Counter collectedBlobs;
+
+    @Autowired
+    public ContentAddressedFileStorageService(LocalFileStorageService files, FileRepository fileRepository,
+                                              MeterRegistry meterRegistry,
+                                              @Value("${app.upload.blob-gc.grace-seconds:3600}") long graceSeconds) {
+        this.files = files;
+        this.fileRepository = fileRepository;
+        this.blobDir = files.uploadDir().resolve(BLOB_ROOT);
+        this.gracePeriod = Duration.ofSeconds(graceSeconds);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.newBlobs = meterRegistry.counter("securechat.files.blobs", "result", "new");
+        this.duplicateBlobs = meterRegistry.counter("securechat.files.blobs", "result", "dedup");
+        this.collectedBlobs = meterRegistry.counter("securechat.files.blob_gc.deleted");
+    }
+
+    // For unit tests
+    ContentAddressedFileStorageService(LocalFileStorageService files, FileRepository fileRepository,
+                                       long graceSeconds) {
+        this(files, fileRepository, new SimpleMeterRegistry(), graceSeconds);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(blobDir);
+    }
+
+    @Override
+    public String storeFile(MultipartFile file) throws IOException {
+        return storeStream(file.getInputStream(), file.getOriginalFilename()).path();
+    }
+
+    @Override
+    public StoredFile storeStream(InputStream content, String originalFilename) throws IOException {
+        return publish(files.receive(content), originalFilename);
+    }
+
+    @Override
+    public StoredFile storeAssembled(Path assembled, String originalFilename, String expectedSha256)
+            throws IOException {
+        return publish(files.adopt(assembled, expectedSha256), originalFilename);
+    }
+
+    private StoredFile publish(LocalFileStorageService.Received received, String originalFilename)
+            throws IOException {
+        String hash = received.contentHash();
+        String path = blobPath(hash);
+        Path blob = files.uploadDir().resolve(path);
+
+        synchronized (lock(hash)) {
+            try {
+                if (Files.exists(blob)) {
+                    Files.setLastModifiedTime(blob, FileTime.from(Instant.now())); // Not garbage until the row commits
+                    Files.delete(received.partial());
+                    duplicateBlobs.increment();
+                    log.debug("Upload {} is a duplicate of blob {}", originalFilename, hash);
+                    return new StoredFile(path, received.size(), hash);
+                }
+                Files.createDirectories(blob.getParent());
+                Files.move(received.partial(), blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(received.partial());
+                throw e;
+            }
+        }
+        newBlobs.increment();
+        log.debug("Stored blob {} ({} bytes)", hash, received.size());
+        return new StoredFile(path, received.size(), hash);
+    }
+
+    @Override
+    public Resource loadFile(String filename) throws IOException {
+        return files.loadFile(filename);
+    }
+
+    @Override
+    public Path resolveFile(String filename) throws IOException {
+        return files.resolveFile(filename);
+    }
+
+    @Override
+    public void deleteFile(String filename) throws IOException {
+        if (isBlob(filename)) {
+            log.debug("Delete of shared blob {} left to garbage collection", filename);
+            return;
+        }
+        files.deleteFile(filename); // Stored before content addressing
+    }
+
+    /** Removes unreferenced blobs and abandoned uploads older than the grace period. */
+    @Scheduled(fixedDelayString = "${app.upload.blob-gc.interval-ms:3600000}",
+            initialDelayString = "${app.upload.blob-gc.interval-ms:3600000}")
+    public void collectGarbage() {
+        try {
+            int deleted = collect();
+            if (deleted > 0) {
+                log.info("Blob garbage collection removed {} unreferenced blobs", deleted);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Blob garbage collection failed: {}", e.getMessage());
+        }
+    }
+
+    int collect() throws IOException {
+        FileTime cutoff = FileTime.from(Instant.now().minus(gracePeriod));
+        deleteAbandonedUploads(cutoff);
+
+        int deleted = 0;
+        Map<String, Path> batch = new LinkedHashMap<>();
+        try (Stream<Path> walk = Files.walk(blobDir, 3)) {
+            for (Path blob : (Iterable<Path>) walk::iterator) {
+                if (isBlobFile(blob) && Files.getLastModifiedTime(blob).compareTo(cutoff) < 0) {
+                    batch.put(blobPath(blob.getFileName().toString()), blob);
+                    if (batch.size() == GC_BATCH_SIZE) {
+                        deleted += deleteUnreferenced(batch, cutoff);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += deleteUnreferenced(batch, cutoff);
+        }
+        return deleted;
+    }
+
+    private int deleteUnreferenced(Map<String, Path> candidates, FileTime cutoff) throws IOException {
+        Set<String> referenced = new HashSet<>(fileRepository.findReferencedFilePaths(candidates.keySet()));
+        int deleted = 0;
+        for (Map.Entry<String, Path> candidate : candidates.entrySet()) {
+            if (referenced.contains(candidate.getKey())) {
+                continue;
+            }
+            Path blob = candidate.getValue();
+            synchronized (lock(blob.getFileName().toString())) {
+                try {
+                    if (Files.getLastModifiedTime(blob).compareTo(cutoff) >= 0) {
+                        continue; // Reused by an upload since the scan
+                    }
+                    Files.delete(blob);
+                    files.deleteDerivatives(candidate.getKey()); // Thumbnails live next to the blob
+                    deleted++;
+                    collectedBlobs.increment();
+                } catch (NoSuchFileException e) {
+                    // Already gone
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private void deleteAbandonedUploads(FileTime cutoff) throws IOException {
+        List<Path> abandoned = new ArrayList<>();
+        try (Stream<Path> incoming = Files.list(files.incomingDir())) {
+            for (Path partial : (Iterable<Path>) incoming::iterator) {
+                if (Files.getLastModifiedTime(partial).compareTo(cutoff) < 0) {
+                    abandoned.add(partial);
+                }
+            }
+        }
+        for (Path partial : abandoned) {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // blobs/ab/cd/abcd...: relative to the upload dir, so LocalFileStorageService resolves it too
+    static String blobPath(String hash) {
+        return BLOB_ROOT + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    private static boolean isBlobFile(Path path) {
+        return Files.isRegularFile(path) && HASH.matcher(path.getFileName().toString()).matches();
+    }
+
+    private static boolean isBlob(String filename) {
+        return filename != null && filename.startsWith(BLOB_ROOT + "/");
+    }
+
+    // Makes "is the blob there? then reuse it" and "is it still old? then delete it" atomic
+    // with respect to each other
+    private Object lock(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+}
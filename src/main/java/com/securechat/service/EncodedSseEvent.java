@@ -0,0 +1,101 @@
+package com.securechat.service;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * SSE event whose wire frames are built once and shared by every subscriber.
+ *
+ * Builders from SseEmitter.event() append to internal state on build(), so they cannot be
+ * handed to more than one emitter. This one is immutable: build() always returns the same
+ * frames, and the JSON payload is a byte[] that the ByteArrayHttpMessageConverter writes
+ * as-is, so Jackson never runs per subscriber.
+ */
+final class EncodedSseEvent implements SseEmitter.SseEventBuilder {
+
+    private final Long id;  // SSE "id:" field (null for events the client should not resume from)
+    private final String name;
+    private final byte[] data;  // Serialized JSON payload (null for comments), shared, never modified
+    private final Set<ResponseBodyEmitter.DataWithMediaType> frames;
+
+    private EncodedSseEvent(Long id, String name, byte[] data, Set<ResponseBodyEmitter.DataWithMediaType> frames) {
+        this.id = id;
+        this.name = name;
+        this.data = data;
+        this.frames = frames;
+    }
+
+    // Builds the frames for a named event carrying an already serialized JSON payload
+    static EncodedSseEvent of(Long id, String name, byte[] json) {
+        SseEmitter.SseEventBuilder builder = SseEmitter.event();
+        if (id != null) {
+            builder.id(String.valueOf(id));  // Echoed back by the browser as Last-Event-ID
+        }
+        Set<ResponseBodyEmitter.DataWithMediaType> frames = builder
+                .name(name)
+                .data(json, MediaType.APPLICATION_JSON)
+                .build();
+        return new EncodedSseEvent(id, name, json, Collections.unmodifiableSet(new LinkedHashSet<>(frames)));
+    }
+
+    // Builds the frames for an SSE comment line (": text"), ignored by EventSource clients
+    static EncodedSseEvent commentFrame(String text) {
+        Set<ResponseBodyEmitter.DataWithMediaType> frames = SseEmitter.event().comment(text).build();
+        return new EncodedSseEvent(null, null, null, Collections.unmodifiableSet(new LinkedHashSet<>(frames)));
+    }
+
+    Long getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // Serialized payload, for transports that do not speak SSE (long-poll)
+    byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public Set<ResponseBodyEmitter.DataWithMediaType> build() {
+        return frames;  // Same immutable frames for every emitter
+    }
+
+    // Mutators are not supported: the frames are already encoded
+
+    @Override
+    public SseEmitter.SseEventBuilder comment(String comment) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder name(String eventName) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder id(String id) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object, MediaType mediaType) {
+        throw new UnsupportedOperationException("EncodedSseEvent is immutable");
+    }
+}
@@ -0,0 +1,22 @@
+package com.securechat.service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A stored file ready to be served: where it is on disk and the validators of its content.
+ * Stored files never change, so the content hash is a strong ETag. Files uploaded before hashes
+ * were recorded (contentHash null until FileService backfills it) get a weak one from id, size
+ * and modification time: fine for 304s, but never matches If-Range.
+ */
+public record FileDownload(UUID id, Path path, String filename, String mimeType, long size,
+                           String contentHash, Instant lastModified) {
+
+    public String eTag() {
+        if (contentHash == null) {
+            return "W/\"" + id + "-" + size + "-" + lastModified.toEpochMilli() + "\"";
+        }
+        return "\"" + contentHash + "\"";
+    }
+}
@@ -1,17 +1,34 @@
 package com.securechat.service;
 
 import com.securechat.dto.FileUploadResponse;
+import com.securechat.dto.RoomFilesPage;
 import com.securechat.entity.File;
+import com.securechat.entity.RoomFile;
 import com.securechat.entity.User;
+import com.securechat.exception.ResourceNotFoundException;
+import com.securechat.exception.UnauthorizedException;
+import com.securechat.exception.ValidationException;
+import com.securechat.repository.ChatRoomMemberRepository;
 import com.securechat.repository.FileRepository;
+import com.securechat.repository.RoomFileRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.util.Hashing;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.UUID;
 
@@ -19,9 +36,10 @@ import java.util.UUID;
  * Service for file upload and management.
  * 
  * Implementation of the file upload sequence:
- * 1. Check file type & size
- * 2. Save file metadata to database
- * 3. Return file information
+ * 1. Check declared file type & size
+ * 2. Store the content in one pass, checking size and magic bytes and hashing it on the way
+ * 3. Save file metadata to database
+ * 4. Return file information
  */
 @Service
 @RequiredArgsConstructor
@@ -30,78 +48,161 @@ public class FileService {
 
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
-    private final LocalFileStorageService storageService;
+    private final FileStorageService storageService; // Content-addressed blobs unless app.upload.storage=local
+    private final RoomFileRepository roomFileRepository; // Room file timelines
+    private final ChatRoomMemberRepository chatRoomMemberRepository;
+    private final MembershipCache membershipCache; // Authorization checks without a query per poll
+    private final MessageStreamService messageStreamService; // "new-file" events to the room's stream and long-poll
+    private final ThumbnailService thumbnailService; // Image previews, generated after the upload commits
 
     private static final long MAX_FILE_SIZE = 50 * 1024 * 1024; // 50MB
+    private static final String SIZE_LIMIT_MESSAGE = "File size exceeds 50MB limit";
     private static final List<String> ALLOWED_MIME_TYPES = List.of(
         "image/jpeg", "image/png", "image/gif",
         "application/pdf", "text/plain"
     );
+    private static final int POLL_LIMIT = 100; // Files per poll; a full page sets hasMore
+    private static final UUID AFTER_ALL_IDS = new UUID(-1L, -1L); // ffffffff-...: cursor strictly after a timestamp
+    private static final UUID FIRST_ID = new UUID(0L, 0L); // Sorts before every id
+
+    private volatile UUID hashBackfillCursor = FIRST_ID; // Last file looked at by backfillContentHashes
 
     public FileUploadResponse uploadFile(MultipartFile file, String userId) {
-        // Step 1: Check file type & size
-        validateFile(file);
+        // Step 1: Check declared type & size
+        validateFile(file.getSize(), file.getContentType());
         
         // Step 2: Get user
         User uploader = userRepository.findById(UUID.fromString(userId))
             .orElseThrow(() -> new RuntimeException("User not found"));
         
+        // Step 3: Store file physically (content checked while it is copied)
+        try {
+            return store(file.getInputStream(), file.getOriginalFilename(), file.getContentType(), uploader);
+        } catch (IOException e) {
+            log.error("Failed to store file: {}", e.getMessage());
+            throw new RuntimeException("Failed to store file", e);
+        }
+    }
+
+    /**
+     * Upload from a raw request body (Content-Type = the file's type), read exactly once:
+     * hashed, sniffed and size-checked as it is written to its final location.
+     *
+     * @param contentLength Content-Length of the request, -1 if unknown (chunked)
+     */
+    public FileUploadResponse uploadStream(InputStream body, long contentLength, String filename,
+                                           String contentType, String userId) {
+        // Step 1: Check declared type & size (Content-Length, when sent, is checked before reading)
+        String mimeType = null;
+        if (contentType != null) {
+            MediaType parsed = MediaType.parseMediaType(contentType);
+            mimeType = parsed.getType() + "/" + parsed.getSubtype(); // text/plain;charset=UTF-8 -> text/plain
+        }
+        validateFile(Math.max(contentLength, 0), mimeType);
+
+        // Step 2: Get user
+        User uploader = userRepository.findById(UUID.fromString(userId))
+            .orElseThrow(() -> new RuntimeException("User not found"));
+
         // Step 3: Store file physically
-        String storedPath;
         try {
-            storedPath = storageService.storeFile(file);
+            return store(body, filename, mimeType, uploader);
         } catch (IOException e) {
             log.error("Failed to store file: {}", e.getMessage());
             throw new RuntimeException("Failed to store file", e);
         }
-        
+    }
+
+    /**
+     * Upload assembled from chunks by ChunkedUploadService. The file is already complete on the
+     * upload file system: only its first bytes are sniffed here, and storage hashes it and renames
+     * it into place, refusing it if it doesn't match {@code expectedSha256} (when the client sent
+     * one). The file is moved or deleted either way.
+     */
+    public FileUploadResponse uploadAssembled(Path assembled, String filename, String mimeType, String userId,
+                                              String expectedSha256) {
+        try {
+            // Step 1: Check declared type & size, and the content's signature
+            validateFile(Files.size(assembled), mimeType);
+            byte[] head = new byte[UploadValidatingInputStream.SNIFF_LENGTH];
+            int headLength;
+            try (InputStream in = Files.newInputStream(assembled)) {
+                headLength = in.readNBytes(head, 0, head.length);
+            }
+            UploadValidatingInputStream.checkType(head, headLength, mimeType);
+
+            // Step 2: Get user
+            User uploader = userRepository.findById(UUID.fromString(userId))
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+            // Step 3: Publish the file
+            return save(storageService.storeAssembled(assembled, filename, expectedSha256), filename, mimeType, uploader);
+        } catch (IOException e) {
+            log.error("Failed to store file: {}", e.getMessage());
+            throw new RuntimeException("Failed to store file", e);
+        } finally {
+            try {
+                Files.deleteIfExists(assembled); // Rejected before storage took it over
+            } catch (IOException e) {
+                log.warn("Could not delete rejected upload {}: {}", assembled, e.getMessage());
+            }
+        }
+    }
+
+    private FileUploadResponse store(InputStream content, String filename, String mimeType, User uploader)
+            throws IOException {
+        StoredFile stored = storageService.storeStream(
+            new UploadValidatingInputStream(content, MAX_FILE_SIZE, SIZE_LIMIT_MESSAGE, mimeType), filename);
+        return save(stored, filename, mimeType, uploader);
+    }
+
+    private FileUploadResponse save(StoredFile stored, String filename, String mimeType, User uploader) {
         // Step 4: Save metadata to database
         File fileEntity = new File();
         fileEntity.setId(UUID.randomUUID());
-        fileEntity.setFilename(file.getOriginalFilename());
-        fileEntity.setFilePath(storedPath);
-        fileEntity.setFileSize(file.getSize());
-        fileEntity.setMimeType(file.getContentType());
+        fileEntity.setFilename(filename);
+        fileEntity.setFilePath(stored.path());
+        fileEntity.setFileSize(stored.size()); // Bytes actually stored, not what the client declared
+        fileEntity.setMimeType(mimeType);
+        fileEntity.setContentHash(stored.contentHash());
         fileEntity.setUploader(uploader);
         fileEntity.setUploadedAt(LocalDateTime.now());
         fileEntity.setIsPublic(false);
         
         fileRepository.save(fileEntity);
+        thumbnailService.schedule(stored.path(), mimeType); // Images only, in the background
         
-        log.info("File uploaded successfully: {} by user {}", file.getOriginalFilename(), userId);
+        log.info("File uploaded successfully: {} by user {}", filename, uploader.getId());
         
         // Step 5: Return file info
+        return toResponse(fileEntity);
+    }
+
+    private static FileUploadResponse toResponse(File file) {
         return FileUploadResponse.builder()
-            .id(fileEntity.getId())
-            .filename(file.getOriginalFilename())
-            .downloadUrl("/api/files/download/" + fileEntity.getId())
-            .size(file.getSize())
-            .uploadedAt(fileEntity.getUploadedAt())
+            .id(file.getId())
+            .filename(file.getFilename())
+            .downloadUrl("/api/files/download/" + file.getId())
+            .size(file.getFileSize())
+            .uploadedAt(file.getUploadedAt())
             .build();
     }
 
-    private void validateFile(MultipartFile file) {
+    // Declared size and type; the content itself is checked by UploadValidatingInputStream
+    void validateFile(long size, String contentType) {
         // Check size
-        if (file.getSize() > MAX_FILE_SIZE) {
-            throw new RuntimeException("File size exceeds 50MB limit");
+        if (size > MAX_FILE_SIZE) {
+            throw new ValidationException(SIZE_LIMIT_MESSAGE);
         }
         
         // Check MIME type
-        if (file.getContentType() == null) {
-            throw new RuntimeException("File type not allowed: null");
+        if (contentType == null) {
+            throw new ValidationException("File type not allowed: null");
         }
         
-        if (!ALLOWED_MIME_TYPES.contains(file.getContentType())) {
-            throw new RuntimeException("File type not allowed: " + file.getContentType());
+        if (!ALLOWED_MIME_TYPES.contains(contentType)) {
+            throw new ValidationException("File type not allowed: " + contentType);
         }
-        
-        // Magic byte validation (stub - as mentioned in report)
-        validateMagicBytes(file);
-    }
-
-    private void validateMagicBytes(MultipartFile file) {
-        // Implementation stub for magic byte validation
-        // This would check file signatures to prevent malicious uploads
     }
 
     public org.springframework.core.io.Resource downloadFile(UUID fileId) {
@@ -116,17 +217,170 @@ public class FileService {
         }
     }
 
-    public List<File> getFilesSince(String chatRoomId, String sinceTimestamp) {  
-        // This is a placeholder implementation - would need to be implemented
-        // via a join table or additional relationship
-        LocalDateTime since;
+    /**
+     * A stored file for FileController's download path (Range requests, conditional GETs).
+     * Files uploaded before content hashes were recorded are served with a weak ETag (from their
+     * modification time) until backfillContentHashes() has hashed them; nothing is hashed here.
+     */
+    public FileDownload openDownload(UUID fileId) {
+        File file = fileRepository.findById(fileId)
+            .orElseThrow(() -> new RuntimeException("File not found"));
+
+        try {
+            Path path = storageService.resolveFile(file.getFilePath());
+            Instant lastModified = file.getContentHash() != null
+                ? file.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant()
+                : Files.getLastModifiedTime(path).toInstant();
+            return new FileDownload(file.getId(), path, file.getFilename(), file.getMimeType(), Files.size(path),
+                file.getContentHash(), lastModified);
+        } catch (IOException e) {
+            log.error("Failed to load file {}: {}", fileId, e.getMessage());
+            throw new RuntimeException("Failed to load file", e);
+        }
+    }
+
+    /**
+     * A thumbnail of an image upload (size one of ThumbnailService.SIZES), served like a download.
+     * Only for the uploader and members of a room the file was shared to; deleted files and files
+     * the user can't see are a 404, like files that don't exist.
+     * Not generated yet (queue was full, or the upload predates thumbnails) is a 404 and queues it.
+     */
+    public FileDownload openThumbnail(UUID fileId, int size, UUID userId) {
+        if (!ThumbnailService.SIZES.contains(size)) {
+            throw new ValidationException("Thumbnail size must be one of " + ThumbnailService.SIZES);
+        }
+        File file = fileRepository.findById(fileId)
+            .filter(found -> found.getDeletedAt() == null)
+            .filter(found -> canSee(found, userId))
+            .orElseThrow(() -> new ResourceNotFoundException("File not found"));
+        if (!ThumbnailService.supports(file.getMimeType())) {
+            throw new ResourceNotFoundException("No thumbnail for this file");
+        }
+
+        Path thumbnail = thumbnailService.find(file.getFilePath(), file.getMimeType(), size).orElse(null);
+        if (thumbnail == null) {
+            thumbnailService.schedule(file.getFilePath(), file.getMimeType());
+            throw new ResourceNotFoundException("Thumbnail not ready");
+        }
         try {
-            since = LocalDateTime.parse(sinceTimestamp);
-        } catch (Exception e) {
-            throw new RuntimeException("Invalid timestamp format", e);
+            String type = file.getMimeType();
+            String name = file.getFilename().replaceFirst("\\.[^.]*$", "") + "-" + size
+                + (type.equals("image/png") ? ".png" : ".jpg");
+            // Derived from immutable content, so the original's hash (or id, before hashes) plus the size is a strong ETag
+            String version = file.getContentHash() != null ? file.getContentHash() : file.getId().toString();
+            return new FileDownload(file.getId(), thumbnail, name, type, Files.size(thumbnail),
+                version + "-" + size, file.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant());
+        } catch (IOException e) {
+            log.error("Failed to load thumbnail of file {}: {}", fileId, e.getMessage());
+            throw new RuntimeException("Failed to load thumbnail", e);
+        }
+    }
+
+    /**
+     * Hashes files uploaded before content hashes were recorded, a batch per run, so their
+     * downloads get strong ETags. Walks the table in id order and starts over once it reaches
+     * the end; files missing from storage are skipped until the next pass.
+     */
+    @Scheduled(fixedDelayString = "${app.upload.hash-backfill.interval-ms:300000}",
+            initialDelayString = "${app.upload.hash-backfill.interval-ms:300000}")
+    public void backfillContentHashes() {
+        List<File> batch = fileRepository.findTop50ByContentHashIsNullAndIdGreaterThanOrderByIdAsc(hashBackfillCursor);
+        if (batch.isEmpty()) {
+            hashBackfillCursor = FIRST_ID;
+            return;
+        }
+        int hashed = 0;
+        for (File file : batch) {
+            try (InputStream in = Files.newInputStream(storageService.resolveFile(file.getFilePath()))) {
+                file.setContentHash(Hashing.sha256Hex(in));
+                fileRepository.save(file);
+                hashed++;
+            } catch (IOException e) {
+                log.debug("Content hash of file {} not backfilled: {}", file.getId(), e.getMessage());
+            }
+        }
+        hashBackfillCursor = batch.get(batch.size() - 1).getId();
+        log.info("Backfilled content hashes of {} files", hashed);
+    }
+
+    /**
+     * Shares an uploaded file to a chat room (by its uploader, a member of the room). The room
+     * gets a "new-file" event on its SSE stream and message long-poll, so clients call
+     * /api/files/poll when something was shared instead of on a timer. Sharing again is a no-op.
+     */
+    public FileUploadResponse shareToRoom(UUID fileId, UUID chatRoomId, UUID userId) {
+        File file = fileRepository.findById(fileId)
+            .filter(found -> found.getDeletedAt() == null)
+            .orElseThrow(() -> new ResourceNotFoundException("File not found"));
+        if (!file.getUploader().getId().equals(userId)) {
+            throw new UnauthorizedException("Only the uploader can share this file");
+        }
+        requireMember(chatRoomId, userId);
+
+        FileUploadResponse response = toResponse(file);
+        if (roomFileRepository.findByChatRoomIdAndFileId(chatRoomId, fileId).isPresent()) {
+            return response;
+        }
+        RoomFile shared = new RoomFile();
+        shared.setChatRoomId(chatRoomId);
+        shared.setFile(file);
+        shared.setSharedBy(userId);
+        shared.setSharedAt(LocalDateTime.now());
+        roomFileRepository.save(shared);
+
+        messageStreamService.publish(chatRoomId, "new-file", response); // Row is committed: pollers will see it
+        log.info("File {} shared to chat room {} by user {}", fileId, chatRoomId, userId);
+        return response;
+    }
+
+    /**
+     * Files shared to a room after a position, oldest first: a keyset scan of the room's
+     * timeline, so a poll that finds nothing reads no rows.
+     *
+     * @param sinceTimestamp first poll: files shared strictly after this ISO timestamp
+     * @param cursor         cursor of the previous poll; takes precedence over sinceTimestamp
+     */
+    public RoomFilesPage getFilesSince(String chatRoomId, String userId, String sinceTimestamp, String cursor) {
+        HistoryCursor position = HistoryCursor.decode(cursor);
+        if (position == null) {
+            try {
+                position = new HistoryCursor(LocalDateTime.parse(sinceTimestamp), AFTER_ALL_IDS);
+            } catch (Exception e) {
+                throw new RuntimeException("Invalid timestamp format", e);
+            }
+        }
+        UUID roomId;
+        try {
+            roomId = UUID.fromString(chatRoomId);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid chat room id");
+        }
+        requireMember(roomId, UUID.fromString(userId));
+
+        Slice<RoomFile> slice = roomFileRepository.findSharedAfter(roomId, position.timestamp(), position.id(),
+            PageRequest.of(0, POLL_LIMIT));
+        List<RoomFile> shared = slice.getContent();
+        if (!shared.isEmpty()) {
+            RoomFile last = shared.get(shared.size() - 1);
+            position = new HistoryCursor(last.getSharedAt(), last.getId());
+        }
+        return new RoomFilesPage(shared.stream().map(roomFile -> toResponse(roomFile.getFile())).toList(),
+            position.encode(), slice.hasNext());
+    }
+
+    // Uploader, or an active member of a room the file was shared to
+    private boolean canSee(File file, UUID userId) {
+        if (file.getUploader() != null && file.getUploader().getId().equals(userId)) {
+            return true;
+        }
+        return roomFileRepository.isSharedWithMember(file.getId(), userId);
+    }
+
+    private void requireMember(UUID chatRoomId, UUID userId) {
+        boolean member = membershipCache.memberUsername(chatRoomId, userId,
+            () -> chatRoomMemberRepository.findMemberUsername(chatRoomId, userId)).isPresent();
+        if (!member) {
+            throw new UnauthorizedException("Not a member of this chat room");
         }
-        
-      
-        return List.of();
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,8 @@ import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 
 public interface FileStorageService {
     
@@ -15,6 +17,29 @@ public interface FileStorageService {
      * @throws IOException If file storage fails (disk full, permissions, etc.)
      */
     String storeFile(MultipartFile file) throws IOException;
+
+    /**
+     * Stores a stream in a single pass: hashes it while writing and publishes it atomically,
+     * so a failed or rejected upload (the stream throws) never leaves a partial file behind
+     *
+     * @param content          The upload, read to the end and closed
+     * @param originalFilename Name the client gave the file, may be null
+     * @return Identifier, size and SHA-256 of what was stored
+     * @throws IOException If reading the upload or storing it fails
+     */
+    StoredFile storeStream(InputStream content, String originalFilename) throws IOException;
+
+    /**
+     * Stores a file that was assembled in place under the upload directory (chunked uploads):
+     * hashes it and renames it into place, so the content is not copied again
+     *
+     * @param assembled        Complete file under the upload directory; moved or deleted
+     * @param originalFilename Name the client gave the file, may be null
+     * @param expectedSha256   Hex SHA-256 the content must have, null to skip the check
+     * @return Identifier, size and SHA-256 of what was stored
+     * @throws IOException If reading or moving the file fails
+     */
+    StoredFile storeAssembled(Path assembled, String originalFilename, String expectedSha256) throws IOException;
     
     /**
      * Loads a previously stored file as a Spring Resource
@@ -25,6 +50,15 @@ public interface FileStorageService {
      */
     Resource loadFile(String filename) throws IOException;
     
+    /**
+     * Local path of a stored file, for downloads served with sendfile / FileChannel.transferTo
+     *
+     * @param filename The identifier/path returned by storeFile() or storeStream()
+     * @return Readable regular file
+     * @throws IOException If the file doesn't exist or isn't readable
+     */
+    Path resolveFile(String filename) throws IOException;
+
     /**
      * Deletes a stored file from the storage system
      * 
@@ -0,0 +1,41 @@
+package com.securechat.service;
+
+import com.securechat.dto.MessageListDto;
+import com.securechat.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a room's history: (timestamp, id) of the last row already returned.
+ * Encoded as URL-safe base64 so clients treat it as an opaque token.
+ * Used by message history (newest first) and the room file timeline (oldest first).
+ */
+record HistoryCursor(LocalDateTime timestamp, UUID id) {
+
+    static HistoryCursor of(MessageListDto message) {
+        return new HistoryCursor(message.timestamp(), message.id());
+    }
+
+    String encode() {
+        String raw = timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Null for a missing cursor (first page); ValidationException (400) for a tampered one
+    static HistoryCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | java.time.format.DateTimeParseException e) {
+            throw new ValidationException("Invalid history cursor");
+        }
+    }
+}
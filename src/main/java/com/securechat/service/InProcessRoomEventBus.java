@@ -0,0 +1,32 @@
+package com.securechat.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * Single-node bus: events are delivered straight to this JVM's subscribers.
+ * Default when app.sse.bus is not set to "redis".
+ */
+@Component
+@ConditionalOnProperty(name = "app.sse.bus", havingValue = "in-process", matchIfMissing = true)
+public class InProcessRoomEventBus implements RoomEventBus {
+
+    private volatile Consumer<RoomEvent> delivery = event -> { };
+
+    @Override
+    public void onLocalDelivery(Consumer<RoomEvent> delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    public void publish(RoomEvent event) {
+        delivery.accept(event);
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return false;
+    }
+}
@@ -1,5 +1,7 @@
 
 package com.securechat.service;
+import com.securechat.exception.ValidationException;
+import com.securechat.util.Hashing;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,21 +13,32 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
 import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class LocalFileStorageService implements FileStorageService {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern DERIVATIVE_VARIANT = Pattern.compile("[a-z0-9]+\\.[a-z]+"); // e.g. thumb320.jpg
+
     private final Path uploadDir;
+    private final Path incomingDir; // Uploads being received; same file system, so publishing is a rename
     // Constructor injection with default value if property not set
     @Autowired
     public LocalFileStorageService(@Value("${app.upload.dir:uploads}") String uploadDir) {
         this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.incomingDir = this.uploadDir.resolve(".incoming");
     }
 // Executes after dependency injection to ensure directory exists
     @PostConstruct
@@ -39,30 +52,121 @@ public class LocalFileStorageService implements FileStorageService {
                 throw e;
             }
         }
+        Files.createDirectories(incomingDir);
     }
 
     @Override
     public String storeFile(MultipartFile file) throws IOException {
-        String originalName = file.getOriginalFilename();
-        String sanitizedName = sanitizeFilename(originalName != null ? originalName : "file");
+        return storeStream(file.getInputStream(), file.getOriginalFilename()).path();
+    }
+
+    /**
+     * Copies the upload into .incoming while hashing it, then renames it into place.
+     * Every byte is read and written once; an upload that fails midway (client gone, size or
+     * content check thrown by the stream) only ever existed under .incoming and is deleted.
+     */
+    @Override
+    public StoredFile storeStream(InputStream content, String originalFilename) throws IOException {
+        return publish(receive(content), originalFilename);
+    }
+
+    /** Hashes the assembled file and renames it into place; the bytes are not copied. */
+    @Override
+    public StoredFile storeAssembled(Path assembled, String originalFilename, String expectedSha256)
+            throws IOException {
+        return publish(adopt(assembled, expectedSha256), originalFilename);
+    }
+
+    private StoredFile publish(Received received, String originalFilename) throws IOException {
+        String sanitizedName = sanitizeFilename(originalFilename != null ? originalFilename : "file");
         // Generate unique filename to prevent collisions
         String uniqueFileName = UUID.randomUUID() + "_" + sanitizedName;
         Path filePath = uploadDir.resolve(uniqueFileName).normalize();
 
-        // Extra security check: ensure the resolved path is still inside the upload directory
-        if (!filePath.startsWith(uploadDir)) {
-            log.error("Attempted path traversal detected during store: {}", uniqueFileName);
-            throw new SecurityException("Cannot store file outside of upload directory");
+        try {
+            // Extra security check: ensure the resolved path is still inside the upload directory
+            if (!filePath.startsWith(uploadDir)) {
+                log.error("Attempted path traversal detected during store: {}", uniqueFileName);
+                throw new SecurityException("Cannot store file outside of upload directory");
+            }
+            Files.move(received.partial(), filePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(received.partial());
+            throw e;
         }
+        log.debug("Stored file {} at {} ({} bytes)", uniqueFileName, filePath, received.size());
+        return new StoredFile(uniqueFileName, received.size(), received.contentHash());
+    }
 
-        try {
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.debug("Stored file {} at {}", uniqueFileName, filePath);
-            return uniqueFileName;
-        } catch (IOException e) {
-            log.error("Failed to store file {}: {}", uniqueFileName, e.getMessage());
+    /**
+     * Writes the upload to a new file under .incoming, hashing it on the way. The caller moves
+     * the file into place (same file system, so a rename) or deletes it; if the stream fails it
+     * is deleted here.
+     */
+    Received receive(InputStream content) throws IOException {
+        MessageDigest digest = Hashing.sha256();
+        long size = 0;
+        Path partial = Files.createTempFile(incomingDir, "upload-", ".part");
+        try (InputStream in = content; OutputStream out = Files.newOutputStream(partial)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            log.warn("Upload not stored: {}", e.getMessage());
             throw e;
         }
+        return new Received(partial, size, Hashing.hex(digest));
+    }
+
+    /**
+     * Takes over a complete file written elsewhere under the upload dir (a chunked upload
+     * session), hashing it with one sequential read. Like receive(), the caller then moves
+     * or deletes it; on failure (including a hash other than {@code expectedSha256}, when given)
+     * it is deleted here.
+     */
+    Received adopt(Path file, String expectedSha256) throws IOException {
+        Path partial = file.toAbsolutePath().normalize();
+        if (!partial.startsWith(uploadDir)) { // Publishing must stay a rename on one file system
+            throw new SecurityException("Cannot adopt file outside of upload directory");
+        }
+        MessageDigest digest = Hashing.sha256();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(partial)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            log.warn("Upload not stored: {}", e.getMessage());
+            throw e;
+        }
+        String contentHash = Hashing.hex(digest);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(contentHash)) {
+            Files.deleteIfExists(partial);
+            log.warn("Assembled upload {} does not match its checksum", partial.getFileName());
+            throw new ValidationException("File checksum mismatch");
+        }
+        return new Received(partial, size, contentHash);
+    }
+
+    Path uploadDir() {
+        return uploadDir;
+    }
+
+    Path incomingDir() {
+        return incomingDir;
+    }
+
+    /** An upload written to .incoming (or a session file), not yet published. */
+    record Received(Path partial, long size, String contentHash) {
     }
 
     @Override
@@ -78,6 +182,20 @@ public class LocalFileStorageService implements FileStorageService {
         return resource;
     }
 
+    /**
+     * Path of a stored file, for downloads that hand the file to the kernel (sendfile /
+     * FileChannel.transferTo) instead of streaming it through a Resource.
+     */
+    @Override
+    public Path resolveFile(String filename) throws IOException {
+        Path filePath = validateAndResolvePath(filename);
+        if (!Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
+            log.warn("File not found or not readable: {}", filename);
+            throw new FileNotFoundException("File not found: " + filename);
+        }
+        return filePath;
+    }
+
     @Override
     public void deleteFile(String filename) throws IOException {
         Path filePath = validateAndResolvePath(filename);
@@ -86,6 +204,47 @@ public class LocalFileStorageService implements FileStorageService {
         } else {
             log.debug("Delete skipped, file not found: {}", filename);
         }
+        deleteDerivatives(filename);
+    }
+
+    /**
+     * Path of a derivative of a stored file (thumbnail): "{filename}.{variant}" in the same
+     * directory, so it is found from the original's path and removed together with it.
+     */
+    public Path resolveDerivative(String filename, String variant) {
+        if (!DERIVATIVE_VARIANT.matcher(variant).matches()) {
+            throw new SecurityException("Invalid derivative name");
+        }
+        return validateAndResolvePath(filename + "." + variant);
+    }
+
+    /** Writes a derivative under .incoming and renames it into place, so it is never seen half written. */
+    public void storeDerivative(String filename, String variant, byte[] content) throws IOException {
+        Path target = resolveDerivative(filename, variant);
+        Path partial = Files.createTempFile(incomingDir, "derivative-", ".part");
+        try {
+            Files.write(partial, content);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+    }
+
+    /** Deletes every derivative of a stored file; called when the file itself goes. */
+    void deleteDerivatives(String filename) throws IOException {
+        Path original = validateAndResolvePath(filename);
+        if (!Files.isDirectory(original.getParent())) {
+            return;
+        }
+        String prefix = original.getFileName() + ".";
+        List<Path> derivatives;
+        try (Stream<Path> siblings = Files.list(original.getParent())) {
+            derivatives = siblings.filter(path -> path.getFileName().toString().startsWith(prefix)).toList();
+        }
+        for (Path derivative : derivatives) {
+            Files.deleteIfExists(derivative);
+        }
     }
  // Centralized path validation and resolution logic
     private Path validateAndResolvePath(String filename) {
@@ -0,0 +1,170 @@
+package com.securechat.service;
+
+import com.securechat.util.TransactionHooks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Authorization cache for the message hot path: (roomId, userId) -> username of an active member,
+ * or "not a member". Every send, page fetch, poll and stream subscription checks membership,
+ * so in steady state this answers from memory instead of one query per request.
+ *
+ * - Local tier: bounded LRU with TTLs (short one for negative entries) as a safety net.
+ * - Optional Redis tier (app.membership-cache.redis=true): shared positive entries, and
+ *   invalidations are broadcast so every node drops its local copy. Shared writes are
+ *   conditional on the room's epoch, so a load racing a removal on another node is not stored.
+ * - Membership changes call invalidate(): the entry is dropped right away and again after
+ *   the transaction commits; a load that raced the change is not stored (write stamps,
+ *   same approach as RecentMessageCache).
+ */
+@Component
+public class MembershipCache {
+
+    private static final int STRIPES = 1024;  // Power of two, see stripe()
+    private static final String NOT_MEMBER = "";  // Negative entry; usernames are never blank
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<Key, Entry> entries;  // Access-ordered: eldest = least recently checked
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STRIPES);
+    private final RedisMembershipCacheTier redisTier;  // Null unless enabled
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    @Autowired
+    public MembershipCache(@Value("${app.membership-cache.max-entries:100000}") int maxEntries,
+                           @Value("${app.membership-cache.ttl-seconds:300}") long ttlSeconds,
+                           @Value("${app.membership-cache.negative-ttl-seconds:30}") long negativeTtlSeconds,
+                           MeterRegistry meterRegistry,
+                           Optional<RedisMembershipCacheTier> redisTier) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > MembershipCache.this.maxEntries;
+            }
+        };
+        this.redisTier = redisTier.orElse(null);
+        if (this.redisTier != null) {
+            this.redisTier.onRemoteInvalidation(this::evictLocal);
+        }
+        this.localHits = meterRegistry.counter("securechat.membership_cache", "result", "hit", "tier", "local");
+        this.redisHits = meterRegistry.counter("securechat.membership_cache", "result", "hit", "tier", "redis");
+        this.misses = meterRegistry.counter("securechat.membership_cache", "result", "miss", "tier", "database");
+    }
+
+    // For unit tests: local tier only
+    MembershipCache(int maxEntries, long ttlSeconds, long negativeTtlSeconds) {
+        this(maxEntries, ttlSeconds, negativeTtlSeconds, new SimpleMeterRegistry(), Optional.empty());
+    }
+
+    /**
+     * Username of the user if they are an active member of the room, empty if not.
+     * {@code loader} is the database lookup, only called on a miss in every tier.
+     */
+    public Optional<String> memberUsername(UUID roomId, UUID userId, Supplier<Optional<String>> loader) {
+        Key key = new Key(roomId, userId);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                localHits.increment();
+                return toResult(entry.username());
+            }
+        }
+
+        long stamp = writeStamps.get(stripe(roomId));
+        RedisMembershipCacheTier.Lookup shared = redisTier != null ? redisTier.get(roomId, userId) : null;
+        String username = shared != null ? shared.username() : null;
+        boolean fromDatabase = username == null;
+        if (fromDatabase) {
+            misses.increment();
+            username = loader.get().orElse(NOT_MEMBER);
+        } else {
+            redisHits.increment();
+        }
+
+        long ttl = NOT_MEMBER.equals(username) ? negativeTtlNanos : ttlNanos;
+        boolean current;
+        synchronized (entries) {
+            current = writeStamps.get(stripe(roomId)) == stamp;  // Remote invalidations bump it too
+            if (current) {
+                entries.put(key, new Entry(username, System.nanoTime() + ttl));
+            }
+        }
+        if (current && fromDatabase && shared != null && !NOT_MEMBER.equals(username)) {
+            redisTier.put(roomId, userId, username, shared.epoch(), ttlNanos);  // Dropped if any node changed the room since
+        }
+        return toResult(username);
+    }
+
+    /**
+     * A user joined, left or was removed; call from inside the transaction that changes it.
+     * This node forgets the entry at once (and again on commit, for reads that raced the
+     * transaction); the other nodes are only told once it commits, never for a rollback.
+     */
+    public void invalidate(UUID roomId, UUID userId) {
+        evictLocal(roomId, userId);
+        TransactionHooks.afterCommit(() -> evictEverywhere(roomId, userId));
+    }
+
+    /** Every membership of a room is gone (room deleted). */
+    public void invalidateRoom(UUID roomId) {
+        invalidate(roomId, null);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictEverywhere(UUID roomId, UUID userId) {
+        evictLocal(roomId, userId);
+        if (redisTier != null) {
+            redisTier.invalidate(roomId, userId);  // Also tells the other nodes
+        }
+    }
+
+    // userId null = the whole room
+    void evictLocal(UUID roomId, UUID userId) {
+        synchronized (entries) {
+            writeStamps.incrementAndGet(stripe(roomId));
+            if (userId != null) {
+                entries.remove(new Key(roomId, userId));
+            } else {
+                entries.keySet().removeIf(key -> key.roomId().equals(roomId));
+            }
+        }
+    }
+
+    private static Optional<String> toResult(String username) {
+        return NOT_MEMBER.equals(username) ? Optional.empty() : Optional.of(username);
+    }
+
+    private static int stripe(UUID roomId) {
+        return roomId.hashCode() & (STRIPES - 1);
+    }
+
+    private record Key(UUID roomId, UUID userId) {
+    }
+
+    private record Entry(String username, long expiresAt) {
+    }
+}
@@ -1,4 +1,6 @@
 package com.securechat.service;
+import com.securechat.dto.LongPollResponse;
+import com.securechat.dto.MessageHistoryPage;
 import com.securechat.dto.MessageListDto;
 import com.securechat.entity.ChatRoom;
 import com.securechat.entity.Message;
@@ -8,19 +10,29 @@ import com.securechat.repository.ChatRoomRepository;
 import com.securechat.repository.MessageRepository;
 import com.securechat.repository.UserRepository;
 import com.securechat.util.InputSanitizer; 
+import com.securechat.util.TransactionHooks;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 /**
  * Service for message operations.
@@ -35,6 +47,12 @@ import java.util.UUID;
 @Slf4j  // Lombok: provides logger instance
 public class MessageService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;  // Upper bound for one history slice
+
+    // Room events that change message history (other nodes' RecentMessageCache drops the room on them)
+    public static final String NEW_MESSAGE_EVENT = "new-message";
+    public static final String MESSAGE_DELETED_EVENT = "message-deleted";
+
     // Repositories for database operations
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
@@ -42,6 +60,11 @@ public class MessageService {
     private final ChatRoomMemberRepository chatRoomMemberRepository; // For membership validation
     private final InputSanitizer inputSanitizer;  // HTML/script sanitization utility
     private final MessageStreamService messageStreamService;  // For real-time message streaming
+    private final RecentMessageCache recentMessageCache;  // Newest messages of hot rooms (page 0)
+    private final MembershipCache membershipCache;  // Authorization checks without a query per request
+
+    @Autowired(required = false)
+    private MessageWriteBatcher messageWriteBatcher;  // Only present with app.messages.group-commit.enabled=true
 
     // Get a single message as DTO (Data Transfer Object) by ID
     public Optional<MessageListDto> getMessageDtoById(UUID id) {
@@ -68,48 +91,24 @@ public class MessageService {
                 throw new IllegalArgumentException("ChatRoomId, userId, and content cannot be null");
             }
 
-            // Step 2: Check if user is a member of the chat room (early validation)
-            boolean isMember = chatRoomMemberRepository
-                    .existsByChatRoomIdAndUserId(chatRoomId, userId);
+            // Step 2: Membership check that also returns the sender's username (one query, no entity loads)
+            String username = requireMemberUsername(chatRoomId, userId);
 
-            if (!isMember) {
-                log.warn("User {} is not a member of chat room {}", userId, chatRoomId);
-                throw new RuntimeException("User is not a member of this chat room");
-            }
+            // Step 3: FK references only - the membership row already proves both exist, so no SELECTs here
+            User user = userRepository.getReferenceById(userId);
+            ChatRoom chatRoom = chatRoomRepository.getReferenceById(chatRoomId);
 
-            // Step 3: Retrieve user entity from database
-            User user = userRepository.findById(userId)
-                    .orElseThrow(() -> {
-                        log.error("User not found: {}", userId);
-                        return new RuntimeException("User not found: " + userId);
-                    });
-
-            // Step 4: Retrieve chat room entity from database
-            ChatRoom chatRoom = chatRoomRepository.findById(chatRoomId)
-                    .orElseThrow(() -> {
-                        log.error("Chat room not found: {}", chatRoomId);
-                        return new RuntimeException("Chat room not found: " + chatRoomId);
-                    });
-
-            // Step 5: Sanitize message content to prevent XSS attacks
+            // Step 4: Sanitize message content to prevent XSS attacks
             String sanitizedContent = inputSanitizer.sanitize(content);
 
-            // Step 6: Create and configure new message entity
-            Message message = new Message();
-            message.setId(UUID.randomUUID());  // Generate unique ID
-            message.setSender(user);  // Set sender reference
-            message.setChatRoom(chatRoom); 
-            message.setUsername(user.getUsername());  // Store username for quick access
-            message.setContent(sanitizedContent);  // Set sanitized content
-            message.setMessageType(Message.MessageType.TEXT);  
-            message.setTimestamp(LocalDateTime.now());  
-            message.setIsDeleted(false);  // Not deleted initially
-            message.setIsEdited(false);  
-
-            // Step 7: Persist message to database
-            Message saved = messageRepository.save(message);
+            // Step 5: Create the entity and persist it (single INSERT at flush)
+            Message saved = messageRepository.save(
+                    newTextMessage(user, chatRoom, username, sanitizedContent, LocalDateTime.now()));
             log.debug("Message created successfully: id={}", saved.getId());
 
+            // Step 6: Write-through to the room's cached tail once the row is visible to readers
+            MessageListDto cached = toListDto(saved, userId);
+            TransactionHooks.afterCommit(() -> recentMessageCache.append(chatRoomId, cached));
 
             // Real-time updates would typically be triggered from controller layer
 
@@ -130,24 +129,92 @@ public class MessageService {
         }
     }
 
-    // Check if user is member of chat room (string parameter version)
+    public boolean isGroupCommitEnabled() {
+        return messageWriteBatcher != null;
+    }
+
+    /**
+     * Group-commit variant of createMessage (app.messages.group-commit.enabled=true).
+     * Same checks, but the INSERT is handed to MessageWriteBatcher and shares a transaction
+     * with other sends; this returns once that transaction has committed, exactly like
+     * createMessage. Runs without a transaction of its own so no connection is held while
+     * the batch is pending.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Message createMessageGroupCommitted(UUID chatRoomId, UUID userId, String content) {
+        if (messageWriteBatcher == null) {
+            throw new IllegalStateException("Group commit is not enabled");
+        }
+        if (chatRoomId == null || userId == null || content == null) {
+            throw new IllegalArgumentException("ChatRoomId, userId, and content cannot be null");
+        }
+        String username = requireMemberUsername(chatRoomId, userId);
+        String sanitizedContent = inputSanitizer.sanitize(content);
+
+        Message saved;
+        try {
+            saved = messageWriteBatcher.submit(chatRoomId, userId, username, sanitizedContent, LocalDateTime.now()).join();
+        } catch (CompletionException e) {
+            // Surface the batch failure itself, the controller maps it like a createMessage error
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        recentMessageCache.append(chatRoomId, toListDto(saved, userId));  // Already committed
+        return saved;
+    }
+
+    // Membership check and sender username, from MembershipCache (one query on a miss)
+    private String requireMemberUsername(UUID chatRoomId, UUID userId) {
+        return memberUsername(chatRoomId, userId)
+                .orElseThrow(() -> {
+                    log.warn("User {} is not a member of chat room {}", userId, chatRoomId);
+                    return new RuntimeException("User is not a member of this chat room");
+                });
+    }
+
+    // New text message; no id here: a preset id makes save() merge, which SELECTs the row before inserting it
+    static Message newTextMessage(User sender, ChatRoom chatRoom, String username, String content,
+                                  LocalDateTime timestamp) {
+        Message message = new Message();
+        message.setSender(sender);  // Set sender reference
+        message.setChatRoom(chatRoom);
+        message.setUsername(username);  // Store username for quick access
+        message.setContent(content);  // Already sanitized
+        message.setMessageType(Message.MessageType.TEXT);
+        message.setTimestamp(timestamp);
+        message.setIsDeleted(false);  // Not deleted initially
+        message.setIsEdited(false);
+        return message;
+    }
+
+    private static MessageListDto toListDto(Message message, UUID senderId) {
+        return new MessageListDto(message.getId(), message.getContent(), message.getUsername(), senderId,
+                message.getTimestamp(), message.getMessageType().name(), message.getIsEdited(), message.getEditedAt());
+    }
+
+    private Optional<String> memberUsername(UUID chatRoomId, UUID userId) {
+        return membershipCache.memberUsername(chatRoomId, userId,
+                () -> chatRoomMemberRepository.findMemberUsername(chatRoomId, userId));
+    }
+
+    // Check if user is an active member of chat room (string parameter version), cached
     public boolean isChatRoomMember(String chatRoomId, String userId) {
         try {
-            return chatRoomMemberRepository.existsByChatRoomIdAndUserId(
+            return memberUsername(
                     UUID.fromString(chatRoomId),  // Convert to UUID
-                    UUID.fromString(userId));   
+                    UUID.fromString(userId)).isPresent();
         } catch (IllegalArgumentException e) {
             // Return false for invalid UUID format
             return false;
         }
     }
 
-    // Get messages after specific timestamp (for polling/updates)
+    // Get messages after specific timestamp (for polling/updates), oldest first; at most
+    // MAX_HISTORY_PAGE_SIZE, the client polls again from the last one's timestamp for the rest
     public List<Message> getMessagesSince(String chatRoomId, String sinceTimestamp) {
         LocalDateTime since = LocalDateTime.parse(sinceTimestamp);  
 
         return messageRepository.findByChatRoomAndTimestampAfter(
-                UUID.fromString(chatRoomId), since);  // Query messages after given time
+                UUID.fromString(chatRoomId), since, PageRequest.of(0, MAX_HISTORY_PAGE_SIZE));  // Query messages after given time
     }
 
     // Subscribe to real-time message stream for a chat room
@@ -155,6 +222,66 @@ public class MessageService {
         return messageStreamService.subscribe(UUID.fromString(chatRoomId));
     }
 
+    /**
+     * Resume a dropped stream from the SSE Last-Event-ID header.
+     * Missed events are replayed from memory; the database is only queried when the
+     * client has been away longer than the replay buffer covers.
+     */
+    @Transactional(readOnly = true)
+    public Object getStreamForChatRoom(String chatRoomId, String lastEventId) {
+        Long resumeFrom = parseEventId(lastEventId);
+        if (resumeFrom == null) {
+            return getStreamForChatRoom(chatRoomId);  // Fresh subscription
+        }
+        UUID roomId = UUID.fromString(chatRoomId);
+        return messageStreamService.subscribe(roomId, resumeFrom, (since, limit) -> loadCatchUp(roomId, since, limit));
+    }
+
+    /**
+     * Long-poll for new messages after a cursor (see MessageStreamService.poll).
+     * The database is only read when the cursor is older than the in-memory buffer.
+     */
+    @Transactional(readOnly = true)
+    public DeferredResult<LongPollResponse> longPollMessages(String chatRoomId, Long after, long timeoutMs) {
+        UUID roomId = UUID.fromString(chatRoomId);
+        return messageStreamService.poll(roomId, after, timeoutMs, (since, limit) -> loadCatchUp(roomId, since, limit));
+    }
+
+    // The newest messages after the client's cursor, oldest first; bounded however old the cursor is
+    private List<?> loadCatchUp(UUID roomId, LocalDateTime since, int limit) {
+        List<Message> messages = new ArrayList<>(messageRepository.findNewestByChatRoomAndTimestampAfter(roomId, since,
+                PageRequest.of(0, limit)));
+        Collections.reverse(messages);
+        return messages.stream()
+                .map(com.securechat.mapper.MessageDtoMapper::toDto)
+                .toList();
+    }
+
+    /**
+     * One stream for every room the user is an active member of (GET /api/stream).
+     * Rooms joined or left later are added/removed live by the membership services.
+     */
+    @Transactional(readOnly = true)
+    public Object getStreamForUser(UUID userId) {
+        List<UUID> roomIds = chatRoomMemberRepository.findActiveByUserId(userId).stream()
+                .map(member -> member.getChatRoom().getId())
+                .toList();
+        return messageStreamService.subscribeUser(userId, roomIds);
+    }
+
+    // Last-Event-ID is opaque to clients; ignore anything that is not one of our numeric IDs
+    private Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed Last-Event-ID: {}", lastEventId);
+            return null;
+        }
+    }
+
     // Inner class for pagination parameters
     public static class PaginationRequest {
         private final int page;  // Page number (0-based)
@@ -212,11 +339,41 @@ public class MessageService {
     /**
      * Get messages as DTOs to avoid lazy loading issues.
      * Uses DTO projection for better performance (avoids N+1 query problem).
+     * Page 0 is served from RecentMessageCache; only a cold room or a deeper page hits the database.
      */
     @Transactional(readOnly = true)
     public Page<MessageListDto> getMessageDtosPaginated(UUID chatRoomId, PaginationRequest request) {
         Pageable pageable = PageRequest.of(request.page(), request.size());
-        return messageRepository.findMessageDtosByChatRoomId(chatRoomId, pageable);
+        if (request.page() != 0 || request.size() > recentMessageCache.getMessagesPerRoom()) {
+            return messageRepository.findMessageDtosByChatRoomId(chatRoomId, pageable);
+        }
+        RecentMessageCache.Snapshot tail = recentMessageCache.firstPage(chatRoomId, request.size(), () ->
+                messageRepository.findMessageDtosByChatRoomId(chatRoomId,
+                        PageRequest.of(0, recentMessageCache.getMessagesPerRoom())));
+        return new PageImpl<>(tail.messages(), pageable, tail.totalElements());
+    }
+
+    /**
+     * Keyset (cursor) pagination over a room's history, newest first.
+     * Every slice is one range scan on idx_message_chatroom_timestamp below the previous
+     * slice's last (timestamp, id), so deep scrollback costs the same as the first page,
+     * and no COUNT(*) is issued (Slice only fetches one extra row to know if more exist).
+     *
+     * @param cursor nextCursor of the previous slice, or null for the newest messages
+     */
+    @Transactional(readOnly = true)
+    public MessageHistoryPage getMessageHistory(UUID chatRoomId, String cursor, int size) {
+        Pageable limit = PageRequest.of(0, Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE)));
+        HistoryCursor position = HistoryCursor.decode(cursor);
+        Slice<MessageListDto> slice = position == null
+                ? messageRepository.findLatestMessageDtos(chatRoomId, limit)
+                : messageRepository.findMessageDtosBefore(chatRoomId, position.timestamp(), position.id(), limit);
+
+        List<MessageListDto> messages = slice.getContent();
+        String nextCursor = slice.hasNext() && !messages.isEmpty()
+                ? HistoryCursor.of(messages.get(messages.size() - 1)).encode()
+                : null;
+        return new MessageHistoryPage(messages, nextCursor);
     }
 
     /**
@@ -232,6 +389,17 @@ public class MessageService {
 
         message.softDelete(userId);  // Update message entity (sets isDeleted = true)
         messageRepository.save(message);  // Persist changes
+        if (message.getChatRoom() != null) {
+            UUID chatRoomId = message.getChatRoom().getId();
+            recentMessageCache.invalidate(chatRoomId);  // Stop serving it right away...
+            TransactionHooks.afterCommit(() -> {
+                recentMessageCache.invalidate(chatRoomId);  // ...and drop a reload that raced the commit
+                // Clients and the other nodes' tail caches
+                messageStreamService.publish(chatRoomId, MESSAGE_DELETED_EVENT,
+                        Map.of("id", messageId, "chatRoomId", chatRoomId));
+            });
+        }
         log.info("Message {} soft deleted by user {}", messageId, userId);
     }
+
 }
\ No newline at end of file
@@ -1,85 +1,713 @@
 package com.securechat.service;
-import org.springframework.http.MediaType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securechat.dto.LongPollResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
+/**
+ * Fan-out engine for Server-Sent Events.
+ *
+ * publish() never writes to a socket itself: every subscriber owns a bounded send queue
+ * that is drained on a shared fan-out executor, so a slow client only delays its own events
+ * and the HTTP thread that published the message returns immediately.
+ * Payloads are serialized once per publish and the same bytes are written to every subscriber.
+ * Each event carries a per-room monotonic ID and is kept in a small replay buffer, so a client
+ * reconnecting with Last-Event-ID only receives what it missed.
+ * A scheduled heartbeat writes a comment to idle connections so dead sockets are found and
+ * released within a few intervals instead of at the 30-minute timeout.
+ * subscribeUser() multiplexes all of a user's rooms over one connection; each event is
+ * wrapped as {"roomId": ..., "data": ...} and membership changes update it live.
+ * poll() serves long-poll clients from the same replay buffer: a request waits on a
+ * DeferredResult (no thread, no query) until the room's next event or its timeout.
+ */
 @Service
+@Slf4j
 public class MessageStreamService {
 
     // Connection timeout: 30 minutes (allows long-polling for real-time updates)
-    private static final long DEFAULT_TIMEOUT = 30 * 60 * 1000L; 
+    private static final long DEFAULT_TIMEOUT = 30 * 60 * 1000L;
+
+    // Replay buffers of rooms without subscribers are dropped after 10 minutes of inactivity
+    private static final long REPLAY_RETENTION_MS = 10 * 60 * 1000L;
+    private static final long REPLAY_SWEEP_INTERVAL_MS = 60 * 1000L;
+
+    // Database catch-up starts slightly before the last seen event (message timestamps precede publish)
+    private static final Duration CATCH_UP_SKEW = Duration.ofSeconds(5);
+    private static final String CATCH_UP_EVENT = "new-message";
+    // Database catch-up sends at most this many messages, the newest; a client further behind gets
+    // a "reset" event first and reloads older history itself (GET /messages/history)
+    static final int MAX_CATCH_UP_MESSAGES = 500;
+    static final String CATCH_UP_RESET_EVENT = "reset";
+    private static final byte[] CATCH_UP_RESET_DATA =
+            ("{\"missedMoreThan\":" + MAX_CATCH_UP_MESSAGES + "}").getBytes(StandardCharsets.UTF_8);
+
+    // Heartbeat defaults (overridden by app.sse.heartbeat-* properties)
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 15 * 1000L;
+    private static final long DEFAULT_STALL_TIMEOUT_MS = 60 * 1000L;
+    private static final int DEFAULT_HEARTBEAT_BATCH_SIZE = 500;
+
+    // Shared comment frame written to idle connections (": hb")
+    private static final EncodedSseEvent HEARTBEAT = EncodedSseEvent.commentFrame("hb");
+
+    // Internal bus event carrying a membership change ("+userId" / "-userId"), never sent to clients
+    static final String MEMBERSHIP_EVENT = "sse:membership";
+    private static final byte[] ROOM_DELETED_CHANGE = "-*".getBytes(StandardCharsets.UTF_8);  // Every user left
+
+    /**
+     * What to do when a subscriber's send queue is full (slow or stalled client).
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,  // Discard the oldest queued event to make room for the new one
+        DROP_NEWEST,  // Discard the incoming event and keep what is already queued
+        DISCONNECT    // Close the slow subscriber; the client reconnects and catches up
+    }
 
     // Thread-safe storage: room ID -> list of active SSE connections for that room
     private final Map<UUID, CopyOnWriteArrayList<SseEmitter>> roomEmitters = new ConcurrentHashMap<>();
-    
+
+    // Outbound queue per connection (identity keyed: SseEmitter does not override equals)
+    private final Map<SseEmitter, SubscriberQueue> subscriberQueues = new ConcurrentHashMap<>();
+
+    // Recent events per room for Last-Event-ID replay
+    private final Map<UUID, RoomReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+
+    // Per-room queue depth / dropped events (debug detail only; dropped once the room has no subscribers)
+    private final Map<UUID, RoomStats> roomStats = new ConcurrentHashMap<>();
+    private final RoomStats roomStreamStats;  // Node-wide totals for /{chatRoomId}/stream connections, backing the metrics
+
+    // Multiplexed streams: user ID -> open /api/stream connections, room ID -> streams watching it
+    private final Map<UUID, CopyOnWriteArrayList<UserStream>> userStreams = new ConcurrentHashMap<>();
+    private final Map<UUID, CopyOnWriteArrayList<UserStream>> roomUserStreams = new ConcurrentHashMap<>();
+    private final RoomStats userStreamStats;  // Queue metrics shared by all multiplexed streams
+
+    // Parked long-poll requests per room, completed by deliver() or by their own timeout
+    private final Map<UUID, Set<DeferredResult<LongPollResponse>>> roomPollers = new ConcurrentHashMap<>();
+
     // Factory pattern for creating emitters (allows easier testing/mocking)
     private final EmitterFactory emitterFactory = new EmitterFactory();
 
+    private final Executor fanOutExecutor;  // Drains subscriber queues off the request thread
+    private final RoomEventBus roomEventBus;  // In-process or Redis broadcast between nodes
+    private final ObjectMapper objectMapper;  // Encodes each payload once per publish
+    private final MeterRegistry meterRegistry;
+    private final int queueCapacity;        // Max pending events per subscriber
+    private final OverflowPolicy overflowPolicy;
+    private final int replayBufferSize;     // Events kept per room for reconnecting clients
+    private final long heartbeatIntervalMs; // Idle connections get a comment at least this often
+    private final long stallTimeoutMs;      // Pending events without a successful write for this long = dead client
+    private final int heartbeatBatchSize;   // Connections handled per heartbeat task on the fan-out executor
+
+    private final AtomicLong reapedEmitters = new AtomicLong();  // Connections closed by heartbeat / stall checks
+
+    @Autowired
+    public MessageStreamService(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            RoomEventBus roomEventBus,
+            @Value("${app.sse.fanout-threads:4}") int fanOutThreads,
+            @Value("${app.sse.queue-capacity:256}") int queueCapacity,
+            @Value("${app.sse.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+            @Value("${app.sse.replay-buffer-size:256}") int replayBufferSize,
+            @Value("${app.sse.heartbeat-interval-ms:15000}") long heartbeatIntervalMs,
+            @Value("${app.sse.stall-timeout-ms:60000}") long stallTimeoutMs,
+            @Value("${app.sse.heartbeat-batch-size:500}") int heartbeatBatchSize) {
+        this(Executors.newFixedThreadPool(fanOutThreads, fanOutThreadFactory()),
+                objectMapper, meterRegistry, roomEventBus, queueCapacity, overflowPolicy, replayBufferSize,
+                heartbeatIntervalMs, stallTimeoutMs, heartbeatBatchSize);
+    }
+
+    // Package-private constructor for testing (allows a same-thread executor, default heartbeat settings)
+    MessageStreamService(Executor fanOutExecutor, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                         RoomEventBus roomEventBus, int queueCapacity, OverflowPolicy overflowPolicy,
+                         int replayBufferSize) {
+        this(fanOutExecutor, objectMapper, meterRegistry, roomEventBus, queueCapacity, overflowPolicy,
+                replayBufferSize, DEFAULT_HEARTBEAT_INTERVAL_MS, DEFAULT_STALL_TIMEOUT_MS, DEFAULT_HEARTBEAT_BATCH_SIZE);
+    }
+
+    MessageStreamService(Executor fanOutExecutor, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                         RoomEventBus roomEventBus, int queueCapacity, OverflowPolicy overflowPolicy,
+                         int replayBufferSize, long heartbeatIntervalMs, long stallTimeoutMs,
+                         int heartbeatBatchSize) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("SSE queue capacity must be at least 1");
+        }
+        this.fanOutExecutor = fanOutExecutor;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.replayBufferSize = replayBufferSize;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.stallTimeoutMs = stallTimeoutMs;
+        this.heartbeatBatchSize = Math.max(1, heartbeatBatchSize);
+        this.roomEventBus = roomEventBus;
+        roomEventBus.onLocalDelivery(this::deliver);  // Events from any node end up in deliver()
+
+        // Node-wide metrics only: a room tag would mean one series per room that ever had a subscriber
+        Gauge.builder("securechat.sse.emitters.total", this, MessageStreamService::getLiveEmitterCount)
+                .description("Open SSE connections on this node")
+                .register(meterRegistry);
+        FunctionCounter.builder("securechat.sse.emitters.reaped", reapedEmitters, AtomicLong::get)
+                .description("SSE connections closed because a heartbeat failed or the client stalled")
+                .register(meterRegistry);
+        Gauge.builder("securechat.sse.user.streams", userStreams,
+                        streams -> streams.values().stream().mapToInt(List::size).sum())
+                .description("Open multiplexed (all rooms of a user) SSE connections on this node")
+                .register(meterRegistry);
+        this.roomStreamStats = registerStats(new RoomStats(null), "room");
+        this.userStreamStats = registerStats(new RoomStats(null), "user");
+        Gauge.builder("securechat.longpoll.pending", roomPollers,
+                        pollers -> pollers.values().stream().mapToInt(Set::size).sum())
+                .description("Long-poll requests waiting for a room event on this node")
+                .register(meterRegistry);
+    }
+
     /**
      * Subscribe a client to receive real-time updates for a specific chat room.
      * Creates an SSE connection that will receive events when messages are published.
      */
     public SseEmitter subscribe(UUID roomId) {
+        return subscribe(roomId, null, null);
+    }
+
+    /**
+     * Subscribe a reconnecting client (SSE Last-Event-ID header).
+     *
+     * Events newer than lastEventId are replayed from the room's in-memory buffer. Only when
+     * the gap is larger than the buffer is catchUpLoader called with the time to load missed
+     * messages from the database; those are sent as "new-message" events before live ones.
+     * The catch-up is capped at MAX_CATCH_UP_MESSAGES, whatever the client's Last-Event-ID.
+     *
+     * @param lastEventId   last event ID the client received, or null for a fresh subscription
+     * @param catchUpLoader loads at most the given number of the newest message payloads newer
+     *                      than the given time, oldest first (may be null)
+     */
+    public SseEmitter subscribe(UUID roomId, Long lastEventId,
+                                BiFunction<LocalDateTime, Integer, List<?>> catchUpLoader) {
         // Create new SSE emitter with 30-minute timeout
         SseEmitter emitter = emitterFactory.createEmitter(DEFAULT_TIMEOUT);
-        
+        RoomReplayBuffer buffer = replayBufferFor(roomId);
+
+        // Gap larger than the buffer: load the missed range from the database (outside the room lock)
+        long resumeFrom = lastEventId != null ? lastEventId : 0;
+        List<EncodedSseEvent> catchUp = List.of();
+        if (lastEventId != null && catchUpLoader != null && !buffer.canReplayFrom(lastEventId)) {
+            long watermark = buffer.lastId();
+            catchUp = encodeCatchUp(watermark, loadCatchUp(catchUpLoader, lastEventId));
+            resumeFrom = watermark;  // Database covered everything up to the watermark
+        }
+
         // Get or create the list of emitters for this room (thread-safe)
-        CopyOnWriteArrayList<SseEmitter> emitters = roomEmitters.computeIfAbsent(roomId, 
+        CopyOnWriteArrayList<SseEmitter> emitters = roomEmitters.computeIfAbsent(roomId,
             id -> new CopyOnWriteArrayList<>());
-        
-        // Add new emitter to the room's subscriber list
-        emitters.add(emitter);
+        SubscriberQueue queue = new SubscriberQueue(roomId, emitter);
+
+        // Replay and registration happen under the room lock so no event is missed or duplicated
+        synchronized (buffer) {
+            catchUp.forEach(queue::offer);
+            if (lastEventId != null) {
+                buffer.eventsAfter(resumeFrom).forEach(queue::offer);
+            }
+            // Register the outbound queue before the emitter becomes visible to publishers
+            subscriberQueues.put(emitter, queue);
+            emitters.add(emitter);
+            buffer.touch();
+        }
 
         // Cleanup callbacks: automatically remove emitter when connection ends
-        emitter.onCompletion(() -> emitters.remove(emitter));     // Client closes connection
-        emitter.onTimeout(() -> emitters.remove(emitter));      
-        emitter.onError(e -> emitters.remove(emitter));           // Error occurs
+        emitter.onCompletion(() -> removeSubscriber(roomId, emitter));     // Client closes connection
+        emitter.onTimeout(() -> removeSubscriber(roomId, emitter));
+        emitter.onError(e -> removeSubscriber(roomId, emitter));           // Error occurs
 
         return emitter;  // Return emitter to client (Spring handles HTTP streaming)
     }
 
+    /**
+     * Subscribe a user to all of their rooms over a single connection.
+     *
+     * Room events arrive with their usual event name and the payload wrapped as
+     * {"roomId": "...", "data": ...}. When the user joins or leaves a room (userJoinedRoom /
+     * userLeftRoom, on any node) the stream starts or stops carrying that room and gets a
+     * "room-joined" / "room-left" event; a deleted room (roomDeleted) is left by everyone.
+     *
+     * @param roomIds rooms the user is currently an active member of
+     */
+    public SseEmitter subscribeUser(UUID userId, Collection<UUID> roomIds) {
+        SseEmitter emitter = emitterFactory.createEmitter(DEFAULT_TIMEOUT);
+        UserStream stream = new UserStream(userId, emitter);
+
+        subscriberQueues.put(emitter, stream.queue);
+        userStreams.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(stream);
+        roomIds.forEach(roomId -> watchRoom(stream, roomId));
+
+        emitter.onCompletion(() -> removeUserStream(stream));
+        emitter.onTimeout(() -> removeUserStream(stream));
+        emitter.onError(e -> removeUserStream(stream));
+        return emitter;
+    }
+
+    // Adds the room to the user's multiplexed streams on every node
+    public void userJoinedRoom(UUID roomId, UUID userId) {
+        publishMembershipChange(roomId, userId, true);
+    }
+
+    // Removes the room from the user's multiplexed streams on every node
+    public void userLeftRoom(UUID roomId, UUID userId) {
+        publishMembershipChange(roomId, userId, false);
+    }
+
+    // Removes a deleted room from every multiplexed stream carrying it, on every node
+    public void roomDeleted(UUID roomId) {
+        if (!roomEventBus.isDistributed() && !roomUserStreams.containsKey(roomId)) {
+            return;  // Nobody streams the room
+        }
+        roomEventBus.publish(new RoomEvent(roomId, MEMBERSHIP_EVENT, ROOM_DELETED_CHANGE));
+    }
+
+    private void publishMembershipChange(UUID roomId, UUID userId, boolean joined) {
+        if (!roomEventBus.isDistributed() && !userStreams.containsKey(userId)) {
+            return;  // No multiplexed stream for this user anywhere
+        }
+        byte[] change = ((joined ? "+" : "-") + userId).getBytes(StandardCharsets.UTF_8);
+        roomEventBus.publish(new RoomEvent(roomId, MEMBERSHIP_EVENT, change));
+    }
+
+    /**
+     * Long-poll for room events newer than a cursor (the "cursor" of a previous response).
+     *
+     * - Newer events still in the replay buffer: completed immediately from memory.
+     * - Cursor older than the buffer: catchUpLoader loads the gap from the database (at most
+     *   MAX_CATCH_UP_MESSAGES, after a "reset" event when the gap is larger).
+     * - Otherwise the request is parked until the room's next event (completed by deliver())
+     *   or until timeoutMs, when it completes empty with the same cursor. Waiting holds no
+     *   thread and an empty poll runs no query.
+     *
+     * @param after         cursor from the previous response, or null to wait for the next event
+     * @param catchUpLoader loads at most the given number of the newest message payloads newer
+     *                      than the given time, oldest first (may be null)
+     */
+    public DeferredResult<LongPollResponse> poll(UUID roomId, Long after, long timeoutMs,
+                                                 BiFunction<LocalDateTime, Integer, List<?>> catchUpLoader) {
+        RoomReplayBuffer buffer = replayBufferFor(roomId);
+
+        // Gap larger than the buffer: answer from the database (outside the room lock)
+        if (after != null && catchUpLoader != null && !buffer.canReplayFrom(after)) {
+            long watermark = buffer.lastId();
+            List<?> payloads = loadCatchUp(catchUpLoader, after);
+            DeferredResult<LongPollResponse> result = new DeferredResult<>(timeoutMs);
+            result.setResult(new LongPollResponse(watermark, encodeCatchUp(watermark, payloads).stream()
+                    .map(MessageStreamService::toPolledEvent)
+                    .toList()));
+            return result;
+        }
+
+        synchronized (buffer) {
+            long cursor = after != null ? after : buffer.lastId();
+            DeferredResult<LongPollResponse> result = new DeferredResult<>(timeoutMs,
+                    () -> new LongPollResponse(cursor, List.of()));
+            buffer.touch();
+            List<EncodedSseEvent> missed = buffer.eventsAfter(cursor);
+            if (!missed.isEmpty()) {
+                result.setResult(toPollResponse(missed));
+                return result;
+            }
+            // Nothing new: park until deliver() or the timeout completes it
+            Set<DeferredResult<LongPollResponse>> pollers =
+                    roomPollers.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet());
+            pollers.add(result);
+            result.onCompletion(() -> pollers.remove(result));
+            return result;
+        }
+    }
+
     /**
      * Broadcast an event to all clients subscribed to a specific chat room.
      * Used to notify clients of new messages, updates, or deletions.
+     *
+     * The payload is serialized once and handed to the RoomEventBus, which delivers it to
+     * subscribers on this node and (with the Redis bus) on every other node.
      */
     public void publish(UUID roomId, String eventName, Object payload) {
+        // Single node and nobody streaming this room here: nothing to do
+        if (!roomEventBus.isDistributed() && !hasLocalInterest(roomId)) {
+            return;
+        }
+
+        // Serialize once; every subscriber gets the same bytes
+        byte[] json = serialize(eventName, payload);
+        if (json == null) {
+            return;
+        }
+        roomEventBus.publish(new RoomEvent(roomId, eventName, json));
+    }
+
+    /**
+     * Delivers a bus event to this node's subscribers.
+     *
+     * Only enqueues: the actual socket writes happen on the fan-out executor.
+     * Every event gets the room's next event ID and is kept in the replay buffer.
+     */
+    void deliver(RoomEvent roomEvent) {
+        UUID roomId = roomEvent.roomId();
+        if (MEMBERSHIP_EVENT.equals(roomEvent.name())) {
+            applyMembershipChange(roomId, roomEvent.data());
+            return;
+        }
         // Get all active emitters (SSE connections) for this room
         List<SseEmitter> emitters = roomEmitters.get(roomId);
-        
-        // Early exit if no subscribers for this room
-        if (emitters == null || emitters.isEmpty()) {
+
+        // Early exit if nobody is (or was recently) subscribed to this room on this node
+        if (!hasLocalInterest(roomId)) {
             return;
         }
+        RoomReplayBuffer buffer = replayBufferFor(roomId);
+        List<DeferredResult<LongPollResponse>> wokenPolls = List.of();
+        LongPollResponse pollResponse = null;
 
-        // Collect failed emitters to remove after iteration
-        // Avoids ConcurrentModificationException by not removing during iteration
-        List<SseEmitter> failedEmitters = new ArrayList<>();
-        
-        // Send event to each connected client
-        for (SseEmitter emitter : emitters) {
-            try {
-                // Send SSE event with name and JSON payload
-                emitter.send(SseEmitter.event()
-                    .name(eventName)           // Event type (e.g., "new-message")
-                    .data(payload, MediaType.APPLICATION_JSON));  // JSON data
-            } catch (IOException ex) {
-                // Client disconnected or network error
-                emitter.complete();            // Cleanly close the emitter
-                failedEmitters.add(emitter);  
+        synchronized (buffer) {
+            EncodedSseEvent event = EncodedSseEvent.of(buffer.nextId(), roomEvent.name(), roomEvent.data());
+            buffer.append(event);
+            Set<DeferredResult<LongPollResponse>> pollers = roomPollers.get(roomId);
+            if (pollers != null && !pollers.isEmpty()) {
+                // Parked polls were registered with nothing newer than their cursor: this event is all they miss
+                wokenPolls = new ArrayList<>(pollers);
+                pollers.removeAll(wokenPolls);
+                pollResponse = toPollResponse(List.of(event));
+            }
+            if (emitters != null) {
+                // Hand the event to each subscriber's queue (never blocks on the network)
+                for (SseEmitter emitter : emitters) {
+                    SubscriberQueue queue = subscriberQueues.get(emitter);
+                    if (queue != null) {  // Null once completion or timeout removed the subscriber
+                        queue.offer(event);
+                    }
+                }
+            }
+            List<UserStream> watchers = roomUserStreams.get(roomId);
+            if (watchers != null && !watchers.isEmpty()) {
+                // Wrapped once per event, shared by every multiplexed stream watching the room
+                EncodedSseEvent tagged = EncodedSseEvent.of(null, roomEvent.name(), tagWithRoom(roomId, roomEvent.data()));
+                watchers.forEach(stream -> stream.queue.offer(tagged));
+            }
+        }
+        // Completing dispatches the waiting requests back to the container; done outside the lock
+        for (DeferredResult<LongPollResponse> poll : wokenPolls) {
+            poll.setResult(pollResponse);
+        }
+    }
+
+    // Room has local subscribers, or a replay buffer kept for clients about to reconnect
+    private boolean hasLocalInterest(UUID roomId) {
+        List<SseEmitter> emitters = roomEmitters.get(roomId);
+        return (emitters != null && !emitters.isEmpty()) || replayBuffers.containsKey(roomId)
+                || roomUserStreams.containsKey(roomId);
+    }
+
+    // Applies a join/leave to this node's multiplexed streams of that user
+    private void applyMembershipChange(UUID roomId, byte[] change) {
+        String value = new String(change, StandardCharsets.UTF_8);
+        if (Arrays.equals(change, ROOM_DELETED_CHANGE)) {
+            List<UserStream> watchers = roomUserStreams.get(roomId);
+            if (watchers != null) {
+                EncodedSseEvent notice = roomLeftNotice(roomId);
+                for (UserStream stream : List.copyOf(watchers)) {
+                    unwatchRoom(stream, roomId);
+                    stream.queue.offer(notice);
+                }
+            }
+            return;
+        }
+        UUID userId;
+        try {
+            userId = UUID.fromString(value.substring(1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            log.warn("Ignoring malformed SSE membership change: {}", value);
+            return;
+        }
+        List<UserStream> streams = userStreams.get(userId);
+        if (streams == null) {
+            return;
+        }
+        boolean joined = value.charAt(0) == '+';
+        EncodedSseEvent notice = joined
+                ? EncodedSseEvent.of(null, "room-joined", roomNotice(roomId))
+                : roomLeftNotice(roomId);
+        for (UserStream stream : streams) {
+            if (joined) {
+                watchRoom(stream, roomId);
+            } else {
+                unwatchRoom(stream, roomId);
+            }
+            stream.queue.offer(notice);
+        }
+    }
+
+    private static EncodedSseEvent roomLeftNotice(UUID roomId) {
+        return EncodedSseEvent.of(null, "room-left", roomNotice(roomId));
+    }
+
+    private static byte[] roomNotice(UUID roomId) {
+        return ("{\"roomId\":\"" + roomId + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void watchRoom(UserStream stream, UUID roomId) {
+        if (stream.rooms.add(roomId)) {
+            roomUserStreams.compute(roomId, (id, watchers) -> {
+                CopyOnWriteArrayList<UserStream> list = watchers != null ? watchers : new CopyOnWriteArrayList<>();
+                list.add(stream);
+                return list;
+            });
+        }
+    }
+
+    private void unwatchRoom(UserStream stream, UUID roomId) {
+        if (stream.rooms.remove(roomId)) {
+            roomUserStreams.computeIfPresent(roomId, (id, watchers) -> {
+                watchers.remove(stream);
+                return watchers.isEmpty() ? null : watchers;  // Drop the entry so publish can short-circuit
+            });
+        }
+    }
+
+    // Detach a multiplexed stream from all its rooms and discard anything still queued for it
+    private void removeUserStream(UserStream stream) {
+        userStreams.computeIfPresent(stream.userId, (id, streams) -> {
+            streams.remove(stream);
+            return streams.isEmpty() ? null : streams;
+        });
+        List.copyOf(stream.rooms).forEach(roomId -> unwatchRoom(stream, roomId));
+        SubscriberQueue queue = subscriberQueues.remove(stream.emitter);
+        if (queue != null) {
+            queue.discardPending();
+        }
+    }
+
+    private static LongPollResponse toPollResponse(List<EncodedSseEvent> events) {
+        return new LongPollResponse(events.get(events.size() - 1).getId(),
+                events.stream().map(MessageStreamService::toPolledEvent).toList());
+    }
+
+    private static LongPollResponse.Event toPolledEvent(EncodedSseEvent event) {
+        return new LongPollResponse.Event(event.getName(), new String(event.getData(), StandardCharsets.UTF_8));
+    }
+
+    // {"roomId":"...","data":<payload>} built by concatenation, the payload bytes are not re-encoded
+    private static byte[] tagWithRoom(UUID roomId, byte[] data) {
+        byte[] prefix = ("{\"roomId\":\"" + roomId + "\",\"data\":").getBytes(StandardCharsets.UTF_8);
+        byte[] tagged = new byte[prefix.length + data.length + 1];
+        System.arraycopy(prefix, 0, tagged, 0, prefix.length);
+        System.arraycopy(data, 0, tagged, prefix.length, data.length);
+        tagged[tagged.length - 1] = '}';
+        return tagged;
+    }
+
+    // Serializes the payload as JSON (strings are sent verbatim, as the String converter did before)
+    byte[] serialize(String eventName, Object payload) {
+        try {
+            return payload instanceof String text
+                    ? text.getBytes(StandardCharsets.UTF_8)
+                    : objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException ex) {
+            log.error("Could not serialize SSE payload for event {}: {}", eventName, ex.getMessage());
+            return null;
+        }
+    }
+
+    // Drops replay buffers of rooms nobody has streamed for a while (they are rebuilt on demand)
+    @Scheduled(fixedDelay = REPLAY_SWEEP_INTERVAL_MS)
+    public void evictIdleReplayBuffers() {
+        long cutoff = System.currentTimeMillis() - REPLAY_RETENTION_MS;
+        replayBuffers.entrySet().removeIf(entry -> {
+            List<SseEmitter> emitters = roomEmitters.get(entry.getKey());
+            Set<DeferredResult<LongPollResponse>> pollers = roomPollers.get(entry.getKey());
+            boolean idle = (emitters == null || emitters.isEmpty()) && (pollers == null || pollers.isEmpty())
+                    && entry.getValue().lastActivityMillis() < cutoff;
+            if (idle) {
+                roomPollers.remove(entry.getKey());
             }
+            return idle;
+        });
+    }
+
+    /**
+     * Heartbeat sweep over every connection on this node.
+     *
+     * - Connections with nothing written for half an interval get a ": hb" comment; a failed
+     *   write means the client is gone and the connection is released right away.
+     * - Connections with pending events but no successful write for stallTimeoutMs are closed
+     *   (client stopped reading; it reconnects with Last-Event-ID if it is still alive).
+     *
+     * Writes are grouped into one fan-out task per heartbeatBatchSize connections instead of
+     * one task per connection, so a sweep over thousands of idle emitters stays cheap.
+     */
+    @Scheduled(fixedDelayString = "${app.sse.heartbeat-interval-ms:15000}",
+            initialDelayString = "${app.sse.heartbeat-interval-ms:15000}")
+    public void sendHeartbeats() {
+        long now = System.currentTimeMillis();
+        List<SubscriberQueue> batch = new ArrayList<>();
+        for (SubscriberQueue queue : subscriberQueues.values()) {
+            if (queue.isStalled(now)) {
+                log.debug("Closing stalled SSE subscriber ({})", queue.label);
+                queue.reap();
+            } else if (queue.isIdle(now)) {
+                batch.add(queue);
+                if (batch.size() == heartbeatBatchSize) {
+                    submitHeartbeats(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitHeartbeats(batch);
+        }
+    }
+
+    private void submitHeartbeats(List<SubscriberQueue> batch) {
+        try {
+            fanOutExecutor.execute(() -> batch.forEach(SubscriberQueue::heartbeat));
+        } catch (RejectedExecutionException ex) {
+            log.warn("SSE fan-out executor rejected heartbeat batch of {} connections", batch.size());
         }
-        
-        // Remove failed emitters after iteration (thread-safe operation)
-        for (SseEmitter failedEmitter : failedEmitters) {
-            emitters.remove(failedEmitter);
+    }
+
+    // One more than the cap is loaded, only to tell a truncated catch-up from a complete one
+    private static List<?> loadCatchUp(BiFunction<LocalDateTime, Integer, List<?>> catchUpLoader, long lastEventId) {
+        return catchUpLoader.apply(RoomReplayBuffer.timestampOf(lastEventId).minus(CATCH_UP_SKEW),
+                MAX_CATCH_UP_MESSAGES + 1);
+    }
+
+    // Database catch-up payloads as "new-message" events; the last one carries the watermark ID.
+    // Past the cap only the newest are kept, after a "reset" event telling the client it missed more.
+    private List<EncodedSseEvent> encodeCatchUp(long watermark, List<?> payloads) {
+        List<EncodedSseEvent> events = new ArrayList<>(Math.min(payloads.size(), MAX_CATCH_UP_MESSAGES) + 1);
+        if (payloads.size() > MAX_CATCH_UP_MESSAGES) {
+            events.add(EncodedSseEvent.of(null, CATCH_UP_RESET_EVENT, CATCH_UP_RESET_DATA));
+            payloads = payloads.subList(payloads.size() - MAX_CATCH_UP_MESSAGES, payloads.size());
+        }
+        for (int i = 0; i < payloads.size(); i++) {
+            byte[] json = serialize(CATCH_UP_EVENT, payloads.get(i));
+            if (json != null) {
+                Long id = i == payloads.size() - 1 ? watermark : null;
+                events.add(EncodedSseEvent.of(id, CATCH_UP_EVENT, json));
+            }
         }
+        return events;
+    }
+
+    private RoomReplayBuffer replayBufferFor(UUID roomId) {
+        return replayBuffers.computeIfAbsent(roomId, id -> new RoomReplayBuffer(replayBufferSize));
+    }
+
+    // Current number of queued (not yet written) events across a room's subscribers
+    public long getQueueDepth(UUID roomId) {
+        RoomStats stats = roomStats.get(roomId);
+        return stats != null ? stats.queued.get() : 0;
+    }
+
+    // Events dropped for a room because a subscriber queue overflowed (reset once nobody streams the room)
+    public long getDroppedEvents(UUID roomId) {
+        RoomStats stats = roomStats.get(roomId);
+        return stats != null ? stats.dropped.get() : 0;
+    }
+
+    // Open SSE connections on this node
+    public int getLiveEmitterCount() {
+        return roomEmitters.values().stream().mapToInt(List::size).sum()
+                + userStreams.values().stream().mapToInt(List::size).sum();
+    }
+
+    // Open SSE connections for one room on this node
+    public int getLiveEmitterCount(UUID roomId) {
+        List<SseEmitter> emitters = roomEmitters.get(roomId);
+        return emitters != null ? emitters.size() : 0;
+    }
+
+    // Connections closed by the heartbeat sweep (failed heartbeat or stalled client)
+    public long getReapedEmitters() {
+        return reapedEmitters.get();
+    }
+
+    // Stop the fan-out workers on shutdown (pending events are discarded with the connections)
+    @PreDestroy
+    public void shutdown() {
+        if (fanOutExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    // Detach a subscriber from its room and discard anything still queued for it
+    private void removeSubscriber(UUID roomId, SseEmitter emitter) {
+        List<SseEmitter> emitters = roomEmitters.get(roomId);
+        if (emitters != null) {
+            emitters.remove(emitter);
+        }
+        SubscriberQueue queue = subscriberQueues.remove(emitter);
+        if (queue != null) {
+            queue.discardPending();
+        }
+        // Last subscriber gone: forget the room's counters (the node-wide totals keep counting)
+        roomStats.computeIfPresent(roomId, (id, stats) -> emitters == null || emitters.isEmpty() ? null : stats);
+    }
+
+    // Lazily creates the counters for a room; they also feed the node-wide totals
+    private RoomStats statsFor(UUID roomId) {
+        return roomStats.computeIfAbsent(roomId, id -> new RoomStats(roomStreamStats));
+    }
+
+    // stream = "room" (per-room connections) or "user" (multiplexed connections)
+    private RoomStats registerStats(RoomStats stats, String stream) {
+        Gauge.builder("securechat.sse.queue.depth", stats.queued, AtomicLong::get)
+                .description("Events waiting in SSE subscriber queues")
+                .tag("stream", stream)
+                .register(meterRegistry);
+        FunctionCounter.builder("securechat.sse.events.dropped", stats.dropped, AtomicLong::get)
+                .description("Events dropped because an SSE subscriber queue was full")
+                .tag("stream", stream)
+                .register(meterRegistry);
+        return stats;
+    }
+
+    private static ThreadFactory fanOutThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "sse-fanout-" + counter.incrementAndGet());
+            thread.setDaemon(true);  // Never keep the JVM alive just for SSE delivery
+            return thread;
+        };
     }
 
     // Package-private getter for testing (allows mocking emitter factory)
@@ -87,6 +715,187 @@ public class MessageStreamService {
         return emitterFactory;
     }
 
+    // Counters shared by all subscribers of one room (or one kind of stream), rolled up into parent
+    private static final class RoomStats {
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final RoomStats parent;  // Null for the node-wide totals
+
+        RoomStats(RoomStats parent) {
+            this.parent = parent;
+        }
+
+        void addQueued(long delta) {
+            queued.addAndGet(delta);
+            if (parent != null) {
+                parent.addQueued(delta);
+            }
+        }
+
+        void addDropped() {
+            dropped.incrementAndGet();
+            if (parent != null) {
+                parent.addDropped();
+            }
+        }
+    }
+
+    /**
+     * Bounded send queue for one SSE connection.
+     * At most one drain task per subscriber is scheduled at a time, which keeps writes to
+     * the emitter ordered without dedicating a thread to every connection.
+     */
+    private final class SubscriberQueue implements Runnable {
+        private final String label;      // For log messages ("room <id>" / "user <id>")
+        private final SseEmitter emitter;
+        private final RoomStats stats;
+        private final Runnable detach;   // Unregisters the connection once it is gone
+        private final BlockingQueue<EncodedSseEvent> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile long lastWriteMillis = System.currentTimeMillis();  // Last successful event or heartbeat
+
+        SubscriberQueue(UUID roomId, SseEmitter emitter) {
+            this("room " + roomId, emitter, statsFor(roomId), () -> removeSubscriber(roomId, emitter));
+        }
+
+        SubscriberQueue(String label, SseEmitter emitter, RoomStats stats, Runnable detach) {
+            this.label = label;
+            this.emitter = emitter;
+            this.stats = stats;
+            this.detach = detach;
+        }
+
+        // Nothing pending and nothing written recently
+        boolean isIdle(long now) {
+            return queue.isEmpty() && !scheduled.get() && now - lastWriteMillis >= heartbeatIntervalMs / 2;
+        }
+
+        // Events are waiting but none could be written for stallTimeoutMs (idle connections are
+        // kept fresh by heartbeats, so an old lastWriteMillis here means the client stopped reading)
+        boolean isStalled(long now) {
+            return (!queue.isEmpty() || scheduled.get()) && now - lastWriteMillis >= stallTimeoutMs;
+        }
+
+        // Runs on the fan-out executor as part of a heartbeat batch
+        void heartbeat() {
+            if (!queue.isEmpty() || scheduled.get()) {
+                return;  // Real events are on their way, they prove liveness just as well
+            }
+            try {
+                emitter.send(HEARTBEAT);
+                lastWriteMillis = System.currentTimeMillis();
+            } catch (IOException | IllegalStateException ex) {
+                log.debug("SSE heartbeat failed for subscriber ({}): {}", label, ex.getMessage());
+                reap();
+            }
+        }
+
+        // Releases a dead connection (removed from the room, emitter completed)
+        void reap() {
+            if (subscriberQueues.get(emitter) == this) {
+                reapedEmitters.incrementAndGet();
+            }
+            detach.run();
+            emitter.complete();
+        }
+
+        void offer(EncodedSseEvent event) {
+            if (queue.offer(event)) {
+                stats.addQueued(1);
+            } else if (!handleOverflow(event)) {
+                return;  // Subscriber was disconnected, nothing left to drain
+            }
+            scheduleDrain();
+        }
+
+        // Applies the configured policy; returns false when the subscriber was disconnected
+        private boolean handleOverflow(EncodedSseEvent event) {
+            stats.addDropped();
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    if (queue.poll() != null) {
+                        stats.addQueued(-1);
+                    }
+                    if (queue.offer(event)) {
+                        stats.addQueued(1);
+                    } else {
+                        stats.addDropped();  // Lost the race against another publisher
+                    }
+                }
+                case DROP_NEWEST -> {
+                    // Incoming event already counted as dropped
+                }
+                case DISCONNECT -> {
+                    log.debug("Disconnecting slow SSE subscriber ({})", label);
+                    detach.run();
+                    emitter.complete();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void scheduleDrain() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    fanOutExecutor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);  // Executor shut down, events stay queued until cleanup
+                    log.warn("SSE fan-out executor rejected drain task ({})", label);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                EncodedSseEvent event;
+                while ((event = queue.poll()) != null) {
+                    stats.addQueued(-1);
+                    try {
+                        // Write the pre-encoded frames (event name + JSON bytes)
+                        emitter.send(event);
+                        lastWriteMillis = System.currentTimeMillis();
+                    } catch (IOException | IllegalStateException ex) {
+                        // Client disconnected, network error or emitter already completed
+                        detach.run();
+                        emitter.complete();            // Cleanly close the emitter
+                        return;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // An event may have arrived between the last poll and releasing the flag
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        // Drops everything still queued (connection is gone)
+        void discardPending() {
+            int discarded = 0;
+            while (queue.poll() != null) {
+                discarded++;
+            }
+            stats.addQueued(-discarded);
+        }
+    }
+
+    // One multiplexed connection: the rooms it carries and its send queue
+    private final class UserStream {
+        private final UUID userId;
+        private final SseEmitter emitter;
+        private final Set<UUID> rooms = ConcurrentHashMap.newKeySet();
+        private final SubscriberQueue queue;
+
+        UserStream(UUID userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = new SubscriberQueue("user " + userId, emitter, userStreamStats, () -> removeUserStream(this));
+        }
+    }
+
     /**
      * Inner factory class for creating SseEmitter instances.
      * Enables testability by allowing mock emitters in unit tests.
@@ -97,4 +906,4 @@ public class MessageStreamService {
             return new SseEmitter(timeout);
         }
     }
-} 
\ No newline at end of file
+}
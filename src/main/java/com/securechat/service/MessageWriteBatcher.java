@@ -0,0 +1,201 @@
+package com.securechat.service;
+
+import com.securechat.entity.Message;
+import com.securechat.repository.ChatRoomRepository;
+import com.securechat.repository.MessageRepository;
+import com.securechat.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for message INSERTs (enable with app.messages.group-commit.enabled=true).
+ *
+ * - Senders enqueue an already validated message and wait on the returned future.
+ * - A single writer thread takes whatever arrives within max-wait-ms (up to max-batch-size)
+ *   and inserts it in one transaction; with hibernate.jdbc.batch_size and the driver's
+ *   reWriteBatchedInserts that becomes a few multi-row INSERTs instead of one commit per send.
+ * - Futures complete only after the commit, so a sender is never acknowledged for a row that
+ *   could still be rolled back. If a batch fails, its messages are retried one per transaction
+ *   so a single bad row does not fail everyone else in the batch.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messages.group-commit.enabled", havingValue = "true")
+@Slf4j
+public class MessageWriteBatcher {
+
+    private static final long ENQUEUE_TIMEOUT_MS = 1_000;  // Backpressure: how long a sender may wait for queue space
+
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;  // How long the writer waits to fill a batch
+    private final BlockingQueue<PendingMessage> pending;
+    private final DistributionSummary batchSizes;
+
+    private final List<PendingMessage> unwritten = new ArrayList<>();  // Batch in hand when the writer was stopped
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public MessageWriteBatcher(
+            MessageRepository messageRepository,
+            UserRepository userRepository,
+            ChatRoomRepository chatRoomRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.messages.group-commit.max-batch-size:256}") int maxBatchSize,
+            @Value("${app.messages.group-commit.max-wait-ms:2}") long maxWaitMs,
+            @Value("${app.messages.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.chatRoomRepository = chatRoomRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSizes = DistributionSummary.builder("securechat.messages.group_commit.batch_size")
+                .description("Messages inserted per group commit")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::runWriter, "message-group-commit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Message group commit enabled (batch <= {}, wait <= {} ms)",
+                maxBatchSize, TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+    }
+
+    // Writes what is still queued so no waiting sender is left hanging
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingMessage> rest = new ArrayList<>(unwritten);  // Visible here: join() happens-after the writer
+        pending.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    /**
+     * Queue a validated, sanitized message. The future completes with the persisted entity
+     * once its batch has committed, or exceptionally if it could not be written.
+     */
+    public CompletableFuture<Message> submit(UUID chatRoomId, UUID userId, String username, String content,
+                                             LocalDateTime timestamp) {
+        PendingMessage message = new PendingMessage(chatRoomId, userId, username, content, timestamp,
+                new CompletableFuture<>());
+        try {
+            if (!running || !pending.offer(message, ENQUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                message.result().completeExceptionally(new RuntimeException("Message write queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            message.result().completeExceptionally(new RuntimeException("Interrupted while queueing message", e));
+        }
+        return message.result();
+    }
+
+    // Writer loop: wait for one message, then collect more for up to the batch window
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingMessage first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // stop() writes the batch in hand along with the rest of the queue
+                unwritten.addAll(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // One transaction for the whole batch; futures complete after it commits
+    void write(List<PendingMessage> batch) {
+        List<Message> saved;
+        try {
+            saved = transactionTemplate.execute(status -> insert(batch));
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} messages failed, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::writeAlone);
+            return;
+        }
+        batchSizes.record(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(saved.get(i));
+        }
+    }
+
+    private void writeAlone(PendingMessage message) {
+        try {
+            List<Message> saved = transactionTemplate.execute(status -> insert(List.of(message)));
+            batchSizes.record(1);
+            message.result().complete(saved.get(0));
+        } catch (RuntimeException e) {
+            message.result().completeExceptionally(e);
+        }
+    }
+
+    private List<Message> insert(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage message : batch) {
+            messages.add(MessageService.newTextMessage(
+                    userRepository.getReferenceById(message.userId()),
+                    chatRoomRepository.getReferenceById(message.chatRoomId()),
+                    message.username(), message.content(), message.timestamp()));
+        }
+        List<Message> saved = messageRepository.saveAll(messages);
+        messageRepository.flush();  // Fail inside the transaction, not at commit after we decided the outcome
+        return saved;
+    }
+
+    record PendingMessage(UUID chatRoomId, UUID userId, String username, String content, LocalDateTime timestamp,
+                          CompletableFuture<Message> result) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.securechat.service;
+
+import com.securechat.dto.MessageListDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Newest N messages of the most recently read chat rooms, newest first.
+ *
+ * Page 0 of a busy room is by far the most common history read, so it is answered from here
+ * instead of re-running ORDER BY timestamp DESC. Writers keep the tail current (append on
+ * create, drop the room on delete); rooms that are not read any more fall out LRU once
+ * {@code maxRooms} is reached, so memory is bounded by maxRooms * messagesPerRoom.
+ *
+ * With several nodes (distributed RoomEventBus) writes made elsewhere arrive as remote
+ * "new-message" / "message-deleted" events and drop the room's tail here. A tail is also
+ * reloaded once it is older than the TTL, in case such an event was lost.
+ *
+ * A room is only cached after a read loads it. To keep a slow load from installing a tail that
+ * misses a message committed while it ran, every write bumps a stamp for the room's stripe and
+ * a load is discarded if the stamp moved.
+ */
+@Component
+public class RecentMessageCache {
+
+    private static final int STRIPES = 1024;  // Power of two, see stripe()
+    // Events from other nodes that change a room's history
+    static final Set<String> WRITE_EVENTS = Set.of(MessageService.NEW_MESSAGE_EVENT, MessageService.MESSAGE_DELETED_EVENT);
+
+    private final int maxRooms;
+    private final int messagesPerRoom;
+    private final long ttlNanos;
+    private final Map<UUID, Tail> tails;  // Access-ordered: eldest = least recently read
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+
+    // Newest first, same order as the repository queries
+    private static final Comparator<MessageListDto> NEWEST_FIRST = Comparator
+            .comparing(MessageListDto::timestamp, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(MessageListDto::id, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    @Autowired
+    public RecentMessageCache(@Value("${app.messages.tail-cache.max-rooms:1000}") int maxRooms,
+                              @Value("${app.messages.tail-cache.messages-per-room:100}") int messagesPerRoom,
+                              @Value("${app.messages.tail-cache.ttl-seconds:30}") long ttlSeconds,
+                              MeterRegistry meterRegistry,
+                              RoomEventBus roomEventBus) {
+        this.maxRooms = Math.max(1, maxRooms);
+        this.messagesPerRoom = Math.max(1, messagesPerRoom);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.tails = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Tail> eldest) {
+                return size() > RecentMessageCache.this.maxRooms;
+            }
+        };
+        this.hits = meterRegistry.counter("securechat.messages.tail_cache", "result", "hit");
+        this.misses = meterRegistry.counter("securechat.messages.tail_cache", "result", "miss");
+        Gauge.builder("securechat.messages.tail_cache.rooms", this, RecentMessageCache::size)
+                .register(meterRegistry);
+        roomEventBus.onRemoteDelivery(this::onRemoteEvent);
+    }
+
+    // For unit tests
+    RecentMessageCache(int maxRooms, int messagesPerRoom) {
+        this(maxRooms, messagesPerRoom, 30);
+    }
+
+    RecentMessageCache(int maxRooms, int messagesPerRoom, long ttlSeconds) {
+        this(maxRooms, messagesPerRoom, ttlSeconds, new SimpleMeterRegistry(), new InProcessRoomEventBus());
+    }
+
+    /** Largest page the cache can answer on its own. */
+    public int getMessagesPerRoom() {
+        return messagesPerRoom;
+    }
+
+    /**
+     * First {@code size} messages of a room plus the room's total message count.
+     * Falls back to {@code loader} (expected to fetch page 0 with messagesPerRoom rows) on a
+     * miss and keeps its result unless a write to the room raced with it.
+     */
+    public Snapshot firstPage(UUID roomId, int size, Supplier<Page<MessageListDto>> loader) {
+        synchronized (tails) {
+            Tail tail = tails.get(roomId);
+            if (tail != null && tail.expiresAt - System.nanoTime() > 0) {
+                hits.increment();
+                return tail.snapshot(size);
+            }
+        }
+        misses.increment();
+        long stamp = writeStamps.get(stripe(roomId));
+        Page<MessageListDto> page = loader.get();
+        Tail loaded = new Tail(new ArrayList<>(page.getContent()), page.getTotalElements(), System.nanoTime() + ttlNanos);
+        synchronized (tails) {
+            if (writeStamps.get(stripe(roomId)) == stamp) {
+                tails.put(roomId, loaded);
+            }
+        }
+        return loaded.snapshot(size);
+    }
+
+    /** Write-through for a new message; call once it is committed. */
+    public void append(UUID roomId, MessageListDto message) {
+        synchronized (tails) {
+            writeStamps.incrementAndGet(stripe(roomId));
+            Tail tail = tails.get(roomId);
+            if (tail != null) {
+                tail.add(message);
+            }
+        }
+    }
+
+    /** Drop a room's tail, e.g. after one of its messages was deleted. */
+    public void invalidate(UUID roomId) {
+        synchronized (tails) {
+            writeStamps.incrementAndGet(stripe(roomId));
+            tails.remove(roomId);
+        }
+    }
+
+    // A message was sent or deleted through another node: this tail no longer matches the database
+    void onRemoteEvent(RoomEvent event) {
+        if (WRITE_EVENTS.contains(event.name())) {
+            invalidate(event.roomId());
+        }
+    }
+
+    public int size() {
+        synchronized (tails) {
+            return tails.size();
+        }
+    }
+
+    private static int stripe(UUID roomId) {
+        return roomId.hashCode() & (STRIPES - 1);
+    }
+
+    /** Copy of the cached rows handed to callers, safe to use outside the lock. */
+    public record Snapshot(List<MessageListDto> messages, long totalElements) {
+    }
+
+    // Guarded by the tails lock
+    private final class Tail {
+        private final List<MessageListDto> messages;  // Newest first, at most messagesPerRoom
+        private long totalElements;
+        private final long expiresAt;  // Appends do not extend it
+
+        Tail(List<MessageListDto> messages, long totalElements, long expiresAt) {
+            this.messages = messages;
+            this.totalElements = totalElements;
+            this.expiresAt = expiresAt;
+            trim();
+        }
+
+        void add(MessageListDto message) {
+            int index = 0;
+            // Commits can land slightly out of timestamp order; keep the tail sorted
+            while (index < messages.size() && NEWEST_FIRST.compare(messages.get(index), message) < 0) {
+                index++;
+            }
+            messages.add(index, message);
+            totalElements++;
+            trim();
+        }
+
+        Snapshot snapshot(int size) {
+            return new Snapshot(List.copyOf(messages.subList(0, Math.min(size, messages.size()))), totalElements);
+        }
+
+        private void trim() {
+            while (messages.size() > messagesPerRoom) {
+                messages.remove(messages.size() - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.securechat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Shared tier of MembershipCache (enable with app.membership-cache.redis=true).
+ *
+ * - One key per member: securechat:membership:{roomId}:user:{userId} -> "epoch|username", each
+ *   with its own expiry (members only; negative answers stay node-local with their short TTL).
+ * - Per-room epoch: securechat:membership:{roomId}:epoch. Invalidations increment it, so entries
+ *   stamped with an older epoch are ignored, and a load that started before the change cannot
+ *   write its stale answer back: the write is a script that only runs if the epoch is unchanged.
+ * - Invalidations are also published on securechat:membership:invalidate as "roomId" or
+ *   "roomId|userId" so every node drops its local entry.
+ * - Redis being down only costs the cache: reads fall through to the database.
+ */
+@Component
+@ConditionalOnProperty(name = "app.membership-cache.redis", havingValue = "true")
+@Slf4j
+public class RedisMembershipCacheTier implements MessageListener {
+
+    static final String KEY_PREFIX = "securechat:membership:";
+    static final String INVALIDATION_CHANNEL = "securechat:membership:invalidate";
+    // Outlives every entry, so an expired epoch can only turn stamped entries into misses
+    static final long EPOCH_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static final String NO_EPOCH = "0";
+
+    // KEYS: epoch, entry. ARGV: epoch seen before the load, username, ttl in ms
+    private static final DefaultRedisScript<Long> PUT_IF_EPOCH_UNCHANGED = new DefaultRedisScript<>(
+            "local epoch = redis.call('GET', KEYS[1]) or '" + NO_EPOCH + "'\n"
+                    + "if epoch ~= ARGV[1] then return 0 end\n"
+                    + "redis.call('SET', KEYS[2], ARGV[1] .. '|' .. ARGV[2], 'PX', ARGV[3])\n"
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private volatile BiConsumer<UUID, UUID> remoteInvalidation = (roomId, userId) -> { };
+    private RedisMessageListenerContainer listenerContainer;
+
+    public RedisMembershipCacheTier(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisTemplate.getConnectionFactory());
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to stop membership invalidation listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Receives (roomId, userId or null for the whole room) for invalidations from any node
+    void onRemoteInvalidation(BiConsumer<UUID, UUID> remoteInvalidation) {
+        this.remoteInvalidation = remoteInvalidation;
+    }
+
+    /**
+     * Cached username (null when Redis has no current entry) and the room epoch it was read at.
+     * Pass the epoch back to put() so the write is dropped if the membership changed meanwhile.
+     * Null when Redis is unavailable.
+     */
+    Lookup get(UUID roomId, UUID userId) {
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(List.of(epochKey(roomId), entryKey(roomId, userId)));
+            if (values == null) {
+                return null;
+            }
+            String epoch = values.get(0) != null ? values.get(0) : NO_EPOCH;
+            String entry = values.get(1);
+            int separator = entry != null ? entry.indexOf('|') : -1;
+            boolean current = separator > 0 && epoch.equals(entry.substring(0, separator));
+            return new Lookup(current ? entry.substring(separator + 1) : null, epoch);
+        } catch (DataAccessException e) {
+            log.debug("Membership cache read from Redis failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Only writes (and only sets the expiry of) this member's own key
+    void put(UUID roomId, UUID userId, String username, String epoch, long ttlNanos) {
+        long ttlMillis = Math.min(Math.max(1, TimeUnit.NANOSECONDS.toMillis(ttlNanos)), EPOCH_TTL_MILLIS / 2);
+        try {
+            redisTemplate.execute(PUT_IF_EPOCH_UNCHANGED, List.of(epochKey(roomId), entryKey(roomId, userId)),
+                    epoch, username, Long.toString(ttlMillis));
+        } catch (DataAccessException e) {
+            log.debug("Membership cache write to Redis failed: {}", e.getMessage());
+        }
+    }
+
+    // userId null = the whole room
+    void invalidate(UUID roomId, UUID userId) {
+        try {
+            // Bump the epoch first: from here on no racing put() can store its answer
+            String epochKey = epochKey(roomId);
+            redisTemplate.opsForValue().increment(epochKey);
+            redisTemplate.expire(epochKey, EPOCH_TTL_MILLIS, TimeUnit.MILLISECONDS);
+            if (userId != null) {
+                redisTemplate.delete(entryKey(roomId, userId));
+                redisTemplate.convertAndSend(INVALIDATION_CHANNEL, roomId + "|" + userId);
+            } else {
+                // Older entries no longer match the epoch and run out on their own TTL
+                redisTemplate.convertAndSend(INVALIDATION_CHANNEL, roomId.toString());
+            }
+        } catch (DataAccessException e) {
+            // Other nodes fall back on their local TTL for this entry
+            log.warn("Membership invalidation for room {} not sent to Redis: {}", roomId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            int separator = body.indexOf('|');
+            if (separator < 0) {
+                remoteInvalidation.accept(UUID.fromString(body), null);
+            } else {
+                remoteInvalidation.accept(UUID.fromString(body.substring(0, separator)),
+                        UUID.fromString(body.substring(separator + 1)));
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed membership invalidation: {}", body);
+        }
+    }
+
+    // {roomId} is a hash tag: a room's epoch and entries share a cluster slot for the script
+    static String epochKey(UUID roomId) {
+        return KEY_PREFIX + "{" + roomId + "}:epoch";
+    }
+
+    static String entryKey(UUID roomId, UUID userId) {
+        return KEY_PREFIX + "{" + roomId + "}:user:" + userId;
+    }
+
+    record Lookup(String username, String epoch) {
+    }
+}
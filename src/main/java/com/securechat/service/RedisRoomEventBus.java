@@ -0,0 +1,269 @@
+package com.securechat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cross-node bus over Redis pub/sub (enable with app.sse.bus=redis).
+ *
+ * - One channel per room: securechat:sse:room:{roomId}; every node pattern-subscribes to all of them.
+ * - Events are delivered locally right away, then queued for Redis; a single publisher thread
+ *   batches whatever arrives within a few milliseconds into one PUBLISH per room.
+ * - Deduplication per node: a node ignores its own events coming back from Redis, and each
+ *   envelope carries the origin's sequence number so replays/duplicates are dropped. Sequences
+ *   are tracked per (origin, room): a batch is split into one PUBLISH per room, so events of
+ *   different rooms arrive out of sequence order. Entries idle for SEEN_TTL are forgotten, so
+ *   origins that went away do not accumulate.
+ */
+@Component
+@ConditionalOnProperty(name = "app.sse.bus", havingValue = "redis")
+@Slf4j
+public class RedisRoomEventBus implements RoomEventBus, MessageListener {
+
+    static final String CHANNEL_PREFIX = "securechat:sse:room:";
+    private static final int OUTBOUND_CAPACITY = 10_000;  // Events waiting for Redis before we start dropping
+    private static final TypeReference<List<Envelope>> ENVELOPE_BATCH = new TypeReference<>() { };
+    static final long SEEN_TTL_MS = TimeUnit.MINUTES.toMillis(10);  // Far longer than Redis redelivers anything
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final long batchWindowNanos;  // How long the publisher waits to fill a batch
+    private final int maxBatchSize;
+
+    private final String nodeId = UUID.randomUUID().toString();  // Identifies this JVM in envelopes
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<SeenKey, Seen> lastSeenSequence = new ConcurrentHashMap<>();  // (origin, room) -> highest delivered
+    private final AtomicLong lastPurgeMillis = new AtomicLong(System.currentTimeMillis());
+    private final BlockingQueue<Envelope> outbound = new LinkedBlockingQueue<>(OUTBOUND_CAPACITY);
+
+    private volatile Consumer<RoomEvent> delivery = event -> { };
+    private volatile Consumer<RoomEvent> remoteDelivery = event -> { };
+    private volatile boolean running;
+    private RedisMessageListenerContainer listenerContainer;
+    private Thread publisherThread;
+
+    public RedisRoomEventBus(
+            StringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            @Value("${app.sse.redis.batch-window-ms:5}") long batchWindowMs,
+            @Value("${app.sse.redis.max-batch-size:100}") int maxBatchSize) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    // Subscribes to all room channels and starts the batching publisher
+    @PostConstruct
+    public void start() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisTemplate.getConnectionFactory());
+        // Dispatch on the subscription thread: keeps per-origin ordering (delivery only enqueues)
+        listenerContainer.setTaskExecutor(new SyncTaskExecutor());
+        listenerContainer.addMessageListener(this, new PatternTopic(CHANNEL_PREFIX + "*"));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+
+        running = true;
+        publisherThread = new Thread(this::runPublisher, "sse-redis-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+        log.info("Redis SSE bus started (node {})", nodeId);
+    }
+
+    // Flushes what is still queued and unsubscribes
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (publisherThread != null) {
+            publisherThread.interrupt();
+            try {
+                publisherThread.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushPending();
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to stop Redis listener container: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onLocalDelivery(Consumer<RoomEvent> delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    public void onRemoteDelivery(Consumer<RoomEvent> listener) {
+        this.remoteDelivery = listener;
+    }
+
+    @Override
+    public void publish(RoomEvent event) {
+        // Local subscribers never wait for (or depend on) Redis
+        delivery.accept(event);
+
+        Envelope envelope = new Envelope(nodeId, sequence.incrementAndGet(), event.roomId(), event.name(),
+                new String(event.data(), StandardCharsets.UTF_8));
+        if (!outbound.offer(envelope)) {
+            log.warn("Redis SSE outbound queue full, event for room {} not sent to other nodes", event.roomId());
+        }
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+
+    // Called by the listener container for every batch published by any node
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        List<Envelope> batch;
+        try {
+            batch = objectMapper.readValue(message.getBody(), ENVELOPE_BATCH);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed SSE batch from Redis: {}", e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Envelope envelope : batch) {
+            if (nodeId.equals(envelope.origin())) {
+                continue;  // Already delivered locally when it was published
+            }
+            if (markSeen(envelope, now)) {
+                RoomEvent event = new RoomEvent(envelope.room(), envelope.event(),
+                        envelope.data().getBytes(StandardCharsets.UTF_8));
+                delivery.accept(event);
+                remoteDelivery.accept(event);
+            }
+        }
+        long lastPurge = lastPurgeMillis.get();
+        if (now - lastPurge >= SEEN_TTL_MS && lastPurgeMillis.compareAndSet(lastPurge, now)) {
+            forgetSeenBefore(now - SEEN_TTL_MS);
+        }
+    }
+
+    // Publisher loop: wait for one event, then collect more for up to the batch window
+    private void runPublisher() {
+        List<Envelope> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Envelope first = outbound.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Envelope next = remaining > 0 ? outbound.poll(remaining, TimeUnit.NANOSECONDS) : outbound.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Publishes everything currently queued (used on shutdown and in tests)
+    void flushPending() {
+        List<Envelope> batch = new ArrayList<>();
+        outbound.drainTo(batch);
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    // One PUBLISH per room, events kept in publish order
+    private void send(List<Envelope> batch) {
+        Map<UUID, List<Envelope>> byRoom = new LinkedHashMap<>();
+        for (Envelope envelope : batch) {
+            byRoom.computeIfAbsent(envelope.room(), room -> new ArrayList<>()).add(envelope);
+        }
+        byRoom.forEach((room, envelopes) -> {
+            try {
+                redisTemplate.convertAndSend(CHANNEL_PREFIX + room, objectMapper.writeValueAsString(envelopes));
+            } catch (JsonProcessingException | RuntimeException e) {
+                // Local delivery already happened; other nodes' clients recover via Last-Event-ID
+                log.warn("Failed to publish {} SSE events for room {} to Redis: {}",
+                        envelopes.size(), room, e.getMessage());
+            }
+        });
+    }
+
+    // True the first time an (origin, room, sequence) is seen on this node
+    private boolean markSeen(Envelope envelope, long now) {
+        AtomicBoolean fresh = new AtomicBoolean(false);
+        lastSeenSequence.compute(new SeenKey(envelope.origin(), envelope.room()), (key, last) -> {
+            if (last != null && last.seq() >= envelope.seq()) {
+                return last;
+            }
+            fresh.set(true);
+            return new Seen(envelope.seq(), now);
+        });
+        return fresh.get();
+    }
+
+    // Drops dedup entries not updated since the cutoff (origins that stopped, rooms gone quiet)
+    void forgetSeenBefore(long cutoffMillis) {
+        lastSeenSequence.values().removeIf(seen -> seen.atMillis() < cutoffMillis);
+    }
+
+    int seenEntries() {
+        return lastSeenSequence.size();
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    private record SeenKey(String origin, UUID room) {
+    }
+
+    private record Seen(long seq, long atMillis) {
+    }
+
+    // Wire format of one event inside a Redis batch
+    record Envelope(String origin, long seq, UUID room, String event, String data) {
+    }
+}
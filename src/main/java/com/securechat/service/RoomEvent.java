@@ -0,0 +1,10 @@
+package com.securechat.service;
+
+import java.util.UUID;
+
+/**
+ * Event published to a chat room, with its payload already serialized to JSON.
+ * This is what travels over the RoomEventBus between nodes.
+ */
+public record RoomEvent(UUID roomId, String name, byte[] data) {
+}
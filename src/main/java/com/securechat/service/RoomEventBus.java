@@ -0,0 +1,27 @@
+package com.securechat.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Broadcast bus between the API nodes that hold SSE connections.
+ *
+ * MessageStreamService publishes every room event here; the bus hands it to the local
+ * delivery callback of each node (exactly once per node) so subscribers connected to any
+ * instance behind the load balancer receive it.
+ */
+public interface RoomEventBus {
+
+    // Registers the callback that delivers events to this node's SSE subscribers
+    void onLocalDelivery(Consumer<RoomEvent> delivery);
+
+    // Registers a callback for events published on another node, on top of their local delivery
+    // (lets node-local caches follow writes they did not make; never called on a single-node bus)
+    default void onRemoteDelivery(Consumer<RoomEvent> listener) {
+    }
+
+    // Publishes an event to the room on every node, including this one
+    void publish(RoomEvent event);
+
+    // False when events never leave this JVM (lets publishers skip rooms nobody streams here)
+    boolean isDistributed();
+}
@@ -0,0 +1,100 @@
+package com.securechat.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring buffer of the most recent SSE events of one chat room, used to replay
+ * missed events when a client reconnects with a Last-Event-ID header.
+ *
+ * Event IDs are derived from the wall clock (epoch millis * 1000, bumped by one when several
+ * events share a millisecond), so they increase monotonically per room, survive buffer
+ * eviction and can be mapped back to an approximate timestamp for a database catch-up.
+ *
+ * All methods are synchronized; MessageStreamService also locks on the buffer to keep
+ * "assign ID, buffer, fan out" atomic with respect to subscribers replaying from it.
+ */
+final class RoomReplayBuffer {
+
+    private static final long IDS_PER_MILLI = 1_000L;
+
+    private final EncodedSseEvent[] events;
+    private int head;          // Index of the oldest buffered event
+    private int size;
+    private long lastId;       // Highest ID assigned or seen for this room
+    private long floor;        // Every event with an ID above this is still in the buffer
+    private long lastActivityMillis;
+
+    RoomReplayBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Replay buffer capacity must be at least 1");
+        }
+        this.events = new EncodedSseEvent[capacity];
+        // Anything published before this buffer existed has a smaller ID and is not replayable
+        this.lastId = clockId();
+        this.floor = lastId;
+        this.lastActivityMillis = System.currentTimeMillis();
+    }
+
+    // Next monotonic event ID for this room
+    synchronized long nextId() {
+        lastId = Math.max(lastId + 1, clockId());
+        return lastId;
+    }
+
+    // Highest event ID handed out so far
+    synchronized long lastId() {
+        return lastId;
+    }
+
+    // Adds an event, evicting the oldest one when the buffer is full
+    synchronized void append(EncodedSseEvent event) {
+        if (size == events.length) {
+            floor = Math.max(floor, events[head].getId());
+            events[head] = null;
+            head = (head + 1) % events.length;
+            size--;
+        }
+        events[(head + size) % events.length] = event;
+        size++;
+        lastId = Math.max(lastId, event.getId());
+        touch();
+    }
+
+    // True when every event after lastEventId is still buffered (no database catch-up needed)
+    synchronized boolean canReplayFrom(long lastEventId) {
+        return lastEventId >= floor;
+    }
+
+    // Buffered events newer than lastEventId, oldest first
+    synchronized List<EncodedSseEvent> eventsAfter(long lastEventId) {
+        List<EncodedSseEvent> missed = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            EncodedSseEvent event = events[(head + i) % events.length];
+            if (event.getId() > lastEventId) {
+                missed.add(event);
+            }
+        }
+        return missed;
+    }
+
+    synchronized void touch() {
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
+    synchronized long lastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    // Approximate wall-clock time at which an event ID was assigned
+    static LocalDateTime timestampOf(long eventId) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(eventId / IDS_PER_MILLI), ZoneId.systemDefault());
+    }
+
+    private static long clockId() {
+        return System.currentTimeMillis() * IDS_PER_MILLI;
+    }
+}
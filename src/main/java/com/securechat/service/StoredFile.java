@@ -0,0 +1,11 @@
+package com.securechat.service;
+
+/**
+ * Result of FileStorageService.storeStream: where the content went and what it was.
+ *
+ * @param path        identifier for loadFile / resolveFile / deleteFile
+ * @param size        bytes written
+ * @param contentHash SHA-256 of the content (hex)
+ */
+public record StoredFile(String path, long size, String contentHash) {
+}
@@ -0,0 +1,244 @@
+package com.securechat.service;
+
+import com.securechat.util.TransactionHooks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thumbnails of image uploads in a few fixed sizes, made in the background.
+ *
+ * - schedule() runs after the upload's row has committed and returns at once; a bounded pool
+ *   (app.thumbnails.threads, queue app.thumbnails.queue-capacity) does the work, and when it is
+ *   full the upload simply has no thumbnails until one is requested (FileService.openThumbnail
+ *   schedules it again)
+ * - the image is decoded once, subsampled while decoding when it is much larger than the largest
+ *   thumbnail, and images over app.thumbnails.max-pixels are not decoded at all
+ * - thumbnails are stored next to the original (LocalFileStorageService.storeDerivative), so
+ *   identical uploads share them and they are deleted with the file or blob
+ *
+ * Counters securechat.files.thumbnails{result=generated|skipped|rejected|failed}.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    public static final List<Integer> SIZES = List.of(128, 320, 640); // Longest side, in pixels
+
+    private static final Map<String, String> FORMATS = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png");  // PNG keeps transparency
+
+    private final LocalFileStorageService files;
+    private final ThreadPoolExecutor workers;
+    private final long maxPixels;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet(); // Stored paths queued or being processed
+    private final Counter generated;
+    private final Counter skipped;
+    private final Counter rejected;
+    private final Counter failed;
+
+    @Autowired
+    public ThumbnailService(LocalFileStorageService files, MeterRegistry meterRegistry,
+                            @Value("${app.thumbnails.threads:2}") int threads,
+                            @Value("${app.thumbnails.queue-capacity:200}") int queueCapacity,
+                            @Value("${app.thumbnails.max-pixels:50000000}") long maxPixels) {
+        this.files = files;
+        this.maxPixels = maxPixels;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), workerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.generated = meterRegistry.counter("securechat.files.thumbnails", "result", "generated");
+        this.skipped = meterRegistry.counter("securechat.files.thumbnails", "result", "skipped");
+        this.rejected = meterRegistry.counter("securechat.files.thumbnails", "result", "rejected");
+        this.failed = meterRegistry.counter("securechat.files.thumbnails", "result", "failed");
+        Gauge.builder("securechat.files.thumbnails.queued", workers, pool -> pool.getQueue().size())
+                .description("Uploads waiting for thumbnails")
+                .register(meterRegistry);
+    }
+
+    // For unit tests
+    ThumbnailService(LocalFileStorageService files, long maxPixels) {
+        this(files, new SimpleMeterRegistry(), 1, 10, maxPixels);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow(); // Missing thumbnails are made again on first request
+    }
+
+    public static boolean supports(String mimeType) {
+        return FORMATS.containsKey(mimeType);
+    }
+
+    /** Derivative name of one size, e.g. thumb320.jpg. */
+    public static String variant(int size, String mimeType) {
+        return "thumb" + size + "." + FORMATS.get(mimeType);
+    }
+
+    /** The stored thumbnail of one size, if it has been generated. */
+    public Optional<Path> find(String storedPath, String mimeType, int size) {
+        Path thumbnail = files.resolveDerivative(storedPath, variant(size, mimeType));
+        return Files.isRegularFile(thumbnail) ? Optional.of(thumbnail) : Optional.empty();
+    }
+
+    /**
+     * Queues thumbnail generation for a stored image; does nothing for other types. Runs once
+     * the surrounding transaction (if any) has committed, so workers never see an upload that
+     * was rolled back.
+     */
+    public void schedule(String storedPath, String mimeType) {
+        if (!supports(mimeType)) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> submit(storedPath, mimeType));
+    }
+
+    private void submit(String storedPath, String mimeType) {
+        if (!pending.add(storedPath)) {
+            return; // Already queued, e.g. a duplicate upload of the same blob
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    generate(storedPath, mimeType);
+                } catch (IOException | RuntimeException e) {
+                    failed.increment();
+                    log.warn("Thumbnails of {} not generated: {}", storedPath, e.getMessage());
+                } finally {
+                    pending.remove(storedPath);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(storedPath);
+            rejected.increment();
+            log.debug("Thumbnail queue full, {} left for later", storedPath);
+        }
+    }
+
+    /** Decodes the image once and writes every missing size; synchronous, runs on a worker. */
+    void generate(String storedPath, String mimeType) throws IOException {
+        if (SIZES.stream().allMatch(size -> Files.exists(files.resolveDerivative(storedPath, variant(size, mimeType))))) {
+            skipped.increment(); // Same content uploaded before
+            return;
+        }
+        int largest = SIZES.get(SIZES.size() - 1);
+        BufferedImage image = decode(files.resolveFile(storedPath), largest);
+
+        String format = FORMATS.get(mimeType);
+        boolean alpha = "png".equals(format);
+        for (int i = SIZES.size() - 1; i >= 0; i--) { // Largest first, each size scaled from the previous one
+            image = scale(image, SIZES.get(i), alpha);
+            files.storeDerivative(storedPath, variant(SIZES.get(i), mimeType), encode(image, format));
+        }
+        generated.increment();
+        log.debug("Generated thumbnails of {}", storedPath);
+    }
+
+    // Reads the dimensions from the header first: oversized images are refused before any pixel is
+    // decoded, large ones are subsampled while decoding (about 2x the largest thumbnail is kept)
+    private BufferedImage decode(Path file, int largest) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) { // getImageReaders(null) throws IllegalArgumentException
+                throw new IOException("Unsupported image");
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (2 * largest));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Fits the image in size x size, halving first for large reductions (bilinear alone skips pixels)
+    static BufferedImage scale(BufferedImage source, int size, boolean alpha) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double factor = Math.min(1.0, (double) size / Math.max(width, height)); // Never upscale
+        int targetWidth = Math.max(1, (int) Math.round(width * factor));
+        int targetHeight = Math.max(1, (int) Math.round(height * factor));
+
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            if (current != source && current.getWidth() == width && current.getHeight() == height) {
+                break;
+            }
+            BufferedImage next = new BufferedImage(width, height,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return out.toByteArray();
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "thumbnails-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // Behind request threads
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.securechat.service;
+
+import com.securechat.exception.ValidationException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Upload body that checks itself while it is being stored:
+ * - throws as soon as more than maxBytes have been read, so an oversized upload is rejected
+ *   without receiving (or storing) the rest of it
+ * - sniffs the first bytes and throws if they are not the declared type's signature
+ *
+ * The checks run inside the single copy made by FileStorageService.storeStream, which deletes
+ * the partial file when the stream throws.
+ */
+class UploadValidatingInputStream extends FilterInputStream {
+
+    static final int SNIFF_LENGTH = 512; // Enough for every signature, and for the text/plain check
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF87A = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89A = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] PDF = {'%', 'P', 'D', 'F', '-'};
+
+    private final long maxBytes;
+    private final String declaredType;
+    private final String sizeMessage;
+    private final byte[] head = new byte[SNIFF_LENGTH];
+    private int headLength;
+    private boolean sniffed;
+    private long count;
+
+    UploadValidatingInputStream(InputStream in, long maxBytes, String sizeMessage, String declaredType) {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.sizeMessage = sizeMessage;
+        this.declaredType = declaredType;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int read = read(one, 0, 1);
+        return read == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read == -1) {
+            sniff(); // Files shorter than SNIFF_LENGTH
+            return -1;
+        }
+        count += read;
+        if (count > maxBytes) {
+            throw new ValidationException(sizeMessage);
+        }
+        if (!sniffed) {
+            int copied = Math.min(read, SNIFF_LENGTH - headLength);
+            System.arraycopy(b, off, head, headLength, copied);
+            headLength += copied;
+            if (headLength == SNIFF_LENGTH) {
+                sniff();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        throw new IOException("Upload streams cannot be skipped"); // Every byte must be checked
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void sniff() {
+        if (sniffed) {
+            return;
+        }
+        sniffed = true;
+        checkType(head, headLength, declaredType);
+    }
+
+    /** Throws unless the first bytes of the content are the declared type's signature. */
+    static void checkType(byte[] head, int length, String declaredType) {
+        if (!declaredType.equals(detectType(head, length))) {
+            throw new ValidationException("File content does not match type: " + declaredType);
+        }
+    }
+
+    /** Type of the content by its signature, among the types uploads may have; null if none. */
+    static String detectType(byte[] head, int length) {
+        if (startsWith(head, length, JPEG)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, PNG)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, GIF87A) || startsWith(head, length, GIF89A)) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, PDF)) {
+            return "application/pdf";
+        }
+        return isText(head, length) ? "text/plain" : null;
+    }
+
+    // No NUL or other control bytes besides whitespace, ESC and form feed; UTF-8 passes
+    private static boolean isText(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B) {
+                return false;
+            }
+            if (b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] signature) {
+        return length >= signature.length && Arrays.equals(head, 0, signature.length, signature, 0, signature.length);
+    }
+}
@@ -15,6 +15,9 @@ public class UserService {
   @Autowired
   protected UserRepository userRepository;  // Data access layer for User entities
 
+  @Autowired
+  protected AuthenticatedUserCache userCache;  // Authenticated requests resolve users from here
+
   // Retrieve all users from the database
   @NotNull
   public List<User> getAllUsers() {
@@ -61,7 +64,9 @@ public class UserService {
     }
     
     // Persist changes and return updated user
-    return userRepository.save(user);
+    User saved = userRepository.save(user);
+    userCache.evict(id);  // Next request sees the new profile
+    return saved;
   }
 
   // Search users by username (case-insensitive partial match)
@@ -104,7 +109,9 @@ public class UserService {
       user.setAvatarUrl((String) updates.get("avatarUrl"));
     }
     
-    return userRepository.save(user);
+    User saved = userRepository.save(user);
+    userCache.evict(id);
+    return saved;
   }
 
   // Update user roles - replaces entire roles set (used for admin role management)
@@ -119,7 +126,9 @@ public class UserService {
     
     User user = getUserById(id);
     user.setRoles(roles);  // Replace all existing roles with new set
-    return userRepository.save(user);
+    User saved = userRepository.save(user);
+    userCache.evict(id);
+    return saved;
   }
 
   // Soft delete - marks user as inactive instead of physical deletion
@@ -127,5 +136,6 @@ public class UserService {
     User user = getUserById(id);
     user.setIsActive(false);  // Soft delete flag
     userRepository.save(user);  // Persist inactive status
+    userCache.evict(id);
   }
 }
\ No newline at end of file
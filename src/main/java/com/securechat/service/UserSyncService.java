@@ -2,7 +2,6 @@ package com.securechat.service;
 
 import com.securechat.entity.User;
 import com.securechat.repository.UserRepository;
-import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,35 +9,48 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.IntFunction;
 
 @Service // Marks this as a Spring service bean
 public class UserSyncService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserSyncService.class);
+    private static final int MAX_PROVISION_ATTEMPTS = 3;  // Unique constraint conflicts with other instances
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AuthenticatedUserCache userCache;  // Subject -> user, skips the lookup on repeat requests
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public UserSyncService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserSyncService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                           AuthenticatedUserCache userCache, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Get or create user from JWT token with proper race condition handling.
      * Uses the JWT subject (Keycloak user UUID) as the primary user ID.
+     *
+     * Served from AuthenticatedUserCache while the token is valid; on a miss the lookup (and,
+     * on first login, provisioning) runs in its own transaction, once per subject even when
+     * several requests of the same user arrive together.
      */
-    @Transactional(value = jakarta.transaction.Transactional.TxType.REQUIRED)
     public User getOrCreateUser(Jwt jwt) {
         // Extract subject (Keycloak user UUID) from JWT token
         String keycloakSub = jwt.getSubject();
@@ -46,6 +58,27 @@ public class UserSyncService {
             throw new IllegalArgumentException("JWT subject claim is null or empty");
         }
 
+        return userCache.resolve(keycloakSub, jwt.getExpiresAt(), () -> provision(jwt, keycloakSub));
+    }
+
+    // Each attempt is a fresh transaction; after a unique constraint conflict the next one either
+    // finds the user another instance just created or allocates a name past the conflicting one
+    private User provision(Jwt jwt, String keycloakSub) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> findOrProvision(jwt, keycloakSub));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_PROVISION_ATTEMPTS) {
+                    logger.error("Failed to provision user for sub {} after {} attempts", keycloakSub, attempt);
+                    throw e;
+                }
+                logger.warn("Conflict while provisioning user for sub {}, retrying: {}", keycloakSub, e.getMessage());
+            }
+        }
+    }
+
+    // Lookup by id, then by email; creates the local user on first login
+    private User findOrProvision(Jwt jwt, String keycloakSub) {
         // Convert Keycloak sub to UUID for use as user ID
         UUID userId;
         try {
@@ -83,23 +116,12 @@ public class UserSyncService {
         // Use real Keycloak email if provided, otherwise generate unique synthetic email
         String email = (emailClaim != null && !emailClaim.isBlank()) 
             ? emailClaim 
-            : generateUniqueEmail(userId);
+            : allocateEmail(userId);
 
-        // Use preferred_username from JWT if available and unique, otherwise generate unique username
-        String username;
-        if (preferredUsername != null && !preferredUsername.isBlank()) {
-            // Check if preferred username is already taken
-            Optional<User> existingByUsername = userRepository.findByUsername(preferredUsername);
-            if (existingByUsername.isPresent()) {
-                // Preferred username taken, generate unique variant
-                logger.info("Preferred username '{}' already taken, generating unique variant", preferredUsername);
-                username = generateUniqueUsernameWithPrefix(preferredUsername, userId);
-            } else {
-                username = preferredUsername;
-            }
-        } else {
-            username = generateUniqueUsername(userId);
-        }
+        // Use preferred_username from JWT if available (next free variant when taken), otherwise a generated one
+        String username = (preferredUsername != null && !preferredUsername.isBlank())
+            ? allocateUsername(preferredUsername)
+            : allocateUsername("user-" + userId);
 
         // Create new user
         User newUser = new User();
@@ -122,117 +144,50 @@ public class UserSyncService {
         }
         newUser.setRoles(roles);
 
-        try {
-            // Save new user
-            User saved = userRepository.save(newUser);
-            logger.info("Provisioned local user for Keycloak sub: {}", keycloakSub);
-            return saved;
-
-        } catch (DataIntegrityViolationException e) {
-            // Race condition: another thread/instance inserted at same time
-            logger.warn("Race condition detected during user creation for sub {}, attempting recovery: {}", keycloakSub, e.getMessage());
-
-            // Recovery attempt 1: lookup by ID
-            Optional<User> recovered = userRepository.findById(userId);
-            if (recovered.isPresent()) {
-                logger.info("Successfully recovered user after race condition by id: {}", userId);
-                return recovered.get();
-            }
-
-            // Recovery attempt 2: lookup by username
-            recovered = userRepository.findByUsername(username);
-            if (recovered.isPresent()) {
-                logger.info("Recovered user by username after race condition: {}", username);
-                return recovered.get();
-            }
-
-            // Recovery attempt 3: lookup by email
-            recovered = userRepository.findByEmail(email);
-            if (recovered.isPresent()) {
-                logger.info("Recovered user by email after race condition: {}", email);
-                return recovered.get();
-            }
-
-            // Unable to recover
-            logger.error("Failed to recover user after race condition for sub {}", keycloakSub);
-            throw new RuntimeException("Cannot recover user after race condition: " + e.getMessage(), e);
-        }
+        // Flush so a unique constraint violation surfaces here; getOrCreateUser retries in a new transaction
+        User saved = userRepository.saveAndFlush(newUser);
+        logger.info("Provisioned local user for Keycloak sub: {}", keycloakSub);
+        return saved;
     }
 
     /**
-     * Generates a guaranteed unique username using loop-based verification.
-     * This handles race conditions by continuously checking uniqueness until success.
+     * First free name out of base, base-1, base-2, ... in one query, however many are taken.
+     * Another instance may still claim it before we commit; the insert then fails on the
+     * unique constraint and provisioning is retried.
      */
-    private String generateUniqueUsername(UUID userId) {
-        String baseUsername = "user-" + userId;
-        int attempt = 0;
-        String username = baseUsername;
-
-        // Try base username first, then numbered variants if conflicts exist
-        while (userRepository.findByUsername(username).isPresent()) {
-            attempt++;
-            username = baseUsername + "-" + attempt;
-            
-            // Safety limit to prevent infinite loops
-            if (attempt > 1000) {
-                logger.error("Unable to generate unique username after 1000 attempts for userId: {}", userId);
-                throw new RuntimeException("Cannot generate unique username for user: " + userId);
-            }
+    private String allocateUsername(String base) {
+        List<String> taken = userRepository.findUsernamesLike(base, escapeLike(base) + "-%");
+        String username = firstFree(base, taken, suffix -> base + "-" + suffix);
+        if (!username.equals(base)) {
+            logger.info("Username '{}' already taken, using '{}'", base, username);
         }
-
-        logger.debug("Generated unique username for userId {}: {}", userId, username);
         return username;
     }
 
-    /**
-     * Generates a unique username based on a preferred prefix.
-     * If the preferred username is taken, appends a number to make it unique.
-     */
-    private String generateUniqueUsernameWithPrefix(String preferredPrefix, UUID userId) {
-        String baseUsername = preferredPrefix;
-        int attempt = 0;
-        String username = baseUsername;
-
-        // Try base username first, then numbered variants if conflicts exist
-        while (userRepository.findByUsername(username).isPresent()) {
-            attempt++;
-            username = baseUsername + "-" + attempt;
-            
-            // Safety limit to prevent infinite loops
-            if (attempt > 1000) {
-                logger.error("Unable to generate unique username from prefix '{}' after 1000 attempts", preferredPrefix);
-                // Fallback to UUID-based username
-                return generateUniqueUsername(userId);
-            }
-        }
-
-        logger.debug("Generated unique username from prefix '{}': {}", preferredPrefix, username);
-        return username;
+    // Synthetic email for accounts without one: <id>@keycloak.local, else <id>+<n>@keycloak.local
+    private String allocateEmail(UUID userId) {
+        String base = userId + "@keycloak.local";
+        List<String> taken = userRepository.findEmailsLike(base, userId + "+%@keycloak.local");
+        return firstFree(base, taken, suffix -> userId + "+" + suffix + "@keycloak.local");
     }
 
-    /**
-     * Generates a guaranteed unique email address using loop-based verification.
-     * This handles race conditions by continuously checking uniqueness until success.
-     */
-    private String generateUniqueEmail(UUID userId) {
-        String baseEmail = userId + "@keycloak.local";
-        int attempt = 0;
-        String email = baseEmail;
-
-        // Try base email first, then numbered variants if conflicts exist
-        while (userRepository.findByEmail(email).isPresent()) {
-            attempt++;
-            email = userId + "+" + attempt + "@keycloak.local";
-
-            // Safety limit to prevent infinite loops
-            if (attempt > 1000) {
-                logger.error("Unable to generate unique email after 1000 attempts for userId: {}", userId);
-                throw new RuntimeException("Cannot generate unique email for user: " + userId);
+    // Lowest suffix (0 = the base itself) whose name is not in the taken list
+    static String firstFree(String base, Collection<String> taken, IntFunction<String> variant) {
+        Set<String> names = new HashSet<>(taken);
+        if (!names.contains(base)) {
+            return base;
+        }
+        for (int suffix = 1; ; suffix++) {
+            String candidate = variant.apply(suffix);
+            if (!names.contains(candidate)) {
+                return candidate;
             }
         }
+    }
 
-        logger.debug("Generated unique email for userId {}: {}", userId, email);
-        return email;
+    // LIKE pattern for a literal prefix, using the '!' escape declared in the repository queries
+    static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
     }
 
     /**
@@ -0,0 +1,40 @@
+package com.securechat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of stored files and upload chunks, hex encoded: the content hash of a File row, the
+ * blob name of content-addressed storage and the strong ETag of downloads.
+ */
+public final class Hashing {
+
+    private Hashing() {}
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // Required of every JRE
+        }
+    }
+
+    // Hex SHA-256 of the stream, which is read to the end and closed
+    public static String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        try (DigestInputStream digesting = new DigestInputStream(in, digest)) {
+            digesting.transferTo(OutputStream.nullOutputStream());
+        }
+        return hex(digest);
+    }
+
+    // Hex of the digest computed so far (which resets it)
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
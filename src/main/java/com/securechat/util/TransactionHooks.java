@@ -0,0 +1,27 @@
+package com.securechat.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Side effects that must only be seen once the data they describe is committed: cache
+ * evictions, SSE events, background work on a new row. A rolled back transaction runs none.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {}
+
+    // Run once the surrounding transaction commits (immediately when there is none, e.g. in unit tests)
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
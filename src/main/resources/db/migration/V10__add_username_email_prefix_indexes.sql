@@ -0,0 +1,6 @@
+-- Prefix indexes for username/email allocation during Keycloak provisioning
+-- UserRepository.findUsernamesLike / findEmailsLike run "col = :base OR col LIKE 'base-%'".
+-- The plain unique indexes only serve LIKE prefixes under the C collation, so add
+-- text_pattern_ops indexes to keep that lookup an index range scan with any locale.
+CREATE INDEX IF NOT EXISTS idx_user_username_prefix ON users (username text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_user_email_prefix ON users (email text_pattern_ops);
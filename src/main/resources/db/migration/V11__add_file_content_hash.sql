@@ -0,0 +1,5 @@
+-- SHA-256 of each stored file (hex), set on upload
+-- Downloads use it as a strong ETag for conditional GETs (304) and If-Range. Rows uploaded
+-- before this column existed stay NULL (weak ETag) until FileService.backfillContentHashes
+-- hashes them in the background.
+ALTER TABLE files ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
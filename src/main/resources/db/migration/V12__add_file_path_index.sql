@@ -0,0 +1,4 @@
+-- Reference counts of content-addressed blobs
+-- Every upload of the same content shares one blob (file_path = blobs/ab/cd/<sha256>), so the
+-- blob garbage collector asks which paths are still referenced: FileRepository.findReferencedFilePaths.
+CREATE INDEX IF NOT EXISTS idx_files_file_path ON files (file_path);
@@ -0,0 +1,13 @@
+-- Files shared to chat rooms: the timeline behind GET /api/files/poll
+-- Polls are keyset scans of (chat_room_id, shared_at, id) after the client's cursor, so a poll
+-- that finds nothing new reads no rows. A file is listed at most once per room.
+CREATE TABLE IF NOT EXISTS room_files (
+    id UUID PRIMARY KEY,                                         -- UUIDv7, tie-breaker within one shared_at
+    chat_room_id UUID NOT NULL REFERENCES chat_rooms(id) ON DELETE CASCADE,
+    file_id UUID NOT NULL REFERENCES files(id) ON DELETE CASCADE,
+    shared_by UUID NOT NULL REFERENCES users(id),
+    shared_at TIMESTAMP NOT NULL,
+    UNIQUE (chat_room_id, file_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_room_files_room_shared ON room_files (chat_room_id, shared_at, id);
@@ -0,0 +1,72 @@
+package com.securechat.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 1M distinct client keys hitting the login limiter, as in an address scan: the old unbounded
+ * ConcurrentHashMap versus RateLimitBucketStore capped at 100k buckets.
+ * Reports lookups per second, entries retained and retained heap (approximate, after GC).
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class RateLimitBucketStoreBenchmark {
+
+    private static final int DISTINCT_KEYS = 1_000_000;
+    private static final int MAX_ENTRIES = 100_000;
+
+    @Test
+    void unboundedMapVersusBoundedStore() {
+        System.out.printf("%-12s %14s %12s %14s%n", "store", "lookups/s", "entries", "retained MB");
+
+        Map<String, Bucket> unbounded = new ConcurrentHashMap<>();
+        report("unbounded", key -> unbounded.computeIfAbsent(key, k -> newLoginBucket()), unbounded::size);
+
+        RateLimitBucketStore bounded = new RateLimitBucketStore(MAX_ENTRIES, 60);
+        report("bounded", key -> bounded.resolve(key, RateLimitBucketStoreBenchmark::newLoginBucket), bounded::size);
+
+        assertThat(bounded.size()).isLessThanOrEqualTo(MAX_ENTRIES);
+    }
+
+    private void report(String name, Function<String, Bucket> resolve, java.util.function.IntSupplier size) {
+        long heapBefore = usedHeapAfterGc();
+        long start = System.nanoTime();
+        for (int i = 0; i < DISTINCT_KEYS; i++) {
+            resolve.apply(key(i)).tryConsume(1);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long retained = usedHeapAfterGc() - heapBefore;
+        System.out.printf("%-12s %14.0f %12d %14.1f%n", name, DISTINCT_KEYS / seconds, size.getAsInt(),
+                retained / (1024.0 * 1024.0));
+    }
+
+    // Spread over 10.x.y.z like a scan of a /8
+    private static String key(int i) {
+        return "10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+    }
+
+    private static Bucket newLoginBucket() {
+        return Bucket.builder()
+                .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(1))))
+                .build();
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,67 @@
+package com.securechat.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RateLimitBucketStore - bounded, idle-expiring buckets")
+class RateLimitBucketStoreTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    @DisplayName("same key keeps its bucket, so consumed tokens stay consumed")
+    void sameKeySharesBucket() {
+        RateLimitBucketStore store = new RateLimitBucketStore(1000, 60);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(store.resolve("10.0.0.1", loginBucket()).tryConsume(1));
+        }
+
+        assertFalse(store.resolve("10.0.0.1", loginBucket()).tryConsume(1));  // 6th login in the minute
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    @DisplayName("entry count never exceeds max-entries")
+    void sizeIsBounded() {
+        RateLimitBucketStore store = new RateLimitBucketStore(160, 60);
+
+        for (int i = 0; i < 10_000; i++) {
+            store.resolve("10.0." + (i / 256) + "." + (i % 256), loginBucket());
+        }
+
+        assertTrue(store.size() <= 160, "size: " + store.size());
+    }
+
+    @Test
+    @DisplayName("idle buckets are dropped and recreated on next use")
+    void idleBucketExpires() {
+        RateLimitBucketStore store = new RateLimitBucketStore(1000, 0);  // Everything is idle at once
+        store.resolve("10.0.0.1", loginBucket());
+
+        store.sweep();
+        assertEquals(0, store.size());
+
+        store.resolve("10.0.0.1", loginBucket());
+        assertEquals(2, created.get());
+    }
+
+    // Same limit as RateLimitingFilter: 5 per minute
+    private Supplier<Bucket> loginBucket() {
+        return () -> {
+            created.incrementAndGet();
+            return Bucket.builder()
+                    .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(1))))
+                    .build();
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package com.securechat.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RateLimitPolicies - route matching and property overrides")
+class RateLimitPoliciesTest {
+
+    private final RateLimitPolicies policies = new RateLimitPolicies(new MockEnvironment());
+
+    @Test
+    @DisplayName("a message send matches the per-user and the per-room row")
+    void messageSendMatchesUserAndRoom() {
+        UUID roomId = UUID.randomUUID();
+
+        List<RateLimitPolicies.Match> matches = policies.match(
+                new MockHttpServletRequest("POST", "/api/chatrooms/" + roomId + "/messages"));
+
+        assertEquals(List.of("message-send", "room-send"), names(matches));
+        assertEquals(roomId.toString(), matches.get(1).pathVariables().get("chatRoomId"));
+    }
+
+    @Test
+    @DisplayName("method and path must both match")
+    void methodAndPathMustMatch() {
+        assertTrue(policies.match(new MockHttpServletRequest("GET", "/api/chatrooms/x/messages")).isEmpty());
+        assertTrue(policies.match(new MockHttpServletRequest("POST", "/api/chatrooms")).isEmpty());
+        assertEquals(List.of("upload"), names(policies.match(new MockHttpServletRequest("POST", "/api/files/upload"))));
+        assertEquals(List.of("login"), names(policies.match(new MockHttpServletRequest("POST", "/api/auth/login"))));
+        assertEquals(List.of("upload-chunk"), names(policies.match(
+                new MockHttpServletRequest("PUT", "/api/files/uploads/" + UUID.randomUUID() + "/chunks"))));
+    }
+
+    @Test
+    @DisplayName("limits can be changed per row from properties")
+    void propertiesOverrideLimits() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.rate-limit.policies.upload.burst", "50")
+                .withProperty("app.rate-limit.policies.upload.refill-period-seconds", "10");
+
+        RateLimitPolicy upload = new RateLimitPolicies(environment).policies().stream()
+                .filter(policy -> policy.name().equals("upload"))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals(50, upload.burst());
+        assertEquals(10, upload.refillTokens());  // Default kept
+        assertEquals(Duration.ofSeconds(10), upload.refillPeriod());
+    }
+
+    private static List<String> names(List<RateLimitPolicies.Match> matches) {
+        return matches.stream().map(match -> match.policy().name()).toList();
+    }
+}
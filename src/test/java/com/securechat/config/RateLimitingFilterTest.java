@@ -5,13 +5,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.env.Environment;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import java.io.IOException;
+import java.util.UUID;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -20,8 +21,7 @@ class RateLimitingFilterTest {
     @Mock
     private Environment environment;  // Mock Spring environment for profile checking
 
-    @InjectMocks
-    private RateLimitingFilter rateLimitingFilter;  // Test subject with injected mocks
+    private RateLimitingFilter rateLimitingFilter;  // Test subject, with a real bucket store
 
     @Mock
     private FilterChain filterChain;  // Mock servlet filter chain
@@ -29,6 +29,15 @@ class RateLimitingFilterTest {
     private MockHttpServletRequest request;
     private MockHttpServletResponse response;
 
+    @BeforeEach
+    void createFilter() {
+        // Slow message-send refill so a burst in a slow test run still hits the limit deterministically
+        MockEnvironment properties = new MockEnvironment()
+                .withProperty("app.rate-limit.policies.message-send.refill-period-seconds", "3600");
+        rateLimitingFilter = new RateLimitingFilter(environment, new RateLimitPolicies(properties),
+                new RateLimitBucketStore(1000, 60));
+    }
+
     // Helper method to set up request with path and IP address
     private void setupRequest(String path, String remoteAddr) {
         request = new MockHttpServletRequest("POST", path);
@@ -206,5 +215,62 @@ class RateLimitingFilterTest {
             // Then: Rate limiting active (not in test profile)
             verify(filterChain).doFilter(request, response);
         }
+
+        @Test
+        void doFilter_limitsMessageSendsPerUser_withRetryAfter() throws IOException, ServletException {
+            // Given: one user sending to a room (message-send policy: burst of 20 per user)
+            String path = "/api/chatrooms/" + UUID.randomUUID() + "/messages";
+            setupRequest(path, "10.1.1.1");
+            request.setUserPrincipal(() -> "11111111-1111-1111-1111-111111111111");
+
+            // When: 21 sends in a burst
+            for (int i = 0; i < 21; i++) {
+                rateLimitingFilter.doFilter(request, response, filterChain);
+            }
+
+            // Then: the 21st is rejected and told when to retry
+            verify(filterChain, times(20)).doFilter(request, response);
+            assert(response.getStatus() == 429);
+            assert(Long.parseLong(response.getHeader("Retry-After")) >= 1);
+            assert(response.getContentAsString().contains("Too many requests"));
+        }
+
+        @Test
+        void doFilter_keepsSeparateSendBucketsPerUser() throws IOException, ServletException {
+            // Given: two users in the same room, the first one out of tokens
+            String path = "/api/chatrooms/" + UUID.randomUUID() + "/messages";
+            setupRequest(path, "10.1.1.2");
+            request.setUserPrincipal(() -> "22222222-2222-2222-2222-222222222222");
+            for (int i = 0; i < 21; i++) {
+                rateLimitingFilter.doFilter(request, response, filterChain);
+            }
+
+            // When: the second user sends from the same address
+            MockHttpServletRequest other = new MockHttpServletRequest("POST", path);
+            other.setRemoteAddr("10.1.1.2");
+            other.setUserPrincipal(() -> "33333333-3333-3333-3333-333333333333");
+            MockHttpServletResponse otherResponse = new MockHttpServletResponse();
+            rateLimitingFilter.doFilter(other, otherResponse, filterChain);
+
+            // Then: not affected by the first user's limit
+            verify(filterChain).doFilter(other, otherResponse);
+            assert(otherResponse.getStatus() != 429);
+        }
+
+        @Test
+        void doFilter_doesNotLimitMessageReads() throws IOException, ServletException {
+            // Given: history reads are not in the policy table
+            request = new MockHttpServletRequest("GET", "/api/chatrooms/" + UUID.randomUUID() + "/messages");
+            request.setRemoteAddr("10.1.1.3");
+            response = new MockHttpServletResponse();
+
+            // When: many reads
+            for (int i = 0; i < 50; i++) {
+                rateLimitingFilter.doFilter(request, response, filterChain);
+            }
+
+            // Then: all pass
+            verify(filterChain, times(50)).doFilter(request, response);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package com.securechat.config;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.OrderUtils;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RequestMetricsFilter - status and latency without buffering")
+class RequestMetricsFilterTest {
+
+    private static final String SEND_ROUTE = "/api/chatrooms/{chatRoomId}/messages";
+
+    private SimpleMeterRegistry meterRegistry;
+    private RequestMetricsFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new RequestMetricsFilter(meterRegistry, 100, 1000);
+    }
+
+    @Test
+    @DisplayName("records a timer tagged by route template, not the raw path")
+    void recordsTimerByRouteTemplate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/chatrooms/42/messages");
+
+        filter.doFilter(request, new MockHttpServletResponse(), handler(SEND_ROUTE, 201));
+
+        Timer timer = meterRegistry.find(RequestMetricsFilter.METRIC)
+                .tags("method", "POST", "uri", SEND_ROUTE, "status", "201")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    @DisplayName("hands the original response down the chain")
+    void doesNotWrapResponse() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/download/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            assertSame(response, res);
+            res.getOutputStream().write(new byte[]{1, 2, 3});
+            res.flushBuffer();
+            assertTrue(res.isCommitted()); // Bytes reach the client while the handler still runs
+        });
+
+        assertEquals(3, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    @DisplayName("async requests are timed when they complete")
+    void asyncRequestRecordedOnCompletion() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chatrooms/42/stream");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/chatrooms/{chatRoomId}/stream");
+            req.startAsync();
+        });
+        assertNull(meterRegistry.find(RequestMetricsFilter.METRIC).timer());
+
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+
+        assertNotNull(meterRegistry.find(RequestMetricsFilter.METRIC)
+                .tags("uri", "/api/chatrooms/{chatRoomId}/stream", "status", "200")
+                .timer());
+    }
+
+    @Test
+    @DisplayName("a handler exception is recorded as 500 and rethrown")
+    void exceptionRecordedAsServerError() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/me");
+        FilterChain failing = (req, res) -> {
+            throw new ServletException("boom");
+        };
+
+        assertThrows(ServletException.class, () -> filter.doFilter(request, new MockHttpServletResponse(), failing));
+
+        assertNotNull(meterRegistry.find(RequestMetricsFilter.METRIC).tags("status", "500").timer());
+    }
+
+    @Test
+    @DisplayName("requests no handler matched share one uri tag")
+    void unmatchedRequestsAreGrouped() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/nope/1"), new MockHttpServletResponse(),
+                handler(null, 404));
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/nope/2"), new MockHttpServletResponse(),
+                handler(null, 404));
+
+        Timer timer = meterRegistry.find(RequestMetricsFilter.METRIC).tags("uri", "NOT_FOUND").timer();
+        assertNotNull(timer);
+        assertEquals(2, timer.count());
+    }
+
+    @Test
+    @DisplayName("runs before the Spring Security filter chain")
+    void ordersAheadOfSecurity() {
+        assertTrue(OrderUtils.getOrder(RequestMetricsFilter.class, Ordered.LOWEST_PRECEDENCE)
+                < SecurityProperties.DEFAULT_FILTER_ORDER);
+    }
+
+    @Test
+    @DisplayName("a request rejected by a later filter is still counted")
+    void rejectedRequestIsCounted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chatrooms");
+        FilterChain security = (req, res) -> ((HttpServletResponse) res).sendError(401); // Never reaches a handler
+
+        filter.doFilter(request, new MockHttpServletResponse(), security);
+
+        Timer timer = meterRegistry.find(RequestMetricsFilter.METRIC).tags("uri", "UNKNOWN", "status", "401").timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    @DisplayName("non-API requests are not timed")
+    void nonApiRequestsSkipped() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), new MockHttpServletResponse(),
+                handler("/actuator/health", 200));
+
+        assertNull(meterRegistry.find(RequestMetricsFilter.METRIC).timer());
+    }
+
+    private static FilterChain handler(String route, int status) {
+        return (req, res) -> {
+            if (route != null) {
+                req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, route);
+            }
+            ((HttpServletResponse) res).setStatus(status);
+        };
+    }
+}
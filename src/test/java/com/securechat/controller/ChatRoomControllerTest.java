@@ -583,15 +583,11 @@ class ChatRoomControllerTest {
         @Test
         void success_withPagination() throws Exception {
             // Arrange: create test message
-            var msg = Message.builder()
-                    .id(UUID.randomUUID())
-                    .content("hello")
-                    .sender(testUser)
-                    .username("tester")
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            var msg = new MessageListDto(UUID.randomUUID(), "hello", "tester", testUser.getId(),
+                    LocalDateTime.now(), "TEXT");
             // Mock service call with pagination
-            doReturn(List.of(msg)).when(messageService).getMessages(eq(roomId), any(MessageService.PaginationRequest.class));
+            doReturn(new org.springframework.data.domain.PageImpl<>(List.of(msg)))
+                    .when(messageService).getMessageDtosPaginated(eq(roomId), any(MessageService.PaginationRequest.class));
 
             // Act & Assert: GET with pagination parameters
             mockMvc.perform(get("/api/chatrooms/{id}/messages", roomId)
@@ -605,6 +601,8 @@ class ChatRoomControllerTest {
         @Test
         void defaultPagination_uses0_50() throws Exception {
             // Act & Assert: GET without pagination parameters uses defaults
+            doReturn(org.springframework.data.domain.Page.empty())
+                    .when(messageService).getMessageDtosPaginated(eq(roomId), any(MessageService.PaginationRequest.class));
             mockMvc.perform(get("/api/chatrooms/{id}/messages", roomId).principal(mockAuth))
                    .andExpect(status().isOk()); 
             // Could verify default parameters if needed
@@ -3,26 +3,30 @@
 package com.securechat.controller;
 
 import com.securechat.dto.FileUploadResponse;
-import com.securechat.entity.File;
+import com.securechat.dto.RoomFilesPage;
 import com.securechat.repository.FileRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.service.FileDownload;
 import com.securechat.service.FileService;
 import com.securechat.service.LocalFileStorageService;
 import com.securechat.util.AuthUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 import java.util.List;
@@ -58,6 +62,9 @@ class FileControllerTest {
         @MockBean
         private AuthUtil authUtil; //  Mocking authentication utility for user extraction
 
+        @TempDir
+        Path tempDir; //  Stored files served by the download tests
+
         private final UUID testUserId = UUID.fromString("550e8400-e29b-41d4-a716-446655440000"); //  Fixed test user ID for consistency
         private Authentication mockAuth;
 
@@ -142,40 +149,79 @@ class FileControllerTest {
                 verify(fileService).uploadFile(mockFile, testUserId.toString());
         }
 
+        @Test
+        void uploadFileStream_rawBody_returnsCreated() throws Exception {
+                //  Raw body upload: file type in Content-Type, name in the query, body streamed to the service
+                FileUploadResponse response = createSampleUploadResponse();
+                when(fileService.uploadStream(any(), eq(12L), eq("document.pdf"), eq("application/pdf"),
+                                eq(testUserId.toString()))).thenReturn(response);
+
+                mockMvc.perform(post("/api/files/upload")
+                                .param("filename", "document.pdf")
+                                .contentType("application/pdf")
+                                .content("%PDF-1.7 ...")
+                                .principal(mockAuth))
+                                .andExpect(status().isCreated())
+                                .andExpect(jsonPath("$.filename").value("document.pdf"));
+
+                verify(fileService, never()).uploadFile(any(), anyString());
+        }
+
         // === Poll New Files Tests ===
         //  Test suite for polling new files in chat rooms
 
         @Test
         @WithMockUser(username = "550e8400-e29b-41d4-a716-446655440000") //  Annotation provides security context for test
         void pollNewFiles_validRequest_returnsFileList() throws Exception {
-                //  Note: Parameters declared but unused - could indicate incomplete test setup
-                UUID chatRoomId = UUID.randomUUID();
-                Long lastMessageId = 100L;
-                UUID userId = UUID.randomUUID();
-
-                //  Building complete File entity with all required fields for realistic test
-                File file = new File();
-                file.setId(UUID.randomUUID());
-                file.setFilename("test.txt");
-                file.setFilePath("/path/to/test.txt");
-                file.setFileSize(1024L);
-                file.setMimeType("text/plain");
-                file.setUploadedAt(LocalDateTime.now());
-                file.setIsPublic(false);
-
-                List<File> files = List.of(file);
-                //  Mocking service to return file list based on room ID and timestamp
-                when(fileService.getFilesSince(eq("room-123"), eq("2025-01-01T10:00:00")))
-                                .thenReturn(files);
+                FileUploadResponse file = FileUploadResponse.builder()
+                                .id(UUID.randomUUID())
+                                .filename("test.txt")
+                                .downloadUrl("/api/files/download/x")
+                                .size(1024L)
+                                .uploadedAt(LocalDateTime.now())
+                                .build();
+
+                //  Mocking service to return the page for room ID and timestamp
+                when(fileService.getFilesSince(eq("room-123"), eq(testUserId.toString()), eq("2025-01-01T10:00:00"), isNull()))
+                                .thenReturn(new RoomFilesPage(List.of(file), "cursor-1", false));
 
                 mockMvc.perform(get("/api/files/poll")
                                 .param("chatRoomId", "room-123")
                                 .param("since", "2025-01-01T10:00:00")
                                 .principal(mockAuth))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$").isArray()); //  Basic array verification - could be enhanced
+                                .andExpect(jsonPath("$.files[0].filename").value("test.txt"))
+                                .andExpect(jsonPath("$.cursor").value("cursor-1"));
 
-                verify(fileService).getFilesSince("room-123", "2025-01-01T10:00:00");
+                verify(fileService).getFilesSince("room-123", testUserId.toString(), "2025-01-01T10:00:00", null);
+        }
+
+        @Test
+        void pollNewFiles_withCursor_needsNoTimestamp() throws Exception {
+                //  Follow-up polls pass the previous cursor only
+                when(fileService.getFilesSince("room-123", testUserId.toString(), null, "cursor-1"))
+                                .thenReturn(new RoomFilesPage(List.of(), "cursor-1", false));
+
+                mockMvc.perform(get("/api/files/poll")
+                                .param("chatRoomId", "room-123")
+                                .param("after", "cursor-1")
+                                .principal(mockAuth))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.files").isEmpty());
+        }
+
+        @Test
+        void shareFile_returnsSharedFile() throws Exception {
+                UUID fileId = UUID.randomUUID();
+                UUID chatRoomId = UUID.randomUUID();
+                when(fileService.shareToRoom(fileId, chatRoomId, testUserId)).thenReturn(FileUploadResponse.builder()
+                                .id(fileId).filename("document.pdf").build());
+
+                mockMvc.perform(post("/api/files/" + fileId + "/share")
+                                .param("chatRoomId", chatRoomId.toString())
+                                .principal(mockAuth))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.filename").value("document.pdf"));
         }
 
         @Test
@@ -195,24 +241,149 @@ class FileControllerTest {
         //  Test suite for file download endpoint functionality
 
         @Test
-        void downloadFile_successfulDownload_returnsFileResource() throws Exception {
-                //  Creating ByteArrayResource with filename via anonymous class override
-                ByteArrayResource resource = new ByteArrayResource("Sample file".getBytes()) {
-                        @Override
-                        public String getFilename() {
-                                return "document.pdf";
-                        }
-                };
-
-                when(fileService.downloadFile(any(UUID.class))).thenReturn(resource);
+        void downloadFile_successfulDownload_returnsFileContent() throws Exception {
+                //  Whole file with validators and range support advertised
+                FileDownload download = storedFile("Sample file");
+                when(fileService.openDownload(download.id())).thenReturn(download);
 
-                mockMvc.perform(get("/api/files/download/{fileId}", UUID.randomUUID())
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
                                 .principal(mockAuth))
                                 .andExpect(status().isOk())
                                 .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
                                                 "attachment; filename=\"document.pdf\""))
+                                .andExpect(header().string(HttpHeaders.ETAG, download.eTag()))
+                                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 11))
                                 .andExpect(content().string("Sample file"));
 
-                verify(fileService).downloadFile(any(UUID.class));
+                verify(fileService).openDownload(download.id());
+        }
+
+        @Test
+        void downloadFile_singleRange_returnsPartialContent() throws Exception {
+                //  Resumed download: only the requested bytes
+                FileDownload download = storedFile("0123456789");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.RANGE, "bytes=2-5")
+                                .principal(mockAuth))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                                .andExpect(content().string("2345"));
+        }
+
+        @Test
+        void downloadFile_multipleRanges_returnsMultipartByteranges() throws Exception {
+                //  Two ranges: one multipart/byteranges body with a part per range
+                FileDownload download = storedFile("0123456789");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                String body = mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.RANGE, "bytes=0-1,-2")
+                                .principal(mockAuth))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_TYPE,
+                                                org.hamcrest.Matchers.startsWith("multipart/byteranges; boundary=")))
+                                .andReturn().getResponse().getContentAsString();
+
+                org.assertj.core.api.Assertions.assertThat(body)
+                                .contains("Content-Range: bytes 0-1/10\r\n\r\n01")
+                                .contains("Content-Range: bytes 8-9/10\r\n\r\n89");
+        }
+
+        @Test
+        void downloadFile_unsatisfiableRange_returnsRangeNotSatisfiable() throws Exception {
+                FileDownload download = storedFile("0123456789");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.RANGE, "bytes=100-")
+                                .principal(mockAuth))
+                                .andExpect(status().isRequestedRangeNotSatisfiable())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+        }
+
+        @Test
+        void downloadFile_rangesPastTheEndSkipped_othersServed() throws Exception {
+                //  Only a set with no satisfiable range is a 416
+                FileDownload download = storedFile("0123456789");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.RANGE, "bytes=100-,2-4")
+                                .principal(mockAuth))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                                .andExpect(content().string("234"));
+        }
+
+        @Test
+        void downloadFile_staleIfRange_returnsWholeFile() throws Exception {
+                //  The client's copy is outdated: ignore the range and send everything
+                FileDownload download = storedFile("0123456789");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.RANGE, "bytes=2-5")
+                                .header(HttpHeaders.IF_RANGE, "\"outdated\"")
+                                .principal(mockAuth))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string("0123456789"));
+        }
+
+        @Test
+        void downloadFile_matchingETag_returnsNotModified() throws Exception {
+                //  Conditional GET: no body when the client already has this content
+                FileDownload download = storedFile("Sample file");
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .header(HttpHeaders.IF_NONE_MATCH, download.eTag())
+                                .principal(mockAuth))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+        }
+
+        @Test
+        void downloadFile_sendfileSupported_leavesBodyToConnector() throws Exception {
+                //  Tomcat sendfile: the handler only describes the region, the connector sends it
+                FileDownload download = storedFile("x".repeat(64 * 1024));
+                when(fileService.openDownload(download.id())).thenReturn(download);
+
+                mockMvc.perform(get("/api/files/download/{fileId}", download.id())
+                                .requestAttr("org.apache.tomcat.sendfile.support", Boolean.TRUE)
+                                .header(HttpHeaders.RANGE, "bytes=1024-")
+                                .principal(mockAuth))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename",
+                                                download.path().toAbsolutePath().toString()))
+                                .andExpect(request().attribute("org.apache.tomcat.sendfile.start", 1024L))
+                                .andExpect(request().attribute("org.apache.tomcat.sendfile.end", 64L * 1024))
+                                .andExpect(content().string(""));
+        }
+
+        @Test
+        void downloadThumbnail_servedInlineAndCachedLong() throws Exception {
+                //  Thumbnails never change, so browsers keep them instead of revalidating
+                FileDownload thumbnail = storedFile("thumbnail");
+                when(fileService.openThumbnail(thumbnail.id(), 128, testUserId)).thenReturn(thumbnail);
+
+                mockMvc.perform(get("/api/files/{fileId}/thumbnail", thumbnail.id())
+                                .param("size", "128")
+                                .principal(mockAuth))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable"))
+                                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                                                "inline; filename=\"document.pdf\""))
+                                .andExpect(content().string("thumbnail"));
+        }
+
+        // Stored file on disk as FileService.openDownload would describe it
+        private FileDownload storedFile(String content) throws java.io.IOException {
+                Path path = Files.writeString(tempDir.resolve(UUID.randomUUID().toString()), content);
+                return new FileDownload(UUID.randomUUID(), path, "document.pdf", "application/pdf",
+                                content.length(), "ab".repeat(32), Instant.parse("2025-01-01T10:00:00Z"));
         }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package com.securechat.controller;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sending a 1 GB file to a client over a loopback socket, the three ways a download can go:
+ * - stream copy: InputStream into the socket stream, as ResourceHttpMessageConverter does
+ * - transferTo (stream): FileRangeWriter's fallback, FileChannel.transferTo into the servlet stream
+ * - transferTo (socket): FileChannel.transferTo straight into the socket, i.e. sendfile(2), which is
+ *   what Tomcat does with the sendfile attributes FileRangeWriter sets
+ * Reports throughput and CPU time of the sending thread (best of 3, page cache warm).
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark
+ * (file size: -Dbenchmark.file.mb=1024)
+ */
+@Tag("benchmark")
+class FileRangeWriterBenchmark {
+
+    private static final long FILE_SIZE = Long.getLong("benchmark.file.mb", 1024) * 1024 * 1024;
+    private static final int RUNS = 3;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamCopyVersusTransferTo() throws Exception {
+        Path file = createFile();
+        System.out.printf("%-22s %12s %16s%n", "path", "MB/s", "CPU ms per GB");
+
+        report("stream copy", file, socket -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                in.transferTo(socket.socket().getOutputStream());
+            }
+        });
+        report("transferTo (stream)", file, socket -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                FileRangeWriter.transfer(channel, 0, FILE_SIZE, Channels.newChannel(socket.socket().getOutputStream()));
+            }
+        });
+        report("transferTo (socket)", file, socket -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                FileRangeWriter.transfer(channel, 0, FILE_SIZE, socket);
+            }
+        });
+    }
+
+    private void report(String name, Path file, Sender sender) throws Exception {
+        double bestSeconds = Double.MAX_VALUE;
+        double bestCpuMs = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            try (ServerSocketChannel server = ServerSocketChannel.open()
+                    .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                ExecutorService client = Executors.newSingleThreadExecutor();
+                try {
+                    Future<Long> received = client.submit(() -> drain(server));
+                    try (SocketChannel socket = SocketChannel.open(server.getLocalAddress())) {
+                        long cpuBefore = threads.getCurrentThreadCpuTime();
+                        long start = System.nanoTime();
+                        sender.send(socket);
+                        socket.shutdownOutput();
+                        assertThat(received.get()).isEqualTo(FILE_SIZE);
+                        bestSeconds = Math.min(bestSeconds, (System.nanoTime() - start) / 1_000_000_000.0);
+                        bestCpuMs = Math.min(bestCpuMs, (threads.getCurrentThreadCpuTime() - cpuBefore) / 1_000_000.0);
+                    }
+                } finally {
+                    client.shutdownNow();
+                }
+            }
+        }
+        double gigabytes = FILE_SIZE / (1024.0 * 1024.0 * 1024.0);
+        System.out.printf("%-22s %12.0f %16.0f%n", name, FILE_SIZE / (1024.0 * 1024.0) / bestSeconds,
+                bestCpuMs / gigabytes);
+    }
+
+    // The client: reads and discards everything
+    private static long drain(ServerSocketChannel server) throws IOException {
+        try (SocketChannel peer = server.accept()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+            long total = 0;
+            int read;
+            while ((read = peer.read(buffer)) >= 0) {
+                total += read;
+                buffer.clear();
+            }
+            return total;
+        }
+    }
+
+    private Path createFile() throws IOException {
+        Path file = tempDir.resolve("download.bin");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < FILE_SIZE; written += chunk.length) {
+                channel.write(ByteBuffer.wrap(chunk));
+            }
+        }
+        return file;
+    }
+
+    @FunctionalInterface
+    private interface Sender {
+        void send(SocketChannel socket) throws IOException;
+    }
+}
@@ -1,8 +1,10 @@
 
 package com.securechat.controller;
 
+import com.securechat.dto.LongPollResponse;
 import com.securechat.dto.MessageDTO;
 import com.securechat.dto.MessageListDto;
+import com.securechat.entity.ChatRoom;
 import com.securechat.entity.Message;
 import com.securechat.entity.User;
 import com.securechat.exception.UnauthorizedException;
@@ -27,6 +29,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -104,22 +107,14 @@ class MessageControllerTest {
             createdMessage.setTimestamp(LocalDateTime.now());
             createdMessage.setSender(testUser);
             createdMessage.setUsername("testuser");
-
-            // Create message DTO for response
-            MessageListDto listDto = new MessageListDto(
-                testMessageId,
-                "Hello World",
-                "testuser",
-                testUserId,
-                LocalDateTime.now(),
-                "TEXT"
-            );
+            createdMessage.setMessageType(Message.MessageType.TEXT);
+            ChatRoom chatRoom = new ChatRoom();
+            chatRoom.setId(testChatRoomId);
+            createdMessage.setChatRoom(chatRoom);
 
             // Mock service calls
             when(messageService.createMessage(eq(testChatRoomId), eq(testUserId), eq("Hello World")))
                 .thenReturn(createdMessage); // Return created message
-            when(messageService.getMessageDtoById(testMessageId))
-                .thenReturn(Optional.of(listDto)); // Return message DTO
 
             // When: call controller method
             ResponseEntity<MessageDTO> response = messageController.sendMessage(
@@ -129,9 +124,14 @@ class MessageControllerTest {
             assertEquals(HttpStatus.CREATED, response.getStatusCode()); // HTTP 201
             assertNotNull(response.getBody()); // Response body not null
             assertEquals("Hello World", response.getBody().getContent()); // Correct content
+            assertEquals(testMessageId, response.getBody().getId());
+            assertEquals(testUserId, response.getBody().getUserId());
+            assertEquals(testChatRoomId, response.getBody().getChatRoomId());
 
             // Verify service method was called
             verify(messageService).createMessage(testChatRoomId, testUserId, "Hello World");
+            // No read-after-write round trip
+            verify(messageService, never()).getMessageDtoById(any());
             // Verify streaming service published message
             verify(messageStreamService).publish(eq(testChatRoomId), eq("new-message"), any(MessageDTO.class));
         }
@@ -214,19 +214,16 @@ class MessageControllerTest {
         void getMessages_ValidRequest_ReturnsPaginatedMessages() {
             // Given: setup test data with pagination
             setupAuthenticatedContext();
-            Message message = new Message();
-            message.setId(testMessageId);
-            message.setContent("Test message");
-            message.setTimestamp(LocalDateTime.now());
-            message.setSender(testUser);
+            MessageListDto message = new MessageListDto(
+                testMessageId, "Test message", "testuser", testUserId, LocalDateTime.now(), "TEXT");
 
             // Create paginated result
-            Page<Message> messagePage = new PageImpl<>(List.of(message), PageRequest.of(0, 20), 1);
+            Page<MessageListDto> messagePage = new PageImpl<>(List.of(message), PageRequest.of(0, 20), 1);
             
             // Mock service calls
             when(messageService.isChatRoomMember(eq(testChatRoomId.toString()), eq(testUserId.toString())))
                 .thenReturn(true); // User is member
-            when(messageService.getMessagesPaginated(eq(testChatRoomId), any(MessageService.PaginationRequest.class)))
+            when(messageService.getMessageDtosPaginated(eq(testChatRoomId), any(MessageService.PaginationRequest.class)))
                 .thenReturn(messagePage); // Return paginated messages
 
             // When: call controller method
@@ -237,6 +234,7 @@ class MessageControllerTest {
             assertEquals(HttpStatus.OK, response.getStatusCode()); // HTTP 200
             assertNotNull(response.getBody()); // Response body not null
             assertEquals(1, response.getBody().getTotalElements()); // One message
+            assertEquals(testChatRoomId, response.getBody().getContent().get(0).getChatRoomId()); // Room filled in from path
         }
 
         @Test
@@ -254,7 +252,7 @@ class MessageControllerTest {
             // Then: verify 403 Forbidden
             assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode()); // HTTP 403
             // Verify messages service was NOT called
-            verify(messageService, never()).getMessagesPaginated(any(), any());
+            verify(messageService, never()).getMessageDtosPaginated(any(), any());
         }
 
         @Test
@@ -355,15 +353,52 @@ class MessageControllerTest {
         void streamMessages_CallsMessageService() {
             // Given: mock stream object
             Object expectedStream = new Object(); 
-            when(messageService.getStreamForChatRoom(testChatRoomId.toString()))
+            when(messageService.getStreamForChatRoom(testChatRoomId.toString(), null))
                 .thenReturn(expectedStream); // Return mock stream
 
             // When: call controller method
-            Object result = messageController.streamMessages(testChatRoomId.toString());
+            Object result = messageController.streamMessages(testChatRoomId.toString(), null);
 
             // Then: verify result matches expected stream
             assertEquals(expectedStream, result); // Same object returned
-            verify(messageService).getStreamForChatRoom(testChatRoomId.toString()); // Service called
+            verify(messageService).getStreamForChatRoom(testChatRoomId.toString(), null); // Service called
+        }
+    }
+
+    // ==============================================
+    // LONG-POLL TESTS
+    // Tests for GET /api/chatrooms/{chatRoomId}/messages/long-poll
+    // ==============================================
+
+    @Nested
+    @DisplayName("GET /api/chatrooms/{chatRoomId}/messages/long-poll")
+    class LongPollMessagesTests {
+
+        @Test
+        @DisplayName("Should hand the cursor and clamped timeout to the message service")
+        void longPollMessages_Member_ReturnsDeferredResult() {
+            setupAuthenticatedContext();
+            DeferredResult<LongPollResponse> deferred = new DeferredResult<>();
+            when(messageService.isChatRoomMember(eq(testChatRoomId.toString()), eq(testUserId.toString())))
+                .thenReturn(true); // User is member
+            when(messageService.longPollMessages(testChatRoomId.toString(), 42L, 55_000L)).thenReturn(deferred);
+
+            Object result = messageController.longPollMessages(testChatRoomId.toString(), 42L, 600, auth);
+
+            assertSame(deferred, result); // Timeout capped at 55 seconds
+        }
+
+        @Test
+        @DisplayName("Should return 403 when user is not a member")
+        void longPollMessages_UserNotMember_ReturnsForbidden() {
+            setupAuthenticatedContext();
+            when(messageService.isChatRoomMember(eq(testChatRoomId.toString()), eq(testUserId.toString())))
+                .thenReturn(false); // User NOT member
+
+            Object result = messageController.longPollMessages(testChatRoomId.toString(), null, 25, auth);
+
+            assertEquals(HttpStatus.FORBIDDEN, ((ResponseEntity<?>) result).getStatusCode()); // HTTP 403
+            verify(messageService, never()).longPollMessages(any(), any(), anyLong());
         }
     }
 
@@ -0,0 +1,78 @@
+package com.securechat.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securechat.service.RedisRoomEventBus;
+import com.securechat.service.RoomEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers  // Real Redis instance, no Spring context needed
+public class RedisRoomEventBusIT {  // Two bus instances act as two API nodes sharing one Redis
+
+    @Container
+    public static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisRoomEventBus nodeA;
+    private RedisRoomEventBus nodeB;
+    private final List<RoomEvent> deliveredOnA = new CopyOnWriteArrayList<>();
+    private final List<RoomEvent> deliveredOnB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        nodeA = new RedisRoomEventBus(template, objectMapper, 5, 100);
+        nodeB = new RedisRoomEventBus(template, objectMapper, 5, 100);
+        nodeA.onLocalDelivery(deliveredOnA::add);
+        nodeB.onLocalDelivery(deliveredOnB::add);
+        nodeA.start();
+        nodeB.start();
+    }
+
+    @AfterEach
+    void teardown() {
+        nodeA.stop();
+        nodeB.stop();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void eventPublishedOnOneNodeReachesTheOtherExactlyOnce() throws Exception {
+        UUID room = UUID.randomUUID();
+        Thread.sleep(500);  // Let both pattern subscriptions become active
+
+        for (int i = 0; i < 20; i++) {
+            nodeA.publish(new RoomEvent(room, "new-message", ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (deliveredOnB.size() < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);  // Give any duplicate a chance to show up
+
+        assertThat(deliveredOnB).hasSize(20);
+        assertThat(new String(deliveredOnB.get(0).data(), StandardCharsets.UTF_8)).isEqualTo("{\"n\":0}");
+        assertThat(new String(deliveredOnB.get(19).data(), StandardCharsets.UTF_8)).isEqualTo("{\"n\":19}");
+        assertThat(deliveredOnA).hasSize(20);  // Local delivery only, own events from Redis are skipped
+    }
+}
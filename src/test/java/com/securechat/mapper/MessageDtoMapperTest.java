@@ -1,6 +1,7 @@
 package com.securechat.mapper;
 
 import com.securechat.dto.MessageDTO;
+import com.securechat.dto.MessageListDto;
 import com.securechat.dto.MessageResponse;
 import com.securechat.entity.ChatRoom;
 import com.securechat.entity.Message;
@@ -158,6 +159,19 @@ class MessageDtoMapperTest {
                 .hasFieldOrPropertyWithValue("isDeleted", false); // Default deleted state
     }
 
+    @Test
+    void toDto_fromProjection_keepsEditedState() {
+        // Page 0 is served from MessageListDto projections; edits must still show up
+        MessageListDto edited = new MessageListDto(MESSAGE_ID, CONTENT, USERNAME, USER_ID, TIMESTAMP, "TEXT",
+                true, EDITED_AT);
+
+        MessageDTO dto = MessageDtoMapper.toDto(edited, ROOM_ID);
+
+        assertThat(dto.getIsEdited()).isTrue();
+        assertThat(dto.getEditedAt()).isEqualTo(EDITED_AT);
+        assertThat(dto.getChatRoomId()).isEqualTo(ROOM_ID);
+    }
+
     private Message createFullMessage() {
         // Helper method to create a complete Message entity with all relationships
         // Used as test data for "complete" scenarios
@@ -0,0 +1,142 @@
+package com.securechat.repository;
+
+import com.securechat.dto.MessageListDto;
+import com.securechat.entity.ChatRoom;
+import com.securechat.entity.Message;
+import com.securechat.entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Room history pagination: OFFSET + COUNT (Page) versus keyset on (timestamp, id) (Slice),
+ * for the first page and page 500 of a room with 12,000 messages.
+ *
+ * Runs against the embedded test database, so absolute numbers are only indicative;
+ * the point is how each scheme scales with depth and how many statements a page costs.
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MessageHistoryPaginationBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int DEEP_PAGE = 500;  // 1-based, as a user scrolling back would count
+    private static final int MESSAGES = 12_000;
+    private static final int WARMUP = 20;
+    private static final int MEASURED = 50;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void firstAndDeepPage_offsetVsKeyset() {
+        UUID roomId = seedRoom();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Walk the keyset pages once to find the cursor in front of page 500 (not measured)
+        MessageListDto beforeDeepPage = null;
+        Slice<MessageListDto> slice = messageRepository.findLatestMessageDtos(roomId, PageRequest.of(0, PAGE_SIZE));
+        for (int page = 2; page <= DEEP_PAGE; page++) {
+            beforeDeepPage = last(slice.getContent());
+            slice = messageRepository.findMessageDtosBefore(roomId, beforeDeepPage.timestamp(), beforeDeepPage.id(),
+                    PageRequest.of(0, PAGE_SIZE));
+        }
+        MessageListDto cursor = beforeDeepPage;
+
+        // Both schemes must return the same rows for page 500
+        Page<MessageListDto> offsetDeep = messageRepository.findMessageDtosByChatRoomId(roomId,
+                PageRequest.of(DEEP_PAGE - 1, PAGE_SIZE));
+        assertThat(slice.getContent()).isEqualTo(offsetDeep.getContent());
+
+        System.out.printf("%-8s %-8s %14s %18s%n", "page", "scheme", "avg ms/page", "statements/page");
+        report("1", "offset", statistics,
+                () -> messageRepository.findMessageDtosByChatRoomId(roomId, PageRequest.of(0, PAGE_SIZE)));
+        report("1", "keyset", statistics,
+                () -> messageRepository.findLatestMessageDtos(roomId, PageRequest.of(0, PAGE_SIZE)));
+        report(String.valueOf(DEEP_PAGE), "offset", statistics,
+                () -> messageRepository.findMessageDtosByChatRoomId(roomId, PageRequest.of(DEEP_PAGE - 1, PAGE_SIZE)));
+        report(String.valueOf(DEEP_PAGE), "keyset", statistics,
+                () -> messageRepository.findMessageDtosBefore(roomId, cursor.timestamp(), cursor.id(),
+                        PageRequest.of(0, PAGE_SIZE)));
+    }
+
+    private void report(String page, String scheme, Statistics statistics, Supplier<Slice<MessageListDto>> query) {
+        for (int i = 0; i < WARMUP; i++) {
+            query.get();
+        }
+        statistics.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED; i++) {
+            assertThat(query.get().getContent()).hasSize(PAGE_SIZE);
+        }
+        double avgMillis = (System.nanoTime() - start) / 1_000_000.0 / MEASURED;
+        double statements = (double) statistics.getPrepareStatementCount() / MEASURED;
+        System.out.printf("%-8s %-8s %14.3f %18.1f%n", page, scheme, avgMillis, statements);
+    }
+
+    // One room with MESSAGES messages, one second apart
+    private UUID seedRoom() {
+        User user = new User();
+        user.setUsername("bench-" + UUID.randomUUID().toString().substring(0, 8));
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPasswordHash("x");
+        entityManager.persist(user);
+
+        ChatRoom room = new ChatRoom();
+        room.setName("benchmark");
+        room.setCreatedBy(user);
+        room.setIsPrivate(false);
+        room.setMaxParticipants(100);
+        entityManager.persist(room);
+
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            batch.add(Message.builder()
+                    .sender(user)
+                    .username(user.getUsername())
+                    .chatRoom(room)
+                    .content("History message " + i)
+                    .timestamp(start.plusSeconds(i))
+                    .build());
+            if (batch.size() == 1_000) {
+                messageRepository.saveAll(batch);
+                entityManager.flush();
+                entityManager.clear();
+                batch.clear();
+            }
+        }
+        messageRepository.saveAll(batch);
+        entityManager.flush();
+        entityManager.clear();
+        return room.getId();
+    }
+
+    private static MessageListDto last(List<MessageListDto> page) {
+        return page.get(page.size() - 1);
+    }
+}
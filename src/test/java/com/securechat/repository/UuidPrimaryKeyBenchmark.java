@@ -0,0 +1,114 @@
+package com.securechat.repository;
+
+import com.securechat.util.UuidV7;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Primary key choice for insert-heavy tables (messages, audit_logs): random UUIDv4 versus
+ * time-ordered UUIDv7, on a table shaped like messages.
+ *
+ * Reports insert throughput (overall and for the last 10% of rows, when the index no longer
+ * fits in shared_buffers) and the size of the primary key index afterwards.
+ * Default is 10M rows per table; pass -Dbenchmark.rows=1000000 for a quicker run.
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark (needs Docker)
+ */
+@Tag("benchmark")
+@Testcontainers
+class UuidPrimaryKeyBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 10_000_000);
+    private static final int BATCH = 1_000;
+    private static final int COMMIT_EVERY = 10_000;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withCommand("postgres", "-c", "shared_buffers=128MB");
+
+    @Test
+    void insertThroughputAndIndexSize_v4VsV7() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(
+                postgres.getJdbcUrl() + "&reWriteBatchedInserts=true", postgres.getUsername(), postgres.getPassword())) {
+            System.out.printf("%-6s %10s %16s %16s %14s %14s%n",
+                    "key", "rows", "rows/s (all)", "rows/s (last)", "pk size MB", "leaf density");
+            run(connection, "v4", UUID::randomUUID);
+            run(connection, "v7", UuidV7::next);
+        }
+    }
+
+    private void run(Connection connection, String name, Supplier<UUID> keys) throws SQLException {
+        String table = "bench_" + name;
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("DROP TABLE IF EXISTS " + table);
+            ddl.execute("CREATE TABLE " + table + " (id uuid PRIMARY KEY, chat_room_id uuid NOT NULL,"
+                    + " content varchar(5000) NOT NULL, timestamp timestamp NOT NULL)");
+        }
+
+        connection.setAutoCommit(false);
+        UUID room = UUID.randomUUID();
+        int tailStart = ROWS - ROWS / 10;
+        long start = System.nanoTime();
+        long tailBegin = start;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + table + " (id, chat_room_id, content, timestamp) VALUES (?, ?, ?, now())")) {
+            for (int i = 0; i < ROWS; i++) {
+                if (i == tailStart) {
+                    tailBegin = System.nanoTime();
+                }
+                insert.setObject(1, keys.get());
+                insert.setObject(2, room);
+                insert.setString(3, "benchmark message " + i);
+                insert.addBatch();
+                if ((i + 1) % BATCH == 0) {
+                    insert.executeBatch();
+                }
+                if ((i + 1) % COMMIT_EVERY == 0) {
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        long end = System.nanoTime();
+        connection.setAutoCommit(true);
+
+        double allRate = ROWS / ((end - start) / 1_000_000_000.0);
+        double tailRate = (ROWS - tailStart) / ((end - tailBegin) / 1_000_000_000.0);
+        System.out.printf("%-6s %10d %16.0f %16.0f %14.1f %14s%n", name, ROWS, allRate, tailRate,
+                indexBytes(connection, table + "_pkey") / (1024.0 * 1024.0), leafDensity(connection, table + "_pkey"));
+    }
+
+    private long indexBytes(Connection connection, String index) throws SQLException {
+        try (Statement query = connection.createStatement();
+             ResultSet result = query.executeQuery("SELECT pg_relation_size('" + index + "')")) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    // Average fill of the index leaf pages (random keys leave half-empty pages behind after splits)
+    private String leafDensity(Connection connection, String index) {
+        try (Statement query = connection.createStatement()) {
+            query.execute("CREATE EXTENSION IF NOT EXISTS pgstattuple");
+            try (ResultSet result = query.executeQuery("SELECT avg_leaf_density FROM pgstatindex('" + index + "')")) {
+                result.next();
+                return String.format("%.1f%%", result.getDouble(1));
+            }
+        } catch (SQLException e) {
+            return "n/a";  // pgstattuple not available
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.securechat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securechat.entity.AuditLog;
+import com.securechat.repository.AuditLogRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("AuditLogWriter - batched audit inserts off the request thread")
+class AuditLogWriterTest {
+
+    @Mock
+    private AuditLogRepository auditLogRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;  // Commit is a no-op; we only count transactions
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private AuditLogWriter writer;
+
+    @AfterEach
+    void teardown() {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("events within the flush interval share one saveAll and one commit")
+    void eventsAreBatched() {
+        writer = writer("spill", 100, 10);
+        writer.start();
+
+        for (int i = 0; i < 3; i++) {
+            writer.submit(event("LOGIN_" + i));
+        }
+
+        verify(transactionManager, timeout(5_000)).commit(any());
+        writer.stop();
+
+        ArgumentCaptor<Iterable<AuditLog>> batches = ArgumentCaptor.forClass(Iterable.class);
+        verify(auditLogRepository, times(1)).saveAll(batches.capture());
+        assertEquals(3, size(batches.getValue()));
+        assertEquals(3, meterRegistry.counter("securechat.audit.events", "result", "written").count());
+    }
+
+    @Test
+    @DisplayName("stop writes every event still queued")
+    void stopFlushesQueue() {
+        writer = writer("spill", 10_000, 10);  // Interval far longer than the test
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.submit(event("LOGOUT_" + i));
+        }
+
+        writer.stop();
+
+        ArgumentCaptor<Iterable<AuditLog>> batches = ArgumentCaptor.forClass(Iterable.class);
+        verify(auditLogRepository, atLeastOnce()).saveAll(batches.capture());
+        assertEquals(5, batches.getAllValues().stream().mapToInt(AuditLogWriterTest::size).sum());
+    }
+
+    @Test
+    @DisplayName("overflow=drop counts events that find the queue full")
+    void fullQueueDrops() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(auditLogRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);  // Writer busy, so the queue fills up
+            return invocation.getArgument(0);
+        });
+        writer = writer("drop", 0, 1);
+        writer.start();
+
+        writer.submit(event("A"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        writer.submit(event("B"));  // Fills the one-slot queue
+        writer.submit(event("C"));
+        release.countDown();
+
+        assertEquals(1, meterRegistry.counter("securechat.audit.events", "result", "dropped").count());
+    }
+
+    @Test
+    @DisplayName("a batch the database refuses is spilled and loaded on the next start")
+    void refusedBatchSpilledAndReplayed() throws Exception {
+        doThrow(new IllegalStateException("database down")).when(auditLogRepository).flush();
+        writer = writer("spill", 0, 10);
+
+        writer.write(List.of(event("FILE_UPLOAD")));
+
+        Path spillFile = tempDir.resolve("audit-spill.jsonl");
+        assertEquals(1, Files.readAllLines(spillFile).size());
+
+        reset(auditLogRepository);
+        writer = writer("spill", 0, 10);
+        writer.start();
+
+        ArgumentCaptor<Iterable<AuditLog>> replayed = ArgumentCaptor.forClass(Iterable.class);
+        verify(auditLogRepository).saveAll(replayed.capture());
+        AuditLog event = replayed.getValue().iterator().next();
+        assertEquals("FILE_UPLOAD", event.getEventType());
+        assertNull(event.getId());  // Inserted as a new row
+        assertFalse(Files.exists(spillFile));
+    }
+
+    private AuditLogWriter writer(String overflow, long flushIntervalMs, int queueCapacity) {
+        return new AuditLogWriter(auditLogRepository, transactionManager, objectMapper, meterRegistry,
+                100, flushIntervalMs, queueCapacity, overflow, 0, tempDir.resolve("audit-spill.jsonl").toString());
+    }
+
+    private static AuditLog event(String eventType) {
+        AuditLog event = new AuditLog();
+        event.setEventType(eventType);
+        event.setUserId(UUID.randomUUID());
+        event.setAction("test");
+        event.setTimestamp(LocalDateTime.now());
+        return event;
+    }
+
+    private static int size(Iterable<AuditLog> batch) {
+        int size = 0;
+        for (AuditLog ignored : batch) {
+            size++;
+        }
+        return size;
+    }
+}
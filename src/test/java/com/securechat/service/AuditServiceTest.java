@@ -258,4 +258,18 @@ class AuditServiceTest {
         assertNull(saved.getUserAgent());    
         assertNotNull(saved.getTimestamp()); // Timestamp should still be set
     }
-}
\ No newline at end of file
+
+    @Test
+    void logEvent_withAsyncWriter_queuesInsteadOfSaving() {
+        // Tests that with the async writer the caller does not wait for the INSERT
+        AuditLogWriter writer = mock(AuditLogWriter.class);
+        ReflectionTestUtils.setField(auditService, "auditLogWriter", writer);
+
+        auditService.logEvent("PASSWORD_CHANGE", userId, "User changed password");
+
+        ArgumentCaptor<AuditLog> captor = ArgumentCaptor.forClass(AuditLog.class);
+        verify(writer).submit(captor.capture());
+        assertEquals("PASSWORD_CHANGE", captor.getValue().getEventType());
+        verifyNoInteractions(auditLogRepository);  // Written later, in a batch
+    }
+}
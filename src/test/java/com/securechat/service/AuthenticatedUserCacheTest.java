@@ -0,0 +1,143 @@
+package com.securechat.service;
+
+import com.securechat.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AuthenticatedUserCache - JWT subject to local user")
+class AuthenticatedUserCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final UUID userId = UUID.randomUUID();
+    private final String subject = userId.toString();
+
+    @Test
+    @DisplayName("second request of a subject is served from memory")
+    void secondRequestIsAHit() {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+
+        User first = cache.resolve(subject, null, loader());
+        User second = cache.resolve(subject, null, loader());
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("entries do not outlive the token that loaded them")
+    void tokenExpiryCapsTtl() {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+
+        cache.resolve(subject, Instant.now().minusSeconds(1), loader());
+        cache.resolve(subject, Instant.now().minusSeconds(1), loader());
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("evict forces the next request back to the loader")
+    void evictDropsUser() {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+        cache.resolve(subject, null, loader());
+
+        cache.evict(userId);  // Profile changed
+
+        cache.resolve(subject, null, loader());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("a load that raced an eviction is returned but not cached")
+    void loadRacingEvictionIsNotStored() {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+
+        User user = cache.resolve(subject, null, () -> {
+            cache.evict(userId);  // Roles changed while the lookup ran
+            return user();
+        });
+
+        assertNotNull(user);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("failed loads are not cached and reach the caller")
+    void failedLoadIsNotCached() {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+
+        assertThrows(IllegalStateException.class, () -> cache.resolve(subject, null, () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        cache.resolve(subject, null, loader());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("concurrent first logins of one subject provision once")
+    void concurrentMissesShareOneLoad() throws Exception {
+        AuthenticatedUserCache cache = new AuthenticatedUserCache(100, 300);
+        int requests = 16;
+        CountDownLatch loaderEntered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+        try {
+            Supplier<User> slowProvisioning = () -> {
+                loads.incrementAndGet();
+                loaderEntered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return user();
+            };
+
+            List<Future<User>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.resolve(subject, null, slowProvisioning)));
+            assertTrue(loaderEntered.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < requests; i++) {
+                results.add(pool.submit(() -> cache.resolve(subject, null, slowProvisioning)));
+            }
+            Thread.sleep(50);  // Let the others reach the in-flight load
+            release.countDown();
+
+            User provisioned = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<User> result : results) {
+                assertSame(provisioned, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Supplier<User> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return user();
+        };
+    }
+
+    private User user() {
+        User user = new User();
+        user.setId(userId);
+        user.setUsername("alice");
+        return user;
+    }
+}
@@ -29,6 +29,8 @@ class ChatRoomMemberServiceTest {
     @Mock private ChatRoomRepository chatRoomRepository;  // Repository for chat room data
     @Mock private ChatRoomMemberRepository chatRoomMemberRepository;  
     @Mock private UserRepository userRepository;  // Repository for user data
+    @Mock private MessageStreamService messageStreamService;  // Multiplexed SSE stream updates
+    @Mock private MembershipCache membershipCache;  // Authorization cache, invalidated on join/leave
 
     @InjectMocks private ChatRoomMemberService chatRoomMemberService;  // Service under test
 
@@ -92,6 +94,8 @@ class ChatRoomMemberServiceTest {
         assertEquals(user, result.getUser());  
         assertEquals(chatRoom, result.getChatRoom());  // Correct chat room
         verify(chatRoomMemberRepository).save(any(ChatRoomMember.class));  // Should save new member
+        verify(messageStreamService).userJoinedRoom(chatRoomId, userId);  // Live /api/stream update
+        verify(membershipCache).invalidate(chatRoomId, userId);
     }
 
     @Test
@@ -158,6 +162,8 @@ class ChatRoomMemberServiceTest {
         assertFalse(member.getIsActive());  // Should be inactive after leaving
         assertNotNull(member.getLastReadAt());  
         verify(chatRoomMemberRepository).save(member);  // Should persist changes
+        verify(messageStreamService).userLeftRoom(chatRoomId, userId);  // Live /api/stream update
+        verify(membershipCache).invalidate(chatRoomId, userId);
     }
 
     @Test
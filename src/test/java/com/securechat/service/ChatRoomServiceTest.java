@@ -18,6 +18,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -38,6 +40,12 @@ class ChatRoomServiceTest {
     @Mock // Mock repository for users
     private UserRepository userRepository;
 
+    @Mock // Mock SSE service (membership changes update multiplexed streams)
+    private MessageStreamService messageStreamService;
+
+    @Mock // Mock membership cache (membership changes must invalidate it)
+    private MembershipCache membershipCache;
+
     @InjectMocks // Inject mocks into ChatRoomService instance
     private ChatRoomService chatRoomService;
 
@@ -568,6 +576,8 @@ class ChatRoomServiceTest {
         verify(chatRoomRepository).findByIdWithCreator(chatRoomId);
         verify(chatRoomMemberRepository).deleteByChatRoomId(chatRoomId); // Delete members first
         verify(chatRoomRepository).delete(chatRoom); // Then delete chat room
+        verify(membershipCache).invalidateRoom(chatRoomId); // Cached memberships of the room are dropped
+        verify(messageStreamService).roomDeleted(chatRoomId); // Open multiplexed streams leave the room
     }
 
     @Test
@@ -633,6 +643,7 @@ class ChatRoomServiceTest {
         assertTrue(result.isPresent());
         assertEquals("MEMBER", result.get().getRole()); // Default role
         assertTrue(result.get().getIsActive()); // Should be active
+        verify(membershipCache).invalidate(chatRoomId, regularUserId); // Cached "not a member" is dropped
     }
 
     @Test
@@ -671,6 +682,7 @@ class ChatRoomServiceTest {
         assertTrue(result.isPresent());
         assertTrue(result.get().getIsActive()); // Should now be active
         verify(chatRoomMemberRepository).save(inactiveMember); // Should save
+        verify(membershipCache).invalidate(chatRoomId, regularUserId);
     }
 
     @Test
@@ -744,6 +756,28 @@ class ChatRoomServiceTest {
         assertFalse(member.getIsActive()); // Should be inactive
         assertNotNull(member.getLastReadAt()); // Should have last read timestamp
         verify(chatRoomMemberRepository).save(member); // Should save changes
+        verify(membershipCache).invalidate(chatRoomId, regularUserId); // Must not stay authorized from cache
+    }
+
+    @Test
+    void removeMemberFromChatRoom_StreamsToldOnlyAfterCommit() {
+        // Arrange: active member, inside a transaction
+        ChatRoomMember member = new ChatRoomMember();
+        member.setIsActive(true);
+        when(chatRoomRepository.existsById(chatRoomId)).thenReturn(true);
+        when(chatRoomMemberRepository.findByChatRoomIdAndUserId(chatRoomId, regularUserId))
+                .thenReturn(Optional.of(member));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            chatRoomService.removeMemberFromChatRoom(chatRoomId, regularUserId);
+            verify(messageStreamService, never()).userLeftRoom(any(), any()); // Would be wrong after a rollback
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(messageStreamService).userLeftRoom(chatRoomId, regularUserId);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     @Test
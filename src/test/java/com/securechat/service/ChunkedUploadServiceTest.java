@@ -0,0 +1,291 @@
+package com.securechat.service;
+
+import com.securechat.dto.UploadSessionRequest;
+import com.securechat.dto.UploadSessionResponse;
+import com.securechat.exception.ResourceNotFoundException;
+import com.securechat.exception.ValidationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ChunkedUploadService - resumable uploads assembled in place")
+class ChunkedUploadServiceTest {
+
+    private static final String USER = "550e8400-e29b-41d4-a716-446655440000";
+    private static final int CHUNK = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final FileService fileService = mock(FileService.class);
+    private ChunkedUploadService uploads;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LocalFileStorageService files = new LocalFileStorageService(tempDir.toString());
+        files.init();
+        uploads = new ChunkedUploadService(fileService, files, 3600, CHUNK, 2);
+        uploads.init();
+    }
+
+    @Test
+    @DisplayName("chunks sent out of order and in parallel assemble into the file")
+    void parallelChunksAssemble() throws Exception {
+        byte[] content = new byte[10 * CHUNK + 17];
+        new Random(7).nextBytes(content);
+        UUID id = start(content.length).getSessionId();
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = 0; offset < content.length; offset += CHUNK) {
+            offsets.add(offset);
+        }
+        Collections.shuffle(offsets, new Random(3));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<UploadSessionResponse>> sent = new ArrayList<>();
+            for (int offset : offsets) {
+                sent.add(pool.submit(() -> send(id, content, offset, Math.min(CHUNK, content.length - offset))));
+            }
+            for (Future<UploadSessionResponse> chunk : sent) {
+                chunk.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        AtomicReference<byte[]> published = new AtomicReference<>();
+        when(fileService.uploadAssembled(any(Path.class), eq("photo.png"), eq("image/png"), eq(USER), isNull()))
+                .thenAnswer(invocation -> {
+                    published.set(Files.readAllBytes(invocation.getArgument(0)));
+                    return null;
+                });
+
+        assertThat(uploads.getStatus(id, USER).getMissing()).isEmpty();
+        uploads.commit(id, USER);
+
+        assertThat(published.get()).isEqualTo(content);
+        assertThatThrownBy(() -> uploads.getStatus(id, USER)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("a chunk with the wrong checksum is not counted and stays missing")
+    void corruptChunkStaysMissing() {
+        byte[] content = new byte[3 * CHUNK];
+        UUID id = start(content.length).getSessionId();
+        send(id, content, 0, CHUNK);
+
+        assertThatThrownBy(() -> uploads.writeChunk(id, USER, CHUNK, CHUNK, "00".repeat(32),
+                new ByteArrayInputStream(content, CHUNK, CHUNK)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Chunk checksum mismatch");
+
+        UploadSessionResponse status = uploads.getStatus(id, USER);
+        assertThat(status.getReceivedBytes()).isEqualTo(CHUNK);
+        assertThat(status.getMissing()).containsExactly(new UploadSessionResponse.Chunk(CHUNK, 2 * CHUNK));
+    }
+
+    @Test
+    @DisplayName("a corrupt chunk overlapping verified bytes makes that whole span missing again")
+    void corruptOverlappingChunkUnmarksVerifiedBytes() {
+        byte[] content = new byte[3 * CHUNK];
+        new Random(11).nextBytes(content);
+        UUID id = start(content.length).getSessionId();
+        send(id, content, 0, CHUNK);
+        send(id, content, CHUNK, CHUNK);
+
+        byte[] garbage = new byte[CHUNK];  // Overwrites the second half of chunk 0 and the first half of chunk 1
+        assertThatThrownBy(() -> uploads.writeChunk(id, USER, CHUNK / 2, CHUNK, sha256(content),
+                new ByteArrayInputStream(garbage)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Chunk checksum mismatch");
+
+        UploadSessionResponse status = uploads.getStatus(id, USER);
+        assertThat(status.getReceivedBytes()).isEqualTo(CHUNK);
+        assertThat(status.getMissing()).containsExactly(new UploadSessionResponse.Chunk(CHUNK / 2, CHUNK),
+                new UploadSessionResponse.Chunk(2 * CHUNK, CHUNK));
+
+        // Resending what is reported missing restores the original bytes
+        send(id, content, CHUNK / 2, CHUNK);
+        send(id, content, 2 * CHUNK, CHUNK);
+        AtomicReference<byte[]> published = new AtomicReference<>();
+        when(fileService.uploadAssembled(any(Path.class), any(), any(), any(), any())).thenAnswer(invocation -> {
+            published.set(Files.readAllBytes(invocation.getArgument(0)));
+            return null;
+        });
+        uploads.commit(id, USER);
+        assertThat(published.get()).isEqualTo(content);
+    }
+
+    @Test
+    @DisplayName("the whole-file checksum given at create is checked on commit")
+    void fileChecksumPassedToCommit() {
+        byte[] content = new byte[CHUNK];
+        UploadSessionRequest request = request(content.length);
+        request.setSha256(sha256(content));
+        UUID id = uploads.create(request, USER).getSessionId();
+        send(id, content, 0, CHUNK);
+
+        uploads.commit(id, USER);
+
+        verify(fileService).uploadAssembled(any(Path.class), eq("photo.png"), eq("image/png"), eq(USER),
+                eq(sha256(content)));
+    }
+
+    @Test
+    @DisplayName("a whole-file checksum that is not a hex SHA-256 is refused at create")
+    void malformedFileChecksumRefused() {
+        UploadSessionRequest request = request(CHUNK);
+        request.setSha256("abc");
+
+        assertThatThrownBy(() -> uploads.create(request, USER))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("File checksum must be a hex SHA-256");
+    }
+
+    @Test
+    @DisplayName("overlapping and repeated chunks are merged, not double counted")
+    void resentChunksMerge() {
+        byte[] content = new byte[3 * CHUNK];
+        UUID id = start(content.length).getSessionId();
+
+        send(id, content, 0, CHUNK);
+        send(id, content, 0, CHUNK);              // Response was lost, client sent it again
+        send(id, content, CHUNK / 2, CHUNK);      // Client resumed with another chunk size
+        UploadSessionResponse status = send(id, content, 2 * CHUNK, CHUNK);
+
+        assertThat(status.getReceivedBytes()).isEqualTo(CHUNK + CHUNK / 2 + CHUNK);
+        assertThat(status.getMissing()).containsExactly(
+                new UploadSessionResponse.Chunk(CHUNK + CHUNK / 2, CHUNK / 2));
+    }
+
+    @Test
+    @DisplayName("commit before every byte arrived is refused and the session kept")
+    void incompleteCommitRefused() {
+        byte[] content = new byte[2 * CHUNK];
+        UUID id = start(content.length).getSessionId();
+        send(id, content, 0, CHUNK);
+
+        assertThatThrownBy(() -> uploads.commit(id, USER))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Upload incomplete: " + CHUNK + " of " + 2 * CHUNK + " bytes received");
+        assertThat(uploads.getStatus(id, USER).getReceivedBytes()).isEqualTo(CHUNK);
+        verify(fileService, never()).uploadAssembled(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("chunks outside the declared size or over the chunk limit are refused")
+    void chunkBoundsChecked() {
+        byte[] content = new byte[2 * CHUNK];
+        UUID id = start(content.length).getSessionId();
+
+        assertThatThrownBy(() -> send(id, content, CHUNK + 1, CHUNK)).hasMessage("Chunk outside the file");
+        assertThatThrownBy(() -> uploads.writeChunk(id, USER, 0, CHUNK + 1, "00".repeat(32),
+                new ByteArrayInputStream(content)))
+                .hasMessage("Chunk size must be between 1 and " + CHUNK + " bytes");
+    }
+
+    @Test
+    @DisplayName("sessions belong to the user who started them")
+    void otherUsersSessionNotFound() {
+        UUID id = start(CHUNK).getSessionId();
+
+        assertThatThrownBy(() -> uploads.getStatus(id, UUID.randomUUID().toString()))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("a user can only have a few uploads open at once")
+    void sessionsPerUserLimited() {
+        start(CHUNK);
+        start(CHUNK);
+
+        assertThatThrownBy(() -> start(CHUNK))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Too many uploads in progress");
+    }
+
+    @Test
+    @DisplayName("idle sessions expire and their file is deleted; aborting does the same at once")
+    void expiredAndAbortedSessionsCleanedUp() throws IOException {
+        byte[] content = new byte[2 * CHUNK];
+        UUID idle = start(content.length).getSessionId();
+        UUID aborted = start(content.length).getSessionId();
+        send(idle, content, 0, CHUNK);
+
+        uploads.abort(aborted, USER);
+        assertThat(uploads.expire(Instant.now())).isZero();  // Still within the expiry
+        assertThat(uploads.expire(Instant.now().plusSeconds(7200))).isEqualTo(1);
+
+        assertThatThrownBy(() -> uploads.getStatus(idle, USER)).isInstanceOf(ResourceNotFoundException.class);
+        assertThat(tempDir.resolve(ChunkedUploadService.SESSION_DIR)).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("on startup only session files idle past the expiry are deleted; other instances' survive")
+    void startupKeepsRecentSessionFiles() throws IOException {
+        Path sessionDir = tempDir.resolve(ChunkedUploadService.SESSION_DIR);
+        Path stale = Files.write(sessionDir.resolve(UUID.randomUUID() + ".part"), new byte[CHUNK]);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minusSeconds(7200)));
+        Path otherInstance = Files.write(sessionDir.resolve(UUID.randomUUID() + ".part"), new byte[CHUNK]);
+
+        LocalFileStorageService files = new LocalFileStorageService(tempDir.toString());
+        new ChunkedUploadService(fileService, files, 3600, CHUNK, 2).init();  // Another instance restarts
+
+        assertThat(stale).doesNotExist();
+        assertThat(otherInstance).exists();
+
+        Files.setLastModifiedTime(otherInstance, FileTime.from(Instant.now().minusSeconds(7200)));
+        uploads.expire(Instant.now());  // The sweep removes it once it was abandoned
+        assertThat(otherInstance).doesNotExist();
+    }
+
+    private UploadSessionResponse start(long size) {
+        return uploads.create(request(size), USER);
+    }
+
+    private static UploadSessionRequest request(long size) {
+        UploadSessionRequest request = new UploadSessionRequest();
+        request.setFilename("photo.png");
+        request.setMimeType("image/png");
+        request.setSize(size);
+        return request;
+    }
+
+    private UploadSessionResponse send(UUID id, byte[] content, int offset, int length) {
+        byte[] chunk = Arrays.copyOfRange(content, offset, offset + length);
+        return uploads.writeChunk(id, USER, offset, length, sha256(chunk), new ByteArrayInputStream(chunk));
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
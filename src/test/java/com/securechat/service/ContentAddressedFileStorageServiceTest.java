@@ -0,0 +1,114 @@
+package com.securechat.service;
+
+import com.securechat.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ContentAddressedFileStorageService - deduplicating blob store")
+class ContentAddressedFileStorageServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private ContentAddressedFileStorageService storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LocalFileStorageService files = new LocalFileStorageService(tempDir.toString());
+        files.init();
+        storage = new ContentAddressedFileStorageService(files, fileRepository, 3600);
+        storage.init();
+    }
+
+    @Test
+    @DisplayName("blobs are fanned out over two directory levels by hash")
+    void blobPathFansOut() throws IOException {
+        StoredFile stored = store("%PDF-1.7 quarterly report", "report.pdf");
+
+        String hash = stored.contentHash();
+        assertThat(stored.path()).isEqualTo("blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash);
+        assertThat(Files.readString(storage.resolveFile(stored.path()))).isEqualTo("%PDF-1.7 quarterly report");
+    }
+
+    @Test
+    @DisplayName("the same content posted twice is stored once")
+    void duplicateUploadSharesBlob() throws IOException {
+        StoredFile first = store("%PDF-1.7 same bytes", "a.pdf");
+        StoredFile second = store("%PDF-1.7 same bytes", "b.pdf");  // Other name, other room
+
+        assertThat(second.path()).isEqualTo(first.path());
+        assertThat(blobCount()).isEqualTo(1);
+        assertThat(tempDir.resolve(".incoming")).isEmptyDirectory();  // Duplicate copy discarded
+    }
+
+    @Test
+    @DisplayName("garbage collection removes old unreferenced blobs only")
+    void collectsOrphans() throws IOException {
+        StoredFile referenced = store("still attached", "kept.txt");
+        StoredFile orphan = store("message was deleted", "gone.txt");
+        StoredFile recent = store("row not committed yet", "new.txt");
+        age(referenced);
+        age(orphan);
+        when(fileRepository.findReferencedFilePaths(anyCollection())).thenReturn(List.of(referenced.path()));
+
+        assertThat(storage.collect()).isEqualTo(1);
+
+        assertThat(tempDir.resolve(orphan.path())).doesNotExist();
+        assertThat(tempDir.resolve(referenced.path())).exists();
+        assertThat(tempDir.resolve(recent.path())).exists();  // Inside the grace period
+    }
+
+    @Test
+    @DisplayName("garbage collection removes uploads abandoned in .incoming")
+    void collectsAbandonedUploads() throws IOException {
+        Path abandoned = Files.writeString(tempDir.resolve(".incoming").resolve("upload-1.part"), "half");
+        Files.setLastModifiedTime(abandoned, FileTime.from(Instant.now().minusSeconds(7200)));
+
+        storage.collect();
+
+        assertThat(abandoned).doesNotExist();
+        verifyNoInteractions(fileRepository);  // No blobs, no lookups
+    }
+
+    @Test
+    @DisplayName("deleting a file leaves its shared blob to the collector")
+    void deleteKeepsSharedBlob() throws IOException {
+        StoredFile stored = store("shared", "shared.txt");
+        Path legacy = Files.writeString(tempDir.resolve("1234_legacy.txt"), "before blobs");
+
+        storage.deleteFile(stored.path());
+        storage.deleteFile("1234_legacy.txt");
+
+        assertThat(tempDir.resolve(stored.path())).exists();
+        assertThat(legacy).doesNotExist();
+    }
+
+    private StoredFile store(String content, String name) throws IOException {
+        return storage.storeStream(new ByteArrayInputStream(content.getBytes()), name);
+    }
+
+    private void age(StoredFile stored) throws IOException {
+        Files.setLastModifiedTime(tempDir.resolve(stored.path()), FileTime.from(Instant.now().minusSeconds(7200)));
+    }
+
+    private long blobCount() throws IOException {
+        try (var walk = Files.walk(tempDir.resolve(ContentAddressedFileStorageService.BLOB_ROOT))) {
+            return walk.filter(Files::isRegularFile).count();
+        }
+    }
+}
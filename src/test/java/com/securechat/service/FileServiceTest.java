@@ -3,12 +3,21 @@ package com.securechat.service;
 import com.securechat.dto.FileUploadResponse;
 import com.securechat.entity.File;
 import com.securechat.entity.User;
+import com.securechat.exception.ResourceNotFoundException;
+import com.securechat.exception.ValidationException;
+import com.securechat.dto.RoomFilesPage;
+import com.securechat.entity.RoomFile;
+import com.securechat.exception.UnauthorizedException;
+import com.securechat.repository.ChatRoomMemberRepository;
 import com.securechat.repository.FileRepository;
+import com.securechat.repository.RoomFileRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.util.Hashing;
 import java.util.List;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
@@ -17,13 +26,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.core.io.Resource;
+import org.springframework.data.domain.SliceImpl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -39,7 +56,22 @@ class FileServiceTest {
     private UserRepository userRepository;  
 
     @Mock
-    private LocalFileStorageService storageService;  // Service for physical file storage
+    private FileStorageService storageService;  // Service for physical file storage
+
+    @Mock
+    private RoomFileRepository roomFileRepository;  // Room file timelines
+
+    @Mock
+    private ChatRoomMemberRepository chatRoomMemberRepository;
+
+    @Mock
+    private MembershipCache membershipCache;
+
+    @Mock
+    private MessageStreamService messageStreamService;  // Receives "new-file" events
+
+    @Mock
+    private ThumbnailService thumbnailService;  // Background image previews
 
     @InjectMocks
     private FileService fileService; 
@@ -57,7 +89,7 @@ class FileServiceTest {
                 "file",              // Parameter name in form
                 "document.pdf",     
                 "application/pdf",   // Content type (allowed MIME type)
-                "PDF content".getBytes()  
+                "%PDF-1.7 content".getBytes()  // Starts with the PDF signature
         );
     }
 
@@ -75,7 +107,7 @@ class FileServiceTest {
 
         // Mock dependencies
         when(userRepository.findById(userUuid)).thenReturn(Optional.of(uploader));
-        when(storageService.storeFile(mockFile)).thenReturn(storedPath);
+        when(storageService.storeStream(any(InputStream.class), eq("document.pdf"))).thenAnswer(storeAs(storedPath));
         when(fileRepository.save(any(File.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Execute the upload
@@ -83,8 +115,9 @@ class FileServiceTest {
 
         // Verify all expected interactions occurred
         verify(userRepository).findById(userUuid);
-        verify(storageService).storeFile(mockFile);
+        verify(storageService).storeStream(any(InputStream.class), eq("document.pdf"));
         verify(fileRepository).save(fileEntityCaptor.capture());  // Capture saved entity
+        verify(thumbnailService).schedule(storedPath, "application/pdf");  // Service skips non-images
 
         // Verify the File entity that was saved
         File savedEntity = fileEntityCaptor.getValue();
@@ -95,6 +128,7 @@ class FileServiceTest {
         assertEquals("application/pdf", savedEntity.getMimeType());  
         assertEquals(uploader, savedEntity.getUploader());  // User who uploaded
         assertFalse(savedEntity.getIsPublic());  // Default: private file
+        assertEquals("ab".repeat(32), savedEntity.getContentHash());  // Hash computed while storing
         assertNotNull(savedEntity.getUploadedAt());  
 
         // Verify the response DTO returned to client
@@ -178,54 +212,152 @@ class FileServiceTest {
         uploader.setId(userUuid);
 
         when(userRepository.findById(userUuid)).thenReturn(Optional.of(uploader));
-        when(storageService.storeFile(mockFile)).thenThrow(new IOException("Disk full"));  // Storage failure
+        when(storageService.storeStream(any(InputStream.class), eq("document.pdf")))
+                .thenThrow(new IOException("Disk full"));  // Storage failure
 
         RuntimeException ex = assertThrows(RuntimeException.class,
                 () -> fileService.uploadFile(mockFile, userId));
 
         assertEquals("Failed to store file", ex.getMessage()); 
         assertInstanceOf(IOException.class, ex.getCause());  // Original exception preserved
-        verify(storageService).storeFile(mockFile);  
+        verify(storageService).storeStream(any(InputStream.class), eq("document.pdf"));
         verifyNoInteractions(fileRepository);  // No metadata saved if storage fails
     }
 
-    // ====================== validateFile - Magic Bytes Stub ======================
+    // ====================== Magic Bytes ======================
 
     @Test
-    @DisplayName("validateMagicBytes - stub method is called and does nothing")
-    void validateMagicBytes_calledAndNoOp() throws IOException {
-        // Tests that magic byte validation stub is invoked without effect
-        // Magic bytes validation checks file signatures to prevent spoofing
-        MultipartFile mockFile = createValidMockFile();
+    @DisplayName("validateMagicBytes - content not matching the declared type is rejected")
+    void validateMagicBytes_rejectsSpoofedType() throws IOException {
+        // An executable renamed to .pdf: declared type allowed, signature is not
+        MultipartFile spoofed = new MockMultipartFile(
+                "file", "invoice.pdf", "application/pdf", new byte[]{'M', 'Z', (byte) 0x90, 0, 3, 0});
         User uploader = new User();
         uploader.setId(userUuid);
 
         when(userRepository.findById(userUuid)).thenReturn(Optional.of(uploader));
-        when(storageService.storeFile(mockFile)).thenReturn("/uploads/test");
+        when(storageService.storeStream(any(InputStream.class), eq("invoice.pdf"))).thenAnswer(storeAs("/uploads/x"));
+
+        ValidationException ex = assertThrows(ValidationException.class,
+                () -> fileService.uploadFile(spoofed, userId));
+
+        assertEquals("File content does not match type: application/pdf", ex.getMessage());
+        verifyNoInteractions(fileRepository);  // Nothing recorded; storage discards the partial file
+    }
+
+    // ====================== uploadStream ======================
+
+    @Test
+    @DisplayName("uploadStream - stores the raw body with the declared type, parameters dropped")
+    void uploadStream_success() throws IOException {
+        User uploader = new User();
+        uploader.setId(userUuid);
+        byte[] body = "meeting notes".getBytes();
+
+        when(userRepository.findById(userUuid)).thenReturn(Optional.of(uploader));
+        when(storageService.storeStream(any(InputStream.class), eq("notes.txt"))).thenAnswer(storeAs("/uploads/n"));
         when(fileRepository.save(any(File.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        // Should not throw - validateFile calls validateMagicBytes internally (currently a stub)
-        assertDoesNotThrow(() -> fileService.uploadFile(mockFile, userId));
+        FileUploadResponse response = fileService.uploadStream(new java.io.ByteArrayInputStream(body), body.length,
+                "notes.txt", "text/plain; charset=UTF-8", userId);
 
-        // No further assertions needed since validateMagicBytes is currently a stub
-        // This test ensures the method call doesn't break the flow
+        verify(fileRepository).save(fileEntityCaptor.capture());
+        assertEquals("text/plain", fileEntityCaptor.getValue().getMimeType());
+        assertEquals(body.length, fileEntityCaptor.getValue().getFileSize());
+        assertEquals(body.length, response.getSize());
+    }
+
+    @Test
+    @DisplayName("uploadStream - oversized Content-Length is refused before the body is read")
+    void uploadStream_declaredTooLarge() {
+        InputStream body = mock(InputStream.class);
+
+        ValidationException ex = assertThrows(ValidationException.class, () -> fileService.uploadStream(
+                body, 50L * 1024 * 1024 + 1, "big.pdf", "application/pdf", userId));
+
+        assertEquals("File size exceeds 50MB limit", ex.getMessage());
+        verifyNoInteractions(body, userRepository, storageService, fileRepository);
+    }
+
+    // ====================== uploadAssembled ======================
+
+    @Test
+    @DisplayName("uploadAssembled - hands the chunked file to storage and records it")
+    void uploadAssembled_success(@TempDir Path tempDir) throws IOException {
+        User uploader = new User();
+        uploader.setId(userUuid);
+        Path assembled = Files.writeString(tempDir.resolve("session.part"), "%PDF-1.7 from chunks");
+
+        when(userRepository.findById(userUuid)).thenReturn(Optional.of(uploader));
+        when(storageService.storeAssembled(assembled, "report.pdf", null))
+                .thenReturn(new StoredFile("/uploads/r", 20, "ab".repeat(32)));
+        when(fileRepository.save(any(File.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileUploadResponse response = fileService.uploadAssembled(assembled, "report.pdf", "application/pdf", userId, null);
+
+        verify(fileRepository).save(fileEntityCaptor.capture());
+        assertEquals("/uploads/r", fileEntityCaptor.getValue().getFilePath());
+        assertEquals(20, response.getSize());
+    }
+
+    @Test
+    @DisplayName("uploadAssembled - spoofed content is rejected and the file deleted")
+    void uploadAssembled_rejectsSpoofedType(@TempDir Path tempDir) throws IOException {
+        Path assembled = Files.write(tempDir.resolve("session.part"), new byte[]{'M', 'Z', (byte) 0x90, 0, 3, 0});
+
+        ValidationException ex = assertThrows(ValidationException.class,
+                () -> fileService.uploadAssembled(assembled, "invoice.pdf", "application/pdf", userId, null));
+
+        assertEquals("File content does not match type: application/pdf", ex.getMessage());
+        assertFalse(Files.exists(assembled));
+        verifyNoInteractions(storageService, fileRepository);
     }
 
     // ====================== getFilesSince ======================
 
     @Test
-    @DisplayName("getFilesSince - parses timestamp and returns empty list (current implementation)")
-    void getFilesSince_returnsEmptyList() {
-        // Tests retrieval of files uploaded after a specific timestamp
-        String isoTimestamp = "2025-12-23T12:00:00";  // ISO 8601 format
-        String chatRoomId = "room-123";
+    @DisplayName("getFilesSince - first poll scans strictly after the timestamp and returns a cursor")
+    void getFilesSince_firstPollReturnsFilesAndCursor() {
+        UUID chatRoomId = UUID.randomUUID();
+        LocalDateTime since = LocalDateTime.parse("2025-12-23T12:00:00");
+        RoomFile shared = roomFile(chatRoomId, since.plusSeconds(5));
+
+        when(membershipCache.memberUsername(eq(chatRoomId), eq(userUuid), any())).thenReturn(Optional.of("alice"));
+        when(roomFileRepository.findSharedAfter(eq(chatRoomId), eq(since), eq(new UUID(-1L, -1L)), any()))
+                .thenReturn(new SliceImpl<>(List.of(shared)));
+
+        RoomFilesPage page = fileService.getFilesSince(chatRoomId.toString(), userId, "2025-12-23T12:00:00", null);
+
+        assertEquals(1, page.files().size());
+        assertEquals(shared.getFile().getId(), page.files().get(0).getId());
+        assertFalse(page.hasMore());
+        assertEquals(new HistoryCursor(shared.getSharedAt(), shared.getId()), HistoryCursor.decode(page.cursor()));
+    }
 
-        List<File> result = fileService.getFilesSince(chatRoomId, isoTimestamp);
+    @Test
+    @DisplayName("getFilesSince - an idle poll keeps the caller's cursor")
+    void getFilesSince_idlePollKeepsCursor() {
+        UUID chatRoomId = UUID.randomUUID();
+        String cursor = new HistoryCursor(LocalDateTime.parse("2025-12-23T12:00:05"), UUID.randomUUID()).encode();
 
-        assertNotNull(result);
-        assertTrue(result.isEmpty());  // Current implementation returns empty list
-        
-        // Note: LocalDateTime.parse is called internally on isoTimestamp
+        when(membershipCache.memberUsername(eq(chatRoomId), eq(userUuid), any())).thenReturn(Optional.of("alice"));
+        when(roomFileRepository.findSharedAfter(eq(chatRoomId), any(), any(), any())).thenReturn(new SliceImpl<>(List.of()));
+
+        RoomFilesPage page = fileService.getFilesSince(chatRoomId.toString(), userId, null, cursor);
+
+        assertTrue(page.files().isEmpty());
+        assertEquals(cursor, page.cursor());
+    }
+
+    @Test
+    @DisplayName("getFilesSince - non-members are refused before any query")
+    void getFilesSince_notMember() {
+        UUID chatRoomId = UUID.randomUUID();
+        when(membershipCache.memberUsername(eq(chatRoomId), eq(userUuid), any())).thenReturn(Optional.empty());
+
+        assertThrows(UnauthorizedException.class,
+                () -> fileService.getFilesSince(chatRoomId.toString(), userId, "2025-12-23T12:00:00", null));
+        verifyNoInteractions(roomFileRepository);
     }
 
     @Test
@@ -235,7 +367,7 @@ class FileServiceTest {
         String invalid = "invalid-date";  // Not ISO 8601 format
 
         RuntimeException ex = assertThrows(RuntimeException.class,
-                () -> fileService.getFilesSince("room-123", invalid));
+                () -> fileService.getFilesSince("room-123", userId, invalid, null));
 
         assertEquals("Invalid timestamp format", ex.getMessage());  // User-friendly error
         assertInstanceOf(java.time.format.DateTimeParseException.class, ex.getCause());  
@@ -302,4 +434,224 @@ class FileServiceTest {
         verify(fileRepository).findById(fileId);
         verify(storageService).loadFile("/uploads/test.pdf");
     }
+
+    // ====================== openDownload ======================
+
+    @Test
+    @DisplayName("openDownload - describes the stored file with its recorded hash")
+    void openDownload_usesStoredHash(@TempDir Path tempDir) throws IOException {
+        Path stored = Files.writeString(tempDir.resolve("stored.pdf"), "PDF content");
+        File fileEntity = fileEntity("stored.pdf");
+        fileEntity.setContentHash("ab".repeat(32));
+
+        when(fileRepository.findById(fileEntity.getId())).thenReturn(Optional.of(fileEntity));
+        when(storageService.resolveFile("stored.pdf")).thenReturn(stored);
+
+        FileDownload download = fileService.openDownload(fileEntity.getId());
+
+        assertEquals(stored, download.path());
+        assertEquals(11, download.size());  // Size of the bytes on disk
+        assertEquals("\"" + "ab".repeat(32) + "\"", download.eTag());
+        verify(fileRepository, never()).save(any());  // Nothing to backfill
+    }
+
+    @Test
+    @DisplayName("openDownload - serves files uploaded before hashes were recorded with a weak ETag, without hashing")
+    void openDownload_legacyFileGetsWeakETag(@TempDir Path tempDir) throws IOException {
+        Path stored = Files.writeString(tempDir.resolve("legacy.pdf"), "PDF content");
+        Instant mtime = Instant.parse("2020-01-02T03:04:05Z");
+        Files.setLastModifiedTime(stored, FileTime.from(mtime));
+        File fileEntity = fileEntity("legacy.pdf");  // content_hash NULL
+
+        when(fileRepository.findById(fileEntity.getId())).thenReturn(Optional.of(fileEntity));
+        when(storageService.resolveFile("legacy.pdf")).thenReturn(stored);
+
+        FileDownload download = fileService.openDownload(fileEntity.getId());
+
+        assertNull(download.contentHash());
+        assertEquals(mtime, download.lastModified());
+        assertEquals("W/\"" + fileEntity.getId() + "-11-" + mtime.toEpochMilli() + "\"", download.eTag());
+        verify(fileRepository, never()).save(any());  // Left to backfillContentHashes
+    }
+
+    // ====================== backfillContentHashes ======================
+
+    @Test
+    @DisplayName("backfillContentHashes - hashes a batch of legacy files, skipping ones missing from storage")
+    void backfillContentHashes_hashesBatch(@TempDir Path tempDir) throws IOException {
+        Path stored = Files.writeString(tempDir.resolve("legacy.pdf"), "PDF content");
+        File legacy = fileEntity("legacy.pdf");
+        File missing = fileEntity("missing.pdf");
+        List<File> batch = legacy.getId().compareTo(missing.getId()) < 0 ? List.of(legacy, missing) : List.of(missing, legacy);
+
+        when(fileRepository.findTop50ByContentHashIsNullAndIdGreaterThanOrderByIdAsc(new UUID(0L, 0L))).thenReturn(batch);
+        when(storageService.resolveFile("legacy.pdf")).thenReturn(stored);
+        when(storageService.resolveFile("missing.pdf")).thenReturn(tempDir.resolve("missing.pdf"));
+
+        fileService.backfillContentHashes();
+
+        verify(fileRepository).save(fileEntityCaptor.capture());
+        assertSame(legacy, fileEntityCaptor.getValue());
+        assertEquals(Hashing.sha256Hex(Files.newInputStream(stored)), legacy.getContentHash());
+        assertNull(missing.getContentHash());
+
+        // The next run continues after the batch, and starts over once it reaches the end
+        UUID last = batch.get(1).getId();
+        when(fileRepository.findTop50ByContentHashIsNullAndIdGreaterThanOrderByIdAsc(last)).thenReturn(List.of());
+        fileService.backfillContentHashes();
+        fileService.backfillContentHashes();
+        verify(fileRepository, times(2)).findTop50ByContentHashIsNullAndIdGreaterThanOrderByIdAsc(new UUID(0L, 0L));
+    }
+
+    // ====================== openThumbnail ======================
+
+    @Test
+    @DisplayName("openThumbnail - serves a generated thumbnail with its own ETag")
+    void openThumbnail_ready(@TempDir Path tempDir) throws IOException {
+        Path thumbnail = Files.write(tempDir.resolve("photo.png.thumb320.png"), new byte[42]);
+        File fileEntity = imageEntity();
+        when(fileRepository.findById(fileEntity.getId())).thenReturn(Optional.of(fileEntity));
+        when(thumbnailService.find(fileEntity.getFilePath(), "image/png", 320)).thenReturn(Optional.of(thumbnail));
+
+        FileDownload download = fileService.openThumbnail(fileEntity.getId(), 320, userUuid);
+
+        assertEquals(thumbnail, download.path());
+        assertEquals(42, download.size());
+        assertEquals("photo-320.png", download.filename());
+        assertEquals("\"" + "ab".repeat(32) + "-320\"", download.eTag());  // Differs from the original's
+    }
+
+    @Test
+    @DisplayName("openThumbnail - not generated yet is a 404 and queues generation")
+    void openThumbnail_notReady() {
+        File fileEntity = imageEntity();
+        when(fileRepository.findById(fileEntity.getId())).thenReturn(Optional.of(fileEntity));
+        when(thumbnailService.find(fileEntity.getFilePath(), "image/png", 128)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> fileService.openThumbnail(fileEntity.getId(), 128, userUuid));
+        verify(thumbnailService).schedule(fileEntity.getFilePath(), "image/png");
+    }
+
+    @Test
+    @DisplayName("openThumbnail - a member of a room the file was shared to can see it")
+    void openThumbnail_sharedToMember(@TempDir Path tempDir) throws IOException {
+        Path thumbnail = Files.write(tempDir.resolve("photo.png.thumb128.png"), new byte[42]);
+        File fileEntity = imageEntity();
+        UUID member = UUID.randomUUID();
+        when(fileRepository.findById(fileEntity.getId())).thenReturn(Optional.of(fileEntity));
+        when(roomFileRepository.isSharedWithMember(fileEntity.getId(), member)).thenReturn(true);
+        when(thumbnailService.find(fileEntity.getFilePath(), "image/png", 128)).thenReturn(Optional.of(thumbnail));
+
+        assertEquals(thumbnail, fileService.openThumbnail(fileEntity.getId(), 128, member).path());
+    }
+
+    @Test
+    @DisplayName("openThumbnail - deleted or unshared files are a 404 and queue nothing")
+    void openThumbnail_hiddenFiles() {
+        File unshared = imageEntity();
+        File deleted = imageEntity();
+        deleted.setDeletedAt(java.time.LocalDateTime.now());
+        UUID stranger = UUID.randomUUID();
+        when(fileRepository.findById(unshared.getId())).thenReturn(Optional.of(unshared));
+        when(fileRepository.findById(deleted.getId())).thenReturn(Optional.of(deleted));
+
+        assertThrows(ResourceNotFoundException.class, () -> fileService.openThumbnail(unshared.getId(), 128, stranger));
+        assertThrows(ResourceNotFoundException.class, () -> fileService.openThumbnail(deleted.getId(), 128, userUuid));
+        verifyNoInteractions(thumbnailService);
+    }
+
+    @Test
+    @DisplayName("openThumbnail - only fixed sizes, and only for images")
+    void openThumbnail_invalidRequests() {
+        File pdf = fileEntity("stored.pdf");
+        pdf.setUploader(uploader());
+        when(fileRepository.findById(pdf.getId())).thenReturn(Optional.of(pdf));
+
+        assertThrows(ValidationException.class, () -> fileService.openThumbnail(pdf.getId(), 1000, userUuid));
+        assertThrows(ResourceNotFoundException.class, () -> fileService.openThumbnail(pdf.getId(), 128, userUuid));
+        verifyNoInteractions(thumbnailService);
+    }
+
+    // ====================== shareToRoom ======================
+
+    @Test
+    @DisplayName("shareToRoom - adds the file to the room timeline and notifies the room")
+    void shareToRoom_recordsAndPublishes() {
+        UUID chatRoomId = UUID.randomUUID();
+        File file = ownedFile();
+
+        when(fileRepository.findById(file.getId())).thenReturn(Optional.of(file));
+        when(membershipCache.memberUsername(eq(chatRoomId), eq(userUuid), any())).thenReturn(Optional.of("alice"));
+        when(roomFileRepository.findByChatRoomIdAndFileId(chatRoomId, file.getId())).thenReturn(Optional.empty());
+
+        FileUploadResponse response = fileService.shareToRoom(file.getId(), chatRoomId, userUuid);
+
+        verify(roomFileRepository).save(argThat(shared ->
+                shared.getChatRoomId().equals(chatRoomId) && shared.getFile() == file));
+        verify(messageStreamService).publish(chatRoomId, "new-file", response);
+    }
+
+    @Test
+    @DisplayName("shareToRoom - only the uploader can share a file")
+    void shareToRoom_notUploader() {
+        File file = ownedFile();
+        when(fileRepository.findById(file.getId())).thenReturn(Optional.of(file));
+
+        assertThrows(UnauthorizedException.class,
+                () -> fileService.shareToRoom(file.getId(), UUID.randomUUID(), UUID.randomUUID()));
+        verifyNoInteractions(roomFileRepository, messageStreamService);
+    }
+
+    private File ownedFile() {
+        User uploader = new User();
+        uploader.setId(userUuid);
+        File file = fileEntity("blobs/ab/cd/x");
+        file.setUploader(uploader);
+        return file;
+    }
+
+    private RoomFile roomFile(UUID chatRoomId, LocalDateTime sharedAt) {
+        RoomFile shared = new RoomFile();
+        shared.setId(UUID.randomUUID());
+        shared.setChatRoomId(chatRoomId);
+        shared.setFile(fileEntity("blobs/ab/cd/y"));
+        shared.setSharedBy(userUuid);
+        shared.setSharedAt(sharedAt);
+        return shared;
+    }
+
+    private File imageEntity() {
+        File fileEntity = fileEntity("blobs/ab/cd/photo");
+        fileEntity.setFilename("photo.png");
+        fileEntity.setMimeType("image/png");
+        fileEntity.setContentHash("ab".repeat(32));
+        fileEntity.setUploader(uploader());
+        return fileEntity;
+    }
+
+    private User uploader() {
+        User uploader = new User();
+        uploader.setId(userUuid);
+        return uploader;
+    }
+
+    private File fileEntity(String storedName) {
+        File fileEntity = new File();
+        fileEntity.setId(UUID.randomUUID());
+        fileEntity.setFilename("document.pdf");
+        fileEntity.setFilePath(storedName);
+        fileEntity.setMimeType("application/pdf");
+        fileEntity.setFileSize(11L);
+        fileEntity.setUploadedAt(java.time.LocalDateTime.now());
+        return fileEntity;
+    }
+
+    // Storage stub that reads the upload to the end, as the real one does, so stream checks run
+    private static org.mockito.stubbing.Answer<StoredFile> storeAs(String path) {
+        return invocation -> {
+            long size = ((InputStream) invocation.getArgument(0)).transferTo(java.io.OutputStream.nullOutputStream());
+            return new StoredFile(path, size, "ab".repeat(32));
+        };
+    }
 }
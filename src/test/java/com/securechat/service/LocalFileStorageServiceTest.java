@@ -73,6 +73,74 @@ class LocalFileStorageServiceTest {
         assertThat(savedFilename).contains("_dangerous___file.exe");  
     }
 
+    @Test
+    void storeStream_hashesWhileWriting_andPublishesInOnePass() throws IOException {
+        // Tests the single-pass store: content, size and SHA-256 from one read of the stream
+        byte[] content = "%PDF-1.7 single pass".getBytes();
+
+        StoredFile stored = fileStorageService.storeStream(new java.io.ByteArrayInputStream(content), "report.pdf");
+
+        assertThat(stored.path()).endsWith("_report.pdf");
+        assertThat(stored.size()).isEqualTo(content.length);
+        assertThat(stored.contentHash()).isEqualTo(java.util.HexFormat.of().formatHex(sha256(content)));
+        assertThat(Files.readAllBytes(tempDir.resolve(stored.path()))).isEqualTo(content);
+        assertThat(tempDir.resolve(".incoming")).isEmptyDirectory();  // Staged copy was renamed, not copied
+    }
+
+    @Test
+    void storeStream_leavesNothingBehind_whenStreamFails() {
+        // Tests that a rejected or broken upload does not leave a partial file
+        java.io.InputStream failing = new java.io.SequenceInputStream(
+                new java.io.ByteArrayInputStream("partial".getBytes()),
+                new java.io.InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Client disconnected");
+                    }
+                });
+
+        assertThatThrownBy(() -> fileStorageService.storeStream(failing, "broken.pdf"))
+                .isInstanceOf(IOException.class);
+        assertThat(tempDir.resolve(".incoming")).isEmptyDirectory();
+        assertThat(tempDir.toFile().list()).containsExactly(".incoming");
+    }
+
+    @Test
+    void storeAssembled_renamesFileIntoPlace() throws IOException {
+        // Tests that a file assembled from chunks is hashed and moved, not copied
+        byte[] content = "%PDF-1.7 assembled from chunks".getBytes();
+        Path assembled = Files.write(tempDir.resolve("session.part"), content);
+
+        StoredFile stored = fileStorageService.storeAssembled(assembled, "report.pdf", null);
+
+        assertThat(stored.size()).isEqualTo(content.length);
+        assertThat(stored.contentHash()).isEqualTo(java.util.HexFormat.of().formatHex(sha256(content)));
+        assertThat(Files.readAllBytes(tempDir.resolve(stored.path()))).isEqualTo(content);
+        assertThat(assembled).doesNotExist();
+    }
+
+    @Test
+    void storeAssembled_rejectsChecksumMismatch_andDeletesFile() throws IOException {
+        // Tests that an assembled file whose hash differs from the client's is never published
+        byte[] content = "%PDF-1.7 assembled from chunks".getBytes();
+        Path assembled = Files.write(tempDir.resolve("session.part"), content);
+
+        assertThatThrownBy(() -> fileStorageService.storeAssembled(assembled, "report.pdf", "00".repeat(32)))
+                .isInstanceOf(com.securechat.exception.ValidationException.class)
+                .hasMessage("File checksum mismatch");
+        assertThat(assembled).doesNotExist();
+        assertThat(tempDir.toFile().list()).containsExactly(".incoming");
+    }
+
+    @Test
+    void storeAssembled_throwsSecurityException_forFileOutsideUploadDir(@TempDir Path elsewhere) throws IOException {
+        Path outside = Files.writeString(elsewhere.resolve("outside.txt"), "not an upload");
+
+        assertThatThrownBy(() -> fileStorageService.storeAssembled(outside, "outside.txt", null))
+                .isInstanceOf(SecurityException.class);
+        assertThat(outside).exists();
+    }
+
     @Test
     void loadFile_returnsResource_whenFileExists() throws IOException {
         // Tests loading an existing file as Spring Resource
@@ -108,6 +176,19 @@ class LocalFileStorageServiceTest {
                 .isInstanceOf(FileNotFoundException.class);  // Should throw FileNotFoundException
     }
 
+    @Test
+    void resolveFile_returnsPathInsideUploadDir_whenFileExists() throws IOException {
+        // Tests the download path: the stored file itself, for sendfile / transferTo
+        Path filePath = tempDir.resolve("served.pdf");
+        Files.write(filePath, "content".getBytes());
+
+        assertThat(fileStorageService.resolveFile("served.pdf")).isEqualTo(filePath.toAbsolutePath().normalize());
+        assertThatThrownBy(() -> fileStorageService.resolveFile("missing.pdf"))
+                .isInstanceOf(FileNotFoundException.class);
+        assertThatThrownBy(() -> fileStorageService.resolveFile("../secrets.txt"))
+                .isInstanceOf(SecurityException.class);  // Same traversal checks as loadFile
+    }
+
     @Test
     void deleteFile_removesFile_whenExists() throws IOException {
         // Tests successful file deletion
@@ -138,4 +219,12 @@ class LocalFileStorageServiceTest {
                 .doesNotThrowAnyException();  // Should not throw exception
         // This is important for cleanup operations that might be called multiple times
     }
-}
\ No newline at end of file
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return java.security.MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
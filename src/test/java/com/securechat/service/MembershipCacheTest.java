@@ -0,0 +1,159 @@
+package com.securechat.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MembershipCache - cached (room, user) authorization checks")
+class MembershipCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("second check of a member is served from memory")
+    void secondCheckIsAHit() {
+        MembershipCache cache = new MembershipCache(100, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+
+        assertEquals(Optional.of("alice"), cache.memberUsername(room, user, loader("alice")));
+        assertEquals(Optional.of("alice"), cache.memberUsername(room, user, loader("alice")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("non-members are cached too")
+    void negativeResultIsCached() {
+        MembershipCache cache = new MembershipCache(100, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+
+        assertTrue(cache.memberUsername(room, user, loader(null)).isEmpty());
+        assertTrue(cache.memberUsername(room, user, loader(null)).isEmpty());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("expired entries are loaded again")
+    void expiredEntryIsReloaded() {
+        MembershipCache cache = new MembershipCache(100, 0, 0);
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+
+        cache.memberUsername(room, user, loader("alice"));
+        cache.memberUsername(room, user, loader("alice"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("invalidate forces the next check back to the loader")
+    void invalidateDropsEntry() {
+        MembershipCache cache = new MembershipCache(100, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+        cache.memberUsername(room, user, loader("alice"));
+
+        cache.invalidate(room, user);  // User left the room
+
+        assertTrue(cache.memberUsername(room, user, loader(null)).isEmpty());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("invalidateRoom drops every member of that room only")
+    void invalidateRoomDropsWholeRoom() {
+        MembershipCache cache = new MembershipCache(100, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID otherRoom = UUID.randomUUID();
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        cache.memberUsername(room, alice, loader("alice"));
+        cache.memberUsername(room, bob, loader("bob"));
+        cache.memberUsername(otherRoom, alice, loader("alice"));
+
+        cache.invalidateRoom(room);
+
+        assertEquals(1, cache.size());
+        cache.memberUsername(otherRoom, alice, loader("alice"));
+        assertEquals(3, loads.get());  // Other room still cached
+    }
+
+    @Test
+    @DisplayName("a load that raced an invalidation is returned but not cached")
+    void loadRacingInvalidationIsNotStored() {
+        MembershipCache cache = new MembershipCache(100, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+
+        Optional<String> result = cache.memberUsername(room, user, () -> {
+            loads.incrementAndGet();
+            cache.invalidate(room, user);  // Member removed while the query ran
+            return Optional.of("alice");
+        });
+
+        assertEquals(Optional.of("alice"), result);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("least recently checked entry is evicted at capacity")
+    void evictsLeastRecentlyChecked() {
+        MembershipCache cache = new MembershipCache(2, 300, 30);
+        UUID room = UUID.randomUUID();
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        UUID carol = UUID.randomUUID();
+        cache.memberUsername(room, alice, loader("alice"));
+        cache.memberUsername(room, bob, loader("bob"));
+        cache.memberUsername(room, alice, loader("alice"));  // Alice is now the most recent
+
+        cache.memberUsername(room, carol, loader("carol"));  // Evicts bob
+
+        assertEquals(2, cache.size());
+        cache.memberUsername(room, alice, loader("alice"));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("steady state: fewer than 5% of checks reach the database")
+    void steadyStateHitRate() {
+        MembershipCache cache = new MembershipCache(10_000, 300, 30);
+        List<UUID> rooms = new ArrayList<>();
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rooms.add(UUID.randomUUID());
+        }
+        for (int i = 0; i < 50; i++) {
+            users.add(UUID.randomUUID());
+        }
+
+        int checks = 50_000;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < checks; i++) {
+            UUID room = rooms.get(random.nextInt(rooms.size()));
+            UUID user = users.get(random.nextInt(users.size()));
+            if (i % 1_000 == 0) {
+                cache.invalidate(room, user);  // Occasional join/leave
+            }
+            cache.memberUsername(room, user, loader("member"));
+        }
+
+        assertTrue(loads.get() < checks * 0.05, "loader calls: " + loads.get());
+    }
+
+    private Supplier<Optional<String>> loader(String username) {
+        return () -> {
+            loads.incrementAndGet();
+            return Optional.ofNullable(username);
+        };
+    }
+}
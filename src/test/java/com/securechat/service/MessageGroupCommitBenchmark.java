@@ -0,0 +1,170 @@
+package com.securechat.service;
+
+import com.securechat.entity.ChatRoom;
+import com.securechat.entity.ChatRoomMember;
+import com.securechat.entity.User;
+import com.securechat.repository.ChatRoomMemberRepository;
+import com.securechat.repository.ChatRoomRepository;
+import com.securechat.repository.MessageRepository;
+import com.securechat.repository.UserRepository;
+import com.securechat.util.InputSanitizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Message sends: one transaction per send (createMessage) versus group commit
+ * (createMessageGroupCommitted + MessageWriteBatcher), at 1, 8 and 64 concurrent senders.
+ * Reports throughput and p99 send latency; both modes only return after the commit.
+ *
+ * Runs against the embedded test database, so absolute numbers are only indicative;
+ * against PostgreSQL the gap grows with commit (fsync) cost.
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.jdbc.batch_size=64",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)  // Every send commits for real
+class MessageGroupCommitBenchmark {
+
+    private static final int[] SENDERS = {1, 8, 64};
+    private static final int SENDS_PER_RUN = 4_000;
+    private static final int WARMUP_SENDS = 500;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private ChatRoomMemberRepository chatRoomMemberRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void perMessageTransactionVsGroupCommit() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Seed seed = transaction.execute(status -> seedRoom());
+        UUID roomId = seed.roomId();
+        List<UUID> senders = seed.senders();
+
+        MessageService service = new MessageService(messageRepository, userRepository, chatRoomRepository,
+                chatRoomMemberRepository, new InputSanitizer(), mock(MessageStreamService.class),
+                new RecentMessageCache(10, 10), new MembershipCache(1000, 300, 30));
+        MessageWriteBatcher batcher = new MessageWriteBatcher(messageRepository, userRepository, chatRoomRepository,
+                transactionManager, new SimpleMeterRegistry(), 256, 2, 10_000);
+        batcher.start();
+        MessageService groupCommitService = new MessageService(messageRepository, userRepository, chatRoomRepository,
+                chatRoomMemberRepository, new InputSanitizer(), mock(MessageStreamService.class),
+                new RecentMessageCache(10, 10), new MembershipCache(1000, 300, 30));
+        ReflectionTestUtils.setField(groupCommitService, "messageWriteBatcher", batcher);
+
+        try {
+            System.out.printf("%-8s %-14s %14s %12s%n", "senders", "mode", "msgs/s", "p99 ms");
+            for (int senderCount : SENDERS) {
+                List<UUID> active = senders.subList(0, senderCount);
+                report(senderCount, "per-message", active, (room, user) ->
+                        transaction.execute(status -> service.createMessage(room, user, "benchmark")), roomId);
+                report(senderCount, "group-commit", active, (room, user) ->
+                        groupCommitService.createMessageGroupCommitted(room, user, "benchmark"), roomId);
+            }
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    private void report(int senderCount, String mode, List<UUID> senders, BiConsumer<UUID, UUID> send, UUID roomId)
+            throws Exception {
+        run(senders, send, roomId, WARMUP_SENDS);
+        long start = System.nanoTime();
+        long[] latencies = run(senders, send, roomId, SENDS_PER_RUN);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        double p99Millis = latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1_000_000.0;
+        System.out.printf("%-8d %-14s %14.0f %12.3f%n", senderCount, mode, latencies.length / seconds, p99Millis);
+    }
+
+    // Each sender thread sends its share back to back; returns every send's latency in nanos
+    private long[] run(List<UUID> senders, BiConsumer<UUID, UUID> send, UUID roomId, int total) throws Exception {
+        int perSender = total / senders.size();
+        ExecutorService pool = Executors.newFixedThreadPool(senders.size());
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (UUID sender : senders) {
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[perSender];
+                    for (int i = 0; i < perSender; i++) {
+                        long begin = System.nanoTime();
+                        send.accept(roomId, sender);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[perSender * senders.size()];
+            int offset = 0;
+            for (Future<long[]> result : results) {
+                long[] latencies = result.get();
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+                offset += latencies.length;
+            }
+            assertThat(offset).isEqualTo(all.length);
+            return all;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // One room with 64 members (one per possible sender thread)
+    private Seed seedRoom() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            User user = new User();
+            user.setUsername("gc-" + UUID.randomUUID().toString().substring(0, 8));
+            user.setEmail(user.getUsername() + "@example.com");
+            user.setPasswordHash("x");
+            users.add(userRepository.save(user));
+        }
+        ChatRoom room = new ChatRoom();
+        room.setName("group-commit");
+        room.setCreatedBy(users.get(0));
+        room.setIsPrivate(false);
+        room.setMaxParticipants(100);
+        room = chatRoomRepository.save(room);
+        for (User user : users) {
+            chatRoomMemberRepository.save(new ChatRoomMember(room, user, "MEMBER"));
+        }
+        return new Seed(room.getId(), users.stream().map(User::getId).toList());
+    }
+
+    private record Seed(UUID roomId, List<UUID> senders) {
+    }
+}
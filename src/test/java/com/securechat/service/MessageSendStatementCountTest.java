@@ -0,0 +1,102 @@
+package com.securechat.service;
+
+import com.securechat.entity.ChatRoom;
+import com.securechat.entity.ChatRoomMember;
+import com.securechat.entity.Message;
+import com.securechat.entity.User;
+import com.securechat.util.InputSanitizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the send path against extra round trips: one membership + username SELECT and one INSERT,
+ * and only the INSERT once the membership is cached.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({MessageService.class, InputSanitizer.class, MembershipCache.class, SimpleMeterRegistry.class})
+class MessageSendStatementCountTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private MessageStreamService messageStreamService;  // Not used by createMessage
+
+    @MockBean
+    private RecentMessageCache recentMessageCache;
+
+    private UUID userId;
+    private UUID roomId;
+
+    @BeforeEach
+    void seed() {
+        User user = new User();
+        user.setUsername("sender-" + UUID.randomUUID().toString().substring(0, 8));
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPasswordHash("x");
+        entityManager.persist(user);
+
+        ChatRoom room = new ChatRoom();
+        room.setName("statements");
+        room.setCreatedBy(user);
+        room.setIsPrivate(false);
+        room.setMaxParticipants(10);
+        entityManager.persist(room);
+
+        entityManager.persist(new ChatRoomMember(room, user, "MEMBER"));
+        entityManager.flush();
+        entityManager.clear();  // Nothing left in the persistence context to hide a query
+
+        userId = user.getId();
+        roomId = room.getId();
+    }
+
+    @Test
+    @DisplayName("createMessage issues exactly two statements")
+    void createMessage_twoStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Message message = messageService.createMessage(roomId, userId, "hello");
+        entityManager.flush();  // Force the INSERT that would otherwise wait for commit
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertNotNull(message.getId());
+        assertEquals(userId, message.getSender().getId());
+        assertTrue(message.getUsername().startsWith("sender-"));
+    }
+
+    @Test
+    @DisplayName("once membership is cached, a send is a single INSERT")
+    void createMessage_cachedMembership_oneStatement() {
+        messageService.createMessage(roomId, userId, "warm-up");
+        entityManager.flush();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        messageService.createMessage(roomId, userId, "hello again");
+        entityManager.flush();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -1,12 +1,17 @@
 package com.securechat.service;
 
+import com.securechat.dto.MessageDTO;
+import com.securechat.dto.MessageHistoryPage;
+import com.securechat.dto.MessageListDto;
 import com.securechat.entity.ChatRoom;
+import com.securechat.entity.ChatRoomMember;
 import com.securechat.entity.Message;
 import com.securechat.entity.User;
 import com.securechat.repository.ChatRoomRepository;
 import com.securechat.repository.ChatRoomMemberRepository;
 import com.securechat.repository.MessageRepository;
 import com.securechat.repository.UserRepository;
+import com.securechat.exception.ValidationException;
 import com.securechat.util.InputSanitizer;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -16,6 +21,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -25,6 +31,7 @@ import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiFunction;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -54,6 +61,12 @@ class MessageServiceTest {
     @Mock
     private MessageStreamService messageStreamService;  // Service for real-time streaming
 
+    @Mock
+    private RecentMessageCache recentMessageCache;  // Page-0 tail cache
+
+    @Spy
+    private MembershipCache membershipCache = new MembershipCache(1000, 300, 30);  // Real cache, local tier only
+
     @InjectMocks
     private MessageService messageService; 
 
@@ -74,17 +87,22 @@ class MessageServiceTest {
         // Tests successful message creation with XSS sanitization
         User sender = new User();
         sender.setId(userId);
-        sender.setUsername("testuser");
 
         ChatRoom chatRoom = new ChatRoom();
         chatRoom.setId(chatRoomId);
 
+        UUID generatedId = UUID.randomUUID();
+
         // Mock dependencies
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(true);
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.of("testuser"));
         when(inputSanitizer.sanitize(eq("Hello <script>alert(1)</script>"))).thenReturn("Hello alert(1)");  // XSS removed
-        when(userRepository.findById(eq(userId))).thenReturn(Optional.of(sender));
-        when(chatRoomRepository.findById(eq(chatRoomId))).thenReturn(Optional.of(chatRoom));
-        when(messageRepository.save(any(Message.class))).thenAnswer(i -> i.getArgument(0));
+        when(userRepository.getReferenceById(eq(userId))).thenReturn(sender);
+        when(chatRoomRepository.getReferenceById(eq(chatRoomId))).thenReturn(chatRoom);
+        when(messageRepository.save(any(Message.class))).thenAnswer(i -> {
+            Message persisted = i.getArgument(0);
+            persisted.setId(generatedId);  // Assigned by the id generator on persist
+            return persisted;
+        });
 
         // Execute message creation
         Message message = messageService.createMessage(chatRoomIdStr, userIdStr, "Hello <script>alert(1)</script>");
@@ -96,63 +114,96 @@ class MessageServiceTest {
         Message saved = messageCaptor.getValue();
         assertEquals("Hello alert(1)", saved.getContent());  // Sanitized content
         assertEquals(sender, saved.getSender());  
-        assertEquals("testuser", saved.getUsername());  // Username from sender
+        assertEquals("testuser", saved.getUsername());  // Username from the membership lookup
         assertEquals(chatRoom, saved.getChatRoom());  
         assertFalse(saved.getIsDeleted());  
         assertNotNull(saved.getTimestamp());  // Auto-generated timestamp
-        assertNotNull(saved.getId()); 
+        assertEquals(generatedId, saved.getId()); 
 
         // Return value should not be null
         assertNotNull(message);
+
+        // Lean path: membership + username in one query, references instead of loads
+        verify(chatRoomMemberRepository, never()).existsByChatRoomIdAndUserId(any(), any());
+        verify(userRepository, never()).findById(any());
+        verify(chatRoomRepository, never()).findById(any());
+
+        // Written through to the room tail (no transaction here, so immediately)
+        ArgumentCaptor<MessageListDto> cached = ArgumentCaptor.forClass(MessageListDto.class);
+        verify(recentMessageCache).append(eq(chatRoomId), cached.capture());
+        assertEquals(generatedId, cached.getValue().id());
+        assertEquals(userId, cached.getValue().senderId());
+        assertEquals("Hello alert(1)", cached.getValue().content());
+        assertEquals("TEXT", cached.getValue().messageType());
     }
 
     @Test
     @DisplayName("createMessage - user not member throws")
     void createMessage_userNotMember() {
         // Tests authorization: only chat room members can send messages
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(false);
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.empty());
 
         RuntimeException ex = assertThrows(RuntimeException.class,
                 () -> messageService.createMessage(chatRoomIdStr, userIdStr, "msg"));
 
         assertEquals("User is not a member of this chat room", ex.getMessage());
         // No further interactions since membership check failed
-        verifyNoInteractions(inputSanitizer, userRepository, chatRoomRepository);
+        verifyNoInteractions(inputSanitizer, userRepository, chatRoomRepository, messageRepository);
     }
 
     @Test
-    @DisplayName("createMessage - user not found throws")
-    void createMessage_userNotFound() {
-        // Tests error when sender user doesn't exist
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(true);
-        when(userRepository.findById(eq(userId))).thenReturn(Optional.empty());
+    @DisplayName("createMessage - null arguments throw before any query")
+    void createMessage_nullArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.createMessage(chatRoomId, userId, null));
 
-        RuntimeException ex = assertThrows(RuntimeException.class,
-                () -> messageService.createMessage(chatRoomIdStr, userIdStr, "msg"));
-
-        
-        assertEquals("User not found: " + userIdStr, ex.getMessage());
-        // Sanitizer is called only after user/chatroom/membership checks
-        verifyNoInteractions(inputSanitizer);
-        verifyNoInteractions(chatRoomRepository);
+        verifyNoInteractions(chatRoomMemberRepository, messageRepository);
     }
 
+    // ====================== createMessageGroupCommitted ======================
+
     @Test
-    @DisplayName("createMessage - chat room not found throws")
-    void createMessage_chatRoomNotFound() {
-        // Tests error when chat room doesn't exist
-        User sender = new User();
-        sender.setId(userId);
+    @DisplayName("createMessageGroupCommitted - validates, hands off to the batcher, writes through after commit")
+    void createMessageGroupCommitted_success() {
+        MessageWriteBatcher batcher = mock(MessageWriteBatcher.class);
+        org.springframework.test.util.ReflectionTestUtils.setField(messageService, "messageWriteBatcher", batcher);
+        Message committed = MessageService.newTextMessage(new User(), new ChatRoom(), "testuser", "hi", LocalDateTime.now());
+        committed.setId(UUID.randomUUID());
+
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.of("testuser"));
+        when(inputSanitizer.sanitize("hi")).thenReturn("hi");
+        when(batcher.submit(eq(chatRoomId), eq(userId), eq("testuser"), eq("hi"), any(LocalDateTime.class)))
+                .thenReturn(java.util.concurrent.CompletableFuture.completedFuture(committed));
+
+        assertTrue(messageService.isGroupCommitEnabled());
+        assertSame(committed, messageService.createMessageGroupCommitted(chatRoomId, userId, "hi"));
+
+        verify(recentMessageCache).append(eq(chatRoomId), argThat(dto -> dto.id().equals(committed.getId())));
+        verifyNoInteractions(messageRepository);  // The batcher owns the INSERT
+    }
 
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(true);
-        when(userRepository.findById(eq(userId))).thenReturn(Optional.of(sender));
-        when(chatRoomRepository.findById(eq(chatRoomId))).thenReturn(Optional.empty());
+    @Test
+    @DisplayName("createMessageGroupCommitted - batch failure surfaces the original exception")
+    void createMessageGroupCommitted_failure() {
+        MessageWriteBatcher batcher = mock(MessageWriteBatcher.class);
+        org.springframework.test.util.ReflectionTestUtils.setField(messageService, "messageWriteBatcher", batcher);
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.of("testuser"));
+        when(batcher.submit(any(), any(), any(), any(), any()))
+                .thenReturn(java.util.concurrent.CompletableFuture.failedFuture(new RuntimeException("Message write queue is full")));
 
         RuntimeException ex = assertThrows(RuntimeException.class,
-                () -> messageService.createMessage(chatRoomIdStr, userIdStr, "msg"));
+                () -> messageService.createMessageGroupCommitted(chatRoomId, userId, "hi"));
 
-        // FIXED: Now matches actual message with ID
-        assertEquals("Chat room not found: " + chatRoomIdStr, ex.getMessage());
+        assertEquals("Message write queue is full", ex.getMessage());
+        verifyNoInteractions(recentMessageCache);
+    }
+
+    @Test
+    @DisplayName("createMessageGroupCommitted - disabled by default")
+    void createMessageGroupCommitted_disabled() {
+        assertFalse(messageService.isGroupCommitEnabled());
+        assertThrows(IllegalStateException.class,
+                () -> messageService.createMessageGroupCommitted(chatRoomId, userId, "hi"));
     }
 
     // ====================== isChatRoomMember ======================
@@ -161,15 +212,25 @@ class MessageServiceTest {
     @DisplayName("isChatRoomMember - returns true")
     void isChatRoomMember_true() {
         // Tests membership check returning true
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(true);
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.of("testuser"));
         assertTrue(messageService.isChatRoomMember(chatRoomIdStr, userIdStr));
     }
 
+    @Test
+    @DisplayName("isChatRoomMember - repeated checks are answered from the membership cache")
+    void isChatRoomMember_cached() {
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.of("testuser"));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(messageService.isChatRoomMember(chatRoomIdStr, userIdStr));
+        }
+        verify(chatRoomMemberRepository, times(1)).findMemberUsername(chatRoomId, userId);  // Only the first check queries
+    }
+
     @Test
     @DisplayName("isChatRoomMember - returns false")
     void isChatRoomMember_false() {
         // Tests membership check returning false
-        when(chatRoomMemberRepository.existsByChatRoomIdAndUserId(eq(chatRoomId), eq(userId))).thenReturn(false);
+        when(chatRoomMemberRepository.findMemberUsername(eq(chatRoomId), eq(userId))).thenReturn(Optional.empty());
         assertFalse(messageService.isChatRoomMember(chatRoomIdStr, userIdStr));
     }
 
@@ -192,7 +253,7 @@ class MessageServiceTest {
         msg.setChatRoom(cr);
         msg.setTimestamp(LocalDateTime.now());
 
-        when(messageRepository.findByChatRoomAndTimestampAfter(eq(chatRoomId), eq(since)))
+        when(messageRepository.findByChatRoomAndTimestampAfter(eq(chatRoomId), eq(since), eq(PageRequest.of(0, 100))))
                 .thenReturn(List.of(msg));
 
         List<Message> result = messageService.getMessagesSince(chatRoomIdStr, since.toString());
@@ -218,7 +279,7 @@ class MessageServiceTest {
     void getMessagesSince_empty() {
         // Tests no messages found after timestamp
         LocalDateTime since = LocalDateTime.now();
-        when(messageRepository.findByChatRoomAndTimestampAfter(eq(chatRoomId), eq(since)))
+        when(messageRepository.findByChatRoomAndTimestampAfter(eq(chatRoomId), eq(since), eq(PageRequest.of(0, 100))))
                 .thenReturn(List.of());
 
         List<Message> result = messageService.getMessagesSince(chatRoomIdStr, since.toString());
@@ -238,6 +299,126 @@ class MessageServiceTest {
         assertSame(stream, result);  // Should return stream from stream service
     }
 
+    @Test
+    @DisplayName("getStreamForChatRoom - resumes from Last-Event-ID")
+    void getStreamForChatRoom_withLastEventId_resumes() {
+        // Tests that a numeric Last-Event-ID is handed to the stream service for replay
+        SseEmitter stream = mock(SseEmitter.class);
+        when(messageStreamService.subscribe(eq(chatRoomId), eq(42L), any())).thenReturn(stream);
+
+        Object result = messageService.getStreamForChatRoom(chatRoomIdStr, "42");
+
+        assertSame(stream, result);
+        verify(messageStreamService, never()).subscribe(chatRoomId);
+        verifyNoInteractions(messageRepository);  // Replay decides whether the DB is needed
+    }
+
+    @Test
+    @DisplayName("getStreamForChatRoom - database catch-up loads only the newest messages, oldest first")
+    @SuppressWarnings("unchecked")
+    void getStreamForChatRoom_catchUpIsBounded() {
+        ArgumentCaptor<BiFunction<LocalDateTime, Integer, List<?>>> loader = ArgumentCaptor.forClass(BiFunction.class);
+        when(messageStreamService.subscribe(eq(chatRoomId), eq(42L), loader.capture())).thenReturn(mock(SseEmitter.class));
+        messageService.getStreamForChatRoom(chatRoomIdStr, "42");
+
+        LocalDateTime since = LocalDateTime.now().minusYears(5);  // Forged or very old Last-Event-ID
+        Message newer = catchUpMessage("newer");
+        Message older = catchUpMessage("older");
+        when(messageRepository.findNewestByChatRoomAndTimestampAfter(chatRoomId, since, PageRequest.of(0, 3)))
+                .thenReturn(List.of(newer, older));
+
+        List<?> payloads = loader.getValue().apply(since, 3);
+
+        assertEquals(List.of("older", "newer"), payloads.stream().map(dto -> ((MessageDTO) dto).getContent()).toList());
+        verify(messageRepository, never()).findByChatRoomAndTimestampAfter(any(), any(), any());
+    }
+
+    private Message catchUpMessage(String content) {
+        User sender = new User();
+        sender.setId(userId);
+        sender.setUsername("test");
+        ChatRoom room = new ChatRoom();
+        room.setId(chatRoomId);
+        Message message = new Message();
+        message.setId(UUID.randomUUID());
+        message.setContent(content);
+        message.setSender(sender);
+        message.setChatRoom(room);
+        message.setMessageType(Message.MessageType.TEXT);
+        message.setTimestamp(LocalDateTime.now());
+        return message;
+    }
+
+    @Test
+    @DisplayName("getStreamForChatRoom - malformed Last-Event-ID starts a fresh stream")
+    void getStreamForChatRoom_withMalformedLastEventId_subscribesFresh() {
+        SseEmitter stream = mock(SseEmitter.class);
+        when(messageStreamService.subscribe(eq(chatRoomId))).thenReturn(stream);
+
+        Object result = messageService.getStreamForChatRoom(chatRoomIdStr, "not-a-number");
+
+        assertSame(stream, result);
+    }
+
+    @Test
+    @DisplayName("getStreamForUser - subscribes to every active room of the user")
+    void getStreamForUser_subscribesToActiveRooms() {
+        // Tests that the multiplexed stream is built from the user's active memberships
+        UUID userId = UUID.randomUUID();
+        ChatRoom room = new ChatRoom();
+        room.setId(chatRoomId);
+        ChatRoom otherRoom = new ChatRoom();
+        otherRoom.setId(UUID.randomUUID());
+        ChatRoomMember first = new ChatRoomMember();
+        first.setChatRoom(room);
+        ChatRoomMember second = new ChatRoomMember();
+        second.setChatRoom(otherRoom);
+        when(chatRoomMemberRepository.findActiveByUserId(userId)).thenReturn(List.of(first, second));
+        SseEmitter stream = mock(SseEmitter.class);
+        when(messageStreamService.subscribeUser(userId, List.of(chatRoomId, otherRoom.getId()))).thenReturn(stream);
+
+        Object result = messageService.getStreamForUser(userId);
+
+        assertSame(stream, result);
+    }
+
+    // ====================== getMessageHistory ======================
+
+    @Test
+    @DisplayName("getMessageHistory - first slice returns a cursor that continues below its last row")
+    void getMessageHistory_cursorContinuesFromLastRow() {
+        // Tests keyset pagination: the second call queries strictly below the (timestamp, id) of the first slice
+        LocalDateTime now = LocalDateTime.now();
+        MessageListDto newest = new MessageListDto(UUID.randomUUID(), "b", "alice", UUID.randomUUID(), now, "TEXT");
+        MessageListDto older = new MessageListDto(UUID.randomUUID(), "a", "alice", UUID.randomUUID(),
+                now.minusSeconds(5), "TEXT");
+        when(messageRepository.findLatestMessageDtos(eq(chatRoomId), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(newest, older), PageRequest.of(0, 2), true));
+
+        MessageHistoryPage first = messageService.getMessageHistory(chatRoomId, null, 2);
+
+        assertEquals(List.of(newest, older), first.messages());
+        assertNotNull(first.nextCursor());  // More rows exist
+
+        when(messageRepository.findMessageDtosBefore(eq(chatRoomId), eq(older.timestamp()), eq(older.id()),
+                any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 2), false));
+
+        MessageHistoryPage second = messageService.getMessageHistory(chatRoomId, first.nextCursor(), 2);
+
+        assertTrue(second.messages().isEmpty());
+        assertNull(second.nextCursor());  // Last slice
+        verify(messageRepository, never()).count();
+    }
+
+    @Test
+    @DisplayName("getMessageHistory - tampered cursor is rejected")
+    void getMessageHistory_invalidCursor_throwsValidationException() {
+        assertThrows(ValidationException.class,
+                () -> messageService.getMessageHistory(chatRoomId, "not-a-cursor", 20));
+        verifyNoInteractions(messageRepository);
+    }
+
     // ====================== PaginationRequest ======================
 
     @Nested
@@ -318,6 +499,37 @@ class MessageServiceTest {
                 eq(PageRequest.of(0, 10, Sort.by("timestamp").descending())));
     }
 
+    // ====================== getMessageDtosPaginated ======================
+
+    @Test
+    @DisplayName("getMessageDtosPaginated - page 0 comes from the tail cache")
+    void getMessageDtosPaginated_firstPageFromCache() {
+        MessageListDto newest = new MessageListDto(UUID.randomUUID(), "hi", "alice", userId, LocalDateTime.now(), "TEXT");
+        when(recentMessageCache.getMessagesPerRoom()).thenReturn(100);
+        when(recentMessageCache.firstPage(eq(chatRoomId), eq(20), any()))
+                .thenReturn(new RecentMessageCache.Snapshot(List.of(newest), 42));
+
+        Page<MessageListDto> result = messageService.getMessageDtosPaginated(chatRoomId,
+                new MessageService.PaginationRequest(0, 20));
+
+        assertEquals(List.of(newest), result.getContent());
+        assertEquals(42, result.getTotalElements());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    @DisplayName("getMessageDtosPaginated - deeper pages and oversized pages go to the database")
+    void getMessageDtosPaginated_otherPagesFromRepository() {
+        Page<MessageListDto> page = new PageImpl<>(List.of());
+        when(recentMessageCache.getMessagesPerRoom()).thenReturn(100);
+        when(messageRepository.findMessageDtosByChatRoomId(eq(chatRoomId), any(Pageable.class))).thenReturn(page);
+
+        assertSame(page, messageService.getMessageDtosPaginated(chatRoomId, new MessageService.PaginationRequest(1, 20)));
+        assertSame(page, messageService.getMessageDtosPaginated(chatRoomId, new MessageService.PaginationRequest(0, 500)));
+
+        verify(recentMessageCache, never()).firstPage(any(), anyInt(), any());
+    }
+
     // ====================== getMessagesSincePaginated ======================
 
     @Test
@@ -364,6 +576,22 @@ class MessageServiceTest {
             assertEquals(userId, message.getDeletedBy());  // Should record who deleted it
         }
 
+        @Test
+        @DisplayName("deleteMessage - drops the room's cached tail")
+        void deleteMessage_invalidatesTailCache() {
+            ChatRoom room = new ChatRoom();
+            room.setId(chatRoomId);
+            Message message = new Message();
+            message.setId(UUID.randomUUID());
+            message.setChatRoom(room);
+            when(messageRepository.findById(eq(message.getId()))).thenReturn(Optional.of(message));
+
+            messageService.deleteMessage(message.getId(), userId);
+
+            verify(recentMessageCache, atLeastOnce()).invalidate(chatRoomId);
+            verify(messageStreamService).publish(eq(chatRoomId), eq(MessageService.MESSAGE_DELETED_EVENT), any());  // Reaches other nodes
+        }
+
         @Test
         @DisplayName("deleteMessage - message not found throws")
         void deleteMessage_notFound() {
@@ -0,0 +1,165 @@
+package com.securechat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.securechat.dto.MessageDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Allocation / CPU cost of one SSE broadcast: per-subscriber Jackson encoding (old publish path)
+ * versus one pre-encoded EncodedSseEvent shared by every subscriber.
+ *
+ * Frames are written through the same message converters Spring MVC uses for SseEmitter,
+ * into a discarding output stream, so only encoding work is measured (no sockets).
+ *
+ * Not part of the regular test run; execute with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class MessageStreamBroadcastBenchmark {
+
+    private static final int[] SUBSCRIBER_COUNTS = {10, 100, 1_000};
+    private static final int WARMUP_BROADCASTS = 300;
+    private static final int MEASURED_BROADCASTS = 300;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    // Same converter order as Spring MVC's defaults (byte[] first, Jackson last)
+    private final List<HttpMessageConverter<?>> converters = List.of(
+            new ByteArrayHttpMessageConverter(),
+            new StringHttpMessageConverter(StandardCharsets.UTF_8),
+            new MappingJackson2HttpMessageConverter(objectMapper));
+
+    private final MessageStreamService streamService = new MessageStreamService(Runnable::run, objectMapper,
+            new SimpleMeterRegistry(), new InProcessRoomEventBus(), 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void broadcastCost_perSubscriberEncoding_vsPreEncoded() throws IOException {
+        MessageDTO payload = samplePayload();
+
+        System.out.printf("%-12s %-14s %18s %16s%n", "subscribers", "strategy", "bytes/broadcast", "cpu us/broadcast");
+        for (int subscribers : SUBSCRIBER_COUNTS) {
+            Result legacy = measure(() -> broadcastPerSubscriber(payload, subscribers));
+            Result encoded = measure(() -> broadcastPreEncoded(payload, subscribers));
+
+            print(subscribers, "per-subscriber", legacy);
+            print(subscribers, "pre-encoded", encoded);
+
+            if (subscribers >= 100) {
+                assertThat(encoded.bytesPerBroadcast()).isLessThan(legacy.bytesPerBroadcast());
+            }
+        }
+    }
+
+    // Old path: a fresh builder per emitter, Jackson serializes the payload every time
+    private void broadcastPerSubscriber(MessageDTO payload, int subscribers) throws IOException {
+        for (int i = 0; i < subscribers; i++) {
+            write(SseEmitter.event()
+                    .name("new-message")
+                    .data(payload, MediaType.APPLICATION_JSON)
+                    .build());
+        }
+    }
+
+    // New path: encode once, write the same frames to every emitter
+    private void broadcastPreEncoded(MessageDTO payload, int subscribers) throws IOException {
+        EncodedSseEvent event = EncodedSseEvent.of(1L, "new-message", streamService.serialize("new-message", payload));
+        for (int i = 0; i < subscribers; i++) {
+            write(event.build());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(Set<ResponseBodyEmitter.DataWithMediaType> frames) throws IOException {
+        for (ResponseBodyEmitter.DataWithMediaType frame : frames) {
+            Object data = frame.getData();
+            MediaType mediaType = frame.getMediaType();
+            for (HttpMessageConverter<?> converter : converters) {
+                if (converter.canWrite(data.getClass(), mediaType)) {
+                    ((HttpMessageConverter<Object>) converter).write(data, mediaType, new DiscardingOutputMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    private Result measure(Broadcast broadcast) throws IOException {
+        for (int i = 0; i < WARMUP_BROADCASTS; i++) {
+            broadcast.run();
+        }
+        long bytesBefore = threadBean.getCurrentThreadAllocatedBytes();
+        long cpuBefore = threadBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_BROADCASTS; i++) {
+            broadcast.run();
+        }
+        long bytes = threadBean.getCurrentThreadAllocatedBytes() - bytesBefore;
+        long cpuNanos = threadBean.getCurrentThreadCpuTime() - cpuBefore;
+        return new Result(bytes / MEASURED_BROADCASTS, cpuNanos / 1_000.0 / MEASURED_BROADCASTS);
+    }
+
+    private void print(int subscribers, String strategy, Result result) {
+        System.out.printf("%-12d %-14s %18d %16.1f%n",
+                subscribers, strategy, result.bytesPerBroadcast(), result.cpuMicrosPerBroadcast());
+    }
+
+    private MessageDTO samplePayload() {
+        MessageDTO dto = new MessageDTO();
+        dto.setId(UUID.randomUUID());
+        dto.setContent("Benchmark message ".repeat(12));
+        dto.setMessageType("TEXT");
+        dto.setTimestamp(LocalDateTime.now());
+        dto.setUserId(UUID.randomUUID());
+        dto.setUsername("benchmark-user");
+        dto.setChatRoomId(UUID.randomUUID());
+        dto.setIsDeleted(false);
+        dto.setIsEdited(false);
+        return dto;
+    }
+
+    @FunctionalInterface
+    private interface Broadcast {
+        void run() throws IOException;
+    }
+
+    private record Result(long bytesPerBroadcast, double cpuMicrosPerBroadcast) {
+    }
+
+    // Stand-in for the servlet response: headers are kept, body bytes are discarded
+    private static final class DiscardingOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public OutputStream getBody() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
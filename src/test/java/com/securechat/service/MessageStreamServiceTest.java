@@ -1,14 +1,32 @@
 package com.securechat.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.securechat.dto.LongPollResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -19,11 +37,14 @@ class MessageStreamServiceTest {
 
     private MessageStreamService messageStreamService;
 
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
     private UUID roomId;
 
     @BeforeEach
     void setUp() {
-        messageStreamService = new MessageStreamService();
+        // Same-thread executor: publish() drains subscriber queues synchronously in tests
+        messageStreamService = newService(Runnable::run, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
         roomId = UUID.randomUUID();
     }
 
@@ -117,11 +138,11 @@ class MessageStreamServiceTest {
     @Test
     void publish_sendsEventToAllSubscribers() throws IOException {
         // Tests that publishing sends events to all subscribed emitters
-        // Create spied emitters directly (bypass subscribe method)
+        // Create spied emitters directly
         SseEmitter emitter1 = spy(new SseEmitter(30 * 60 * 1000L));  // 30 minute timeout
         SseEmitter emitter2 = spy(new SseEmitter(30 * 60 * 1000L));
 
-        // Add them to the service manually
+        // Subscribe them to the room
         CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
         emitters.add(emitter1);
         emitters.add(emitter2);
@@ -148,7 +169,7 @@ class MessageStreamServiceTest {
         // Make badEmitter throw IOException on send (simulating client disconnect)
         doThrow(new IOException("Client disconnected")).when(badEmitter).send(any(SseEventBuilder.class));
 
-        // Add them to the service manually
+        // Subscribe them to the room
         CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
         emitters.add(goodEmitter);
         emitters.add(badEmitter);
@@ -169,6 +190,19 @@ class MessageStreamServiceTest {
         verify(badEmitter).complete();
     }
 
+    @Test
+    void publish_skipsSubscriberRemovedMidDelivery() throws IOException {
+        // Tests that a publish racing completion/timeout doesn't bring the removed subscriber's queue back
+        SseEmitter emitter = spy(new SseEmitter(30 * 60 * 1000L));
+        setEmittersForRoom(roomId, new CopyOnWriteArrayList<>(new SseEmitter[] { emitter }));
+        getSubscriberQueues().remove(emitter);  // Removal under way: queue gone, emitter still listed
+
+        messageStreamService.publish(roomId, "message", "data");
+
+        verify(emitter, never()).send(any(SseEventBuilder.class));
+        assertThat(getSubscriberQueues()).doesNotContainKey(emitter);
+    }
+
     @Test
     void publish_doesNothing_whenNoSubscribers() {
         // Tests that publishing to empty room doesn't throw exceptions
@@ -223,6 +257,408 @@ class MessageStreamServiceTest {
         }
     }
 
+    @Test
+    void publish_encodesPayloadOnce_andSharesFramesAcrossSubscribers() throws IOException {
+        // Tests that every subscriber receives the same pre-encoded frames (no per-emitter Jackson pass)
+        SseEmitter emitter1 = spy(new SseEmitter(30 * 60 * 1000L));
+        SseEmitter emitter2 = spy(new SseEmitter(30 * 60 * 1000L));
+        CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        emitters.add(emitter1);
+        emitters.add(emitter2);
+        setEmittersForRoom(roomId, emitters);
+
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "Hello!"));
+
+        ArgumentCaptor<SseEventBuilder> first = ArgumentCaptor.forClass(SseEventBuilder.class);
+        ArgumentCaptor<SseEventBuilder> second = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(emitter1).send(first.capture());
+        verify(emitter2).send(second.capture());
+
+        Set<ResponseBodyEmitter.DataWithMediaType> frames = first.getValue().build();
+        assertThat(second.getValue().build()).isSameAs(frames);
+        assertThat(frames)
+                .anySatisfy(frame -> {
+                    assertThat(frame.getData()).isInstanceOf(byte[].class);
+                    assertThat(new String((byte[]) frame.getData(), StandardCharsets.UTF_8))
+                            .isEqualTo("{\"text\":\"Hello!\"}");
+                });
+    }
+
+    @Test
+    void publish_doesNotBlockOnSlowSubscriber() throws Exception {
+        // Tests that a stalled client neither blocks the publisher nor other subscribers
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MessageStreamService service = newService(executor, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
+            messageStreamService = service;
+
+            CountDownLatch release = new CountDownLatch(1);
+            SseEmitter slowEmitter = spy(new SseEmitter(30 * 60 * 1000L));
+            SseEmitter fastEmitter = spy(new SseEmitter(30 * 60 * 1000L));
+            doAnswer(invocation -> {
+                release.await(5, TimeUnit.SECONDS);  // Simulates a client that stopped reading
+                return null;
+            }).when(slowEmitter).send(any(SseEventBuilder.class));
+
+            CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+            emitters.add(slowEmitter);
+            emitters.add(fastEmitter);
+            setEmittersForRoom(roomId, emitters);
+
+            service.publish(roomId, "message", "data");  // Returns while slowEmitter is still stuck
+
+            verify(fastEmitter, timeout(1000)).send(any(SseEventBuilder.class));
+            assertThat(release.getCount()).isEqualTo(1);
+            release.countDown();
+            verify(slowEmitter, timeout(1000)).send(any(SseEventBuilder.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void publish_dropNewest_keepsQueuedEvents_andCountsDrops() throws IOException {
+        // Tests the DROP_NEWEST overflow policy with an executor that never drains
+        CopyOnWriteArrayList<Runnable> pendingDrains = new CopyOnWriteArrayList<>();
+        messageStreamService = newService(pendingDrains::add, 2, MessageStreamService.OverflowPolicy.DROP_NEWEST, 16);
+
+        SseEmitter emitter = spy(new SseEmitter(30 * 60 * 1000L));
+        setEmittersForRoom(roomId, new CopyOnWriteArrayList<>(new SseEmitter[] { emitter }));
+
+        for (int i = 0; i < 5; i++) {
+            messageStreamService.publish(roomId, "message", "event-" + i);
+        }
+
+        assertThat(messageStreamService.getQueueDepth(roomId)).isEqualTo(2);
+        assertThat(messageStreamService.getDroppedEvents(roomId)).isEqualTo(3);
+        assertThat(pendingDrains).hasSize(1);  // Only one drain task per subscriber
+
+        pendingDrains.get(0).run();
+
+        verify(emitter, times(2)).send(any(SseEventBuilder.class));
+        assertThat(messageStreamService.getQueueDepth(roomId)).isZero();
+    }
+
+    @Test
+    void publish_dropOldest_boundsQueue() {
+        // Tests the DROP_OLDEST overflow policy keeps the queue at capacity
+        messageStreamService = newService(task -> { }, 3, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
+
+        SseEmitter emitter = spy(new SseEmitter(30 * 60 * 1000L));
+        setEmittersForRoom(roomId, new CopyOnWriteArrayList<>(new SseEmitter[] { emitter }));
+
+        for (int i = 0; i < 10; i++) {
+            messageStreamService.publish(roomId, "message", "event-" + i);
+        }
+
+        assertThat(messageStreamService.getQueueDepth(roomId)).isEqualTo(3);
+        assertThat(messageStreamService.getDroppedEvents(roomId)).isEqualTo(7);
+    }
+
+    @Test
+    void publish_disconnectPolicy_removesSlowSubscriber() {
+        // Tests the DISCONNECT overflow policy closes and removes the slow subscriber
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        messageStreamService = new MessageStreamService(task -> { }, objectMapper, registry,
+                new InProcessRoomEventBus(), 1, MessageStreamService.OverflowPolicy.DISCONNECT, 16);
+
+        SseEmitter slowEmitter = spy(new SseEmitter(30 * 60 * 1000L));
+        setEmittersForRoom(roomId, new CopyOnWriteArrayList<>(new SseEmitter[] { slowEmitter }));
+
+        messageStreamService.publish(roomId, "message", "first");
+        messageStreamService.publish(roomId, "message", "second");  // Overflows the queue
+
+        verify(slowEmitter).complete();
+        assertThat(getEmittersForRoom(roomId)).isEmpty();
+        assertThat(registry.get("securechat.sse.events.dropped").tag("stream", "room").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("securechat.sse.queue.depth").tag("stream", "room").gauge().value()).isZero();
+    }
+
+    @Test
+    void roomStats_areNodeWide_andForgottenWithTheLastSubscriber() {
+        // Tests that metrics carry no room tag and per-room counters do not outlive the room's subscribers
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        messageStreamService = new MessageStreamService(task -> { }, objectMapper, registry,
+                new InProcessRoomEventBus(), 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16,
+                60_000, 0, 500);  // Stall timeout 0 and a drain that never runs
+        useEmitters(spy(new SseEmitter(30 * 60 * 1000L)), spy(new SseEmitter(30 * 60 * 1000L)));
+        messageStreamService.subscribe(roomId);
+        int meters = registry.getMeters().size();
+        messageStreamService.subscribe(UUID.randomUUID());
+        messageStreamService.publish(roomId, "new-message", "never written");
+
+        assertThat(registry.getMeters()).hasSize(meters);  // A second room adds no meters
+        assertThat(registry.getMeters()).noneMatch(meter -> meter.getId().getTag("room") != null);
+        assertThat(messageStreamService.getQueueDepth(roomId)).isEqualTo(1);
+        assertThat(registry.get("securechat.sse.queue.depth").tag("stream", "room").gauge().value()).isEqualTo(1);
+
+        messageStreamService.sendHeartbeats();  // Reaps the stalled subscriber, the room's only one
+
+        assertThat(getEmittersForRoom(roomId)).isEmpty();
+        assertThat(getRoomStats()).doesNotContainKey(roomId);
+        assertThat(registry.get("securechat.sse.queue.depth").tag("stream", "room").gauge().value()).isZero();
+    }
+
+    @Test
+    void subscribe_withLastEventId_replaysOnlyMissedEventsFromBuffer() throws IOException {
+        // Tests Last-Event-ID resume served entirely from the in-memory replay buffer
+        SseEmitter first = spy(new SseEmitter(30 * 60 * 1000L));
+        SseEmitter reconnected = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(first, reconnected);
+
+        messageStreamService.subscribe(roomId);
+        messageStreamService.publish(roomId, "new-message", "one");
+        messageStreamService.publish(roomId, "new-message", "two");
+        messageStreamService.publish(roomId, "new-message", "three");
+
+        ArgumentCaptor<SseEventBuilder> received = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(first, times(3)).send(received.capture());
+        List<Long> ids = received.getAllValues().stream()
+                .map(event -> ((EncodedSseEvent) event).getId())
+                .toList();
+        assertThat(ids).isSorted().doesNotHaveDuplicates();
+
+        @SuppressWarnings("unchecked")
+        BiFunction<LocalDateTime, Integer, List<?>> loader = mock(BiFunction.class);
+        messageStreamService.subscribe(roomId, ids.get(0), loader);
+
+        ArgumentCaptor<SseEventBuilder> replayed = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(reconnected, times(2)).send(replayed.capture());
+        assertThat(replayed.getAllValues())
+                .extracting(event -> ((EncodedSseEvent) event).getId())
+                .containsExactly(ids.get(1), ids.get(2));
+        verifyNoInteractions(loader);  // No database catch-up needed
+    }
+
+    @Test
+    void subscribe_withLastEventIdOlderThanBuffer_fallsBackToDatabaseCatchUp() throws IOException {
+        // Tests that a gap larger than the buffer triggers a single database catch-up
+        messageStreamService = newService(Runnable::run, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 2);
+        SseEmitter first = spy(new SseEmitter(30 * 60 * 1000L));
+        SseEmitter reconnected = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(first, reconnected);
+
+        messageStreamService.subscribe(roomId);
+        for (int i = 0; i < 4; i++) {
+            messageStreamService.publish(roomId, "new-message", "event-" + i);
+        }
+        ArgumentCaptor<SseEventBuilder> received = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(first, times(4)).send(received.capture());
+        Long firstId = ((EncodedSseEvent) received.getAllValues().get(0)).getId();
+        Long lastId = ((EncodedSseEvent) received.getAllValues().get(3)).getId();
+
+        @SuppressWarnings("unchecked")
+        BiFunction<LocalDateTime, Integer, List<?>> loader = mock(BiFunction.class);
+        doReturn(List.of("event-1", "event-2", "event-3")).when(loader).apply(any(), any());
+
+        messageStreamService.subscribe(roomId, firstId, loader);
+
+        verify(loader).apply(any(LocalDateTime.class), eq(MessageStreamService.MAX_CATCH_UP_MESSAGES + 1));
+        ArgumentCaptor<SseEventBuilder> caughtUp = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(reconnected, times(3)).send(caughtUp.capture());
+        // Only the last catch-up event carries an ID, so a drop mid-catch-up resumes from the old one
+        assertThat(caughtUp.getAllValues())
+                .extracting(event -> ((EncodedSseEvent) event).getId())
+                .containsExactly(null, null, lastId);
+    }
+
+    @Test
+    void publish_goesThroughDistributedBus_evenWithoutLocalSubscribers() {
+        // Tests that with a cross-node bus the event is published for other nodes' subscribers
+        RoomEventBus bus = mock(RoomEventBus.class);
+        when(bus.isDistributed()).thenReturn(true);
+        messageStreamService = new MessageStreamService(Runnable::run, objectMapper, new SimpleMeterRegistry(),
+                bus, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
+
+        messageStreamService.publish(roomId, "new-message", "hello");
+
+        ArgumentCaptor<RoomEvent> published = ArgumentCaptor.forClass(RoomEvent.class);
+        verify(bus).publish(published.capture());
+        assertThat(published.getValue().roomId()).isEqualTo(roomId);
+        assertThat(new String(published.getValue().data(), StandardCharsets.UTF_8)).isEqualTo("hello");
+    }
+
+    @Test
+    void busDelivery_fromAnotherNode_reachesLocalSubscribers() throws IOException {
+        // Tests that events delivered by the bus (e.g. received from Redis) are fanned out locally
+        RoomEventBus bus = mock(RoomEventBus.class);
+        messageStreamService = new MessageStreamService(Runnable::run, objectMapper, new SimpleMeterRegistry(),
+                bus, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<java.util.function.Consumer<RoomEvent>> delivery =
+                ArgumentCaptor.forClass(java.util.function.Consumer.class);
+        verify(bus).onLocalDelivery(delivery.capture());
+
+        SseEmitter emitter = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(emitter);
+        messageStreamService.subscribe(roomId);
+
+        delivery.getValue().accept(new RoomEvent(roomId, "new-message",
+                "{\"text\":\"remote\"}".getBytes(StandardCharsets.UTF_8)));
+
+        verify(emitter).send(any(SseEventBuilder.class));
+    }
+
+    @Test
+    void sendHeartbeats_writesCommentToIdleSubscribers_andReapsDeadOnes() throws IOException {
+        // Tests that the heartbeat sweep detects a dead socket without any message being published
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        messageStreamService = new MessageStreamService(Runnable::run, objectMapper, registry,
+                new InProcessRoomEventBus(), 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16,
+                0, 60_000, 1);  // Interval 0: every subscriber counts as idle; batch of 1
+        SseEmitter alive = spy(new SseEmitter(30 * 60 * 1000L));
+        SseEmitter dead = spy(new SseEmitter(30 * 60 * 1000L));
+        doThrow(new IOException("Broken pipe")).when(dead).send(any(SseEventBuilder.class));
+        useEmitters(alive, dead);
+        messageStreamService.subscribe(roomId);
+        messageStreamService.subscribe(roomId);
+
+        assertThat(messageStreamService.getLiveEmitterCount(roomId)).isEqualTo(2);
+
+        messageStreamService.sendHeartbeats();
+
+        ArgumentCaptor<SseEventBuilder> heartbeat = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(alive).send(heartbeat.capture());
+        assertThat(heartbeat.getValue().build())
+                .extracting(ResponseBodyEmitter.DataWithMediaType::getData)
+                .containsExactly(":hb\n\n");
+        verify(dead).complete();
+        assertThat(getEmittersForRoom(roomId)).containsExactly(alive);
+        assertThat(messageStreamService.getReapedEmitters()).isEqualTo(1);
+        assertThat(registry.get("securechat.sse.emitters.total").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void sendHeartbeats_closesStalledSubscriber() {
+        // Tests that a subscriber whose queued events are never written is released
+        messageStreamService = new MessageStreamService(task -> { }, objectMapper, new SimpleMeterRegistry(),
+                new InProcessRoomEventBus(), 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 16,
+                60_000, 0, 500);  // Stall timeout 0 and a drain that never runs
+        SseEmitter stalled = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(stalled);
+        messageStreamService.subscribe(roomId);
+        messageStreamService.publish(roomId, "new-message", "never written");
+
+        messageStreamService.sendHeartbeats();
+
+        verify(stalled).complete();
+        assertThat(getEmittersForRoom(roomId)).isEmpty();
+        assertThat(messageStreamService.getQueueDepth(roomId)).isZero();
+        assertThat(messageStreamService.getReapedEmitters()).isEqualTo(1);
+    }
+
+    @Test
+    void subscribeUser_multiplexesRooms_andFollowsMembershipChanges() throws IOException {
+        // Tests one per-user connection carrying every room, tagged with the room ID
+        UUID userId = UUID.randomUUID();
+        UUID otherRoom = UUID.randomUUID();
+        UUID joinedLater = UUID.randomUUID();
+        SseEmitter stream = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(stream);
+
+        messageStreamService.subscribeUser(userId, List.of(roomId, otherRoom));
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "first"));
+        messageStreamService.publish(otherRoom, "new-message", Map.of("text", "second"));
+
+        messageStreamService.userLeftRoom(otherRoom, userId);
+        messageStreamService.userJoinedRoom(joinedLater, userId);
+        messageStreamService.publish(otherRoom, "new-message", Map.of("text", "not delivered"));
+        messageStreamService.publish(joinedLater, "new-message", Map.of("text", "third"));
+
+        ArgumentCaptor<SseEventBuilder> sent = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(stream, times(5)).send(sent.capture());
+        List<String> payloads = sent.getAllValues().stream()
+                .map(event -> new String((byte[]) event.build().stream()
+                        .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                        .filter(byte[].class::isInstance)
+                        .findFirst().orElseThrow(), StandardCharsets.UTF_8))
+                .toList();
+        assertThat(payloads).containsExactly(
+                "{\"roomId\":\"" + roomId + "\",\"data\":{\"text\":\"first\"}}",
+                "{\"roomId\":\"" + otherRoom + "\",\"data\":{\"text\":\"second\"}}",
+                "{\"roomId\":\"" + otherRoom + "\"}",           // room-left
+                "{\"roomId\":\"" + joinedLater + "\"}",         // room-joined
+                "{\"roomId\":\"" + joinedLater + "\",\"data\":{\"text\":\"third\"}}");
+        assertThat(sent.getAllValues())
+                .extracting(event -> ((EncodedSseEvent) event).getName())
+                .containsExactly("new-message", "new-message", "room-left", "room-joined", "new-message");
+    }
+
+    @Test
+    void roomDeleted_removesTheRoomFromEveryMultiplexedStream() throws IOException {
+        // Tests that deleting a room sends "room-left" to its watchers and stops carrying it
+        UUID otherRoom = UUID.randomUUID();
+        SseEmitter alice = spy(new SseEmitter(30 * 60 * 1000L));
+        SseEmitter bob = spy(new SseEmitter(30 * 60 * 1000L));
+        useEmitters(alice, bob);
+        messageStreamService.subscribeUser(UUID.randomUUID(), List.of(roomId, otherRoom));
+        messageStreamService.subscribeUser(UUID.randomUUID(), List.of(roomId));
+
+        messageStreamService.roomDeleted(roomId);
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "not delivered"));
+
+        ArgumentCaptor<SseEventBuilder> toAlice = ArgumentCaptor.forClass(SseEventBuilder.class);
+        verify(alice).send(toAlice.capture());
+        assertThat(((EncodedSseEvent) toAlice.getValue()).getName()).isEqualTo("room-left");
+        verify(bob).send(any(SseEventBuilder.class));  // Only the notice
+        assertThat(getRoomUserStreams()).doesNotContainKey(roomId).containsKey(otherRoom);
+    }
+
+    @Test
+    void poll_parksUntilNextEvent_thenResumesFromCursor() {
+        // Tests that a long-poll waits without a result and is completed by the next publish
+        @SuppressWarnings("unchecked")
+        BiFunction<LocalDateTime, Integer, List<?>> loader = mock(BiFunction.class);
+
+        DeferredResult<LongPollResponse> parked = messageStreamService.poll(roomId, null, 25_000, loader);
+        assertThat(parked.hasResult()).isFalse();
+
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "first"));
+
+        LongPollResponse first = (LongPollResponse) parked.getResult();
+        assertThat(first.events()).containsExactly(new LongPollResponse.Event("new-message", "{\"text\":\"first\"}"));
+
+        // Events published between two polls are returned immediately from the buffer
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "second"));
+        messageStreamService.publish(roomId, "new-message", Map.of("text", "third"));
+        DeferredResult<LongPollResponse> next = messageStreamService.poll(roomId, first.cursor(), 25_000, loader);
+
+        LongPollResponse missed = (LongPollResponse) next.getResult();
+        assertThat(missed.events()).extracting(LongPollResponse.Event::data)
+                .containsExactly("{\"text\":\"second\"}", "{\"text\":\"third\"}");
+        assertThat(missed.cursor()).isGreaterThan(first.cursor());
+        verifyNoInteractions(loader);  // No database access for any of these polls
+    }
+
+    @Test
+    void poll_withCursorFarBehind_catchesUpWithTheNewestOnly_afterReset() {
+        // Tests that a database catch-up is capped however old the client's cursor is
+        messageStreamService = newService(Runnable::run, 16, MessageStreamService.OverflowPolicy.DROP_OLDEST, 2);
+        messageStreamService.poll(roomId, null, 25_000, null);  // Keeps the room's buffer
+        for (int i = 0; i < 4; i++) {
+            messageStreamService.publish(roomId, "new-message", "\"event-" + i + "\"");
+        }
+
+        int max = MessageStreamService.MAX_CATCH_UP_MESSAGES;
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i <= max; i++) {
+            payloads.add("\"db-" + i + "\"");
+        }
+        @SuppressWarnings("unchecked")
+        BiFunction<LocalDateTime, Integer, List<?>> loader = mock(BiFunction.class);
+        doReturn(payloads).when(loader).apply(any(), eq(max + 1));
+
+        // A cursor older than the two-event buffer, as old as they come
+        LongPollResponse caughtUp = (LongPollResponse) messageStreamService.poll(roomId, 0L, 25_000, loader)
+                .getResult();
+
+        assertThat(caughtUp.events()).hasSize(max + 1);
+        assertThat(caughtUp.events().get(0).event()).isEqualTo(MessageStreamService.CATCH_UP_RESET_EVENT);
+        assertThat(caughtUp.events().get(1).data()).isEqualTo("\"db-1\"");  // The oldest one is dropped
+        assertThat(caughtUp.events().get(max).data()).isEqualTo("\"db-" + max + "\"");
+    }
+
     // Helper to access private map via reflection (for testing internal state)
     private CopyOnWriteArrayList<SseEmitter> getEmittersForRoom(UUID roomId) {
         try {
@@ -237,15 +673,61 @@ class MessageStreamServiceTest {
         }
     }
 
-    // Helper to set emitters for a room via reflection
+    // Per-room counters currently held by the service, via reflection
+    private Map<UUID, ?> getRoomStats() {
+        try {
+            var field = MessageStreamService.class.getDeclaredField("roomStats");
+            field.setAccessible(true);
+            return (Map<UUID, ?>) field.get(messageStreamService);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Multiplexed streams per room, via reflection
+    private Map<UUID, ?> getRoomUserStreams() {
+        try {
+            var field = MessageStreamService.class.getDeclaredField("roomUserStreams");
+            field.setAccessible(true);
+            return (Map<UUID, ?>) field.get(messageStreamService);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Helper to build the service with an in-process bus and the given fan-out executor
+    private MessageStreamService newService(Executor executor, int queueCapacity,
+                                            MessageStreamService.OverflowPolicy policy, int replayBufferSize) {
+        return new MessageStreamService(executor, objectMapper, new SimpleMeterRegistry(),
+                new InProcessRoomEventBus(), queueCapacity, policy, replayBufferSize);
+    }
+
+    // Helper to make subscribe() hand out the given emitters (in order) via reflection
+    private void useEmitters(SseEmitter... emitters) {
+        MessageStreamService.EmitterFactory factory = mock(MessageStreamService.EmitterFactory.class);
+        when(factory.createEmitter(anyLong())).thenReturn(emitters[0],
+                java.util.Arrays.copyOfRange(emitters, 1, emitters.length));
+        try {
+            var field = MessageStreamService.class.getDeclaredField("emitterFactory");
+            field.setAccessible(true);
+            field.set(messageStreamService, factory);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Helper to subscribe the given emitters to a room, in order, through subscribe()
     private void setEmittersForRoom(UUID roomId, CopyOnWriteArrayList<SseEmitter> emitters) {
+        useEmitters(emitters.toArray(SseEmitter[]::new));
+        emitters.forEach(emitter -> messageStreamService.subscribe(roomId));
+    }
+
+    // Send queues of the service's subscribers, via reflection
+    private Map<SseEmitter, ?> getSubscriberQueues() {
         try {
-            var field = MessageStreamService.class.getDeclaredField("roomEmitters");
+            var field = MessageStreamService.class.getDeclaredField("subscriberQueues");
             field.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            Map<UUID, CopyOnWriteArrayList<SseEmitter>> map = (Map<UUID, CopyOnWriteArrayList<SseEmitter>>) field
-                    .get(messageStreamService);
-            map.put(roomId, emitters);
+            return (Map<SseEmitter, ?>) field.get(messageStreamService);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
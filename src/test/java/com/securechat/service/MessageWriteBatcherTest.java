@@ -0,0 +1,134 @@
+package com.securechat.service;
+
+import com.securechat.entity.ChatRoom;
+import com.securechat.entity.Message;
+import com.securechat.entity.User;
+import com.securechat.repository.ChatRoomRepository;
+import com.securechat.repository.MessageRepository;
+import com.securechat.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("MessageWriteBatcher - group commit of message inserts")
+class MessageWriteBatcherTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ChatRoomRepository chatRoomRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;  // Commit is a no-op; we only observe ordering
+
+    private MessageWriteBatcher batcher;
+    private final UUID roomId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setup() {
+        when(userRepository.getReferenceById(any())).thenAnswer(i -> {
+            User user = new User();
+            user.setId(i.getArgument(0));
+            return user;
+        });
+        when(chatRoomRepository.getReferenceById(any())).thenAnswer(i -> {
+            ChatRoom room = new ChatRoom();
+            room.setId(i.getArgument(0));
+            return room;
+        });
+        // 50 ms window so the test's submits land in one batch
+        batcher = new MessageWriteBatcher(messageRepository, userRepository, chatRoomRepository,
+                transactionManager, new SimpleMeterRegistry(), 10, 50, 100);
+    }
+
+    @AfterEach
+    void teardown() {
+        batcher.stop();
+    }
+
+    @Test
+    @DisplayName("concurrent sends share one saveAll and complete after commit")
+    void sendsAreGroupedIntoOneTransaction() throws Exception {
+        when(messageRepository.saveAll(anyList())).thenAnswer(i -> assignIds(i.getArgument(0)));
+        batcher.start();
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(batcher.submit(roomId, userId, "alice", "m" + i, LocalDateTime.now()));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Message saved = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertNotNull(saved.getId());
+            assertEquals("m" + i, saved.getContent());
+            assertEquals(roomId, saved.getChatRoom().getId());
+            assertEquals("alice", saved.getUsername());
+        }
+        verify(messageRepository, times(1)).saveAll(anyList());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    @DisplayName("a failing batch is retried per message so only the bad one fails")
+    void failedBatchFallsBackToSingleInserts() throws Exception {
+        when(messageRepository.saveAll(anyList())).thenAnswer(i -> {
+            List<Message> messages = i.getArgument(0);
+            if (messages.stream().anyMatch(m -> m.getContent().equals("bad"))) {
+                throw new IllegalStateException("constraint violation");
+            }
+            return assignIds(messages);
+        });
+        batcher.start();
+
+        CompletableFuture<Message> good = batcher.submit(roomId, userId, "alice", "good", LocalDateTime.now());
+        CompletableFuture<Message> bad = batcher.submit(roomId, userId, "alice", "bad", LocalDateTime.now());
+
+        assertEquals("good", good.get(5, TimeUnit.SECONDS).getContent());
+        CompletionException failure = assertThrows(CompletionException.class, bad::join);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+    }
+
+    @Test
+    @DisplayName("sends after stop are rejected instead of waiting forever")
+    void submitAfterStopFails() {
+        batcher.start();
+        batcher.stop();
+
+        CompletionException failure = assertThrows(CompletionException.class,
+                () -> batcher.submit(roomId, userId, "alice", "late", LocalDateTime.now()).join());
+        assertEquals("Message write queue is full", failure.getCause().getMessage());
+        verify(messageRepository, never()).saveAll(anyList());
+    }
+
+    private static List<Message> assignIds(List<Message> messages) {
+        messages.forEach(m -> m.setId(UUID.randomUUID()));
+        return messages;
+    }
+}
@@ -0,0 +1,151 @@
+package com.securechat.service;
+
+import com.securechat.dto.MessageListDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RecentMessageCache - per-room tail of the newest messages")
+class RecentMessageCacheTest {
+
+    private final LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("second read of a room is served from memory")
+    void secondReadIsAHit() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3);
+        UUID room = UUID.randomUUID();
+        Supplier<Page<MessageListDto>> loader = loader(List.of(message(3), message(2), message(1)), 7);
+
+        cache.firstPage(room, 2, loader);
+        RecentMessageCache.Snapshot snapshot = cache.firstPage(room, 2, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of(3, 2), seconds(snapshot));
+        assertEquals(7, snapshot.totalElements());
+    }
+
+    @Test
+    @DisplayName("append keeps the tail newest-first and capped")
+    void appendWritesThrough() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3);
+        UUID room = UUID.randomUUID();
+        cache.firstPage(room, 3, loader(List.of(message(3), message(2), message(1)), 3));
+
+        cache.append(room, message(5));
+        cache.append(room, message(4));  // Committed after 5 but older
+
+        RecentMessageCache.Snapshot snapshot = cache.firstPage(room, 3, loader(List.of(), 0));
+        assertEquals(List.of(5, 4, 3), seconds(snapshot));
+        assertEquals(5, snapshot.totalElements());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("invalidate forces the next read back to the loader")
+    void invalidateDropsRoom() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3);
+        UUID room = UUID.randomUUID();
+        cache.firstPage(room, 3, loader(List.of(message(1)), 1));
+
+        cache.invalidate(room);
+        cache.firstPage(room, 3, loader(List.of(), 0));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("least recently read room is evicted beyond maxRooms")
+    void evictsLeastRecentlyRead() {
+        RecentMessageCache cache = new RecentMessageCache(2, 3);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        cache.firstPage(a, 1, loader(List.of(message(1)), 1));
+        cache.firstPage(b, 1, loader(List.of(message(1)), 1));
+        cache.firstPage(a, 1, loader(List.of(), 0));  // a is now more recent than b
+        cache.firstPage(c, 1, loader(List.of(message(1)), 1));
+
+        assertEquals(2, cache.size());
+        int before = loads.get();
+        cache.firstPage(a, 1, loader(List.of(), 0));
+        assertEquals(before, loads.get());  // a survived
+        cache.firstPage(b, 1, loader(List.of(), 0));
+        assertEquals(before + 1, loads.get());  // b was evicted
+    }
+
+    @Test
+    @DisplayName("a load that raced with a write is not cached")
+    void racingLoadIsDiscarded() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3);
+        UUID room = UUID.randomUUID();
+
+        // The message is committed while the (stale) load is running
+        cache.firstPage(room, 3, () -> {
+            loads.incrementAndGet();
+            cache.append(room, message(2));
+            return new PageImpl<>(List.of(message(1)));
+        });
+
+        RecentMessageCache.Snapshot snapshot = cache.firstPage(room, 3, loader(List.of(message(2), message(1)), 2));
+        assertEquals(2, loads.get());
+        assertEquals(List.of(2, 1), seconds(snapshot));
+    }
+
+    @Test
+    @DisplayName("a tail older than the TTL is loaded again even without writes")
+    void expiredTailIsReloaded() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3, 0);
+        UUID room = UUID.randomUUID();
+
+        cache.firstPage(room, 3, loader(List.of(message(1)), 1));
+        cache.firstPage(room, 3, loader(List.of(message(1)), 1));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("messages sent or deleted on another node drop the room's tail")
+    void remoteWriteEventsInvalidate() {
+        RecentMessageCache cache = new RecentMessageCache(10, 3);
+        UUID room = UUID.randomUUID();
+        cache.firstPage(room, 3, loader(List.of(message(1)), 1));
+
+        cache.onRemoteEvent(new RoomEvent(room, "new-file", new byte[0]));  // Not a message write
+        cache.firstPage(room, 3, loader(List.of(message(1)), 1));
+        assertEquals(1, loads.get());
+
+        cache.onRemoteEvent(new RoomEvent(room, MessageService.MESSAGE_DELETED_EVENT, new byte[0]));
+        cache.firstPage(room, 3, loader(List.of(), 0));
+        cache.onRemoteEvent(new RoomEvent(room, MessageService.NEW_MESSAGE_EVENT, new byte[0]));
+        cache.firstPage(room, 3, loader(List.of(message(2)), 1));
+        assertEquals(3, loads.get());
+    }
+
+    private Supplier<Page<MessageListDto>> loader(List<MessageListDto> rows, long total) {
+        return () -> {
+            loads.incrementAndGet();
+            return new PageImpl<>(rows, org.springframework.data.domain.PageRequest.of(0, 3), total);
+        };
+    }
+
+    // Messages are identified by their offset in seconds from base
+    private MessageListDto message(int second) {
+        return new MessageListDto(UUID.randomUUID(), "m" + second, "alice", UUID.randomUUID(),
+                base.plusSeconds(second), "TEXT");
+    }
+
+    private List<Integer> seconds(RecentMessageCache.Snapshot snapshot) {
+        return snapshot.messages().stream().map(m -> m.timestamp().getSecond()).toList();
+    }
+}
@@ -0,0 +1,89 @@
+package com.securechat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers  // Real Redis instance, no Spring context needed
+class RedisMembershipCacheTierIT {  // Two tier instances act as two API nodes sharing one Redis
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+    private RedisMembershipCacheTier nodeA;
+    private RedisMembershipCacheTier nodeB;
+
+    @BeforeEach
+    void setup() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+        nodeA = new RedisMembershipCacheTier(template);
+        nodeB = new RedisMembershipCacheTier(template);
+    }
+
+    @AfterEach
+    void teardown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void stalePutAfterRemovalOnAnotherNodeIsDropped() {
+        UUID room = UUID.randomUUID();
+        UUID user = UUID.randomUUID();
+
+        RedisMembershipCacheTier.Lookup miss = nodeA.get(room, user);  // Node A misses, then reads "member" from the DB
+        nodeB.invalidate(room, user);  // Node B removes the member meanwhile
+        nodeA.put(room, user, "alice", miss.epoch(), TTL_NANOS);  // Node A's write arrives late
+
+        assertThat(nodeA.get(room, user).username()).isNull();
+        assertThat(nodeB.get(room, user).username()).isNull();
+    }
+
+    @Test
+    void roomInvalidationHidesEveryEntry() {
+        UUID room = UUID.randomUUID();
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        nodeA.put(room, alice, "alice", nodeA.get(room, alice).epoch(), TTL_NANOS);
+        nodeA.put(room, bob, "bob", nodeA.get(room, bob).epoch(), TTL_NANOS);
+        assertThat(nodeB.get(room, alice).username()).isEqualTo("alice");
+
+        nodeB.invalidate(room, null);
+
+        assertThat(nodeA.get(room, alice).username()).isNull();
+        assertThat(nodeA.get(room, bob).username()).isNull();
+    }
+
+    @Test
+    void putOnlySetsTheExpiryOfItsOwnEntry() throws Exception {
+        UUID room = UUID.randomUUID();
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        nodeA.put(room, alice, "alice", nodeA.get(room, alice).epoch(), TimeUnit.SECONDS.toNanos(1));
+
+        Thread.sleep(600);
+        nodeB.put(room, bob, "bob", nodeB.get(room, bob).epoch(), TTL_NANOS);  // Activity in the room
+        Thread.sleep(600);
+
+        assertThat(nodeA.get(room, alice).username()).isNull();  // Expired on its own TTL
+        assertThat(nodeA.get(room, bob).username()).isEqualTo("bob");
+        assertThat(template.getExpire(RedisMembershipCacheTier.entryKey(room, bob), TimeUnit.SECONDS)).isPositive();
+    }
+}
@@ -0,0 +1,154 @@
+package com.securechat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RedisRoomEventBusTest {
+    // Validates batching and per-node deduplication of the Redis SSE bus (Redis itself is mocked)
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private StringRedisTemplate redisTemplate;
+    private RedisRoomEventBus nodeA;
+    private RedisRoomEventBus nodeB;
+    private final List<RoomEvent> deliveredOnA = new CopyOnWriteArrayList<>();
+    private final List<RoomEvent> deliveredOnB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        // start() is not called: no listener container, batches are flushed explicitly
+        nodeA = new RedisRoomEventBus(redisTemplate, objectMapper, 5, 100);
+        nodeB = new RedisRoomEventBus(mock(StringRedisTemplate.class), objectMapper, 5, 100);
+        nodeA.onLocalDelivery(deliveredOnA::add);
+        nodeB.onLocalDelivery(deliveredOnB::add);
+    }
+
+    @Test
+    void publish_deliversLocallyImmediately_andBatchesOnePublishPerRoom() {
+        UUID roomOne = UUID.randomUUID();
+        UUID roomTwo = UUID.randomUUID();
+
+        nodeA.publish(event(roomOne, "first"));
+        nodeA.publish(event(roomTwo, "second"));
+        nodeA.publish(event(roomOne, "third"));
+
+        assertThat(deliveredOnA).hasSize(3);  // No Redis round trip for local subscribers
+        verifyNoInteractions(redisTemplate);   // Nothing sent until the batch is flushed
+
+        nodeA.flushPending();
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(RedisRoomEventBus.CHANNEL_PREFIX + roomOne), body.capture());
+        verify(redisTemplate).convertAndSend(eq(RedisRoomEventBus.CHANNEL_PREFIX + roomTwo), anyString());
+        assertThat(body.getValue()).contains("first").contains("third").doesNotContain("second");
+    }
+
+    @Test
+    void onMessage_deliversInterleavedRooms_fromOneBatch() {
+        // One batch [A1, B2, A3] goes out as A:[1,3] then B:[2]; B2 must not look like a replay
+        UUID roomA = UUID.randomUUID();
+        UUID roomB = UUID.randomUUID();
+        nodeA.publish(event(roomA, "a1"));
+        nodeA.publish(event(roomB, "b2"));
+        nodeA.publish(event(roomA, "a3"));
+        nodeA.flushPending();
+
+        ArgumentCaptor<String> channel = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(2)).convertAndSend(channel.capture(), body.capture());
+        for (int i = 0; i < 2; i++) {
+            nodeB.onMessage(new DefaultMessage(channel.getAllValues().get(i).getBytes(StandardCharsets.UTF_8),
+                    body.getAllValues().get(i).getBytes(StandardCharsets.UTF_8)), null);
+        }
+
+        assertThat(deliveredOnB).extracting(e -> new String(e.data(), StandardCharsets.UTF_8))
+                .containsExactlyInAnyOrder("\"a1\"", "\"a3\"", "\"b2\"");
+    }
+
+    @Test
+    void forgetSeenBefore_dropsIdleOrigins() {
+        UUID room = UUID.randomUUID();
+        nodeA.publish(event(room, "hello"));
+        nodeA.flushPending();
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(anyString(), body.capture());
+        nodeB.onMessage(new DefaultMessage("c".getBytes(StandardCharsets.UTF_8),
+                body.getValue().getBytes(StandardCharsets.UTF_8)), null);
+        assertThat(nodeB.seenEntries()).isEqualTo(1);
+
+        nodeB.forgetSeenBefore(System.currentTimeMillis() + 1);
+
+        assertThat(nodeB.seenEntries()).isZero();
+    }
+
+    @Test
+    void onMessage_deliversRemoteEventsOnce_andIgnoresOwnEvents() {
+        UUID room = UUID.randomUUID();
+        nodeA.publish(event(room, "hello"));
+        nodeA.flushPending();
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(anyString(), body.capture());
+        DefaultMessage message = new DefaultMessage(
+                (RedisRoomEventBus.CHANNEL_PREFIX + room).getBytes(StandardCharsets.UTF_8),
+                body.getValue().getBytes(StandardCharsets.UTF_8));
+
+        nodeB.onMessage(message, null);
+        nodeB.onMessage(message, null);  // Duplicate delivery of the same batch
+        nodeA.onMessage(message, null);  // Own event echoed back by Redis
+
+        assertThat(deliveredOnB).hasSize(1);
+        assertThat(deliveredOnB.get(0).roomId()).isEqualTo(room);
+        assertThat(new String(deliveredOnB.get(0).data(), StandardCharsets.UTF_8)).isEqualTo("\"hello\"");
+        assertThat(deliveredOnA).hasSize(1);  // Only the original local delivery
+    }
+
+    @Test
+    void onRemoteDelivery_seesOnlyEventsFromOtherNodes() {
+        List<RoomEvent> remoteOnA = new CopyOnWriteArrayList<>();
+        List<RoomEvent> remoteOnB = new CopyOnWriteArrayList<>();
+        nodeA.onRemoteDelivery(remoteOnA::add);
+        nodeB.onRemoteDelivery(remoteOnB::add);
+        UUID room = UUID.randomUUID();
+        nodeA.publish(event(room, "hello"));
+        nodeA.flushPending();
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(anyString(), body.capture());
+        DefaultMessage message = new DefaultMessage(
+                (RedisRoomEventBus.CHANNEL_PREFIX + room).getBytes(StandardCharsets.UTF_8),
+                body.getValue().getBytes(StandardCharsets.UTF_8));
+        nodeB.onMessage(message, null);
+        nodeA.onMessage(message, null);
+
+        assertThat(remoteOnB).hasSize(1);
+        assertThat(remoteOnA).isEmpty();  // Published here, so caches on this node already saw the write
+    }
+
+    @Test
+    void onMessage_ignoresMalformedBatches() {
+        nodeB.onMessage(new DefaultMessage("channel".getBytes(StandardCharsets.UTF_8),
+                "not json".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(deliveredOnB).isEmpty();
+    }
+
+    private RoomEvent event(UUID room, String text) {
+        return new RoomEvent(room, "new-message", ("\"" + text + "\"").getBytes(StandardCharsets.UTF_8));
+    }
+}
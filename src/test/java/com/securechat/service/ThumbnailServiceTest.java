@@ -0,0 +1,127 @@
+package com.securechat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+@DisplayName("ThumbnailService - fixed-size previews stored next to the original")
+class ThumbnailServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalFileStorageService files;
+    private ThumbnailService thumbnails;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        files = new LocalFileStorageService(tempDir.toString());
+        files.init();
+        thumbnails = new ThumbnailService(files, 10_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnails.shutdown();
+    }
+
+    @Test
+    @DisplayName("every size keeps the aspect ratio and the source format")
+    void generatesEverySize() throws IOException {
+        store("photo.jpg", image(1600, 900, BufferedImage.TYPE_INT_RGB), "jpg");
+
+        thumbnails.generate("photo.jpg", "image/jpeg");
+
+        assertThat(dimensions("photo.jpg.thumb640.jpg")).containsExactly(640, 360);
+        assertThat(dimensions("photo.jpg.thumb320.jpg")).containsExactly(320, 180);
+        assertThat(dimensions("photo.jpg.thumb128.jpg")).containsExactly(128, 72);
+        assertThat(thumbnails.find("photo.jpg", "image/jpeg", 320)).contains(files.resolveDerivative("photo.jpg", "thumb320.jpg"));
+    }
+
+    @Test
+    @DisplayName("PNG thumbnails keep transparency; small images are not upscaled")
+    void pngKeepsAlpha() throws IOException {
+        store("logo.png", image(200, 100, BufferedImage.TYPE_INT_ARGB), "png");
+
+        thumbnails.generate("logo.png", "image/png");
+
+        BufferedImage largest = ImageIO.read(tempDir.resolve("logo.png.thumb640.png").toFile());
+        assertThat(largest.getWidth()).isEqualTo(200);
+        assertThat(largest.getColorModel().hasAlpha()).isTrue();
+        assertThat(dimensions("logo.png.thumb128.png")).containsExactly(128, 64);
+    }
+
+    @Test
+    @DisplayName("images over the pixel limit are refused before decoding")
+    void oversizedImageRefused() throws IOException {
+        thumbnails = new ThumbnailService(files, 1000);
+        store("huge.png", image(100, 100, BufferedImage.TYPE_INT_RGB), "png");
+
+        assertThatThrownBy(() -> thumbnails.generate("huge.png", "image/png"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Image too large: 100x100");
+        assertThat(thumbnails.find("huge.png", "image/png", 128)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("a file that can't be opened as an image is reported as unsupported")
+    void unreadableFileRefused() throws IOException {
+        // Gone between resolving and opening it (e.g. deleted meanwhile): ImageIO gives no input stream
+        LocalFileStorageService racing = spy(files);
+        doReturn(tempDir.resolve("deleted.png")).when(racing).resolveFile("deleted.png");
+        thumbnails = new ThumbnailService(racing, 10_000_000);
+
+        assertThatThrownBy(() -> thumbnails.generate("deleted.png", "image/png"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unsupported image");
+    }
+
+    @Test
+    @DisplayName("thumbnails are deleted together with their file")
+    void deletedWithOriginal() throws IOException {
+        store("photo.png", image(50, 50, BufferedImage.TYPE_INT_RGB), "png");
+        thumbnails.generate("photo.png", "image/png");
+
+        files.deleteFile("photo.png");
+
+        assertThat(tempDir.toFile().list()).containsExactly(".incoming");
+    }
+
+    @Test
+    @DisplayName("other file types are ignored")
+    void nonImagesIgnored() {
+        assertThat(ThumbnailService.supports("application/pdf")).isFalse();
+        assertThatCode(() -> thumbnails.schedule("document.pdf", "application/pdf")).doesNotThrowAnyException();
+    }
+
+    private void store(String name, BufferedImage image, String format) throws IOException {
+        ImageIO.write(image, format, tempDir.resolve(name).toFile());
+    }
+
+    private int[] dimensions(String name) throws IOException {
+        BufferedImage image = ImageIO.read(tempDir.resolve(name).toFile());
+        return new int[]{image.getWidth(), image.getHeight()};
+    }
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        var graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,92 @@
+package com.securechat.service;
+
+import com.securechat.exception.ValidationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("UploadValidatingInputStream - size and magic bytes checked while streaming")
+class UploadValidatingInputStreamTest {
+
+    private static final String TOO_LARGE = "File size exceeds 50MB limit";
+
+    @Test
+    @DisplayName("recognizes the signature of every allowed type")
+    void detectsAllowedTypes() {
+        assertThat(detect(0xFF, 0xD8, 0xFF, 0xE0)).isEqualTo("image/jpeg");
+        assertThat(detect(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')).isEqualTo("image/png");
+        assertThat(detect('G', 'I', 'F', '8', '9', 'a')).isEqualTo("image/gif");
+        assertThat(detect('%', 'P', 'D', 'F', '-', '1')).isEqualTo("application/pdf");
+        assertThat(detect('h', 'i', '\n')).isEqualTo("text/plain");
+        assertThat(detect('M', 'Z', 0x90, 0x00)).isNull();  // Windows executable
+        assertThat(detect(0x7F, 'E', 'L', 'F')).isNull();
+    }
+
+    @Test
+    @DisplayName("matching content passes through unchanged")
+    void matchingContentPasses() throws IOException {
+        byte[] pdf = "%PDF-1.7\n...".getBytes();
+
+        try (InputStream in = new UploadValidatingInputStream(new ByteArrayInputStream(pdf), 1024, TOO_LARGE,
+                "application/pdf")) {
+            assertThat(in.readAllBytes()).isEqualTo(pdf);
+        }
+    }
+
+    @Test
+    @DisplayName("signature split over several reads is still sniffed")
+    void sniffsAcrossShortReads() {
+        InputStream trickle = new ByteArrayInputStream(new byte[]{'M', 'Z', (byte) 0x90, 0, 3, 0}) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));  // One byte per read, like a slow client
+            }
+        };
+
+        assertThatThrownBy(() -> new UploadValidatingInputStream(trickle, 1024, TOO_LARGE, "application/pdf")
+                .transferTo(OutputStream.nullOutputStream()))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("File content does not match type: application/pdf");
+    }
+
+    @Test
+    @DisplayName("stops reading as soon as the limit is passed")
+    void rejectsOversizeEarly() {
+        AtomicLong served = new AtomicLong();
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                served.incrementAndGet();
+                return 'a';
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                java.util.Arrays.fill(b, off, off + len, (byte) 'a');
+                served.addAndGet(len);
+                return len;
+            }
+        };
+
+        assertThatThrownBy(() -> new UploadValidatingInputStream(endless, 100_000, TOO_LARGE, "text/plain")
+                .transferTo(OutputStream.nullOutputStream()))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage(TOO_LARGE);
+        assertThat(served.get()).isLessThan(100_000 + 64 * 1024);  // At most one buffer past the limit
+    }
+
+    private static String detect(int... bytes) {
+        byte[] head = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            head[i] = (byte) bytes[i];
+        }
+        return UploadValidatingInputStream.detectType(head, head.length);
+    }
+}
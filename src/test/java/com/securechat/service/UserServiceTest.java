@@ -23,6 +23,9 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;  // Repository for user data
 
+    @Mock
+    private AuthenticatedUserCache userCache;  // Must be evicted whenever a user changes
+
     @InjectMocks
     private UserService userService;  // Service under test
 
@@ -113,6 +116,7 @@ class UserServiceTest {
             assertThat(result.getEmail()).isEqualTo("bob@example.com");  // Email updated
             assertThat(result.getIsActive()).isTrue(); 
             verify(userRepository).save(existingUser);  // Should save updated user
+            verify(userCache).evict(userId);  // Cached profile is dropped
         }
 
         @Test
@@ -278,6 +282,7 @@ class UserServiceTest {
 
             assertThat(result.getRoles()).containsExactlyInAnyOrderElementsOf(newRoles);  // Roles updated
             verify(userRepository).save(existingUser);  // Should save
+            verify(userCache).evict(userId);  // New roles apply to the next request
         }
 
         @Test
@@ -318,6 +323,7 @@ class UserServiceTest {
 
             assertThat(existingUser.getIsActive()).isFalse();  // Should be marked inactive (soft delete)
             verify(userRepository).save(existingUser);  // Should save with updated status
+            verify(userCache).evict(userId);  // Deactivated user is not served from cache
         }
 
         @Test
@@ -13,9 +13,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -37,6 +40,12 @@ class UserSyncServiceTest {
     @Mock
     private Jwt jwt;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private AuthenticatedUserCache userCache = new AuthenticatedUserCache(100, 300);  // Real cache
+
     @InjectMocks
     private UserSyncService userSyncService;
 
@@ -65,7 +74,7 @@ class UserSyncServiceTest {
 
             assertThat(result).isSameAs(existing);
             verify(userRepository).findById(userId);
-            verify(userRepository, never()).save(any());
+            verify(userRepository, never()).saveAndFlush(any());
         }
 
         @Test
@@ -84,10 +93,10 @@ class UserSyncServiceTest {
             when(jwt.getClaimAsString("preferred_username")).thenReturn("myusername");
             when(jwt.getClaimAsString("email")).thenReturn("myemail@example.com");
             when(userRepository.findById(userId)).thenReturn(Optional.empty());
-            when(userRepository.findByUsername("myusername")).thenReturn(Optional.empty());
+            when(userRepository.findUsernamesLike("myusername", "myusername-%")).thenReturn(List.of());
             when(userRepository.findByEmail("myemail@example.com")).thenReturn(Optional.empty());
             when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
-            when(userRepository.save(any(User.class))).thenAnswer(i -> i.getArgument(0));
+            when(userRepository.saveAndFlush(any(User.class))).thenAnswer(i -> i.getArgument(0));
 
             User result = userSyncService.getOrCreateUser(jwt);
 
@@ -102,10 +111,10 @@ class UserSyncServiceTest {
             when(jwt.getClaimAsString("preferred_username")).thenReturn(null);
             when(jwt.getClaimAsString("email")).thenReturn("myemail@example.com");
             when(userRepository.findById(userId)).thenReturn(Optional.empty());
-            when(userRepository.findByUsername(anyString())).thenReturn(Optional.empty());
+            when(userRepository.findUsernamesLike(anyString(), anyString())).thenReturn(List.of());
             when(userRepository.findByEmail("myemail@example.com")).thenReturn(Optional.empty());
             when(passwordEncoder.encode(any())).thenReturn("encoded");
-            when(userRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+            when(userRepository.saveAndFlush(any())).thenAnswer(i -> i.getArgument(0));
 
             User result = userSyncService.getOrCreateUser(jwt);
 
@@ -117,23 +126,21 @@ class UserSyncServiceTest {
         @Test
         @DisplayName("Should generate unique username when preferred username is taken by another user")
         void shouldUseDefaultUsernameWhenPreferredUsernameIsTaken() {
-            User existing = createTestUser();
-            existing.setUsername("testuser");
-
             when(jwt.getClaimAsString("preferred_username")).thenReturn("testuser");
             when(jwt.getClaimAsString("email")).thenReturn("user@example.com");
             when(userRepository.findById(userId)).thenReturn(Optional.empty());
-            when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(existing));
-            // Need to stub for the generated unique username check (testuser-1)
-            when(userRepository.findByUsername("testuser-1")).thenReturn(Optional.empty());
+            // One query returns every taken variant of the preferred username
+            when(userRepository.findUsernamesLike("testuser", "testuser-%"))
+                    .thenReturn(List.of("testuser", "testuser-1", "testuser-2", "testuser-4"));
             when(userRepository.findByEmail("user@example.com")).thenReturn(Optional.empty());
             when(passwordEncoder.encode(any())).thenReturn("encoded");
-            when(userRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+            when(userRepository.saveAndFlush(any())).thenAnswer(i -> i.getArgument(0));
 
             User result = userSyncService.getOrCreateUser(jwt);
 
-            // When preferred username is taken, service appends -1, -2, etc. to the preferred username
-            assertThat(result.getUsername()).startsWith("testuser-");
+            // When preferred username is taken, service takes the lowest free -N suffix
+            assertThat(result.getUsername()).isEqualTo("testuser-3");
+            verify(userRepository, never()).findByUsername(any());  // No per-candidate probing
             assertThat(result.getEmail()).isEqualTo("user@example.com");
         }
 
@@ -163,10 +170,10 @@ class UserSyncServiceTest {
             when(jwt.getClaimAsString("email")).thenReturn("admin@example.com");
             when(jwt.getClaim("realm_access")).thenReturn(realmAccess);
             when(userRepository.findById(userId)).thenReturn(Optional.empty());
-            when(userRepository.findByUsername(any())).thenReturn(Optional.empty());
+            when(userRepository.findUsernamesLike(any(), any())).thenReturn(List.of());
             when(userRepository.findByEmail(any())).thenReturn(Optional.empty());
             when(passwordEncoder.encode(any())).thenReturn("encoded");
-            when(userRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+            when(userRepository.saveAndFlush(any())).thenAnswer(i -> i.getArgument(0));
 
             User result = userSyncService.getOrCreateUser(jwt);
 
@@ -201,6 +208,71 @@ class UserSyncServiceTest {
 
             assertThat(result.getEmail()).isEqualTo("myemail@example.com");
         }
+
+        @Test
+        @DisplayName("Should allocate a synthetic email in one query when the JWT has none")
+        void shouldAllocateSyntheticEmailInOneQuery() {
+            when(jwt.getClaimAsString("preferred_username")).thenReturn("noemail");
+            when(jwt.getClaimAsString("email")).thenReturn(null);
+            when(userRepository.findById(userId)).thenReturn(Optional.empty());
+            when(userRepository.findEmailsLike(userId + "@keycloak.local", userId + "+%@keycloak.local"))
+                    .thenReturn(List.of(userId + "@keycloak.local", userId + "+1@keycloak.local"));
+            when(userRepository.findUsernamesLike("noemail", "noemail-%")).thenReturn(List.of());
+            when(passwordEncoder.encode(any())).thenReturn("encoded");
+            when(userRepository.saveAndFlush(any())).thenAnswer(i -> i.getArgument(0));
+
+            User result = userSyncService.getOrCreateUser(jwt);
+
+            assertThat(result.getEmail()).isEqualTo(userId + "+2@keycloak.local");
+            verify(userRepository, never()).findByEmail(any());
+        }
+
+        @Test
+        @DisplayName("Should retry in a new transaction after a unique constraint conflict")
+        void shouldRetryAfterUniqueConstraintConflict() {
+            User createdElsewhere = createTestUser();
+            when(jwt.getClaimAsString("preferred_username")).thenReturn("race_r");
+            when(jwt.getClaimAsString("email")).thenReturn(null);
+            when(userRepository.findById(userId))
+                    .thenReturn(Optional.empty())
+                    .thenReturn(Optional.of(createdElsewhere));  // Another instance won the insert
+            when(userRepository.findUsernamesLike("race_r", "race!_r-%")).thenReturn(List.of());  // LIKE wildcard escaped
+            when(userRepository.findEmailsLike(any(), any())).thenReturn(List.of());
+            when(passwordEncoder.encode(any())).thenReturn("encoded");
+            when(userRepository.saveAndFlush(any()))
+                    .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+            User result = userSyncService.getOrCreateUser(jwt);
+
+            assertThat(result).isSameAs(createdElsewhere);
+            verify(userRepository, times(2)).findById(userId);
+        }
+
+        @Test
+        @DisplayName("Should serve repeat requests of the same subject from the cache")
+        void shouldServeRepeatRequestsFromCache() {
+            User existing = createTestUser();
+            when(userRepository.findById(userId)).thenReturn(Optional.of(existing));
+
+            userSyncService.getOrCreateUser(jwt);
+            User result = userSyncService.getOrCreateUser(jwt);
+
+            assertThat(result).isSameAs(existing);
+            verify(userRepository, times(1)).findById(userId);  // Second request skips the database
+        }
+
+        @Test
+        @DisplayName("Should not cache past the token expiry")
+        void shouldNotCacheExpiredToken() {
+            User existing = createTestUser();
+            when(jwt.getExpiresAt()).thenReturn(java.time.Instant.now().minusSeconds(1));
+            when(userRepository.findById(userId)).thenReturn(Optional.of(existing));
+
+            userSyncService.getOrCreateUser(jwt);
+            userSyncService.getOrCreateUser(jwt);
+
+            verify(userRepository, times(2)).findById(userId);
+        }
     }
 
     private User createTestUser() {
@@ -0,0 +1,69 @@
+package com.securechat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+class UuidV7Test {
+
+    @Test
+    void next_hasVersion7AndRfcVariant() {
+        UUID id = UuidV7.next();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);  // IETF variant (10xx)
+    }
+
+    @Test
+    void next_encodesCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7.next();
+        long after = System.currentTimeMillis();
+
+        // Counter overflow may push the stamp slightly ahead of the clock, never behind it
+        assertThat(UuidV7.timestampMillis(id)).isBetween(before, after + 1_000);
+    }
+
+    @Test
+    void next_isStrictlyIncreasingInDatabaseOrder() {
+        // Postgres compares uuid byte-wise, which matches the lowercase hex string order
+        String previous = UuidV7.next().toString();
+        for (int i = 0; i < 100_000; i++) {
+            String current = UuidV7.next().toString();
+            assertThat(current).isGreaterThan(previous);
+            previous = current;
+        }
+    }
+
+    @Test
+    void next_isUniqueAcrossThreads() throws Exception {
+        Set<UUID> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        seen.add(UuidV7.next());
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(seen).hasSize(8 * 20_000);
+    }
+}